@@ -25,6 +25,7 @@
 
 plugins {
     id("org.curioswitch.gradle-curio-server-plugin")
+    id("me.champeau.gradle.jmh")
 }
 
 base {
@@ -35,6 +36,14 @@ application {
     mainClassName = "org.curioswitch.cafemap.server.CafeMapServiceMain"
 }
 
+jmh {
+    warmupIterations = 5
+    iterations = 10
+    fork = 2
+    profilers = listOf()
+    isZip64 = true
+}
+
 dependencies {
     compile(project(":cafe-map:api"))
     // compile(project(":cafe-map:client:web"))
@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2RegionCoverer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import org.curioswitch.database.cafemapdb.tables.pojos.Place;
+import org.jooq.types.ULong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares answering a viewport from {@link PlaceCellIndex} with the in-process part of the
+ * database path, matching places against the covering cells and filtering by the viewport. The
+ * database round trip itself is not included.
+ */
+@State(Scope.Benchmark)
+public class PlaceCellIndexBenchmark {
+
+  // Around central Tokyo, about 20km across.
+  private static final double CENTER_LAT = 35.68;
+  private static final double CENTER_LNG = 139.76;
+  private static final double SPREAD_DEGREES = 0.1;
+
+  // Roughly a city block sized map view.
+  private static final S2LatLngRect VIEWPORT =
+      new S2LatLngRect(
+          S2LatLng.fromDegrees(CENTER_LAT - 0.005, CENTER_LNG - 0.008),
+          S2LatLng.fromDegrees(CENTER_LAT + 0.005, CENTER_LNG + 0.008));
+
+  @Param({"10000", "100000"})
+  public int numPlaces;
+
+  private List<Place> places;
+  private PlaceCellIndex index;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    LocalDateTime now = LocalDateTime.now();
+    ImmutableList.Builder<Place> builder = ImmutableList.builder();
+    for (int i = 0; i < numPlaces; i++) {
+      double lat = CENTER_LAT + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+      double lng = CENTER_LNG + (random.nextDouble() - 0.5) * SPREAD_DEGREES;
+      builder.add(
+          new Place(
+              ULong.valueOf(i),
+              "place" + i,
+              lat,
+              lng,
+              ULong.valueOf(S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lng)).id()),
+              null,
+              "google" + i,
+              now,
+              now));
+    }
+    places = builder.build();
+    index = PlaceCellIndex.of(places);
+  }
+
+  @Benchmark
+  public List<Place> index() {
+    return index.query(VIEWPORT);
+  }
+
+  @Benchmark
+  public List<Place> scan() {
+    var coveredCells = new S2RegionCoverer().getCovering(VIEWPORT);
+    return places.stream()
+        .filter(
+            place -> {
+              long cell = place.getS2Cell().longValue();
+              for (S2CellId covering : coveredCells) {
+                if (Long.compareUnsigned(cell, covering.rangeMin().id()) >= 0
+                    && Long.compareUnsigned(cell, covering.rangeMax().id()) <= 0) {
+                  return true;
+                }
+              }
+              return false;
+            })
+        .filter(
+            place ->
+                VIEWPORT.contains(S2LatLng.fromDegrees(place.getLatitude(), place.getLongitude())))
+        .collect(toImmutableList());
+  }
+}
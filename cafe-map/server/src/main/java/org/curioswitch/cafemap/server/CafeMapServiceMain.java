@@ -25,18 +25,26 @@
 package org.curioswitch.cafemap.server;
 
 import com.linecorp.armeria.server.Server;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigBeanFactory;
 import dagger.Binds;
 import dagger.Component;
 import dagger.Module;
 import dagger.Provides;
 import dagger.multibindings.IntoSet;
 import io.grpc.BindableService;
+import java.io.Closeable;
 import javax.inject.Singleton;
 import org.curioswitch.cafemap.server.places.GetPlaceGraph;
 import org.curioswitch.cafemap.server.places.GetPlacesGraph;
 import org.curioswitch.cafemap.server.places.ListLandmarksGraph;
+import org.curioswitch.cafemap.server.places.ModifiablePlacesIndexConfig;
+import org.curioswitch.cafemap.server.places.PlacesIndex;
+import org.curioswitch.cafemap.server.places.PlacesIndexConfig;
 import org.curioswitch.common.server.framework.ServerModule;
 import org.curioswitch.common.server.framework.database.DatabaseModule;
+import org.curioswitch.common.server.framework.inject.CloseOnStop;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
 import org.curioswitch.common.server.framework.staticsite.StaticSiteServiceDefinition;
 import org.curioswitch.gcloud.mapsservices.MapsServicesModule;
 
@@ -54,6 +62,23 @@ public class CafeMapServiceMain {
     @IntoSet
     abstract BindableService service(CafeMapService service);
 
+    @Binds
+    @IntoSet
+    abstract WarmUpTask placesIndexWarmUp(PlacesIndex placesIndex);
+
+    @Binds
+    @IntoSet
+    @CloseOnStop
+    abstract Closeable closePlacesIndex(PlacesIndex placesIndex);
+
+    @Provides
+    @Singleton
+    static PlacesIndexConfig placesIndexConfig(Config config) {
+      return ConfigBeanFactory.create(
+              config.getConfig("placesIndex"), ModifiablePlacesIndexConfig.class)
+          .toImmutable();
+    }
+
     @Provides
     @IntoSet
     static StaticSiteServiceDefinition staticSite() {
@@ -26,6 +26,7 @@ package org.curioswitch.cafemap.server.places;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static org.curioswitch.database.cafemapdb.tables.Place.PLACE;
 
 import com.google.common.base.Strings;
@@ -80,7 +81,15 @@ public abstract class GetPlacesGraph {
 
   @Produces
   static ListenableFuture<List<Place>> fetchPlaces(
-      S2LatLngRect viewport, DSLContext db, @ForDatabase ListeningExecutorService dbExecutor) {
+      S2LatLngRect viewport,
+      PlacesIndex placesIndex,
+      DSLContext db,
+      @ForDatabase ListeningExecutorService dbExecutor) {
+    var indexed = placesIndex.query(viewport);
+    if (indexed.isPresent()) {
+      return immediateFuture(indexed.get());
+    }
+
     var coverer = new S2RegionCoverer();
     var coveredCells = coverer.getCovering(viewport);
 
@@ -96,20 +105,24 @@ public abstract class GetPlacesGraph {
                 .collect(toImmutableList()));
 
     return dbExecutor.submit(
-        () -> db.selectFrom(PLACE).where(DSL.or(locationCondition)).fetchInto(Place.class));
+        () ->
+            db.selectFrom(PLACE)
+                .where(DSL.or(locationCondition))
+                .fetchInto(Place.class)
+                .stream()
+                .filter(
+                    place ->
+                        viewport.contains(
+                            S2LatLng.fromDegrees(place.getLatitude(), place.getLongitude())))
+                .collect(toImmutableList()));
   }
 
   @Produces
-  static GetPlacesResponse response(List<Place> places, S2LatLngRect viewport) {
+  static GetPlacesResponse response(List<Place> places) {
     return GetPlacesResponse.newBuilder()
         .addAllPlace(
             places.stream()
-                    .filter(
-                        place ->
-                            !Strings.isNullOrEmpty(place.getGooglePlaceId())
-                                && viewport.contains(
-                                    S2LatLng.fromDegrees(
-                                        place.getLatitude(), place.getLongitude())))
+                    .filter(place -> !Strings.isNullOrEmpty(place.getGooglePlaceId()))
                     .map(PlaceUtil::convertPlace)
                 ::iterator)
         .build();
@@ -40,8 +40,6 @@ import com.google.common.geometry.S2RegionCoverer;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.maps.GeoApiContext;
-import com.google.maps.NearbySearchRequest;
 import com.google.maps.model.LatLng;
 import com.google.maps.model.PlaceType;
 import com.google.maps.model.PlacesSearchResponse;
@@ -62,7 +60,7 @@ import org.curioswitch.common.server.framework.database.ForDatabase;
 import org.curioswitch.common.server.framework.grpc.Unvalidated;
 import org.curioswitch.database.cafemapdb.tables.pojos.Landmark;
 import org.curioswitch.database.cafemapdb.tables.records.LandmarkRecord;
-import org.curioswitch.gcloud.mapsservices.CallbackListenableFuture;
+import org.curioswitch.gcloud.mapsservices.PlacesSearchCache;
 import org.jooq.DSLContext;
 import org.jooq.types.ULong;
 
@@ -125,7 +123,7 @@ public abstract class ListLandmarksGraph {
   @Produces
   static ListenableFuture<PlacesSearchResponse> maybeSearchForLandmarks(
       S2LatLngRect viewport,
-      GeoApiContext geoApiContext,
+      PlacesSearchCache placesSearchCache,
       S2CellUnion coveredCells,
       List<List<Landmark>> dbLandmarks) {
     // We find the first cell that is missing landmarks in the viewport to use as the center when
@@ -155,13 +153,8 @@ public abstract class ListLandmarksGraph {
     S2LatLng location = viewport.getCenter();
     int radius = (int) location.getEarthDistance(viewport.lo());
 
-    CallbackListenableFuture<PlacesSearchResponse> callback = new CallbackListenableFuture<>();
-    new NearbySearchRequest(geoApiContext)
-        .location(new LatLng(location.latDegrees(), location.lngDegrees()))
-        .radius(radius)
-        .type(PlaceType.PARK)
-        .setCallback(callback);
-    return callback;
+    return placesSearchCache.nearbySearch(
+        new LatLng(location.latDegrees(), location.lngDegrees()), radius, PlaceType.PARK);
   }
 
   @Produces
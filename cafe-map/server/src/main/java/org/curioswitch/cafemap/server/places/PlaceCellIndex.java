@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2RegionCoverer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.curioswitch.database.cafemapdb.tables.pojos.Place;
+import org.jooq.types.ULong;
+
+/**
+ * An immutable snapshot of places sorted by S2 cell, with the cells and coordinates stored in
+ * primitive arrays so a viewport can be answered with a binary search per covering cell.
+ */
+final class PlaceCellIndex {
+
+  static final PlaceCellIndex EMPTY =
+      new PlaceCellIndex(new long[0], new double[0], new double[0], new Place[0], null);
+
+  private static final Comparator<Place> BY_CELL =
+      Comparator.comparingLong(place -> sortableCell(place.getS2Cell()));
+
+  /** Returns a {@link PlaceCellIndex} containing {@code places}. */
+  static PlaceCellIndex of(List<Place> places) {
+    return EMPTY.merge(places);
+  }
+
+  // S2 cell IDs are unsigned, offset them so the signed order of the stored values matches.
+  private final long[] cells;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final Place[] places;
+
+  @Nullable private final LocalDateTime lastUpdatedAt;
+
+  private PlaceCellIndex(
+      long[] cells,
+      double[] latitudes,
+      double[] longitudes,
+      Place[] places,
+      @Nullable LocalDateTime lastUpdatedAt) {
+    this.cells = cells;
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+    this.places = places;
+    this.lastUpdatedAt = lastUpdatedAt;
+  }
+
+  /** Returns the number of places in this index. */
+  int size() {
+    return places.length;
+  }
+
+  /** Returns the latest update time of the places in this index, or {@code null} if empty. */
+  @Nullable
+  LocalDateTime lastUpdatedAt() {
+    return lastUpdatedAt;
+  }
+
+  /** Returns the places within {@code viewport}. */
+  List<Place> query(S2LatLngRect viewport) {
+    S2CellUnion covering = new S2RegionCoverer().getCovering(viewport);
+    ImmutableList.Builder<Place> result = ImmutableList.builder();
+    for (S2CellId cell : covering) {
+      long max = sortableCell(cell.rangeMax().id());
+      for (int i = lowerBound(sortableCell(cell.rangeMin().id()));
+          i < cells.length && cells[i] <= max;
+          i++) {
+        if (viewport.lat().contains(Math.toRadians(latitudes[i]))
+            && viewport.lng().contains(Math.toRadians(longitudes[i]))) {
+          result.add(places[i]);
+        }
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns a new {@link PlaceCellIndex} with {@code updated} added, replacing any places with the
+   * same ID.
+   */
+  PlaceCellIndex merge(List<Place> updated) {
+    if (updated.isEmpty()) {
+      return this;
+    }
+    List<Place> sorted = ImmutableList.sortedCopyOf(BY_CELL, updated);
+    Set<ULong> updatedIds = updated.stream().map(Place::getId).collect(toImmutableSet());
+
+    int maxSize = places.length + updated.size();
+    long[] newCells = new long[maxSize];
+    double[] newLatitudes = new double[maxSize];
+    double[] newLongitudes = new double[maxSize];
+    Place[] newPlaces = new Place[maxSize];
+    LocalDateTime newLastUpdatedAt = lastUpdatedAt;
+
+    int size = 0;
+    int existingIndex = 0;
+    int updatedIndex = 0;
+    while (existingIndex < places.length || updatedIndex < sorted.size()) {
+      if (existingIndex < places.length && updatedIds.contains(places[existingIndex].getId())) {
+        existingIndex++;
+        continue;
+      }
+      final Place place;
+      if (updatedIndex == sorted.size()
+          || (existingIndex < places.length
+              && BY_CELL.compare(places[existingIndex], sorted.get(updatedIndex)) <= 0)) {
+        place = places[existingIndex++];
+      } else {
+        place = sorted.get(updatedIndex++);
+        if (newLastUpdatedAt == null || place.getUpdatedAt().isAfter(newLastUpdatedAt)) {
+          newLastUpdatedAt = place.getUpdatedAt();
+        }
+      }
+      newCells[size] = sortableCell(place.getS2Cell());
+      newLatitudes[size] = place.getLatitude();
+      newLongitudes[size] = place.getLongitude();
+      newPlaces[size] = place;
+      size++;
+    }
+
+    return new PlaceCellIndex(
+        Arrays.copyOf(newCells, size),
+        Arrays.copyOf(newLatitudes, size),
+        Arrays.copyOf(newLongitudes, size),
+        Arrays.copyOf(newPlaces, size),
+        newLastUpdatedAt);
+  }
+
+  // Returns the index of the first cell that is not less than cell.
+  private int lowerBound(long cell) {
+    int low = 0;
+    int high = cells.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cells[mid] < cell) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static long sortableCell(long cellId) {
+    return cellId + Long.MIN_VALUE;
+  }
+
+  private static long sortableCell(ULong cellId) {
+    return sortableCell(cellId.longValue());
+  }
+}
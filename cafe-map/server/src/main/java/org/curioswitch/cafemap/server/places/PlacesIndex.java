@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import static org.curioswitch.database.cafemapdb.tables.Place.PLACE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.common.CommonPools;
+import com.linecorp.armeria.server.Server;
+import java.io.Closeable;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.curioswitch.common.server.framework.database.ForDatabase;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+import org.curioswitch.database.cafemapdb.tables.pojos.Place;
+import org.jooq.DSLContext;
+
+/**
+ * An in-memory index of all places, loaded when the server warms up and then refreshed
+ * periodically with the places updated since the last refresh. Deleted places are not removed
+ * until the server restarts.
+ */
+@Singleton
+public class PlacesIndex implements WarmUpTask, Closeable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final PlacesIndexConfig config;
+  private final DSLContext db;
+  private final ListeningExecutorService dbExecutor;
+
+  // null until the first load completes.
+  @Nullable private volatile PlaceCellIndex index;
+
+  @Nullable private ScheduledFuture<?> scheduledRefreshes;
+
+  private boolean closed;
+
+  @Inject
+  public PlacesIndex(
+      PlacesIndexConfig config, DSLContext db, @ForDatabase ListeningExecutorService dbExecutor) {
+    this.config = config;
+    this.db = db;
+    this.dbExecutor = dbExecutor;
+  }
+
+  /**
+   * Returns the places within {@code viewport}, or {@link Optional#empty()} if the index is
+   * disabled or not loaded yet and the database should be queried instead.
+   */
+  public Optional<List<Place>> query(S2LatLngRect viewport) {
+    PlaceCellIndex index = this.index;
+    if (index == null) {
+      return Optional.empty();
+    }
+    return Optional.of(index.query(viewport));
+  }
+
+  @Override
+  public String name() {
+    return "places-index";
+  }
+
+  @Override
+  public ListenableFuture<?> warmUp(Server server) {
+    if (!config.isEnabled()) {
+      return Futures.immediateFuture(null);
+    }
+    ListenableFuture<?> loaded = refresh();
+    // Failures are logged by the warm-up runner, and the next refresh will retry the full load.
+    loaded.addListener(this::scheduleRefreshes, MoreExecutors.directExecutor());
+    return loaded;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (scheduledRefreshes != null) {
+      scheduledRefreshes.cancel(false);
+    }
+  }
+
+  @VisibleForTesting
+  ListenableFuture<?> refresh() {
+    return dbExecutor.submit(
+        () -> {
+          PlaceCellIndex current = index != null ? index : PlaceCellIndex.EMPTY;
+          LocalDateTime lastUpdatedAt = current.lastUpdatedAt();
+          // A row can commit after we read with an updated_at earlier than the latest one we saw,
+          // so re-read a window before it. Merging replaces places we already have by ID.
+          List<Place> updated =
+              lastUpdatedAt == null
+                  ? db.selectFrom(PLACE).fetchInto(Place.class)
+                  : db.selectFrom(PLACE)
+                      .where(PLACE.UPDATED_AT.ge(lastUpdatedAt.minus(config.getRefreshOverlap())))
+                      .fetchInto(Place.class);
+          index = current.merge(updated);
+          return null;
+        });
+  }
+
+  private synchronized void scheduleRefreshes() {
+    if (closed) {
+      return;
+    }
+    long intervalMillis = config.getRefreshInterval().toMillis();
+    scheduledRefreshes =
+        CommonPools.blockingTaskExecutor()
+            .scheduleWithFixedDelay(
+                this::refreshAndWait, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void refreshAndWait() {
+    // A scheduled task that throws is never run again, so make sure nothing escapes.
+    try {
+      refresh().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | RuntimeException e) {
+      logger.warn(
+          "Could not refresh places index.", e instanceof ExecutionException ? e.getCause() : e);
+    }
+  }
+}
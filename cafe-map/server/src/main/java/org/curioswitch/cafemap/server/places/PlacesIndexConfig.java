@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import java.time.Duration;
+import org.curioswitch.common.server.framework.immutables.JavaBeanStyle;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Modifiable;
+
+/** Configuration properties for the in-memory index of places. */
+@Immutable
+@Modifiable
+@JavaBeanStyle
+public interface PlacesIndexConfig {
+
+  /**
+   * Whether place queries should be served from memory. If disabled, every query is sent to the
+   * database.
+   */
+  boolean isEnabled();
+
+  /** How often to load places updated since the last refresh from the database. */
+  Duration getRefreshInterval();
+
+  /**
+   * How far before the latest update already loaded to start each refresh, so places whose update
+   * committed late with an earlier timestamp are still picked up.
+   */
+  Duration getRefreshOverlap();
+}
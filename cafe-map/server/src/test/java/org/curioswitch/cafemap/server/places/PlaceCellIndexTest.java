@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import java.time.LocalDateTime;
+import org.curioswitch.database.cafemapdb.tables.pojos.Place;
+import org.jooq.types.ULong;
+import org.junit.jupiter.api.Test;
+
+class PlaceCellIndexTest {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2020, 10, 1, 12, 0);
+
+  @Test
+  void mergeReplacesPlace() {
+    Place tokyo = place(1, 35.68, 139.76, NOW);
+    Place osaka = place(2, 34.69, 135.50, NOW);
+    PlaceCellIndex index = PlaceCellIndex.of(ImmutableList.of(tokyo, osaka));
+
+    Place moved = place(1, 43.06, 141.35, NOW.plusMinutes(1));
+    PlaceCellIndex merged = index.merge(ImmutableList.of(moved));
+
+    assertThat(merged.size()).isEqualTo(2);
+    assertThat(merged.lastUpdatedAt()).isEqualTo(NOW.plusMinutes(1));
+    assertThat(merged.query(around(35.68, 139.76))).isEmpty();
+    assertThat(merged.query(around(43.06, 141.35))).containsExactly(moved);
+    assertThat(merged.query(around(34.69, 135.50))).containsExactly(osaka);
+
+    // The original snapshot is unchanged.
+    assertThat(index.query(around(35.68, 139.76))).containsExactly(tokyo);
+  }
+
+  @Test
+  void mergeEmpty() {
+    PlaceCellIndex index = PlaceCellIndex.of(ImmutableList.of(place(1, 35.68, 139.76, NOW)));
+
+    assertThat(index.merge(ImmutableList.of())).isSameAs(index);
+    assertThat(PlaceCellIndex.EMPTY.lastUpdatedAt()).isNull();
+  }
+
+  @Test
+  void queryAcrossCells() {
+    // Longitude -45 at the equator is the boundary between S2 faces 0 and 4, so the viewport is
+    // covered by cells on both sides of the sign bit of the cell ID.
+    Place face0 = place(1, 5, -44, NOW);
+    Place face4 = place(2, -5, -46, NOW);
+    Place outsideLat = place(3, 15, -44, NOW);
+    Place outsideLng = place(4, 5, -55, NOW);
+    Place farAway = place(5, 35.68, 139.76, NOW);
+    PlaceCellIndex index =
+        PlaceCellIndex.of(ImmutableList.of(face0, face4, outsideLat, outsideLng, farAway));
+
+    S2LatLngRect viewport =
+        new S2LatLngRect(S2LatLng.fromDegrees(-10, -50), S2LatLng.fromDegrees(10, -40));
+
+    assertThat(index.query(viewport)).containsExactlyInAnyOrder(face0, face4);
+  }
+
+  private static S2LatLngRect around(double lat, double lng) {
+    return new S2LatLngRect(
+        S2LatLng.fromDegrees(lat - 0.01, lng - 0.01), S2LatLng.fromDegrees(lat + 0.01, lng + 0.01));
+  }
+
+  private static Place place(long id, double lat, double lng, LocalDateTime updatedAt) {
+    return new Place(
+        ULong.valueOf(id),
+        "place" + id,
+        lat,
+        lng,
+        ULong.valueOf(S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lng)).id()),
+        null,
+        "google" + id,
+        NOW,
+        updatedAt);
+  }
+}
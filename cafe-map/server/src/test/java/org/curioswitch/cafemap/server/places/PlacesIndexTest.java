@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.cafemap.server.places;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.curioswitch.database.cafemapdb.tables.Place.PLACE;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.curioswitch.database.cafemapdb.tables.pojos.Place;
+import org.curioswitch.database.cafemapdb.tables.records.PlaceRecord;
+import org.jooq.DSLContext;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.MockConnection;
+import org.jooq.tools.jdbc.MockExecuteContext;
+import org.jooq.tools.jdbc.MockResult;
+import org.jooq.types.ULong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PlacesIndexTest {
+
+  private static final DSLContext DB = DSL.using(SQLDialect.MYSQL);
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2020, 10, 1, 12, 0);
+
+  private List<Place> places;
+  private List<LocalDateTime> queriedSince;
+
+  private PlacesIndex index;
+
+  @BeforeEach
+  void setUp() {
+    places = new ArrayList<>();
+    queriedSince = new ArrayList<>();
+    index =
+        new PlacesIndex(
+            new ModifiablePlacesIndexConfig()
+                .setEnabled(true)
+                .setRefreshInterval(Duration.ofHours(1))
+                .setRefreshOverlap(Duration.ofSeconds(10))
+                .toImmutable(),
+            DSL.using(new MockConnection(this::execute), SQLDialect.MYSQL),
+            MoreExecutors.newDirectExecutorService());
+  }
+
+  @AfterEach
+  void closeIndex() {
+    index.close();
+  }
+
+  @Test
+  void notLoaded() {
+    assertThat(index.query(around(35.68, 139.76))).isEmpty();
+  }
+
+  @Test
+  void incrementalRefresh() throws Exception {
+    Place tokyo = place(1, 35.68, 139.76, NOW);
+    Place osaka = place(2, 34.69, 135.50, NOW.minusMinutes(1));
+    places.add(tokyo);
+    places.add(osaka);
+
+    index.refresh().get();
+
+    assertThat(queriedSince).containsExactly((LocalDateTime) null);
+    assertThat(query(around(35.68, 139.76))).containsExactly(tokyo);
+
+    // Committed after the first load but with an earlier timestamp than the latest place.
+    Place sapporo = place(3, 43.06, 141.35, NOW.minusSeconds(5));
+    Place moved = place(2, 33.59, 130.40, NOW.plusSeconds(30));
+    places.add(sapporo);
+    places.set(1, moved);
+
+    index.refresh().get();
+
+    assertThat(queriedSince).containsExactly(null, NOW.minusSeconds(10));
+    assertThat(query(around(43.06, 141.35))).containsExactly(sapporo);
+    assertThat(query(around(33.59, 130.40))).containsExactly(moved);
+    assertThat(query(around(34.69, 135.50))).isEmpty();
+
+    // Places re-read in the overlap replace themselves instead of being added again.
+    index.refresh().get();
+
+    assertThat(queriedSince).containsExactly(null, NOW.minusSeconds(10), NOW.plusSeconds(20));
+    assertThat(query(around(35.68, 139.76))).containsExactly(tokyo);
+    assertThat(query(around(33.59, 130.40))).containsExactly(moved);
+    assertThat(query(around(43.06, 141.35))).containsExactly(sapporo);
+  }
+
+  private MockResult[] execute(MockExecuteContext ctx) {
+    LocalDateTime since = updatedSince(ctx.bindings());
+    queriedSince.add(since);
+
+    Result<PlaceRecord> result = DB.newResult(PLACE);
+    result.addAll(
+        places.stream()
+            .filter(place -> since == null || !place.getUpdatedAt().isBefore(since))
+            .map(place -> DB.newRecord(PLACE, place))
+            .collect(Collectors.toList()));
+    return new MockResult[] {new MockResult(result.size(), result)};
+  }
+
+  private List<Place> query(S2LatLngRect viewport) {
+    return index.query(viewport).orElseThrow(() -> new AssertionError("Index not loaded."));
+  }
+
+  // The only query with a binding is the incremental one, which binds the updated_at threshold.
+  @Nullable
+  private static LocalDateTime updatedSince(Object[] bindings) {
+    if (bindings.length == 0) {
+      return null;
+    }
+    return bindings[0] instanceof Timestamp
+        ? ((Timestamp) bindings[0]).toLocalDateTime()
+        : (LocalDateTime) bindings[0];
+  }
+
+  private static S2LatLngRect around(double lat, double lng) {
+    return new S2LatLngRect(
+        S2LatLng.fromDegrees(lat - 0.01, lng - 0.01), S2LatLng.fromDegrees(lat + 0.01, lng + 0.01));
+  }
+
+  private static Place place(long id, double lat, double lng, LocalDateTime updatedAt) {
+    return new Place(
+        ULong.valueOf(id),
+        "place" + id,
+        lat,
+        lng,
+        ULong.valueOf(S2CellId.fromLatLng(S2LatLng.fromDegrees(lat, lng)).id()),
+        null,
+        "google" + id,
+        NOW,
+        updatedAt);
+  }
+}
@@ -25,6 +25,8 @@
 plugins {
     `java-library`
     `maven-publish`
+
+    id("me.champeau.gradle.jmh")
 }
 
 base {
@@ -36,6 +38,14 @@ java {
     targetCompatibility = JavaVersion.VERSION_1_8
 }
 
+jmh {
+    warmupIterations = 5
+    iterations = 10
+    fork = 2
+    profilers = listOf()
+    isZip64 = true
+}
+
 dependencies {
     api("com.linecorp.armeria:armeria")
     api("software.amazon.awssdk:http-client-spi")
@@ -48,4 +58,9 @@ dependencies {
         exclude("software.amazon.awssdk", "apache-client")
         exclude("software.amazon.awssdk", "netty-nio-client")
     }
+
+    jmhImplementation("software.amazon.awssdk:s3") {
+        exclude("software.amazon.awssdk", "apache-client")
+        exclude("software.amazon.awssdk", "netty-nio-client")
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.aws.sdk.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Threads(8)
+public class ArmeriaSdkHttpClientBenchmark {
+
+  private static final String BUCKET = "benchmark";
+  private static final String KEY = "object";
+
+  @Param({"HTTP1_1", "HTTP2"})
+  public Protocol protocol;
+
+  @Param({"1024", "1048576"})
+  public int objectSize;
+
+  private FakeS3 s3;
+  private S3AsyncClient client;
+  private byte[] object;
+
+  @Setup
+  public void setUp() {
+    s3 = new FakeS3();
+    client =
+        S3AsyncClient.builder()
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+            .region(Region.US_EAST_1)
+            .endpointOverride(s3.uri())
+            .serviceConfiguration(
+                S3Configuration.builder()
+                    .pathStyleAccessEnabled(true)
+                    .checksumValidationEnabled(false)
+                    .build())
+            .httpClientBuilder(ArmeriaSdkHttpClient.builder().protocol(protocol))
+            .build();
+
+    object = new byte[objectSize];
+    ThreadLocalRandom.current().nextBytes(object);
+    putObject();
+  }
+
+  @TearDown
+  public void tearDown() {
+    client.close();
+    s3.close();
+  }
+
+  @Benchmark
+  public PutObjectResponse putObject() {
+    return client
+        .putObject(
+            PutObjectRequest.builder().bucket(BUCKET).key(KEY).build(),
+            AsyncRequestBody.fromBytes(object))
+        .join();
+  }
+
+  @Benchmark
+  public ResponseBytes<GetObjectResponse> getObject() {
+    return client
+        .getObject(
+            GetObjectRequest.builder().bucket(BUCKET).key(KEY).build(),
+            AsyncResponseTransformer.toBytes())
+        .join();
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.aws.sdk.core;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.server.Server;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A minimal in-memory S3 compatible server for path style requests, supporting only putting and
+ * getting whole objects.
+ */
+final class FakeS3 implements AutoCloseable {
+
+  private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+  private final Server server;
+
+  FakeS3() {
+    server =
+        Server.builder()
+            .http(0)
+            .maxRequestLength(0)
+            .serviceUnder(
+                "/",
+                (ctx, req) -> {
+                  String path = ctx.path();
+                  if (req.method() == HttpMethod.PUT) {
+                    return HttpResponse.from(
+                        req.aggregate()
+                            .thenApply(
+                                aggregated -> {
+                                  objects.put(path, aggregated.content().array());
+                                  return HttpResponse.of(HttpStatus.OK);
+                                }));
+                  }
+                  if (req.method() == HttpMethod.GET) {
+                    byte[] object = objects.get(path);
+                    if (object == null) {
+                      return HttpResponse.of(HttpStatus.NOT_FOUND);
+                    }
+                    return HttpResponse.of(
+                        HttpStatus.OK, MediaType.OCTET_STREAM, HttpData.wrap(object));
+                  }
+                  return HttpResponse.of(HttpStatus.METHOD_NOT_ALLOWED);
+                })
+            .build();
+    server.start().join();
+  }
+
+  URI uri() {
+    return URI.create("http://127.0.0.1:" + server.activeLocalPort());
+  }
+
+  @Override
+  public void close() {
+    server.stop().join();
+  }
+}
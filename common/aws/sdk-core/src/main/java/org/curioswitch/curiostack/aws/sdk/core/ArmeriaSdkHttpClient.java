@@ -24,8 +24,12 @@
 
 package org.curioswitch.curiostack.aws.sdk.core;
 
+import com.linecorp.armeria.client.ClientFactory;
+import com.linecorp.armeria.client.ClientFactoryBuilder;
 import com.linecorp.armeria.client.ClientOptions;
 import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.client.WebClientBuilder;
+import com.linecorp.armeria.client.limit.ConcurrencyLimitingClient;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpHeaders;
@@ -36,16 +40,21 @@ import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.RequestHeaders;
 import com.linecorp.armeria.common.RequestHeadersBuilder;
 import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.SessionProtocol;
 import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
+import software.amazon.awssdk.http.Protocol;
+import software.amazon.awssdk.http.SdkHttpConfigurationOption;
 import software.amazon.awssdk.http.SdkHttpMethod;
 import software.amazon.awssdk.http.SdkHttpRequest;
 import software.amazon.awssdk.http.SdkHttpResponse;
@@ -57,10 +66,28 @@ import software.amazon.awssdk.utils.async.DelegatingSubscriber;
 
 public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
 
+  /** Returns a new {@link Builder} of {@link ArmeriaSdkHttpClient}. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
   private final WebClient client;
 
+  // null to let Armeria negotiate the protocol.
+  @Nullable private final Protocol protocol;
+
+  // The factory created for this client, closed together with it.
+  @Nullable private final ClientFactory ownedFactory;
+
   ArmeriaSdkHttpClient(WebClient client) {
+    this(client, null, null);
+  }
+
+  ArmeriaSdkHttpClient(
+      WebClient client, @Nullable Protocol protocol, @Nullable ClientFactory ownedFactory) {
     this.client = client;
+    this.protocol = protocol;
+    this.ownedFactory = ownedFactory;
   }
 
   @Override
@@ -69,7 +96,7 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
     SdkAsyncHttpResponseHandler handler = executeRequest.responseHandler();
 
     RequestHeadersBuilder headersBuilder =
-        RequestHeaders.builder(convert(httpRequest.method()), httpRequest.getUri().toString());
+        RequestHeaders.builder(convert(httpRequest.method()), uri(httpRequest));
     executeRequest
         .requestContentPublisher()
         .contentLength()
@@ -104,22 +131,167 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
     return completionFuture;
   }
 
+  // Visible for testing.
+  WebClient webClient() {
+    return client;
+  }
+
   @Override
   public String clientName() {
     return "ArmeriaAsync";
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    if (ownedFactory != null) {
+      ownedFactory.close();
+    }
+  }
 
-  // TODO(choko): Implement
+  // Forces the protocol chosen by the SDK configuration by using Armeria's protocol specific
+  // schemes, e.g. h1c instead of http.
+  private String uri(SdkHttpRequest request) {
+    String uri = request.getUri().toString();
+    if (protocol == null) {
+      return uri;
+    }
+    boolean tls = request.protocol().equals("https");
+    final SessionProtocol sessionProtocol;
+    if (protocol == Protocol.HTTP2) {
+      sessionProtocol = tls ? SessionProtocol.H2 : SessionProtocol.H2C;
+    } else {
+      sessionProtocol = tls ? SessionProtocol.H1 : SessionProtocol.H1C;
+    }
+    return sessionProtocol.uriText() + uri.substring(request.protocol().length());
+  }
+
+  /**
+   * A builder of {@link ArmeriaSdkHttpClient}. Timeouts are taken from the {@link
+   * SdkHttpConfigurationOption}s of the SDK. The protocol and the maximum number of connections are
+   * only applied when set on this builder or by the defaults of the service, otherwise Armeria
+   * negotiates the protocol and does not limit concurrency. {@link ClientOptions} set with {@link
+   * #options(ClientOptions)} take precedence over them.
+   */
   public static class Builder implements SdkAsyncHttpClient.Builder<ArmeriaSdkHttpClient.Builder> {
 
+    private final AttributeMap.Builder standardOptions = AttributeMap.builder();
+
+    @Nullable private ClientFactory factory;
     @Nullable private ClientOptions options;
 
+    /**
+     * Sets the {@link ClientFactory} to use. If set, the connection timeout, idle timeout and
+     * certificate verification settings of the SDK are ignored in favor of the configuration of
+     * the factory, which is not closed when the client is closed. If not set, a new {@link
+     * ClientFactory} is created for each client.
+     */
+    public Builder factory(ClientFactory factory) {
+      this.factory = factory;
+      return this;
+    }
+
+    /** Sets the {@link ClientOptions} to use, overriding the SDK settings. */
+    public Builder options(ClientOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    /** Sets the maximum number of concurrent HTTP/1 connections. */
+    public Builder maxConcurrency(int maxConcurrency) {
+      standardOptions.put(SdkHttpConfigurationOption.MAX_CONNECTIONS, maxConcurrency);
+      return this;
+    }
+
+    /**
+     * Sets the time to wait for a connection when the maximum number of concurrent connections has
+     * been reached.
+     */
+    public Builder connectionAcquisitionTimeout(Duration connectionAcquisitionTimeout) {
+      standardOptions.put(
+          SdkHttpConfigurationOption.CONNECTION_ACQUIRE_TIMEOUT, connectionAcquisitionTimeout);
+      return this;
+    }
+
+    /** Sets the protocol to use. If not set, Armeria negotiates the protocol. */
+    public Builder protocol(Protocol protocol) {
+      standardOptions.put(SdkHttpConfigurationOption.PROTOCOL, protocol);
+      return this;
+    }
+
+    /** Sets the timeout for establishing a connection. */
+    public Builder connectionTimeout(Duration connectionTimeout) {
+      standardOptions.put(SdkHttpConfigurationOption.CONNECTION_TIMEOUT, connectionTimeout);
+      return this;
+    }
+
+    /**
+     * Sets the timeout for receiving a response. Armeria does not have a timeout for individual
+     * reads so this bounds the entire response, including its content.
+     */
+    public Builder readTimeout(Duration readTimeout) {
+      standardOptions.put(SdkHttpConfigurationOption.READ_TIMEOUT, readTimeout);
+      return this;
+    }
+
+    /** Sets the timeout for writing a request. */
+    public Builder writeTimeout(Duration writeTimeout) {
+      standardOptions.put(SdkHttpConfigurationOption.WRITE_TIMEOUT, writeTimeout);
+      return this;
+    }
+
+    /** Sets the time after which an idle connection is closed. */
+    public Builder connectionMaxIdleTime(Duration connectionMaxIdleTime) {
+      standardOptions.put(
+          SdkHttpConfigurationOption.CONNECTION_MAX_IDLE_TIMEOUT, connectionMaxIdleTime);
+      return this;
+    }
+
     @Override
     public SdkAsyncHttpClient buildWithDefaults(AttributeMap serviceDefaults) {
-      return new ArmeriaSdkHttpClient(WebClient.builder().build());
+      // The global defaults force HTTP/1 and a small connection pool, which are only worth it
+      // when a user or service asks for them.
+      AttributeMap explicit = standardOptions.build().merge(serviceDefaults);
+      AttributeMap config = explicit.merge(SdkHttpConfigurationOption.GLOBAL_HTTP_DEFAULTS);
+
+      final ClientFactory factory;
+      final ClientFactory ownedFactory;
+      if (this.factory != null) {
+        factory = this.factory;
+        ownedFactory = null;
+      } else {
+        ClientFactoryBuilder factoryBuilder =
+            ClientFactory.builder()
+                .connectTimeout(config.get(SdkHttpConfigurationOption.CONNECTION_TIMEOUT))
+                .idleTimeout(config.get(SdkHttpConfigurationOption.CONNECTION_MAX_IDLE_TIMEOUT));
+        if (config.get(SdkHttpConfigurationOption.TRUST_ALL_CERTIFICATES)) {
+          factoryBuilder.tlsNoVerify();
+        }
+        factory = factoryBuilder.build();
+        ownedFactory = factory;
+      }
+
+      Protocol protocol = explicit.get(SdkHttpConfigurationOption.PROTOCOL);
+      Integer maxConnections = explicit.get(SdkHttpConfigurationOption.MAX_CONNECTIONS);
+
+      WebClientBuilder client =
+          WebClient.builder()
+              .factory(factory)
+              .responseTimeout(config.get(SdkHttpConfigurationOption.READ_TIMEOUT))
+              .writeTimeout(config.get(SdkHttpConfigurationOption.WRITE_TIMEOUT));
+      if (maxConnections != null && protocol != Protocol.HTTP2) {
+        // Each in-flight request needs its own HTTP/1 connection, so limiting concurrency limits
+        // the size of the connection pool. HTTP/2 multiplexes requests on a single connection.
+        client.decorator(
+            ConcurrencyLimitingClient.newDecorator(
+                maxConnections,
+                config.get(SdkHttpConfigurationOption.CONNECTION_ACQUIRE_TIMEOUT).toMillis(),
+                TimeUnit.MILLISECONDS));
+      }
+      if (options != null) {
+        client.options(options);
+      }
+
+      return new ArmeriaSdkHttpClient(client.build(), protocol, ownedFactory);
     }
   }
 
@@ -172,7 +344,20 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
 
     @Override
     public void onNext(ByteBuffer byteBuffer) {
-      subscriber.onNext(HttpData.wrap(Unpooled.wrappedBuffer(byteBuffer)));
+      subscriber.onNext(toHttpData(byteBuffer));
+    }
+
+    private static HttpData toHttpData(ByteBuffer byteBuffer) {
+      // Most SDK request bodies are whole arrays, which can be passed through without a ByteBuf.
+      // A ByteBuf would be treated as a pooled object and copied by any decorator that doesn't
+      // handle pooled objects.
+      if (byteBuffer.hasArray()
+          && byteBuffer.arrayOffset() == 0
+          && byteBuffer.position() == 0
+          && byteBuffer.remaining() == byteBuffer.array().length) {
+        return HttpData.wrap(byteBuffer.array());
+      }
+      return HttpData.wrap(Unpooled.wrappedBuffer(byteBuffer));
     }
   }
 
@@ -184,8 +369,14 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
 
     @MonotonicNonNull private Subscription subscription;
 
+    // Guarded by this.
     @MonotonicNonNull private Subscriber<? super ByteBuffer> sdkSubscriber;
 
+    // The stream may finish before the SDK subscribes, e.g., for a response without content, so
+    // remember it to signal on subscription. Guarded by this.
+    private boolean completed;
+    @Nullable private Throwable error;
+
     private ResponseSubscriber(SdkAsyncHttpResponseHandler handler) {
       this.handler = handler;
     }
@@ -200,9 +391,15 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
     public void onNext(HttpObject obj) {
       if (!startedStream) {
         assert obj instanceof ResponseHeaders;
+        ResponseHeaders headers = (ResponseHeaders) obj;
+        if (headers.status().isInformational()) {
+          // Wait for the final headers.
+          subscription.request(1);
+          return;
+        }
         startedStream = true;
 
-        handler.onHeaders(convert((ResponseHeaders) obj));
+        handler.onHeaders(convert(headers));
 
         // We've only requested one object, the headers so far. No more objects will be signaled
         // until handler subscribes and requests more objects so we don't have to worry about
@@ -214,27 +411,47 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
     }
 
     @Override
-    public void onError(Throwable t) {
+    public synchronized void onError(Throwable t) {
+      if (sdkSubscriber == null) {
+        // Either the SDK will subscribe later or the response failed before the headers, in which
+        // case the error is only signaled to the handler.
+        error = t;
+        return;
+      }
       sdkSubscriber.onError(t);
     }
 
     @Override
-    public void onComplete() {
+    public synchronized void onComplete() {
+      if (sdkSubscriber == null) {
+        completed = true;
+        return;
+      }
       sdkSubscriber.onComplete();
     }
 
     @Override
-    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+    public synchronized void subscribe(Subscriber<? super ByteBuffer> subscriber) {
       this.sdkSubscriber = subscriber;
       // The SDK subscriber will request objects, controlling the stream from here.
       subscriber.onSubscribe(subscription);
+      if (error != null) {
+        subscriber.onError(error);
+      } else if (completed) {
+        subscriber.onComplete();
+      }
     }
 
     private void notifyObject(HttpObject obj) {
       if (obj instanceof HttpData) {
         HttpData data = (HttpData) obj;
+        if (data.isEmpty()) {
+          // Not passed to the SDK so replace the demand it used.
+          subscription.request(1);
+          return;
+        }
         // We can't subscribe with pooled objects since there is no SDK callback that would let us
-        // release them so can just wrap the array here.
+        // release them. The unpooled data owns its array so it is wrapped without a copy.
         sdkSubscriber.onNext(ByteBuffer.wrap(data.array()));
       } else {
         // Trailers. Documentation doesn't make clear whether the SDK actually can handle trailers
@@ -244,6 +461,7 @@ public class ArmeriaSdkHttpClient implements SdkAsyncHttpClient {
         SdkHttpResponse.Builder builder = SdkHttpResponse.builder();
         fillHeaders((HttpHeaders) obj, builder);
         handler.onHeaders(builder.build());
+        subscription.request(1);
       }
     }
   }
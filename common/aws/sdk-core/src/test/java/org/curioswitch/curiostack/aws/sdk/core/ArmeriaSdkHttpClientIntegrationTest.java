@@ -24,23 +24,32 @@
 
 package org.curioswitch.curiostack.aws.sdk.core;
 
+import static org.awaitility.Awaitility.await;
 import static org.curioswitch.common.testing.assertj.CurioAssertions.assertThat;
 
 import com.google.common.collect.ImmutableMap;
 import com.linecorp.armeria.common.AggregatedHttpRequest;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpResponseWriter;
 import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.SessionProtocol;
 import com.linecorp.armeria.testing.junit5.server.mock.MockWebServerExtension;
+import com.linecorp.armeria.testing.junit5.server.mock.RecordedRequest;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.Protocol;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.utils.AttributeMap;
 
 class ArmeriaSdkHttpClientIntegrationTest {
 
@@ -70,7 +79,99 @@ class ArmeriaSdkHttpClientIntegrationTest {
             .join();
     assertThat(response.sdkHttpResponse().isSuccessful()).isTrue();
 
-    AggregatedHttpRequest request = server.takeRequest().request();
+    RecordedRequest recorded = server.takeRequest();
+    AggregatedHttpRequest request = recorded.request();
     assertThat(request.headers().get(HttpHeaderNames.USER_AGENT)).contains("http/ArmeriaAsync");
+    // Armeria negotiates the protocol unless one is configured.
+    assertThat(recorded.context().sessionProtocol()).isEqualTo(SessionProtocol.H2C);
+  }
+
+  @Test
+  void http1() {
+    server.enqueue(HttpResponse.of(HttpStatus.OK));
+
+    DynamoDbAsyncClient http1Client =
+        newClient(ArmeriaSdkHttpClient.builder().protocol(Protocol.HTTP1_1));
+
+    GetItemResponse response = http1Client.getItem(getItemRequest()).join();
+    assertThat(response.sdkHttpResponse().isSuccessful()).isTrue();
+
+    assertThat(server.takeRequest().context().sessionProtocol()).isEqualTo(SessionProtocol.H1C);
+  }
+
+  @Test
+  void configuresWebClient() {
+    ArmeriaSdkHttpClient client =
+        (ArmeriaSdkHttpClient)
+            ArmeriaSdkHttpClient.builder()
+                .readTimeout(Duration.ofSeconds(5))
+                .writeTimeout(Duration.ofSeconds(6))
+                .buildWithDefaults(AttributeMap.empty());
+
+    assertThat(client.webClient().options().responseTimeoutMillis()).isEqualTo(5000);
+    assertThat(client.webClient().options().writeTimeoutMillis()).isEqualTo(6000);
+  }
+
+  @Test
+  void limitsConcurrency() {
+    HttpResponseWriter pending = HttpResponse.streaming();
+    server.enqueue(pending);
+    server.enqueue(HttpResponse.of(HttpStatus.OK));
+
+    DynamoDbAsyncClient limitedClient =
+        newClient(
+            ArmeriaSdkHttpClient.builder()
+                .protocol(Protocol.HTTP1_1)
+                .maxConcurrency(1)
+                .connectionAcquisitionTimeout(Duration.ofSeconds(30)));
+
+    CompletableFuture<GetItemResponse> first = limitedClient.getItem(getItemRequest());
+    CompletableFuture<GetItemResponse> second = limitedClient.getItem(getItemRequest());
+
+    server.takeRequest();
+    // Without the limit, the second request would be sent and served immediately.
+    await().during(Duration.ofMillis(500)).until(() -> !second.isDone());
+
+    pending.write(ResponseHeaders.of(HttpStatus.OK));
+    pending.close();
+
+    assertThat(first.join().sdkHttpResponse().isSuccessful()).isTrue();
+    assertThat(second.join().sdkHttpResponse().isSuccessful()).isTrue();
+  }
+
+  private static DynamoDbAsyncClient newClient(ArmeriaSdkHttpClient.Builder httpClient) {
+    return DynamoDbAsyncClient.builder()
+        .credentialsProvider(
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+        .region(Region.AP_NORTHEAST_1)
+        .endpointOverride(server.httpUri())
+        .httpClientBuilder(httpClient)
+        .build();
+  }
+
+  private static GetItemRequest getItemRequest() {
+    return GetItemRequest.builder().tableName("test").key(ImmutableMap.of()).build();
+  }
+
+  @Test
+  void http2() {
+    server.enqueue(HttpResponse.of(HttpStatus.OK));
+
+    DynamoDbAsyncClient http2Client =
+        DynamoDbAsyncClient.builder()
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+            .region(Region.AP_NORTHEAST_1)
+            .endpointOverride(server.httpUri())
+            .httpClientBuilder(ArmeriaSdkHttpClient.builder().protocol(Protocol.HTTP2))
+            .build();
+
+    GetItemResponse response =
+        http2Client
+            .getItem(GetItemRequest.builder().tableName("test").key(ImmutableMap.of()).build())
+            .join();
+    assertThat(response.sdkHttpResponse().isSuccessful()).isTrue();
+
+    assertThat(server.takeRequest().context().sessionProtocol()).isEqualTo(SessionProtocol.H2C);
   }
 }
@@ -191,6 +191,58 @@ class ArmeriaSdkHttpClientTest {
     assertThat(responseSubscriberError.get()).isNull();
   }
 
+  @Test
+  void failsBeforeHeaders() {
+    AtomicReference<Throwable> responseError = new AtomicReference<>();
+    AtomicBoolean startedStream = new AtomicBoolean();
+
+    AsyncExecuteRequest request =
+        AsyncExecuteRequest.builder()
+            .request(
+                SdkHttpRequest.builder()
+                    .protocol("https")
+                    .method(SdkHttpMethod.GET)
+                    .host("github.com")
+                    .encodedPath("/foo")
+                    .build())
+            .responseHandler(
+                new SdkAsyncHttpResponseHandler() {
+                  @Override
+                  public void onHeaders(SdkHttpResponse headers) {}
+
+                  @Override
+                  public void onStream(Publisher<ByteBuffer> stream) {
+                    startedStream.set(true);
+                  }
+
+                  @Override
+                  public void onError(Throwable error) {
+                    responseError.set(error);
+                  }
+                })
+            .requestContentPublisher(
+                new SdkHttpContentPublisher() {
+                  @Override
+                  public Optional<Long> contentLength() {
+                    return Optional.empty();
+                  }
+
+                  @Override
+                  public void subscribe(Subscriber<? super ByteBuffer> s) {
+                    StreamMessage.<ByteBuffer>of().subscribe(s);
+                  }
+                })
+            .fullDuplex(false)
+            .build();
+
+    IllegalStateException failure = new IllegalStateException("connection refused");
+    when(webClient.execute(any(HttpRequest.class))).thenReturn(HttpResponse.ofFailure(failure));
+
+    assertThat(client.execute(request)).isCompletedExceptionally();
+    assertThat(responseError.get()).isSameAs(failure);
+    assertThat(startedStream.get()).isFalse();
+  }
+
   @Test
   void clientName() {
     assertThat(client.clientName()).isEqualTo("ArmeriaAsync");
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares uploading a file as a single resumable upload, i.e., one part, against a parallel
+ * composite upload, to a {@link FakeGcsServer} which adds latency to every response to simulate a
+ * remote server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelUploadBenchmark {
+
+  @Param({"1", "8"})
+  private int numParts;
+
+  @Param({"64"})
+  private int fileSizeMb;
+
+  @Param({"20"})
+  private int latencyMillis;
+
+  private FakeGcsServer server;
+  private ParallelUploader uploader;
+  private Path file;
+  private FileRequest destination;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new FakeGcsServer(Duration.ofMillis(latencyMillis));
+    uploader = new ParallelUploader(server.storageClient(), server.resumer());
+
+    byte[] content = new byte[fileSizeMb * 1024 * 1024];
+    new Random(0).nextBytes(content);
+    file = Files.createTempFile("parallel-upload-benchmark", ".bin");
+    Files.write(file, content);
+
+    destination = new FileRequest.Builder().name("benchmark.bin").build();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    server.close();
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public void upload() {
+    uploader.upload(destination, file, numParts, numParts).whenComplete().join();
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.math.IntMath;
+import com.linecorp.armeria.client.InvalidResponseException;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.RequestHeaders;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Executes many object operations using the Cloud Storage JSON batch endpoint, which accepts up to
+ * 100 operations in a single multipart request. Batches are sent with bounded concurrency.
+ */
+final class BatchOperations {
+
+  static final class Operation {
+    private final String filename;
+    private final HttpMethod method;
+    private final String path;
+    @Nullable private final String jsonBody;
+
+    Operation(String filename, HttpMethod method, String path, @Nullable String jsonBody) {
+      this.filename = filename;
+      this.method = method;
+      this.path = path;
+      this.jsonBody = jsonBody;
+    }
+  }
+
+  // Cloud Storage accepts at most 100 operations in one batch request.
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private static final String BATCH_PATH = "/batch/storage/v1";
+
+  private static final Pattern CONTENT_ID =
+      Pattern.compile(
+          "^Content-ID: <response-(\\d+)>", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+  private static final Pattern STATUS_LINE =
+      Pattern.compile("^HTTP/1\\.1 (\\d{3})", Pattern.MULTILINE);
+
+  private final WebClient httpClient;
+  private final List<Operation> operations;
+  private final int maxConcurrency;
+  private final Map<Integer, HttpStatus> statuses = new ConcurrentHashMap<>();
+
+  // Guarded by this.
+  private final Queue<Integer> pendingBatches = new ArrayDeque<>();
+
+  /**
+   * Creates a {@link BatchOperations} for {@code operations}. If there are multiple operations for
+   * the same file, only the last one is executed.
+   */
+  BatchOperations(WebClient httpClient, List<Operation> operations, int maxConcurrency) {
+    this.httpClient = httpClient;
+    this.operations = dedupe(operations);
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Executes the operations. The returned future completes with the response status of each
+   * operation keyed by filename. A failed batch request does not affect other batches. Its
+   * operations have the status of the batch response, or {@link HttpStatus#UNKNOWN} if there was
+   * no valid response.
+   */
+  CompletableFuture<Map<String, HttpStatus>> execute() {
+    int numBatches = IntMath.divide(operations.size(), MAX_BATCH_SIZE, RoundingMode.CEILING);
+    synchronized (this) {
+      for (int i = 0; i < numBatches; i++) {
+        pendingBatches.add(i);
+      }
+    }
+    CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(maxConcurrency, numBatches)];
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] = runLane();
+    }
+    return CompletableFuture.allOf(lanes)
+        .thenApply(
+            unused -> {
+              ImmutableMap.Builder<String, HttpStatus> result = ImmutableMap.builder();
+              for (int i = 0; i < operations.size(); i++) {
+                result.put(
+                    operations.get(i).filename, statuses.getOrDefault(i, HttpStatus.UNKNOWN));
+              }
+              return result.build();
+            });
+  }
+
+  private CompletableFuture<Void> runLane() {
+    final int batch;
+    synchronized (this) {
+      Integer next = pendingBatches.poll();
+      if (next == null) {
+        return completedFuture(null);
+      }
+      batch = next;
+    }
+    return sendBatch(batch * MAX_BATCH_SIZE)
+        // Operations without a parsed status are reported as UNKNOWN.
+        .exceptionally(unused -> null)
+        .thenCompose(unused -> runLane());
+  }
+
+  private CompletableFuture<Void> sendBatch(int start) {
+    int end = Math.min(start + MAX_BATCH_SIZE, operations.size());
+    String boundary = "batch_" + UUID.randomUUID().toString().replace("-", "");
+
+    StringBuilder body = new StringBuilder();
+    for (int i = start; i < end; i++) {
+      Operation operation = operations.get(i);
+      body.append("--")
+          .append(boundary)
+          .append("\r\nContent-Type: application/http\r\nContent-ID: <")
+          .append(i)
+          .append(">\r\n\r\n")
+          .append(operation.method)
+          .append(' ')
+          .append(operation.path)
+          .append(" HTTP/1.1\r\n");
+      if (operation.jsonBody != null) {
+        body.append("Content-Type: application/json; charset=UTF-8\r\nContent-Length: ")
+            .append(operation.jsonBody.getBytes(StandardCharsets.UTF_8).length)
+            .append("\r\n\r\n")
+            .append(operation.jsonBody);
+      }
+      body.append("\r\n\r\n");
+    }
+    body.append("--").append(boundary).append("--\r\n");
+
+    RequestHeaders headers =
+        RequestHeaders.builder(HttpMethod.POST, BATCH_PATH)
+            .contentType(MediaType.parse("multipart/mixed; boundary=" + boundary))
+            .build();
+    return httpClient
+        .execute(headers, HttpData.ofUtf8(body.toString()))
+        .aggregate()
+        .thenAccept(msg -> parseResponse(msg, start));
+  }
+
+  private void parseResponse(AggregatedHttpResponse msg, int start) {
+    if (!msg.status().equals(HttpStatus.OK)) {
+      int end = Math.min(start + MAX_BATCH_SIZE, operations.size());
+      for (int i = start; i < end; i++) {
+        statuses.put(i, msg.status());
+      }
+      return;
+    }
+    MediaType contentType = msg.headers().contentType();
+    List<String> boundary =
+        contentType != null ? contentType.parameters().get("boundary") : null;
+    if (boundary == null || boundary.isEmpty()) {
+      throw new InvalidResponseException("Batch response is not multipart: " + msg.headers());
+    }
+
+    String[] parts = msg.contentUtf8().split(Pattern.quote("--" + boundary.get(0)));
+    int ordinal = start;
+    for (String part : parts) {
+      Matcher status = STATUS_LINE.matcher(part);
+      if (!status.find()) {
+        // Preamble or end delimiter.
+        continue;
+      }
+      Matcher contentId = CONTENT_ID.matcher(part);
+      int index = contentId.find() ? Integer.parseInt(contentId.group(1)) : ordinal;
+      statuses.put(index, HttpStatus.valueOf(Integer.parseInt(status.group(1))));
+      ordinal++;
+    }
+  }
+
+  private static List<Operation> dedupe(List<Operation> operations) {
+    Map<String, Operation> byFilename = new LinkedHashMap<>();
+    for (Operation operation : operations) {
+      byFilename.put(operation.filename, operation);
+    }
+    return byFilename.size() == operations.size()
+        ? operations
+        : ImmutableList.copyOf(byFilename.values());
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.common.CommonPools;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import com.linecorp.armeria.common.stream.SubscriptionOption;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Helpers for writing a streamed file, e.g., from {@link StorageClient#streamFile(String)}, to a
+ * local file. The content is written directly from the pooled network buffers without copying to
+ * the heap, and the next piece is only read from the network once the previous one is written.
+ */
+public final class FileChannels {
+
+  /**
+   * Writes {@code content} to {@code channel} starting at {@code position}. The returned future
+   * completes with the number of bytes written. The channel is not closed.
+   */
+  public static CompletableFuture<Long> write(
+      StreamMessage<HttpData> content, AsynchronousFileChannel channel, long position) {
+    EventExecutor executor = CommonPools.workerGroup().next();
+    AsynchronousChannelSubscriber subscriber =
+        new AsynchronousChannelSubscriber(channel, position, executor);
+    content.subscribe(subscriber, executor, SubscriptionOption.WITH_POOLED_OBJECTS);
+    return subscriber.result;
+  }
+
+  /**
+   * Writes {@code content} to {@code channel} at its current position. {@link FileChannel} writes
+   * are blocking, so they are run on {@code blockingExecutor}, one at a time. The returned future
+   * completes with the number of bytes written. The channel is not closed.
+   */
+  public static CompletableFuture<Long> write(
+      StreamMessage<HttpData> content, FileChannel channel, Executor blockingExecutor) {
+    FileChannelSubscriber subscriber = new FileChannelSubscriber(channel, blockingExecutor);
+    content.subscribe(subscriber, SubscriptionOption.WITH_POOLED_OBJECTS);
+    return subscriber.result;
+  }
+
+  private static ByteBuffer[] nioBuffers(HttpData data) {
+    if (data instanceof ByteBufHolder) {
+      ByteBuf buf = ((ByteBufHolder) data).content();
+      return buf.nioBuffers(buf.readerIndex(), buf.readableBytes());
+    }
+    return new ByteBuffer[] {ByteBuffer.wrap(data.array())};
+  }
+
+  private static final class AsynchronousChannelSubscriber
+      implements Subscriber<HttpData>, CompletionHandler<Integer, Void> {
+
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private final AsynchronousFileChannel channel;
+    private final EventExecutor executor;
+
+    // All fields are only accessed from executor.
+    @Nullable private Subscription subscription;
+    @Nullable private HttpData current;
+    @Nullable private ByteBuffer[] buffers;
+    @Nullable private Throwable streamError;
+    private int bufferIndex;
+    private long position;
+    private long written;
+    private boolean streamComplete;
+
+    private AsynchronousChannelSubscriber(
+        AsynchronousFileChannel channel, long position, EventExecutor executor) {
+      this.channel = channel;
+      this.position = position;
+      this.executor = executor;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(HttpData data) {
+      current = data;
+      buffers = nioBuffers(data);
+      bufferIndex = 0;
+      writeNext();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (current == null) {
+        result.completeExceptionally(t);
+        return;
+      }
+      // A write of current is in flight. It can't be cancelled, so release the buffer and fail
+      // once the write finishes.
+      streamError = t;
+    }
+
+    @Override
+    public void onComplete() {
+      streamComplete = true;
+      if (current == null) {
+        result.complete(written);
+      }
+    }
+
+    @Override
+    public void completed(Integer numWritten, Void unused) {
+      executor.execute(
+          () -> {
+            position += numWritten;
+            written += numWritten;
+            if (streamError != null) {
+              releaseCurrent();
+              result.completeExceptionally(streamError);
+              return;
+            }
+            writeNext();
+          });
+    }
+
+    @Override
+    public void failed(Throwable t, Void unused) {
+      executor.execute(
+          () -> {
+            releaseCurrent();
+            if (streamError != null) {
+              result.completeExceptionally(streamError);
+              return;
+            }
+            subscription.cancel();
+            result.completeExceptionally(t);
+          });
+    }
+
+    private void writeNext() {
+      while (bufferIndex < buffers.length && !buffers[bufferIndex].hasRemaining()) {
+        bufferIndex++;
+      }
+      if (bufferIndex < buffers.length) {
+        channel.write(buffers[bufferIndex], position, null, this);
+        return;
+      }
+      releaseCurrent();
+      if (streamComplete) {
+        result.complete(written);
+      } else {
+        subscription.request(1);
+      }
+    }
+
+    private void releaseCurrent() {
+      ReferenceCountUtil.safeRelease(current);
+      current = null;
+      buffers = null;
+    }
+  }
+
+  private static final class FileChannelSubscriber implements Subscriber<HttpData> {
+
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private final FileChannel channel;
+    private final Executor executor;
+
+    // Only accessed from executor after subscription.
+    @Nullable private Subscription subscription;
+    private long written;
+    private boolean failed;
+
+    private FileChannelSubscriber(FileChannel channel, Executor blockingExecutor) {
+      this.channel = channel;
+      executor = MoreExecutors.newSequentialExecutor(blockingExecutor);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(HttpData data) {
+      executor.execute(
+          () -> {
+            try {
+              if (failed) {
+                return;
+              }
+              ByteBuffer[] buffers = nioBuffers(data);
+              long remaining = data.length();
+              while (remaining > 0) {
+                long numWritten = channel.write(buffers);
+                remaining -= numWritten;
+                written += numWritten;
+              }
+            } catch (IOException e) {
+              failed = true;
+              subscription.cancel();
+              result.completeExceptionally(e);
+              return;
+            } finally {
+              ReferenceCountUtil.safeRelease(data);
+            }
+            subscription.request(1);
+          });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      executor.execute(() -> result.completeExceptionally(t));
+    }
+
+    @Override
+    public void onComplete() {
+      executor.execute(() -> result.complete(written));
+    }
+  }
+
+  private FileChannels() {}
+}
@@ -24,6 +24,7 @@
 package org.curioswitch.curiostack.gcloud.storage;
 
 import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.spotify.futures.CompletableFutures.exceptionallyCompletedFuture;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
 import com.google.common.util.concurrent.ListenableFuture;
@@ -44,8 +45,15 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -117,6 +125,10 @@ public class FileWriter {
   // All chunks must be a multiple of 256KB except the last one.
   private static final int CHUNK_ALIGNMENT = 256 * 1024;
 
+  // Multiples of CHUNK_ALIGNMENT so mapped slices never need to be copied.
+  private static final int MAPPED_CHUNK_SIZE = 32 * CHUNK_ALIGNMENT;
+  private static final long MAPPED_WINDOW_SIZE = 8 * MAPPED_CHUNK_SIZE;
+
   private final String uploadUrl;
   private final WebClient httpClient;
   private final ByteBufAllocator alloc;
@@ -178,14 +190,51 @@ public class FileWriter {
     if (alignedWritableBytes == 0) {
       // Not enough data for a chunk, so copy it for next time.
       copyUnfinishedBuffer(buf);
+      buf.release();
       return immediateFuture(null);
     }
 
     ByteBuf nextChunk = buf.readRetainedSlice(alignedWritableBytes);
     copyUnfinishedBuffer(buf);
+    buf.release();
     return CompletableFuturesExtra.toListenableFuture(uploadChunk(nextChunk, false));
   }
 
+  /**
+   * Uploads the file at {@code path} and closes this {@link FileWriter}. No further writes will be
+   * possible. The file is memory-mapped and sent in slices without copying, with at most 64MB of it
+   * mapped at a time, so files of any size can be uploaded without reading them into memory. Pages
+   * of the file are read lazily as they are sent.
+   *
+   * <p>If this {@link FileWriter} was restored with {@link Resumer}, the upload continues from the
+   * position of the file at which it was saved, so the same file must be passed. As with {@link
+   * #write(ByteBuffer)}, {@link #save()} can be called while the upload is in progress to allow
+   * resuming, e.g., from a periodic task.
+   */
+  public CompletableFuture<Void> uploadFile(Path path) {
+    final FileChannel channel;
+    final long size;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      size = channel.size();
+    } catch (IOException e) {
+      return exceptionallyCompletedFuture(
+          new UncheckedIOException("Could not open file for upload: " + path, e));
+    }
+    // Data already in unfinishedChunk has been read from the file but not uploaded yet.
+    long position =
+        filePosition + (unfinishedChunk != null ? unfinishedChunk.readableBytes() : 0);
+    return uploadMapped(channel, position, size)
+        .whenComplete(
+            (unused, t) -> {
+              try {
+                channel.close();
+              } catch (IOException e) {
+                // Read-only, nothing to lose.
+              }
+            });
+  }
+
   /**
    * Writes the {@link ByteBuffer} to the file and closes it. No further writes will be possible.
    * When possible, {@code data} is not copied before writing, so the caller must ensure it is not
@@ -213,8 +262,15 @@ public class FileWriter {
    * returned buffer will be up to 256KB large depending on the state of the file upload. Writing in
    * chunks that are a multiple of 256KB minimizes the chance of this, but does not guarantee
    * eliminating it so all callers should be prepared for such a size.
+   *
+   * <p>The state is updated on the event loop of this {@link FileWriter} as an upload progresses.
+   * If called from another thread, this waits for the event loop to take a snapshot of the state,
+   * so it must not be called from a different event loop.
    */
   public ByteString save() {
+    if (!eventLoop.inEventLoop()) {
+      return eventLoop.submit(this::save).syncUninterruptibly().getNow();
+    }
     FileWriterState.Builder builder =
         FileWriterState.newBuilder().setUploadUrl(uploadUrl).setFilePosition(filePosition);
     if (unfinishedChunk != null) {
@@ -233,6 +289,41 @@ public class FileWriter {
     }
   }
 
+  private CompletableFuture<Void> uploadMapped(FileChannel channel, long position, long size) {
+    long windowSize = Math.min(MAPPED_WINDOW_SIZE, size - position);
+    final MappedByteBuffer window;
+    try {
+      window = channel.map(MapMode.READ_ONLY, position, windowSize);
+    } catch (IOException e) {
+      return exceptionallyCompletedFuture(new UncheckedIOException("Could not map file.", e));
+    }
+    boolean lastWindow = position + windowSize >= size;
+    return uploadSlices(Unpooled.wrappedBuffer(window), lastWindow)
+        .thenCompose(
+            unused -> {
+              // All slices have been written and released by now, so unmap instead of waiting for
+              // GC. After a failure, slices may still be held by in-flight writes so the mapping is
+              // left for GC to avoid unmapping memory that is still in use.
+              PlatformDependent.freeDirectBuffer(window);
+              return lastWindow
+                  ? completedFuture(null)
+                  : uploadMapped(channel, position + windowSize, size);
+            });
+  }
+
+  private CompletableFuture<Void> uploadSlices(ByteBuf window, boolean lastWindow) {
+    ByteBuf slice = window.readRetainedSlice(Math.min(MAPPED_CHUNK_SIZE, window.readableBytes()));
+    if (!window.isReadable()) {
+      window.release();
+      if (lastWindow) {
+        return writeAndClose(slice);
+      }
+      return CompletableFuturesExtra.toCompletableFuture(write(slice));
+    }
+    return CompletableFuturesExtra.toCompletableFuture(write(slice))
+        .thenCompose(unused -> uploadSlices(window, lastWindow));
+  }
+
   private CompletableFuture<Void> uploadChunk(ByteBuf chunk, boolean endOfFile) {
     return doUploadChunk(chunk, endOfFile);
   }
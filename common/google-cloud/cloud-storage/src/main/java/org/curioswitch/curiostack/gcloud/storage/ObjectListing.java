@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static com.google.common.net.UrlEscapers.urlFormParameterEscaper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linecorp.armeria.client.InvalidResponseException;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.stream.DefaultStreamMessage;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import io.netty.channel.EventLoop;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.annotation.Nullable;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.ListObjectsResponse;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.ObjectInfo;
+
+/**
+ * Lists objects page by page into a {@link StreamMessage}. The next page is only fetched once all
+ * objects of the previous page have been consumed, so listing a huge bucket never holds more than a
+ * page in memory.
+ */
+final class ObjectListing {
+
+  private final WebClient httpClient;
+  private final ObjectMapper objectMapper;
+  private final String firstPageUrl;
+  private final EventLoop eventLoop;
+  private final DefaultStreamMessage<ObjectInfo> objects = new DefaultStreamMessage<>();
+
+  ObjectListing(
+      WebClient httpClient,
+      ObjectMapper objectMapper,
+      String listUrl,
+      String prefix,
+      int pageSize,
+      EventLoop eventLoop) {
+    this.httpClient = httpClient;
+    this.objectMapper = objectMapper;
+    this.eventLoop = eventLoop;
+    StringBuilder url = new StringBuilder(listUrl).append("?maxResults=").append(pageSize);
+    if (!prefix.isEmpty()) {
+      url.append("&prefix=").append(urlFormParameterEscaper().escape(prefix));
+    }
+    firstPageUrl = url.toString();
+  }
+
+  StreamMessage<ObjectInfo> start() {
+    fetchPage(null);
+    return objects;
+  }
+
+  private void fetchPage(@Nullable String pageToken) {
+    String url =
+        pageToken == null
+            ? firstPageUrl
+            : firstPageUrl + "&pageToken=" + urlFormParameterEscaper().escape(pageToken);
+    httpClient
+        .get(url)
+        .aggregate(eventLoop)
+        .handle(
+            (msg, t) -> {
+              if (t != null) {
+                objects.close(t);
+                return null;
+              }
+              if (!msg.status().equals(HttpStatus.OK)) {
+                objects.close(
+                    new InvalidResponseException(
+                        "Could not list files: " + msg.status() + " " + msg.contentUtf8()));
+                return null;
+              }
+              final ListObjectsResponse page;
+              try {
+                page = objectMapper.readValue(msg.content().array(), ListObjectsResponse.class);
+              } catch (IOException e) {
+                objects.close(new UncheckedIOException("Could not parse list response.", e));
+                return null;
+              }
+              for (ObjectInfo object : page.getItems()) {
+                if (!objects.tryWrite(object)) {
+                  // Consumer cancelled.
+                  return null;
+                }
+              }
+              String nextPageToken = page.getNextPageToken();
+              if (nextPageToken == null || nextPageToken.isEmpty()) {
+                objects.close();
+              } else {
+                objects.whenConsumed().thenRun(() -> fetchPage(nextPageToken));
+              }
+              return null;
+            });
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import com.google.protobuf.ByteString;
+import com.linecorp.armeria.common.CommonPools;
+import com.spotify.futures.CompletableFuturesExtra;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.EventLoop;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import org.curioswitch.curiostack.gcloud.storage.ParallelUploadState.PartState;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.ComposeRequest;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.ComposeRequest.SourceObject;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+
+/**
+ * An in-progress upload started by {@link ParallelUploader}. Call {@link #save()} periodically and
+ * persist the returned {@link ByteString} to allow resuming with {@link
+ * ParallelUploader#resume(ByteString, FileRequest, java.nio.file.Path, int)} if the upload is
+ * interrupted.
+ */
+public final class ParallelUpload {
+
+  // Must be a multiple of 256KB, the required alignment of all but the last chunk of an upload.
+  static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+  private final StorageClient client;
+  private final FileWriter.Resumer resumer;
+  private final FileRequest destination;
+  private final UploadSource source;
+  private final ByteBufAllocator alloc;
+  private final int maxConcurrency;
+  private final long sourceSize;
+  private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+  // Guarded by this.
+  private final List<PartState.Builder> parts;
+  private final Queue<Integer> pendingParts = new ArrayDeque<>();
+
+  private volatile boolean failed;
+
+  ParallelUpload(
+      StorageClient client,
+      FileWriter.Resumer resumer,
+      FileRequest destination,
+      UploadSource source,
+      ByteBufAllocator alloc,
+      ParallelUploadState state,
+      int maxConcurrency) {
+    this.client = client;
+    this.resumer = resumer;
+    this.destination = destination;
+    this.source = source;
+    this.alloc = alloc;
+    this.maxConcurrency = maxConcurrency;
+    sourceSize = state.getSourceSize();
+
+    parts = new ArrayList<>(state.getPartsCount());
+    for (int i = 0; i < state.getPartsCount(); i++) {
+      PartState part = state.getParts(i);
+      parts.add(part.toBuilder());
+      if (!part.getComplete()) {
+        pendingParts.add(i);
+      }
+    }
+  }
+
+  /**
+   * Returns a {@link CompletableFuture} which completes when all parts have been uploaded and
+   * composed into the destination.
+   */
+  public CompletableFuture<Void> whenComplete() {
+    return result;
+  }
+
+  /**
+   * Saves the state of the upload to allow resuming using {@link ParallelUploader} if needed.
+   * Parts that are in progress are saved as with {@link FileWriter#save()}, so the returned buffer
+   * may be up to 256KB large per part.
+   */
+  public synchronized ByteString save() {
+    ParallelUploadState.Builder state = ParallelUploadState.newBuilder().setSourceSize(sourceSize);
+    parts.forEach(state::addParts);
+    return state.build().toByteString();
+  }
+
+  void start() {
+    final int numLanes;
+    synchronized (this) {
+      numLanes = Math.min(maxConcurrency, pendingParts.size());
+    }
+    CompletableFuture<?>[] lanes = new CompletableFuture<?>[numLanes];
+    for (int i = 0; i < numLanes; i++) {
+      lanes[i] = runLane();
+    }
+    CompletableFuture.allOf(lanes)
+        .thenCompose(unused -> compose())
+        .thenCompose(unused -> deleteParts())
+        .whenComplete(
+            (unused, t) -> {
+              source.close();
+              if (t != null) {
+                result.completeExceptionally(t);
+              } else {
+                result.complete(null);
+              }
+            });
+  }
+
+  private CompletableFuture<Void> runLane() {
+    final int index;
+    synchronized (this) {
+      Integer next = failed ? null : pendingParts.poll();
+      if (next == null) {
+        return completedFuture(null);
+      }
+      index = next;
+    }
+    // Each part uses its own event loop, and correspondingly its own connection.
+    EventLoop eventLoop = CommonPools.workerGroup().next();
+    return uploadPart(index, eventLoop)
+        .whenComplete(
+            (unused, t) -> {
+              if (t != null) {
+                failed = true;
+              }
+            })
+        .thenCompose(unused -> runLane());
+  }
+
+  private CompletableFuture<Void> uploadPart(int index, EventLoop eventLoop) {
+    final PartState part;
+    synchronized (this) {
+      part = parts.get(index).build();
+    }
+
+    final CompletableFuture<FileWriter> writerFuture;
+    if (!part.getWriterState().isEmpty()) {
+      writerFuture =
+          CompletableFuturesExtra.toCompletableFuture(
+              resumer.resume(part.getWriterState(), alloc, eventLoop));
+    } else {
+      FileRequest request = new FileRequest.Builder().name(part.getName()).build();
+      writerFuture =
+          client
+              .createFile(request, eventLoop, alloc)
+              .thenApply(
+                  writer -> {
+                    ByteString writerState = writer.save();
+                    updatePart(index, p -> p.setWriterState(writerState));
+                    return writer;
+                  });
+    }
+
+    return writerFuture.thenCompose(
+        writer ->
+            uploadRemaining(index, part, part.getSourcePosition(), writer, eventLoop)
+                .whenComplete(
+                    (unused, t) -> {
+                      if (t != null) {
+                        writer.release();
+                      }
+                    }));
+  }
+
+  private CompletableFuture<Void> uploadRemaining(
+      int index, PartState part, long position, FileWriter writer, EventLoop eventLoop) {
+    long remaining = part.getLength() - position;
+    if (remaining <= CHUNK_SIZE) {
+      return source
+          .read(part.getOffset() + position, (int) remaining)
+          .thenComposeAsync(writer::writeAndClose, eventLoop)
+          .thenRun(
+              () ->
+                  updatePart(
+                      index,
+                      p ->
+                          p.setSourcePosition(part.getLength())
+                              .clearWriterState()
+                              .setComplete(true)));
+    }
+    return source
+        .read(part.getOffset() + position, CHUNK_SIZE)
+        .thenComposeAsync(
+            chunk -> CompletableFuturesExtra.toCompletableFuture(writer.write(chunk)), eventLoop)
+        .thenComposeAsync(
+            unused -> {
+              long nextPosition = position + CHUNK_SIZE;
+              ByteString writerState = writer.save();
+              updatePart(
+                  index, p -> p.setSourcePosition(nextPosition).setWriterState(writerState));
+              return uploadRemaining(index, part, nextPosition, writer, eventLoop);
+            },
+            eventLoop);
+  }
+
+  private CompletableFuture<Void> compose() {
+    ComposeRequest.Builder request = new ComposeRequest.Builder().destination(destination);
+    synchronized (this) {
+      for (PartState.Builder part : parts) {
+        request.addSourceObjects(new SourceObject.Builder().name(part.getName()).build());
+      }
+    }
+    return client.compose(request.build());
+  }
+
+  private CompletableFuture<Void> deleteParts() {
+    final CompletableFuture<?>[] deletes;
+    synchronized (this) {
+      deletes =
+          parts.stream()
+              // Leftover temporary objects are harmless, so don't fail the upload because of them.
+              .map(part -> client.delete(part.getName()).exceptionally(t -> null))
+              .toArray(CompletableFuture<?>[]::new);
+    }
+    return CompletableFuture.allOf(deletes);
+  }
+
+  private synchronized void updatePart(int index, Consumer<PartState.Builder> update) {
+    update.accept(parts.get(index));
+  }
+}
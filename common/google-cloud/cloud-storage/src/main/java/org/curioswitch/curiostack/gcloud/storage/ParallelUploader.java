@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.math.LongMath;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.UUID;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.curioswitch.curiostack.gcloud.storage.ParallelUploadState.PartState;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+
+/**
+ * Uploads large files to cloud storage by splitting them into parts which are uploaded in parallel
+ * as separate resumable uploads, each on its own connection, and composing them into the
+ * destination. Temporary part objects are deleted after composing. This is much faster than a
+ * single {@link FileWriter} when the throughput of one connection is the bottleneck.
+ */
+@Singleton
+public class ParallelUploader {
+
+  // Cloud Storage can compose at most 32 objects at once.
+  private static final int MAX_PARTS = 32;
+
+  private static final int DEFAULT_PARTS = 8;
+
+  // All chunks must be a multiple of 256KB except the last one.
+  private static final int CHUNK_ALIGNMENT = 256 * 1024;
+
+  private final StorageClient client;
+  private final FileWriter.Resumer resumer;
+
+  @Inject
+  public ParallelUploader(StorageClient client, FileWriter.Resumer resumer) {
+    this.client = client;
+    this.resumer = resumer;
+  }
+
+  /** Uploads the file at {@code source} to {@code destination} in 8 parallel parts. */
+  public ParallelUpload upload(FileRequest destination, Path source) {
+    return upload(destination, source, DEFAULT_PARTS, DEFAULT_PARTS);
+  }
+
+  /**
+   * Uploads the file at {@code source} to {@code destination} in up to {@code numParts} parts, with
+   * at most {@code maxConcurrency} uploading at the same time. Small files may use fewer parts.
+   */
+  public ParallelUpload upload(
+      FileRequest destination, Path source, int numParts, int maxConcurrency) {
+    return start(
+        destination,
+        UploadSource.ofPath(source, PooledByteBufAllocator.DEFAULT),
+        numParts,
+        maxConcurrency);
+  }
+
+  /**
+   * Uploads the content of {@code source} to {@code destination} in up to {@code numParts} parts,
+   * with at most {@code maxConcurrency} uploading at the same time. {@code source} is not copied,
+   * so it must not be modified or released until the upload completes.
+   */
+  public ParallelUpload upload(
+      FileRequest destination, ByteBuf source, int numParts, int maxConcurrency) {
+    return start(destination, UploadSource.ofByteBuf(source), numParts, maxConcurrency);
+  }
+
+  /**
+   * Resumes an upload of the file at {@code source} to {@code destination} from the state returned
+   * by {@link ParallelUpload#save()}. Parts which were already uploaded are not uploaded again.
+   */
+  public ParallelUpload resume(
+      ByteString serializedState, FileRequest destination, Path source, int maxConcurrency) {
+    checkArgument(maxConcurrency > 0, "maxConcurrency must be positive, got %s", maxConcurrency);
+    final ParallelUploadState state;
+    try {
+      state = ParallelUploadState.parseFrom(serializedState);
+    } catch (InvalidProtocolBufferException e) {
+      throw new UncheckedIOException("Could not deserialize parallel upload state.", e);
+    }
+    UploadSource uploadSource = UploadSource.ofPath(source, PooledByteBufAllocator.DEFAULT);
+    if (uploadSource.size() != state.getSourceSize()) {
+      uploadSource.close();
+      throw new IllegalArgumentException(
+          "Size of "
+              + source
+              + " does not match the saved upload, expected "
+              + state.getSourceSize()
+              + " but was "
+              + uploadSource.size());
+    }
+    return start(destination, uploadSource, state, maxConcurrency);
+  }
+
+  private ParallelUpload start(
+      FileRequest destination, UploadSource source, int numParts, int maxConcurrency) {
+    checkArgument(
+        numParts > 0 && numParts <= MAX_PARTS,
+        "numParts must be between 1 and %s, got %s",
+        MAX_PARTS,
+        numParts);
+    checkArgument(maxConcurrency > 0, "maxConcurrency must be positive, got %s", maxConcurrency);
+    return start(destination, source, plan(destination, source.size(), numParts), maxConcurrency);
+  }
+
+  private ParallelUpload start(
+      FileRequest destination,
+      UploadSource source,
+      ParallelUploadState state,
+      int maxConcurrency) {
+    ParallelUpload upload =
+        new ParallelUpload(
+            client,
+            resumer,
+            destination,
+            source,
+            PooledByteBufAllocator.DEFAULT,
+            state,
+            maxConcurrency);
+    upload.start();
+    return upload;
+  }
+
+  private static ParallelUploadState plan(FileRequest destination, long size, int numParts) {
+    long partSize =
+        Math.max(
+            CHUNK_ALIGNMENT,
+            LongMath.divide(
+                    LongMath.divide(size, numParts, RoundingMode.CEILING),
+                    CHUNK_ALIGNMENT,
+                    RoundingMode.CEILING)
+                * CHUNK_ALIGNMENT);
+    String partPrefix = destination.getName() + ".parallel-upload-" + UUID.randomUUID() + '-';
+
+    ParallelUploadState.Builder state = ParallelUploadState.newBuilder().setSourceSize(size);
+    long offset = 0;
+    do {
+      long length = Math.min(partSize, size - offset);
+      state.addParts(
+          PartState.newBuilder()
+              .setName(partPrefix + state.getPartsCount())
+              .setOffset(offset)
+              .setLength(length));
+      offset += length;
+    } while (offset < size);
+    return state.build();
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import com.linecorp.armeria.client.InvalidResponseException;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpObject;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.HttpStatusClass;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.stream.DefaultStreamMessage;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A {@link Subscriber} of a download response which completes a future with the response body as a
+ * {@link StreamMessage} once successful headers are received. The next piece of the body is only
+ * requested once the previous one has been consumed, so a slow consumer never causes the object to
+ * be buffered in memory.
+ */
+final class ResponseBodySubscriber implements Subscriber<HttpObject> {
+
+  // Error responses are small JSON documents, anything more is truncated.
+  private static final int MAX_ERROR_BODY_LENGTH = 8192;
+
+  private final String filename;
+  private final long rangeOffset;
+  private final long rangeLength;
+  private final CompletableFuture<StreamMessage<HttpData>> bodyFuture = new CompletableFuture<>();
+  private final DefaultStreamMessage<HttpData> body = new DefaultStreamMessage<>();
+
+  @Nullable private Subscription subscription;
+  @Nullable private StringBuilder errorBody;
+  @Nullable private HttpStatus errorStatus;
+
+  // Bytes of the response to drop before the requested range, and the remaining bytes of the range.
+  private long bytesToSkip;
+  private long bytesRemaining = Long.MAX_VALUE;
+  private boolean rangeIgnored;
+
+  /** Creates a {@link ResponseBodySubscriber} for the whole content of a file. */
+  ResponseBodySubscriber(String filename) {
+    this(filename, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates a {@link ResponseBodySubscriber} for a request of {@code length} bytes starting at
+   * {@code offset}. If the server ignores the range and returns the whole file, the content is
+   * trimmed to the range.
+   */
+  ResponseBodySubscriber(String filename, long offset, long length) {
+    this.filename = filename;
+    rangeOffset = offset;
+    rangeLength = length;
+  }
+
+  /**
+   * Returns a future completed with the body once headers are received, or {@code null} if the
+   * file is not found.
+   */
+  CompletableFuture<StreamMessage<HttpData>> bodyFuture() {
+    return bodyFuture;
+  }
+
+  @Override
+  public void onSubscribe(Subscription subscription) {
+    this.subscription = subscription;
+    body.whenComplete()
+        .handle(
+            (unused, t) -> {
+              if (t != null) {
+                // Consumer aborted the body, no need to keep downloading.
+                subscription.cancel();
+              }
+              return null;
+            });
+    subscription.request(1);
+  }
+
+  @Override
+  public void onNext(HttpObject obj) {
+    if (obj instanceof ResponseHeaders) {
+      onHeaders((ResponseHeaders) obj);
+    } else if (obj instanceof HttpData) {
+      onData((HttpData) obj);
+    } else {
+      // Trailers, nothing to do.
+      subscription.request(1);
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (!bodyFuture.completeExceptionally(t)) {
+      body.close(t);
+    }
+  }
+
+  @Override
+  public void onComplete() {
+    if (errorStatus != null) {
+      bodyFuture.completeExceptionally(
+          new InvalidResponseException(
+              "Could not fetch file at " + filename + ": " + errorStatus + " " + errorBody));
+      return;
+    }
+    if (!bodyFuture.isDone()) {
+      bodyFuture.completeExceptionally(
+          new InvalidResponseException("Response for " + filename + " ended without headers."));
+      return;
+    }
+    body.close();
+  }
+
+  private void onHeaders(ResponseHeaders headers) {
+    HttpStatus status = headers.status();
+    if (status.codeClass().equals(HttpStatusClass.INFORMATIONAL)) {
+      subscription.request(1);
+      return;
+    }
+    if (status.equals(HttpStatus.NOT_FOUND)) {
+      subscription.cancel();
+      bodyFuture.complete(null);
+      return;
+    }
+    if (status.equals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) && isRangeRequest()) {
+      // The range starts at or after the end of the file, so there is no content to return.
+      subscription.cancel();
+      body.close();
+      bodyFuture.complete(body);
+      return;
+    }
+    if (!status.equals(HttpStatus.OK) && !status.equals(HttpStatus.PARTIAL_CONTENT)) {
+      errorStatus = status;
+      errorBody = new StringBuilder();
+      subscription.request(1);
+      return;
+    }
+    // A partial response starts at the requested offset, a full one needs to be skipped to it.
+    rangeIgnored = status.equals(HttpStatus.OK) && isRangeRequest();
+    bytesToSkip = rangeIgnored ? rangeOffset : 0;
+    bytesRemaining = rangeLength;
+    bodyFuture.complete(body);
+    subscription.request(1);
+  }
+
+  private boolean isRangeRequest() {
+    return rangeOffset != 0 || rangeLength != Long.MAX_VALUE;
+  }
+
+  private void onData(HttpData data) {
+    if (errorBody != null) {
+      if (errorBody.length() < MAX_ERROR_BODY_LENGTH) {
+        errorBody.append(data.toStringUtf8());
+      }
+      ReferenceCountUtil.safeRelease(data);
+      subscription.request(1);
+      return;
+    }
+    if (!bodyFuture.isDone()) {
+      // Data before headers can't happen with a valid response.
+      ReferenceCountUtil.safeRelease(data);
+      subscription.request(1);
+      return;
+    }
+    if (bytesRemaining == 0) {
+      // More content than requested in a partial response, drop it.
+      ReferenceCountUtil.safeRelease(data);
+      subscription.request(1);
+      return;
+    }
+    HttpData trimmed = trimToRange(data);
+    if (trimmed == null) {
+      subscription.request(1);
+      return;
+    }
+    if (!body.tryWrite(trimmed)) {
+      ReferenceCountUtil.safeRelease(trimmed);
+      subscription.cancel();
+      return;
+    }
+    if (bytesRemaining == 0 && rangeIgnored) {
+      // Don't download the rest of the file.
+      subscription.cancel();
+      body.close();
+      return;
+    }
+    body.whenConsumed().thenRun(() -> subscription.request(1));
+  }
+
+  // Returns the part of data within the requested range, or null if it is all before the range.
+  @Nullable
+  private HttpData trimToRange(HttpData data) {
+    int length = data.length();
+    if (bytesToSkip == 0 && length <= bytesRemaining) {
+      bytesRemaining -= length;
+      return data;
+    }
+    if (bytesToSkip >= length) {
+      bytesToSkip -= length;
+      ReferenceCountUtil.safeRelease(data);
+      return null;
+    }
+    int start = (int) bytesToSkip;
+    int trimmedLength = (int) Math.min(length - start, bytesRemaining);
+    bytesToSkip = 0;
+    bytesRemaining -= trimmedLength;
+
+    if (data instanceof ByteBufHolder) {
+      ByteBuf buf = ((ByteBufHolder) data).content();
+      HttpData trimmed =
+          HttpData.wrap(buf.retainedSlice(buf.readerIndex() + start, trimmedLength));
+      ReferenceCountUtil.safeRelease(data);
+      return trimmed;
+    }
+    return HttpData.wrap(data.array(), start, trimmedLength);
+  }
+}
@@ -23,10 +23,14 @@
  */
 package org.curioswitch.curiostack.gcloud.storage;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.net.UrlEscapers.urlPathSegmentEscaper;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -44,6 +48,8 @@ import com.linecorp.armeria.common.MediaType;
 import com.linecorp.armeria.common.RequestContext;
 import com.linecorp.armeria.common.RequestHeaders;
 import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import com.linecorp.armeria.common.stream.SubscriptionOption;
 import com.spotify.futures.CompletableFuturesExtra;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -55,11 +61,15 @@ import io.netty.util.ReferenceCountUtil;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.curioswitch.curiostack.gcloud.storage.BatchOperations.Operation;
 import org.curioswitch.curiostack.gcloud.storage.StorageModule.ForStorage;
 import org.immutables.value.Value.Derived;
 import org.immutables.value.Value.Immutable;
@@ -72,12 +82,20 @@ import org.immutables.value.Value.Immutable;
 @Singleton
 public class StorageClient {
 
-  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+  private static final ObjectMapper OBJECT_MAPPER =
+      new ObjectMapper()
+          .findAndRegisterModules()
+          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
 
   private final WebClient httpClient;
 
   private final String uploadUrl;
   private final String objectUrlPrefix;
+  private final String listUrl;
 
   @Inject
   public StorageClient(@ForStorage WebClient httpClient, StorageConfig config) {
@@ -85,6 +103,7 @@ public class StorageClient {
 
     uploadUrl = "/upload/storage/v1/b/" + config.getBucket() + "/o?uploadType=resumable";
     objectUrlPrefix = "/storage/v1/b/" + config.getBucket() + "/o/";
+    listUrl = "/storage/v1/b/" + config.getBucket() + "/o";
   }
 
   /** Create a new file for uploading data to cloud storage. */
@@ -143,6 +162,24 @@ public class StorageClient {
             });
   }
 
+  /**
+   * Uploads the file at {@code path} to cloud storage as {@code request}, memory-mapping it to
+   * avoid copies. See {@link FileWriter#uploadFile(Path)}.
+   */
+  public CompletableFuture<Void> uploadFile(FileRequest request, Path path) {
+    return createFile(request)
+        .thenCompose(
+            writer ->
+                writer
+                    .uploadFile(path)
+                    .whenComplete(
+                        (unused, t) -> {
+                          if (t != null) {
+                            writer.release();
+                          }
+                        }));
+  }
+
   /**
    * Reads the contents of a file from cloud storage. Ownership of the returned {@link ByteBuf} is
    * transferred to the caller, which must release it. The future will complete with {@code null} if
@@ -159,10 +196,8 @@ public class StorageClient {
    */
   public CompletableFuture<ByteBuf> readFile(
       String filename, EventLoop eventLoop, ByteBufAllocator alloc) {
-    String url = objectUrlPrefix + urlPathSegmentEscaper().escape(filename) + "?alt=media";
-
     return httpClient
-        .get(url)
+        .get(mediaUrl(filename))
         .aggregateWithPooledObjects(eventLoop, alloc)
         .thenApply(
             msg -> {
@@ -187,6 +222,57 @@ public class StorageClient {
             });
   }
 
+  /**
+   * Streams the contents of a file from cloud storage. The future completes with the content once
+   * the response headers are received, or with {@code null} if the file is not found. Content is
+   * only read from the network as fast as it is consumed, so this should be used for files too
+   * large to hold in memory. Subscribe with {@link SubscriptionOption#WITH_POOLED_OBJECTS} to avoid
+   * copying the content to the heap, or use {@link FileChannels} to write it to a local file.
+   */
+  public CompletableFuture<StreamMessage<HttpData>> streamFile(String filename) {
+    return streamFile(filename, CommonPools.workerGroup().next());
+  }
+
+  /**
+   * Streams the contents of a file from cloud storage. The future completes with the content once
+   * the response headers are received, or with {@code null} if the file is not found.
+   */
+  public CompletableFuture<StreamMessage<HttpData>> streamFile(
+      String filename, EventLoop eventLoop) {
+    RequestHeaders headers = RequestHeaders.of(HttpMethod.GET, mediaUrl(filename));
+    return streamContent(new ResponseBodySubscriber(filename), headers, eventLoop);
+  }
+
+  /**
+   * Streams {@code length} bytes of a file from cloud storage starting at {@code offset}. The
+   * future completes with the content once the response headers are received, or with {@code
+   * null} if the file is not found. If the file ends before {@code offset + length}, the content
+   * ends at the end of the file, and if it ends before {@code offset}, the content is empty.
+   */
+  public CompletableFuture<StreamMessage<HttpData>> readRange(
+      String filename, long offset, long length) {
+    return readRange(filename, offset, length, CommonPools.workerGroup().next());
+  }
+
+  /**
+   * Streams {@code length} bytes of a file from cloud storage starting at {@code offset}. The
+   * future completes with the content once the response headers are received, or with {@code
+   * null} if the file is not found. If the file ends before {@code offset + length}, the content
+   * ends at the end of the file, and if it ends before {@code offset}, the content is empty.
+   */
+  public CompletableFuture<StreamMessage<HttpData>> readRange(
+      String filename, long offset, long length, EventLoop eventLoop) {
+    checkArgument(offset >= 0, "offset must be non-negative, got %s", offset);
+    checkArgument(length > 0, "length must be positive, got %s", length);
+    RequestHeaders headers =
+        RequestHeaders.of(
+            HttpMethod.GET,
+            mediaUrl(filename),
+            HttpHeaderNames.RANGE,
+            "bytes=" + offset + '-' + (offset + length - 1));
+    return streamContent(new ResponseBodySubscriber(filename, offset, length), headers, eventLoop);
+  }
+
   public CompletableFuture<Void> updateFileMetadata(String filename, Map<String, String> metadata) {
     return updateFileMetadata(
         filename, metadata, CommonPools.workerGroup().next(), PooledByteBufAllocator.DEFAULT);
@@ -238,6 +324,107 @@ public class StorageClient {
             });
   }
 
+  /**
+   * Lists the files whose names start with {@code prefix}, or all files if it is empty, in
+   * lexicographic order. Pages of results are only fetched as previous ones are consumed.
+   */
+  public StreamMessage<ObjectInfo> listFiles(String prefix) {
+    return listFiles(prefix, CommonPools.workerGroup().next());
+  }
+
+  /**
+   * Lists the files whose names start with {@code prefix}, or all files if it is empty, in
+   * lexicographic order. Pages of results are only fetched as previous ones are consumed.
+   */
+  public StreamMessage<ObjectInfo> listFiles(String prefix, EventLoop eventLoop) {
+    return new ObjectListing(httpClient, OBJECT_MAPPER, listUrl, prefix, LIST_PAGE_SIZE, eventLoop)
+        .start();
+  }
+
+  /**
+   * Deletes {@code filenames} using batch requests. The future completes with the response status
+   * of each deletion, e.g., {@link HttpStatus#NOT_FOUND} if a file did not exist.
+   */
+  public CompletableFuture<Map<String, HttpStatus>> deleteFiles(Collection<String> filenames) {
+    return deleteFiles(filenames, DEFAULT_MAX_CONCURRENT_BATCHES);
+  }
+
+  /**
+   * Deletes {@code filenames} using batch requests of up to 100 files, sending at most {@code
+   * maxConcurrentBatches} at the same time. The future completes with the response status of each
+   * deletion, e.g., {@link HttpStatus#NOT_FOUND} if a file did not exist. Deletions in a failed
+   * batch request have the status of the batch response, or {@link HttpStatus#UNKNOWN} if there
+   * was no valid response.
+   */
+  public CompletableFuture<Map<String, HttpStatus>> deleteFiles(
+      Collection<String> filenames, int maxConcurrentBatches) {
+    checkArgument(
+        maxConcurrentBatches > 0,
+        "maxConcurrentBatches must be positive, got %s",
+        maxConcurrentBatches);
+    List<Operation> operations =
+        filenames.stream()
+            .map(
+                filename ->
+                    new Operation(
+                        filename,
+                        HttpMethod.DELETE,
+                        objectUrlPrefix + urlPathSegmentEscaper().escape(filename),
+                        null))
+            .collect(toImmutableList());
+    return new BatchOperations(httpClient, operations, maxConcurrentBatches).execute();
+  }
+
+  /**
+   * Updates the metadata of the files in {@code requests} using batch requests. Unlike {@link
+   * #updateFileMetadata(FileRequest, EventLoop, ByteBufAllocator)}, metadata keys which are not
+   * present in a request are left unchanged. The future completes with the response status of
+   * each update.
+   */
+  public CompletableFuture<Map<String, HttpStatus>> updateFilesMetadata(
+      Collection<FileRequest> requests) {
+    return updateFilesMetadata(requests, DEFAULT_MAX_CONCURRENT_BATCHES);
+  }
+
+  /**
+   * Updates the metadata of the files in {@code requests} using batch requests of up to 100 files,
+   * sending at most {@code maxConcurrentBatches} at the same time. Metadata keys which are not
+   * present in a request are left unchanged. If there are multiple requests for a file, only the
+   * last one is applied. The future completes with the response status of each update. Updates in
+   * a failed batch request have the status of the batch response, or {@link HttpStatus#UNKNOWN} if
+   * there was no valid response.
+   */
+  public CompletableFuture<Map<String, HttpStatus>> updateFilesMetadata(
+      Collection<FileRequest> requests, int maxConcurrentBatches) {
+    checkArgument(
+        maxConcurrentBatches > 0,
+        "maxConcurrentBatches must be positive, got %s",
+        maxConcurrentBatches);
+    List<Operation> operations =
+        requests.stream()
+            .map(
+                request ->
+                    new Operation(
+                        request.getName(),
+                        HttpMethod.PATCH,
+                        objectUrlPrefix + urlPathSegmentEscaper().escape(request.getName()),
+                        serializeRequestToString(request)))
+            .collect(toImmutableList());
+    return new BatchOperations(httpClient, operations, maxConcurrentBatches).execute();
+  }
+
+  private CompletableFuture<StreamMessage<HttpData>> streamContent(
+      ResponseBodySubscriber subscriber, RequestHeaders headers, EventLoop eventLoop) {
+    httpClient
+        .execute(headers)
+        .subscribe(subscriber, eventLoop, SubscriptionOption.WITH_POOLED_OBJECTS);
+    return subscriber.bodyFuture();
+  }
+
+  private String mediaUrl(String filename) {
+    return objectUrlPrefix + urlPathSegmentEscaper().escape(filename) + "?alt=media";
+  }
+
   private CompletableFuture<Void> sendMutationRequest(
       HttpMethod method, Object request, String url, EventLoop eventLoop, ByteBufAllocator alloc) {
     HttpData data = serializeRequest(request, alloc);
@@ -276,6 +463,14 @@ public class StorageClient {
     return HttpData.wrap(buf).withEndOfStream();
   }
 
+  private static String serializeRequestToString(Object request) {
+    try {
+      return OBJECT_MAPPER.writeValueAsString(request);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException("Could not serialize resource JSON.", e);
+    }
+  }
+
   @Immutable
   @JsonSerialize(as = ImmutableFileRequest.class)
   @JsonDeserialize(as = ImmutableFileRequest.class)
@@ -333,4 +528,34 @@ public class StorageClient {
 
     FileRequest getDestination();
   }
+
+  /** Information about a file returned when listing files. */
+  @Immutable
+  @JsonDeserialize(as = ImmutableObjectInfo.class)
+  public interface ObjectInfo {
+
+    String getName();
+
+    /** The size of the file in bytes. */
+    long getSize();
+
+    @Nullable
+    String getContentType();
+
+    /** The time the file was last modified, in RFC 3339 format. */
+    @Nullable
+    String getUpdated();
+
+    Map<String, String> getMetadata();
+  }
+
+  @Immutable
+  @JsonDeserialize(as = ImmutableListObjectsResponse.class)
+  interface ListObjectsResponse {
+
+    List<ObjectInfo> getItems();
+
+    @Nullable
+    String getNextPageToken();
+  }
 }
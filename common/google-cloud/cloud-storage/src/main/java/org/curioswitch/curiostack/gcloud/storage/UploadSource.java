@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import com.linecorp.armeria.common.CommonPools;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/** A source of data for a {@link ParallelUpload} which can be read at arbitrary positions. */
+interface UploadSource {
+
+  /** Returns an {@link UploadSource} which reads {@code path} using blocking reads. */
+  static UploadSource ofPath(Path path, ByteBufAllocator alloc) {
+    final FileChannel channel;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open file for upload: " + path, e);
+    }
+    return new PathSource(channel, alloc);
+  }
+
+  /**
+   * Returns an {@link UploadSource} which reads slices of {@code buf} without copying. {@code buf}
+   * must not be modified or released until the upload completes.
+   */
+  static UploadSource ofByteBuf(ByteBuf buf) {
+    return new ByteBufSource(buf);
+  }
+
+  /** Returns the total size of the source. */
+  long size();
+
+  /**
+   * Reads {@code length} bytes starting at {@code position}. Ownership of the returned {@link
+   * ByteBuf} is transferred to the caller.
+   */
+  CompletableFuture<ByteBuf> read(long position, int length);
+
+  /** Releases any resources held by the source. */
+  void close();
+
+  final class PathSource implements UploadSource {
+
+    private final FileChannel channel;
+    private final ByteBufAllocator alloc;
+    private final long size;
+
+    private PathSource(FileChannel channel, ByteBufAllocator alloc) {
+      this.channel = channel;
+      this.alloc = alloc;
+      try {
+        size = channel.size();
+      } catch (IOException e) {
+        close();
+        throw new UncheckedIOException("Could not read file size.", e);
+      }
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public CompletableFuture<ByteBuf> read(long position, int length) {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            ByteBuf buf = alloc.directBuffer(length);
+            boolean success = false;
+            try {
+              while (buf.readableBytes() < length) {
+                int numRead =
+                    buf.writeBytes(
+                        channel,
+                        position + buf.readableBytes(),
+                        length - buf.readableBytes());
+                if (numRead < 0) {
+                  throw new IllegalStateException("File was truncated during upload.");
+                }
+              }
+              success = true;
+              return buf;
+            } catch (IOException e) {
+              throw new UncheckedIOException("Could not read file.", e);
+            } finally {
+              if (!success) {
+                buf.release();
+              }
+            }
+          },
+          CommonPools.blockingTaskExecutor());
+    }
+
+    @Override
+    public void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Read-only, nothing to lose.
+      }
+    }
+  }
+
+  final class ByteBufSource implements UploadSource {
+
+    private final ByteBuf buf;
+
+    private ByteBufSource(ByteBuf buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public long size() {
+      return buf.readableBytes();
+    }
+
+    @Override
+    public CompletableFuture<ByteBuf> read(long position, int length) {
+      return completedFuture(buf.retainedSlice(buf.readerIndex() + (int) position, length));
+    }
+
+    @Override
+    public void close() {}
+  }
+}
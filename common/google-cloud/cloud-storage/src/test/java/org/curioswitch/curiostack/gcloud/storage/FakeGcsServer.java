@@ -0,0 +1,470 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.AggregatedHttpRequest;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.RequestHeaders;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.server.Server;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A fake of the subset of the Cloud Storage JSON API used by {@link StorageClient}, storing objects
+ * in memory. A latency can be added to every response to simulate a remote server.
+ */
+public final class FakeGcsServer implements AutoCloseable {
+
+  static final String BUCKET = "test-bucket";
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final String UPLOAD_PATH = "/upload/storage/v1/b/" + BUCKET + "/o";
+  private static final String LIST_PATH = "/storage/v1/b/" + BUCKET + "/o";
+  private static final String BATCH_PATH = "/batch/storage/v1";
+  private static final String OBJECT_PATH_PREFIX = "/storage/v1/b/" + BUCKET + "/o/";
+
+  private static final Pattern CONTENT_ID = Pattern.compile("Content-ID: <(.+)>");
+
+  private final Map<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+  private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong nextUploadId = new AtomicLong();
+  private final AtomicInteger batchesToFail = new AtomicInteger();
+  private volatile boolean ignoreRanges;
+  private final Duration latency;
+  private final Server server;
+
+  public FakeGcsServer() {
+    this(Duration.ZERO);
+  }
+
+  public FakeGcsServer(Duration latency) {
+    this.latency = latency;
+    server =
+        Server.builder()
+            .http(0)
+            .serviceUnder(
+                "/",
+                (ctx, req) -> {
+                  CompletableFuture<AggregatedHttpResponse> response = new CompletableFuture<>();
+                  req.aggregate(ctx.eventLoop())
+                      .thenAccept(
+                          aggregated -> {
+                            AggregatedHttpResponse res = handle(aggregated);
+                            if (latency.isZero()) {
+                              response.complete(res);
+                            } else {
+                              ctx.eventLoop()
+                                  .schedule(
+                                      () -> response.complete(res),
+                                      latency.toNanos(),
+                                      TimeUnit.NANOSECONDS);
+                            }
+                          });
+                  return HttpResponse.from(response.thenApply(HttpResponse::of));
+                })
+            .build();
+    server.start().join();
+  }
+
+  /** Returns a {@link WebClient} which sends requests to this server. */
+  public WebClient webClient() {
+    return WebClient.of("http://127.0.0.1:" + server.activeLocalPort());
+  }
+
+  /** Returns a {@link StorageClient} for the bucket served by this server. */
+  public StorageClient storageClient() {
+    return new StorageClient(webClient(), new StorageConfig.Builder().bucket(BUCKET).build());
+  }
+
+  /** Returns a {@link FileWriter.Resumer} which resumes uploads to this server. */
+  public FileWriter.Resumer resumer() {
+    return new FileWriter.Resumer(webClient());
+  }
+
+  /** Returns the content of the object named {@code name}, or {@code null} if there is none. */
+  @Nullable
+  public byte[] content(String name) {
+    StoredObject object = objects.get(name);
+    return object != null ? object.content : null;
+  }
+
+  /** Returns the metadata of the object named {@code name}, or {@code null} if there is none. */
+  @Nullable
+  public Map<String, String> metadata(String name) {
+    StoredObject object = objects.get(name);
+    return object != null ? object.metadata : null;
+  }
+
+  /** Returns the names of all objects. */
+  public ImmutableSet<String> objectNames() {
+    return ImmutableSet.copyOf(objects.keySet());
+  }
+
+  /** Stores an object named {@code name}. */
+  public void putObject(String name, byte[] content, Map<String, String> metadata) {
+    objects.put(name, new StoredObject(content, metadata));
+  }
+
+  /** Makes the next {@code numBatches} batch requests fail with {@code 503 Service Unavailable}. */
+  public void failNextBatches(int numBatches) {
+    batchesToFail.set(numBatches);
+  }
+
+  /** Sets whether to ignore range requests and always return the whole object. */
+  public void ignoreRanges(boolean ignoreRanges) {
+    this.ignoreRanges = ignoreRanges;
+  }
+
+  /** Removes all objects. */
+  public void clear() {
+    objects.clear();
+    sessions.clear();
+    batchesToFail.set(0);
+    ignoreRanges = false;
+  }
+
+  @Override
+  public void close() {
+    server.stop().join();
+  }
+
+  private AggregatedHttpResponse handle(AggregatedHttpRequest req) {
+    QueryStringDecoder decoder = new QueryStringDecoder(req.path());
+    String path = decoder.rawPath();
+    if (path.equals(UPLOAD_PATH)) {
+      if (req.method() == HttpMethod.POST) {
+        return startUpload(req);
+      }
+      if (req.method() == HttpMethod.PUT) {
+        return uploadChunk(req, decoder.parameters().get("upload_id").get(0));
+      }
+    }
+    if (path.equals(LIST_PATH) && req.method() == HttpMethod.GET) {
+      return list(decoder.parameters());
+    }
+    if (path.equals(BATCH_PATH) && req.method() == HttpMethod.POST) {
+      return batch(req);
+    }
+    if (path.startsWith(OBJECT_PATH_PREFIX)) {
+      String rest = path.substring(OBJECT_PATH_PREFIX.length());
+      if (rest.endsWith("/compose") && req.method() == HttpMethod.POST) {
+        return compose(req, decode(rest.substring(0, rest.length() - "/compose".length())));
+      }
+      String name = decode(rest);
+      switch (req.method()) {
+        case GET:
+          return read(req, name);
+        case DELETE:
+          return objects.remove(name) != null
+              ? AggregatedHttpResponse.of(HttpStatus.NO_CONTENT)
+              : AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+        case POST:
+        case PUT:
+          return updateMetadata(req, name, false);
+        case PATCH:
+          return updateMetadata(req, name, true);
+        default:
+          break;
+      }
+    }
+    return AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+  }
+
+  private AggregatedHttpResponse startUpload(AggregatedHttpRequest req) {
+    JsonNode request = parse(req.content());
+    String uploadId = String.valueOf(nextUploadId.incrementAndGet());
+    String name = request.get("name").asText();
+    sessions.put(uploadId, new UploadSession(name, parseMetadata(request.get("metadata"))));
+    return AggregatedHttpResponse.of(
+        ResponseHeaders.of(
+            HttpStatus.OK,
+            HttpHeaderNames.LOCATION,
+            "https://www.googleapis.com"
+                + UPLOAD_PATH
+                + "?uploadType=resumable&upload_id="
+                + uploadId));
+  }
+
+  private AggregatedHttpResponse uploadChunk(AggregatedHttpRequest req, String uploadId) {
+    UploadSession session = sessions.get(uploadId);
+    if (session == null) {
+      return AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+    }
+    // bytes first-last/total, bytes */total or bytes first-last/*
+    String range = req.headers().get(HttpHeaderNames.CONTENT_RANGE);
+    String total = range.substring(range.indexOf('/') + 1);
+    final int size;
+    synchronized (session) {
+      if (!range.startsWith("bytes */")) {
+        long first = Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')));
+        if (first != session.content.size()) {
+          return AggregatedHttpResponse.of(HttpStatus.BAD_REQUEST);
+        }
+        byte[] chunk = req.content().array();
+        session.content.write(chunk, 0, chunk.length);
+      }
+      size = session.content.size();
+    }
+    if (!total.equals("*") && Long.parseLong(total) == size) {
+      sessions.remove(uploadId);
+      objects.put(session.name, new StoredObject(session.content.toByteArray(), session.metadata));
+      return objectResponse(session.name);
+    }
+    if (size == 0) {
+      return AggregatedHttpResponse.of(HttpStatus.valueOf(308));
+    }
+    return AggregatedHttpResponse.of(
+        ResponseHeaders.of(
+            HttpStatus.valueOf(308), HttpHeaderNames.RANGE, "bytes=0-" + (size - 1)));
+  }
+
+  private AggregatedHttpResponse compose(AggregatedHttpRequest req, String name) {
+    JsonNode request = parse(req.content());
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (JsonNode source : request.get("sourceObjects")) {
+      StoredObject object = objects.get(source.get("name").asText());
+      if (object == null) {
+        return AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+      }
+      content.write(object.content, 0, object.content.length);
+    }
+    JsonNode destination = request.get("destination");
+    objects.put(
+        name,
+        new StoredObject(
+            content.toByteArray(),
+            parseMetadata(destination != null ? destination.get("metadata") : null)));
+    return objectResponse(name);
+  }
+
+  private AggregatedHttpResponse read(AggregatedHttpRequest req, String name) {
+    StoredObject object = objects.get(name);
+    if (object == null) {
+      return AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+    }
+    String range = req.headers().get(HttpHeaderNames.RANGE);
+    if (range == null || ignoreRanges) {
+      return AggregatedHttpResponse.of(
+          HttpStatus.OK, MediaType.OCTET_STREAM, HttpData.wrap(object.content));
+    }
+    // bytes=first-last
+    long first = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+    long last = Long.parseLong(range.substring(range.indexOf('-') + 1));
+    if (first >= object.content.length) {
+      return AggregatedHttpResponse.of(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+    int end = (int) Math.min(last + 1, object.content.length);
+    return AggregatedHttpResponse.of(
+        HttpStatus.PARTIAL_CONTENT,
+        MediaType.OCTET_STREAM,
+        HttpData.wrap(Arrays.copyOfRange(object.content, (int) first, end)));
+  }
+
+  private AggregatedHttpResponse updateMetadata(
+      AggregatedHttpRequest req, String name, boolean merge) {
+    StoredObject object = objects.get(name);
+    if (object == null) {
+      return AggregatedHttpResponse.of(HttpStatus.NOT_FOUND);
+    }
+    Map<String, String> metadata = parseMetadata(parse(req.content()).get("metadata"));
+    if (merge) {
+      Map<String, String> merged = new HashMap<>(object.metadata);
+      merged.putAll(metadata);
+      metadata = merged;
+    }
+    objects.put(name, new StoredObject(object.content, metadata));
+    return objectResponse(name);
+  }
+
+  private AggregatedHttpResponse list(Map<String, List<String>> params) {
+    String prefix = firstParam(params, "prefix", "");
+    String pageToken = firstParam(params, "pageToken", "");
+    int maxResults = Integer.parseInt(firstParam(params, "maxResults", "1000"));
+
+    ObjectNode response = OBJECT_MAPPER.createObjectNode();
+    ArrayNode items = response.putArray("items");
+    String lastName = null;
+    for (Map.Entry<String, StoredObject> entry : objects.entrySet()) {
+      String name = entry.getKey();
+      if (!name.startsWith(prefix) || name.compareTo(pageToken) <= 0) {
+        continue;
+      }
+      if (items.size() == maxResults) {
+        response.put("nextPageToken", lastName);
+        break;
+      }
+      StoredObject object = entry.getValue();
+      ObjectNode item =
+          items
+              .addObject()
+              .put("kind", "storage#object")
+              .put("name", name)
+              .put("bucket", BUCKET)
+              .put("size", String.valueOf(object.content.length))
+              .put("updated", "2020-01-01T00:00:00.000Z");
+      ObjectNode metadata = item.putObject("metadata");
+      object.metadata.forEach(metadata::put);
+      lastName = name;
+    }
+    return AggregatedHttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, response.toString());
+  }
+
+  private AggregatedHttpResponse batch(AggregatedHttpRequest req) {
+    if (batchesToFail.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+      return AggregatedHttpResponse.of(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    String boundary = req.headers().contentType().parameters().get("boundary").get(0);
+    String responseBoundary = "batch_response";
+    StringBuilder response = new StringBuilder();
+    for (String part : req.contentUtf8().split(Pattern.quote("--" + boundary))) {
+      int partHeadersEnd = part.indexOf("\r\n\r\n");
+      if (partHeadersEnd < 0) {
+        // Preamble or end delimiter.
+        continue;
+      }
+      Matcher contentId = CONTENT_ID.matcher(part.substring(0, partHeadersEnd));
+      String inner = part.substring(partHeadersEnd + 4);
+      String[] requestLine = inner.substring(0, inner.indexOf("\r\n")).split(" ");
+      int headersEnd = inner.indexOf("\r\n\r\n");
+      String body = headersEnd >= 0 ? inner.substring(headersEnd + 4).trim() : "";
+
+      AggregatedHttpResponse res =
+          handle(
+              AggregatedHttpRequest.of(
+                  RequestHeaders.of(HttpMethod.valueOf(requestLine[0]), requestLine[1]),
+                  HttpData.ofUtf8(body)));
+      response
+          .append("--")
+          .append(responseBoundary)
+          .append("\r\nContent-Type: application/http\r\n");
+      if (contentId.find()) {
+        response.append("Content-ID: <response-").append(contentId.group(1)).append(">\r\n");
+      }
+      response
+          .append("\r\nHTTP/1.1 ")
+          .append(res.status().code())
+          .append(' ')
+          .append(res.status().reasonPhrase())
+          .append("\r\nContent-Type: application/json; charset=UTF-8\r\n\r\n")
+          .append(res.contentUtf8())
+          .append("\r\n");
+    }
+    response.append("--").append(responseBoundary).append("--\r\n");
+    return AggregatedHttpResponse.of(
+        HttpStatus.OK,
+        MediaType.parse("multipart/mixed; boundary=" + responseBoundary),
+        response.toString());
+  }
+
+  private static AggregatedHttpResponse objectResponse(String name) {
+    return AggregatedHttpResponse.of(
+        HttpStatus.OK,
+        MediaType.JSON_UTF_8,
+        OBJECT_MAPPER.createObjectNode().put("name", name).put("bucket", BUCKET).toString());
+  }
+
+  private static String firstParam(
+      Map<String, List<String>> params, String name, String defaultValue) {
+    List<String> values = params.get(name);
+    return values != null && !values.isEmpty() ? values.get(0) : defaultValue;
+  }
+
+  private static JsonNode parse(HttpData content) {
+    try {
+      return OBJECT_MAPPER.readTree(content.array());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<String, String> parseMetadata(@Nullable JsonNode node) {
+    if (node == null) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+    for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+      Map.Entry<String, JsonNode> field = it.next();
+      metadata.put(field.getKey(), field.getValue().asText());
+    }
+    return metadata.build();
+  }
+
+  private static String decode(String pathSegment) {
+    // Path segments don't escape '+', which would otherwise be decoded as a space.
+    return QueryStringDecoder.decodeComponent(pathSegment.replace("+", "%2B"));
+  }
+
+  private static final class StoredObject {
+    private final byte[] content;
+    private final Map<String, String> metadata;
+
+    private StoredObject(byte[] content, Map<String, String> metadata) {
+      this.content = content;
+      this.metadata = metadata;
+    }
+  }
+
+  private static final class UploadSession {
+    private final String name;
+    private final Map<String, String> metadata;
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    private UploadSession(String name, Map<String, String> metadata) {
+      this.name = name;
+      this.metadata = metadata;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.stream.DefaultStreamMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileChannelsTest {
+
+  @Test
+  void write(@TempDir Path dir) throws Exception {
+    DefaultStreamMessage<HttpData> content = new DefaultStreamMessage<>();
+    content.write(HttpData.ofUtf8("cat"));
+    content.write(HttpData.wrap(Unpooled.copiedBuffer(new byte[] {'d', 'o', 'g'})));
+    content.close();
+
+    Path file = dir.resolve("file");
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      assertThat(FileChannels.write(content, channel, 0).join()).isEqualTo(6);
+    }
+    assertThat(Files.readAllBytes(file)).isEqualTo(new byte[] {'c', 'a', 't', 'd', 'o', 'g'});
+  }
+
+  @Test
+  void releasesBufferOnStreamError(@TempDir Path dir) throws Exception {
+    // Large enough that the stream usually fails while the write is still in flight.
+    ByteBuf buf = Unpooled.directBuffer().writeBytes(new byte[4 * 1024 * 1024]);
+    DefaultStreamMessage<HttpData> content = new DefaultStreamMessage<>();
+    content.write(HttpData.wrap(buf));
+    content.close(new IllegalStateException("aborted"));
+
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(
+            dir.resolve("file"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      CompletableFuture<Long> written = FileChannels.write(content, channel, 0);
+      assertThatThrownBy(written::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+    assertThat(buf.refCnt()).isZero();
+  }
+}
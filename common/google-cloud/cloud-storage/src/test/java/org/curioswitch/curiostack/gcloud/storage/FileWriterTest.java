@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileWriterTest {
+
+  private static FakeGcsServer server;
+  private static StorageClient client;
+
+  @BeforeAll
+  static void startServer() {
+    server = new FakeGcsServer();
+    client = server.storageClient();
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.close();
+  }
+
+  @AfterEach
+  void clear() {
+    server.clear();
+  }
+
+  @Test
+  void uploadFileAcrossWindows(@TempDir Path dir) throws Exception {
+    // Larger than one mapped window and not aligned.
+    byte[] content = randomBytes(65 * 1024 * 1024 + 1000);
+    Path file = dir.resolve("file.bin");
+    Files.write(file, content);
+
+    client.uploadFile(new FileRequest.Builder().name("file.bin").build(), file).join();
+
+    assertThat(server.content("file.bin")).isEqualTo(content);
+  }
+
+  @Test
+  void uploadEmptyFile(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("empty.bin");
+    Files.write(file, new byte[0]);
+
+    client.uploadFile(new FileRequest.Builder().name("empty.bin").build(), file).join();
+
+    assertThat(server.content("empty.bin")).isEmpty();
+  }
+
+  @Test
+  void uploadFileAfterResume(@TempDir Path dir) throws Exception {
+    byte[] content = randomBytes(3 * 1024 * 1024);
+    Path file = dir.resolve("file.bin");
+    Files.write(file, content);
+
+    FileWriter writer = client.createFile("resumed.bin", ImmutableMap.of()).join();
+    // Unaligned, so part of the data is only saved, not uploaded.
+    writer.write(ByteBuffer.wrap(content, 0, 300 * 1024)).get();
+    ByteString state = writer.save();
+    writer.release();
+
+    FileWriter resumed = server.resumer().resume(state).get();
+    resumed.uploadFile(file).join();
+
+    assertThat(server.content("resumed.bin")).isEqualTo(content);
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(0).nextBytes(bytes);
+    return bytes;
+  }
+}
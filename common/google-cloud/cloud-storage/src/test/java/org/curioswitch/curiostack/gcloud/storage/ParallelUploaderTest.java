@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.Unpooled;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.curioswitch.curiostack.gcloud.storage.ParallelUploadState.PartState;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelUploaderTest {
+
+  private static FakeGcsServer server;
+  private static ParallelUploader uploader;
+
+  @BeforeAll
+  static void startServer() {
+    server = new FakeGcsServer();
+    uploader = new ParallelUploader(server.storageClient(), server.resumer());
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.close();
+  }
+
+  @AfterEach
+  void clear() {
+    server.clear();
+  }
+
+  @Test
+  void uploadsPathInParts(@TempDir Path dir) throws Exception {
+    byte[] content = randomBytes(3 * ParallelUpload.CHUNK_SIZE + 1000);
+    Path file = dir.resolve("file.bin");
+    Files.write(file, content);
+
+    FileRequest destination =
+        new FileRequest.Builder().name("dir/file.bin").putMetadata("owner", "test").build();
+    uploader.upload(destination, file, 4, 2).whenComplete().join();
+
+    assertThat(server.content("dir/file.bin")).isEqualTo(content);
+    assertThat(server.metadata("dir/file.bin")).containsEntry("owner", "test");
+    assertThat(server.objectNames()).containsExactly("dir/file.bin");
+  }
+
+  @Test
+  void uploadsByteBuf() {
+    byte[] content = randomBytes(1024 * 1024 + 10);
+
+    FileRequest destination = new FileRequest.Builder().name("buf.bin").build();
+    uploader.upload(destination, Unpooled.wrappedBuffer(content), 8, 8).whenComplete().join();
+
+    assertThat(server.content("buf.bin")).isEqualTo(content);
+    assertThat(server.objectNames()).containsExactly("buf.bin");
+  }
+
+  @Test
+  void uploadsEmptyFile(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("empty.bin");
+    Files.write(file, new byte[0]);
+
+    FileRequest destination = new FileRequest.Builder().name("empty.bin").build();
+    uploader.upload(destination, file).whenComplete().join();
+
+    assertThat(server.content("empty.bin")).isEmpty();
+  }
+
+  @Test
+  void resumesCompletedParts(@TempDir Path dir) throws Exception {
+    byte[] content = randomBytes(2 * ParallelUpload.CHUNK_SIZE);
+    Path file = dir.resolve("file.bin");
+    Files.write(file, content);
+
+    FileRequest destination = new FileRequest.Builder().name("resumed.bin").build();
+    ParallelUpload upload = uploader.upload(destination, file, 2, 2);
+    upload.whenComplete().join();
+
+    // All parts are complete in the saved state, so resuming only composes them. Put the deleted
+    // parts back to allow that.
+    ParallelUploadState state = ParallelUploadState.parseFrom(upload.save());
+    assertThat(state.getPartsList()).allMatch(PartState::getComplete);
+    server.clear();
+    for (PartState part : state.getPartsList()) {
+      int offset = (int) part.getOffset();
+      server.putObject(
+          part.getName(),
+          Arrays.copyOfRange(content, offset, offset + (int) part.getLength()),
+          ImmutableMap.of());
+    }
+
+    uploader.resume(upload.save(), destination, file, 2).whenComplete().join();
+
+    assertThat(server.content("resumed.bin")).isEqualTo(content);
+    assertThat(server.objectNames()).containsExactly("resumed.bin");
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(0).nextBytes(bytes);
+    return bytes;
+  }
+}
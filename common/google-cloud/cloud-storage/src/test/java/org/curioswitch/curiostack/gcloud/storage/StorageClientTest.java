@@ -23,10 +23,232 @@
  */
 package org.curioswitch.curiostack.gcloud.storage;
 
-import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
-public class StorageClientTest {
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.stream.StreamMessage;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.FileRequest;
+import org.curioswitch.curiostack.gcloud.storage.StorageClient.ObjectInfo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+class StorageClientTest {
+
+  private static FakeGcsServer server;
+  private static StorageClient client;
+
+  @BeforeAll
+  static void startServer() {
+    server = new FakeGcsServer();
+    client = server.storageClient();
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.close();
+  }
+
+  @AfterEach
+  void clear() {
+    server.clear();
+  }
+
+  @Test
+  void listFilesAcrossPages() {
+    List<String> names =
+        IntStream.range(0, 2500)
+            .mapToObj(i -> String.format("cache/%05d", i))
+            .collect(Collectors.toList());
+    names.forEach(name -> server.putObject(name, new byte[10], ImmutableMap.of("k", "v")));
+    server.putObject("other/file", new byte[10], ImmutableMap.of());
+
+    List<ObjectInfo> listed = collect(client.listFiles("cache/")).join();
+
+    assertThat(listed).extracting(ObjectInfo::getName).containsExactlyElementsOf(names);
+    assertThat(listed.get(0).getSize()).isEqualTo(10);
+    assertThat(listed.get(0).getMetadata()).containsEntry("k", "v");
+  }
+
+  @Test
+  void listFilesEmpty() {
+    assertThat(collect(client.listFiles("")).join()).isEmpty();
+  }
+
+  @Test
+  void deleteFilesInBatches() {
+    List<String> names =
+        IntStream.range(0, 250).mapToObj(i -> "file" + i).collect(Collectors.toList());
+    names.forEach(name -> server.putObject(name, new byte[1], ImmutableMap.of()));
+    server.putObject("kept", new byte[1], ImmutableMap.of());
+
+    List<String> toDelete = new ArrayList<>(names);
+    toDelete.add("missing");
+    Map<String, HttpStatus> statuses = client.deleteFiles(toDelete, 2).join();
+
+    assertThat(statuses).hasSize(251);
+    names.forEach(name -> assertThat(statuses).containsEntry(name, HttpStatus.NO_CONTENT));
+    assertThat(statuses).containsEntry("missing", HttpStatus.NOT_FOUND);
+    assertThat(server.objectNames()).containsExactly("kept");
+  }
+
+  @Test
+  void deleteFilesDuplicates() {
+    server.putObject("a", new byte[1], ImmutableMap.of());
+
+    assertThat(client.deleteFiles(ImmutableList.of("a", "a")).join())
+        .containsOnly(entry("a", HttpStatus.NO_CONTENT));
+    assertThat(server.objectNames()).isEmpty();
+  }
+
+  @Test
+  void deleteFilesBatchFailure() {
+    List<String> names =
+        IntStream.range(0, 150).mapToObj(i -> "file" + i).collect(Collectors.toList());
+    names.forEach(name -> server.putObject(name, new byte[1], ImmutableMap.of()));
+    server.failNextBatches(1);
+
+    Map<String, HttpStatus> statuses = client.deleteFiles(names, 1).join();
+
+    assertThat(statuses).hasSize(150);
+    names.subList(0, 100)
+        .forEach(name -> assertThat(statuses).containsEntry(name, HttpStatus.SERVICE_UNAVAILABLE));
+    names.subList(100, 150)
+        .forEach(name -> assertThat(statuses).containsEntry(name, HttpStatus.NO_CONTENT));
+    assertThat(server.objectNames()).containsExactlyInAnyOrderElementsOf(names.subList(0, 100));
+  }
+
+  @Test
+  void updateFilesMetadataMerges() {
+    server.putObject("a", new byte[1], ImmutableMap.of("existing", "1"));
+    server.putObject("b", new byte[1], ImmutableMap.of());
+
+    Map<String, HttpStatus> statuses =
+        client
+            .updateFilesMetadata(
+                ImmutableList.of(
+                    new FileRequest.Builder().name("a").putMetadata("added", "2").build(),
+                    new FileRequest.Builder().name("b").putMetadata("added", "3").build()))
+            .join();
+
+    assertThat(statuses).containsOnly(entry("a", HttpStatus.OK), entry("b", HttpStatus.OK));
+    assertThat(server.metadata("a")).containsOnly(entry("existing", "1"), entry("added", "2"));
+    assertThat(server.metadata("b")).containsOnly(entry("added", "3"));
+  }
+
+  @Test
+  void updateFilesMetadataLastRequestWins() {
+    server.putObject("a", new byte[1], ImmutableMap.of());
+
+    Map<String, HttpStatus> statuses =
+        client
+            .updateFilesMetadata(
+                ImmutableList.of(
+                    new FileRequest.Builder().name("a").putMetadata("key", "first").build(),
+                    new FileRequest.Builder().name("a").putMetadata("key", "second").build()))
+            .join();
+
+    assertThat(statuses).containsOnly(entry("a", HttpStatus.OK));
+    assertThat(server.metadata("a")).containsOnly(entry("key", "second"));
+  }
+
+  @Test
+  void streamFileToChannel(@TempDir Path dir) throws Exception {
+    byte[] content = "streamed file content".getBytes(StandardCharsets.UTF_8);
+    server.putObject("file", content, ImmutableMap.of());
+
+    Path file = dir.resolve("downloaded");
+    StreamMessage<HttpData> stream = client.streamFile("file").join();
+    try (AsynchronousFileChannel channel =
+        AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      assertThat(FileChannels.write(stream, channel, 0).join()).isEqualTo(content.length);
+    }
+
+    assertThat(Files.readAllBytes(file)).isEqualTo(content);
+  }
+
+  @Test
+  void readRange() {
+    server.putObject("file", "0123456789".getBytes(StandardCharsets.UTF_8), ImmutableMap.of());
+
+    assertThat(contentUtf8(client.readRange("file", 2, 3).join()).join()).isEqualTo("234");
+    assertThat(contentUtf8(client.readRange("file", 8, 10).join()).join()).isEqualTo("89");
+  }
+
+  @Test
+  void readRangePastEnd() {
+    server.putObject("file", "0123456789".getBytes(StandardCharsets.UTF_8), ImmutableMap.of());
+
+    assertThat(contentUtf8(client.readRange("file", 10, 1).join()).join()).isEmpty();
+    assertThat(contentUtf8(client.readRange("file", 20, 5).join()).join()).isEmpty();
+  }
+
+  @Test
+  void readRangeIgnoredByServer() {
+    server.putObject("file", "0123456789".getBytes(StandardCharsets.UTF_8), ImmutableMap.of());
+    server.ignoreRanges(true);
+
+    assertThat(contentUtf8(client.readRange("file", 2, 3).join()).join()).isEqualTo("234");
+    assertThat(contentUtf8(client.readRange("file", 8, 10).join()).join()).isEqualTo("89");
+    assertThat(contentUtf8(client.readRange("file", 20, 1).join()).join()).isEmpty();
+  }
 
   @Test
-  public void normal() {}
+  void streamMissingFile() {
+    assertThat(client.streamFile("missing").join()).isNull();
+    assertThat(client.readRange("missing", 0, 1).join()).isNull();
+  }
+
+  private static CompletableFuture<String> contentUtf8(StreamMessage<HttpData> stream) {
+    return collect(stream)
+        .thenApply(
+            data -> data.stream().map(HttpData::toStringUtf8).collect(Collectors.joining()));
+  }
+
+  private static <T> CompletableFuture<List<T>> collect(StreamMessage<T> stream) {
+    CompletableFuture<List<T>> result = new CompletableFuture<>();
+    List<T> elements = new ArrayList<>();
+    stream.subscribe(
+        new Subscriber<T>() {
+          @Override
+          public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+          }
+
+          @Override
+          public void onNext(T element) {
+            elements.add(element);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            result.completeExceptionally(t);
+          }
+
+          @Override
+          public void onComplete() {
+            result.complete(elements);
+          }
+        });
+    return result;
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.core.auth;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.HttpClient;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the overhead {@link GoogleCredentialsDecoratingClient} adds to each request, when the
+ * token is cached and can be added synchronously and when it isn't and the request must wait for
+ * it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GoogleCredentialsDecoratingClientBenchmark {
+
+  private static final String TOKEN = "ya29.benchmark-access-token";
+
+  @Param({"true", "false"})
+  private boolean cached;
+
+  private HttpClient client;
+
+  @Setup
+  public void setUp() {
+    AccessTokenProvider provider =
+        new AccessTokenProvider() {
+          @Override
+          public CompletableFuture<String> getAccessToken() {
+            return completedFuture(TOKEN);
+          }
+
+          @Override
+          public CompletableFuture<String> getGoogleIdToken() {
+            return completedFuture(TOKEN);
+          }
+
+          @Override
+          @Nullable
+          public String getCachedAccessToken() {
+            return cached ? TOKEN : null;
+          }
+        };
+    client =
+        new GoogleCredentialsDecoratingClient.Factory(provider)
+            .newAccessTokenDecorator()
+            .apply((ctx, req) -> HttpResponse.of(HttpStatus.OK));
+  }
+
+  @Benchmark
+  public AggregatedHttpResponse execute() throws Exception {
+    HttpRequest req = HttpRequest.of(HttpMethod.GET, "/");
+    return client.execute(ClientRequestContext.of(req), req).aggregate().join();
+  }
+}
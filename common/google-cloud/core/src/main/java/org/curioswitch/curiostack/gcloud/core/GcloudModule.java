@@ -41,6 +41,7 @@ import io.micrometer.core.instrument.MeterRegistry;
 import java.util.Optional;
 import javax.inject.Singleton;
 import org.curioswitch.curiostack.gcloud.core.auth.GcloudAuthModule;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 @Module(includes = GcloudAuthModule.class)
 public abstract class GcloudModule {
@@ -78,6 +79,12 @@ public abstract class GcloudModule {
         .build();
   }
 
+  @Provides
+  @Singleton
+  public static RefreshScheduler refreshScheduler(Optional<MeterRegistry> meterRegistry) {
+    return meterRegistry.map(RefreshScheduler::new).orElseGet(RefreshScheduler::shared);
+  }
+
   @Provides
   @Singleton
   @RetryingGoogleApis
@@ -28,7 +28,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.auth.oauth2.AccessToken;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
-import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpMethod;
@@ -42,7 +41,9 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.curioswitch.curiostack.gcloud.core.util.AsyncRefreshingValue;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 abstract class AbstractAccessTokenProvider implements AccessTokenProvider {
 
@@ -66,20 +67,23 @@ abstract class AbstractAccessTokenProvider implements AccessTokenProvider {
   private final AsyncRefreshingValue<AccessToken> cachedAccessToken;
   private final AsyncRefreshingValue<AccessToken> cachedIdToken;
 
-  AbstractAccessTokenProvider(WebClient googleApisClient, Clock clock) {
+  AbstractAccessTokenProvider(
+      WebClient googleApisClient, Clock clock, RefreshScheduler refreshScheduler) {
     this.googleApisClient = googleApisClient;
     this.clock = clock;
     cachedAccessToken =
         new AsyncRefreshingValue<>(
+            "gcloud-access-token",
             () -> this.refresh(Type.ACCESS_TOKEN),
             AbstractAccessTokenProvider::extractExpirationTime,
-            CommonPools.workerGroup().next(),
+            refreshScheduler,
             clock);
     cachedIdToken =
         new AsyncRefreshingValue<>(
+            "gcloud-id-token",
             () -> this.refresh(Type.ID_TOKEN),
             AbstractAccessTokenProvider::extractExpirationTime,
-            CommonPools.workerGroup().next(),
+            refreshScheduler,
             clock);
   }
 
@@ -99,6 +103,20 @@ abstract class AbstractAccessTokenProvider implements AccessTokenProvider {
     return cachedIdToken.get().thenApply(AccessToken::getTokenValue);
   }
 
+  @Override
+  @Nullable
+  public String getCachedAccessToken() {
+    AccessToken token = cachedAccessToken.getIfValid();
+    return token != null ? token.getTokenValue() : null;
+  }
+
+  @Override
+  @Nullable
+  public String getCachedGoogleIdToken() {
+    AccessToken token = cachedIdToken.getIfValid();
+    return token != null ? token.getTokenValue() : null;
+  }
+
   protected CompletableFuture<AggregatedHttpResponse> fetchToken(Type type) {
     HttpData data = HttpData.wrap(refreshRequestContent(type)).withEndOfStream();
     return googleApisClient
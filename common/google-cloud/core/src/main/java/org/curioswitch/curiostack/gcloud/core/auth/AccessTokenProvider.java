@@ -30,9 +30,11 @@ import com.google.auth.oauth2.UserCredentials;
 import com.linecorp.armeria.client.WebClient;
 import java.time.Clock;
 import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.curioswitch.curiostack.gcloud.core.RetryingGoogleApis;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 public interface AccessTokenProvider {
 
@@ -40,22 +42,35 @@ public interface AccessTokenProvider {
   class Factory {
     private final WebClient googleAccountsClient;
     private final Clock clock;
+    private final RefreshScheduler refreshScheduler;
+
+    /**
+     * Creates a {@link Factory} for use without dependency injection, with tokens refreshed by
+     * {@link RefreshScheduler#shared()}.
+     */
+    public Factory(WebClient googleApisClient, Clock clock) {
+      this(googleApisClient, clock, RefreshScheduler.shared());
+    }
 
     @Inject
-    public Factory(@RetryingGoogleApis WebClient googleApisClient, Clock clock) {
+    public Factory(
+        @RetryingGoogleApis WebClient googleApisClient,
+        Clock clock,
+        RefreshScheduler refreshScheduler) {
       this.googleAccountsClient = googleApisClient;
       this.clock = clock;
+      this.refreshScheduler = refreshScheduler;
     }
 
     public AccessTokenProvider create(Credentials credentials) {
       if (credentials instanceof UserCredentials) {
         return new UserCredentialsAccessTokenProvider(
-            googleAccountsClient, clock, (UserCredentials) credentials);
+            googleAccountsClient, clock, refreshScheduler, (UserCredentials) credentials);
       } else if (credentials instanceof ServiceAccountCredentials) {
         return new ServiceAccountAccessTokenProvider(
-            googleAccountsClient, clock, (ServiceAccountCredentials) credentials);
+            googleAccountsClient, clock, refreshScheduler, (ServiceAccountCredentials) credentials);
       } else if (credentials instanceof ComputeEngineCredentials) {
-        return new ComputeEngineAccessTokenProvider(googleAccountsClient, clock);
+        return new ComputeEngineAccessTokenProvider(googleAccountsClient, clock, refreshScheduler);
       }
       throw new IllegalArgumentException("Unsupported credentials type: " + credentials);
     }
@@ -64,4 +79,22 @@ public interface AccessTokenProvider {
   CompletableFuture<String> getAccessToken();
 
   CompletableFuture<String> getGoogleIdToken();
+
+  /**
+   * Returns the access token if it is cached and has not expired, or {@code null} if it must be
+   * fetched with {@link #getAccessToken()}.
+   */
+  @Nullable
+  default String getCachedAccessToken() {
+    return null;
+  }
+
+  /**
+   * Returns the Google ID token if it is cached and has not expired, or {@code null} if it must be
+   * fetched with {@link #getGoogleIdToken()}.
+   */
+  @Nullable
+  default String getCachedGoogleIdToken() {
+    return null;
+  }
 }
@@ -36,14 +36,16 @@ import java.net.URI;
 import java.time.Clock;
 import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 class ComputeEngineAccessTokenProvider extends AbstractAccessTokenProvider {
 
   private static final AsciiString METADATA_FLAVOR_HEADER = HttpHeaderNames.of("Metadata-Flavor");
 
   @Inject
-  ComputeEngineAccessTokenProvider(WebClient googleApisClient, Clock clock) {
-    super(googleApisClient, clock);
+  ComputeEngineAccessTokenProvider(
+      WebClient googleApisClient, Clock clock, RefreshScheduler refreshScheduler) {
+    super(googleApisClient, clock, refreshScheduler);
   }
 
   @Override
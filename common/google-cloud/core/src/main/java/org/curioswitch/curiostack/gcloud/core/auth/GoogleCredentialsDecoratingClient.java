@@ -23,17 +23,21 @@
  */
 package org.curioswitch.curiostack.gcloud.core.auth;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.linecorp.armeria.client.Client;
 import com.linecorp.armeria.client.ClientRequestContext;
 import com.linecorp.armeria.client.HttpClient;
 import com.linecorp.armeria.client.SimpleDecoratingClient;
 import com.linecorp.armeria.client.SimpleDecoratingHttpClient;
 import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpHeaders;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.util.Exceptions;
 import io.netty.util.AsciiString;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -55,9 +59,18 @@ public class GoogleCredentialsDecoratingClient extends SimpleDecoratingHttpClien
 
     public Function<HttpClient, GoogleCredentialsDecoratingClient> newAccessTokenDecorator(
         AsciiString header) {
+      return newAccessTokenDecorator(header, HttpHeaders.of());
+    }
+
+    /**
+     * Returns a decorator which sets the access token in {@code header} and also sets {@code
+     * additionalHeaders}. Setting them together costs only a single header mutation per request.
+     */
+    public Function<HttpClient, GoogleCredentialsDecoratingClient> newAccessTokenDecorator(
+        AsciiString header, HttpHeaders additionalHeaders) {
       return client ->
           new GoogleCredentialsDecoratingClient(
-              client, accessTokenProvider, TokenType.ACCESS_TOKEN, header);
+              client, accessTokenProvider, TokenType.ACCESS_TOKEN, header, additionalHeaders);
     }
 
     public Function<HttpClient, GoogleCredentialsDecoratingClient> newIdTokenDecorator() {
@@ -68,7 +81,7 @@ public class GoogleCredentialsDecoratingClient extends SimpleDecoratingHttpClien
         AsciiString header) {
       return client ->
           new GoogleCredentialsDecoratingClient(
-              client, accessTokenProvider, TokenType.ID_TOKEN, header);
+              client, accessTokenProvider, TokenType.ID_TOKEN, header, HttpHeaders.of());
     }
   }
 
@@ -80,37 +93,76 @@ public class GoogleCredentialsDecoratingClient extends SimpleDecoratingHttpClien
   private final AccessTokenProvider accessTokenProvider;
   private final TokenType type;
   private final AsciiString header;
+  private final HttpHeaders additionalHeaders;
+
+  @Nullable private volatile CachedHeaders cachedHeaders;
 
   /** Creates a new instance that decorates the specified {@link Client}. */
   private GoogleCredentialsDecoratingClient(
       HttpClient delegate,
       AccessTokenProvider accessTokenProvider,
       TokenType type,
-      AsciiString header) {
+      AsciiString header,
+      HttpHeaders additionalHeaders) {
     super(delegate);
     this.accessTokenProvider = accessTokenProvider;
     this.type = type;
     this.header = header;
+    this.additionalHeaders = additionalHeaders;
   }
 
   @Override
-  public HttpResponse execute(ClientRequestContext ctx, HttpRequest req) {
-    // if (ctx.additionalRequestHeaders().contains(header) || req.headers().contains(header)) {
-    //  return delegate().execute(ctx, req);
-    // }
+  public HttpResponse execute(ClientRequestContext ctx, HttpRequest req) throws Exception {
+    String token =
+        type == TokenType.ACCESS_TOKEN
+            ? accessTokenProvider.getCachedAccessToken()
+            : accessTokenProvider.getCachedGoogleIdToken();
+    if (token != null) {
+      // Fast path, no need to wait for a token.
+      ctx.mutateAdditionalRequestHeaders(builder -> builder.set(headers(token)));
+      return unwrap().execute(ctx, req);
+    }
+
+    CompletableFuture<String> tokenFuture =
+        type == TokenType.ACCESS_TOKEN
+            ? accessTokenProvider.getAccessToken()
+            : accessTokenProvider.getGoogleIdToken();
     return HttpResponse.from(
-        (type == TokenType.ACCESS_TOKEN
-                ? accessTokenProvider.getAccessToken()
-                : accessTokenProvider.getGoogleIdToken())
-            .thenApplyAsync(
-                (token) -> {
-                  ctx.addAdditionalRequestHeader(header, "Bearer " + token);
-                  try {
-                    return unwrap().execute(ctx, req);
-                  } catch (Exception e) {
-                    return Exceptions.throwUnsafely(e);
-                  }
-                },
-                ctx.eventLoop()));
+        tokenFuture.thenApplyAsync(
+            (fetchedToken) -> {
+              ctx.mutateAdditionalRequestHeaders(builder -> builder.set(headers(fetchedToken)));
+              try {
+                return unwrap().execute(ctx, req);
+              } catch (Exception e) {
+                return Exceptions.throwUnsafely(e);
+              }
+            },
+            ctx.eventLoop()));
+  }
+
+  /**
+   * Returns the headers to add for {@code token}. The headers are only rebuilt when the token
+   * changes, so normally every request reuses the same instance.
+   */
+  @VisibleForTesting
+  HttpHeaders headers(String token) {
+    CachedHeaders cachedHeaders = this.cachedHeaders;
+    // Providers return the same instance until the token is refreshed, which equals checks first.
+    if (cachedHeaders != null && cachedHeaders.token.equals(token)) {
+      return cachedHeaders.headers;
+    }
+    HttpHeaders headers = additionalHeaders.toBuilder().set(header, "Bearer " + token).build();
+    this.cachedHeaders = new CachedHeaders(token, headers);
+    return headers;
+  }
+
+  private static final class CachedHeaders {
+    private final String token;
+    private final HttpHeaders headers;
+
+    private CachedHeaders(String token, HttpHeaders headers) {
+      this.token = token;
+      this.headers = headers;
+    }
   }
 }
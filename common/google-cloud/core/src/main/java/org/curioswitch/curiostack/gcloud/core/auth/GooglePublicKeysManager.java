@@ -30,7 +30,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Streams;
 import com.linecorp.armeria.client.WebClient;
-import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpHeaders;
 import com.linecorp.armeria.common.HttpStatus;
@@ -52,6 +51,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.curioswitch.curiostack.gcloud.core.RetryingGoogleApis;
 import org.curioswitch.curiostack.gcloud.core.util.AsyncRefreshingValue;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Style;
 import org.immutables.value.Value.Style.BuilderVisibility;
@@ -87,15 +87,19 @@ public class GooglePublicKeysManager {
   @Inject
   // We want to use seconds like the HTTP response.
   @SuppressWarnings({"CanonicalDuration", "ConstructorLeaksThis"})
-  public GooglePublicKeysManager(@RetryingGoogleApis WebClient googleApisClient, Clock clock) {
+  public GooglePublicKeysManager(
+      @RetryingGoogleApis WebClient googleApisClient,
+      Clock clock,
+      RefreshScheduler refreshScheduler) {
     this.googleApisClient = googleApisClient;
     this.clock = clock;
 
     keysCache =
         new AsyncRefreshingValue<>(
+            "google-public-keys",
             this::refresh,
             CachedPublicKeys::expirationTime,
-            CommonPools.workerGroup().next(),
+            refreshScheduler,
             clock);
   }
 
@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.time.Clock;
 import java.util.concurrent.TimeUnit;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 class ServiceAccountAccessTokenProvider extends AbstractAccessTokenProvider {
 
@@ -49,8 +50,11 @@ class ServiceAccountAccessTokenProvider extends AbstractAccessTokenProvider {
   private final ServiceAccountCredentials credentials;
 
   ServiceAccountAccessTokenProvider(
-      WebClient googleAccountsClient, Clock clock, ServiceAccountCredentials credentials) {
-    super(googleAccountsClient, clock);
+      WebClient googleAccountsClient,
+      Clock clock,
+      RefreshScheduler refreshScheduler,
+      ServiceAccountCredentials credentials) {
+    super(googleAccountsClient, clock, refreshScheduler);
     this.credentials = credentials;
   }
 
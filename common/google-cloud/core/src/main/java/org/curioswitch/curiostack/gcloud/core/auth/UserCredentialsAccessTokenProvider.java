@@ -30,6 +30,7 @@ import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.QueryStringEncoder;
 import java.time.Clock;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 
 class UserCredentialsAccessTokenProvider extends AbstractAccessTokenProvider {
 
@@ -38,8 +39,11 @@ class UserCredentialsAccessTokenProvider extends AbstractAccessTokenProvider {
   private final ByteBuf refreshRequestContent;
 
   UserCredentialsAccessTokenProvider(
-      WebClient googleAccountsClient, Clock clock, UserCredentials credentials) {
-    super(googleAccountsClient, clock);
+      WebClient googleAccountsClient,
+      Clock clock,
+      RefreshScheduler refreshScheduler,
+      UserCredentials credentials) {
+    super(googleAccountsClient, clock, refreshScheduler);
     refreshRequestContent = createRefreshRequestContent(credentials);
   }
 
@@ -25,20 +25,22 @@ package org.curioswitch.curiostack.gcloud.core.grpc;
 
 import brave.Tracing;
 import com.linecorp.armeria.client.ClientBuilder;
-import com.linecorp.armeria.client.ClientRequestContext;
 import com.linecorp.armeria.client.Clients;
-import com.linecorp.armeria.client.SimpleDecoratingHttpClient;
 import com.linecorp.armeria.client.brave.BraveClient;
 import com.linecorp.armeria.client.logging.LoggingClient;
 import com.linecorp.armeria.client.metric.MetricCollectingClient;
 import com.linecorp.armeria.common.HttpHeaderNames;
-import com.linecorp.armeria.common.HttpRequest;
-import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpHeaders;
 import javax.inject.Inject;
 import org.curioswitch.curiostack.gcloud.core.auth.GoogleCredentialsDecoratingClient;
 
 public class GrpcApiClientBuilder {
 
+  // Many Google services do not support the standard application/grpc+proto header, so it is
+  // overridden along with the credentials.
+  private static final HttpHeaders GRPC_CONTENT_TYPE =
+      HttpHeaders.of(HttpHeaderNames.CONTENT_TYPE, "application/grpc");
+
   private final Tracing tracing;
   private final GoogleCredentialsDecoratingClient.Factory credentialsDecorator;
 
@@ -52,22 +54,8 @@ public class GrpcApiClientBuilder {
   public ClientBuilder newBuilder(String url) {
     return Clients.builder("gproto+" + url)
         .decorator(
-            client ->
-                new SimpleDecoratingHttpClient(client) {
-                  @Override
-                  public HttpResponse execute(ClientRequestContext ctx, HttpRequest req)
-                      throws Exception {
-                    // Many Google services do not support the standard application/grpc+proto
-                    // header...
-                    req =
-                        req.withHeaders(
-                            req.headers().toBuilder()
-                                .set(HttpHeaderNames.CONTENT_TYPE, "application/grpc")
-                                .build());
-                    return unwrap().execute(ctx, req);
-                  }
-                })
-        .decorator(credentialsDecorator.newAccessTokenDecorator())
+            credentialsDecorator.newAccessTokenDecorator(
+                HttpHeaderNames.AUTHORIZATION, GRPC_CONTENT_TYPE))
         .decorator(BraveClient.newDecorator(tracing))
         .decorator(MetricCollectingClient.newDecorator(MetricLabels.grpcRequestLabeler()))
         .decorator(LoggingClient.builder().newDecorator());
@@ -23,14 +23,20 @@
  */
 package org.curioswitch.curiostack.gcloud.core.util;
 
-import static java.time.temporal.ChronoUnit.MILLIS;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
-import io.netty.util.concurrent.EventExecutor;
+import com.google.common.collect.ImmutableList;
+import com.linecorp.armeria.common.metric.MoreMeters;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -38,6 +44,11 @@ import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * A value which is loaded asynchronously and refreshed ahead of its expiration time using a
+ * {@link RefreshScheduler}. If a refresh fails, it is retried with backoff while the previous
+ * value, if any, continues to be served even if it has expired.
+ */
 public class AsyncRefreshingValue<T> {
 
   private static final Logger logger = LoggerFactory.getLogger(AsyncRefreshingValue.class);
@@ -46,78 +57,188 @@ public class AsyncRefreshingValue<T> {
 
   private final Supplier<CompletableFuture<T>> refresher;
   private final Function<T, Instant> expirationTimeExtractor;
-  private final EventExecutor executor;
+  private final RefreshScheduler scheduler;
   private final Clock clock;
 
+  private final Timer refreshLatency;
+  private final Counter refreshFailures;
+
   @Nullable private volatile T currentValue;
   @Nullable private volatile Instant expirationTime;
+  @Nullable private volatile Instant refreshedTime;
 
   @Nullable private volatile CompletableFuture<T> pendingRefresh;
 
+  // Set while backing off after a failed refresh.
+  @Nullable private volatile Throwable lastFailure;
+  private volatile long retryAfterNanos;
+
+  // Only accessed from the scheduler's executor.
+  private int consecutiveFailures;
+  @Nullable private ScheduledFuture<?> scheduledRefresh;
+
+  /**
+   * Creates a new {@link AsyncRefreshingValue}, with metrics tagged with {@code name}. Nothing is
+   * loaded until the first call to {@link #get()}.
+   */
   public AsyncRefreshingValue(
+      String name,
       Supplier<CompletableFuture<T>> refresher,
       Function<T, Instant> expirationTimeExtractor,
-      EventExecutor executor,
+      RefreshScheduler scheduler,
       Clock clock) {
     this.refresher = refresher;
     this.expirationTimeExtractor = expirationTimeExtractor;
-    this.executor = executor;
+    this.scheduler = scheduler;
     this.clock = clock;
+
+    MeterRegistry registry = scheduler.meterRegistry();
+    List<Tag> tags = ImmutableList.of(Tag.of("value", name));
+    refreshLatency = MoreMeters.newTimer(registry, "refreshing_value_refresh_duration", tags);
+    refreshFailures = registry.counter("refreshing_value_refresh_failures", tags);
+    registry.gauge("refreshing_value_age_seconds", tags, this, AsyncRefreshingValue::ageSeconds);
   }
 
   public CompletableFuture<T> get() {
-    if (expirationTime == null) {
-      return refreshIfNotRefreshing();
-    }
-    if (clock.instant().isBefore(expirationTime)) {
-      // Even if the value was updated during this check, it can only be newer and is always safe
-      // to return without making this atomic.
-      return completedFuture(currentValue);
+    T value = getIfValid();
+    if (value != null) {
+      return completedFuture(value);
     }
     CompletableFuture<T> pendingRefresh = this.pendingRefresh;
     if (pendingRefresh != null) {
       return pendingRefresh;
     }
+    if (System.nanoTime() - retryAfterNanos < 0) {
+      // Backing off after a failure, serve the stale value if there is one rather than hammering
+      // the server.
+      T staleValue = currentValue;
+      if (staleValue != null) {
+        return completedFuture(staleValue);
+      }
+      Throwable lastFailure = this.lastFailure;
+      if (lastFailure != null) {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(lastFailure);
+        return failed;
+      }
+    }
     // Since we eagerly refresh, it should be extremely rare to have to refresh on demand like this
     // so synchronization overhead isn't a big deal.
     return refreshIfNotRefreshing();
   }
 
+  /**
+   * Returns the current value if it has not expired, or {@code null} otherwise. Allows callers to
+   * avoid the overhead of a {@link CompletableFuture} in the common case where the value is cached.
+   */
+  @Nullable
+  public T getIfValid() {
+    Instant expirationTime = this.expirationTime;
+    if (expirationTime != null && clock.instant().isBefore(expirationTime)) {
+      return currentValue;
+    }
+    return null;
+  }
+
   private synchronized CompletableFuture<T> refreshIfNotRefreshing() {
     CompletableFuture<T> pendingRefresh = this.pendingRefresh;
     if (pendingRefresh != null) {
       return pendingRefresh;
     }
-    pendingRefresh = this.refresh();
+    pendingRefresh = new CompletableFuture<>();
     this.pendingRefresh = pendingRefresh;
+    refresh(pendingRefresh);
     return pendingRefresh;
   }
 
   @SuppressWarnings("FutureReturnValueIgnored")
-  private CompletableFuture<T> refresh() {
-    return refresher
-        .get()
-        .handleAsync(
-            (newValue, t) -> {
-              if (t != null) {
-                logger.warn("Unexpected error refreshing value.", t);
-                // 30 sec delay should be long enough to not require backoff.
-                executor.schedule(this::refresh, 30, TimeUnit.SECONDS);
-                return currentValue;
-              }
-
-              currentValue = newValue;
-              expirationTime = expirationTimeExtractor.apply(currentValue);
-              pendingRefresh = null;
-
-              // Optimistically refresh before expiration.
-              Instant refreshTime = expirationTime.minus(REFRESH_SKEW);
-              long refreshDelayMillis = MILLIS.between(clock.instant(), refreshTime);
-              if (refreshDelayMillis > 0) {
-                executor.schedule(this::refresh, refreshDelayMillis, TimeUnit.MILLISECONDS);
-              }
-              return newValue;
-            },
-            executor);
+  private void refresh(CompletableFuture<T> result) {
+    long startNanos = System.nanoTime();
+    CompletableFuture<T> refreshed;
+    try {
+      refreshed = refresher.get();
+    } catch (Throwable t) {
+      refreshed = new CompletableFuture<>();
+      refreshed.completeExceptionally(t);
+    }
+    refreshed.handleAsync(
+        (newValue, t) -> {
+          refreshLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+          if (t == null && newValue == null) {
+            t = new NullPointerException("Refresher returned null.");
+          }
+          if (t != null) {
+            onRefreshFailed(result, t);
+          } else {
+            onRefreshed(result, newValue);
+          }
+          return null;
+        },
+        scheduler.executor());
+  }
+
+  private void onRefreshed(CompletableFuture<T> result, T newValue) {
+    Instant newExpirationTime = expirationTimeExtractor.apply(newValue);
+    currentValue = newValue;
+    expirationTime = newExpirationTime;
+    refreshedTime = clock.instant();
+    consecutiveFailures = 0;
+    lastFailure = null;
+    retryAfterNanos = System.nanoTime();
+    finishRefresh(result);
+    result.complete(newValue);
+
+    // Optimistically refresh before expiration.
+    Duration refreshDelay =
+        scheduler.jitteredRefreshDelay(
+            Duration.between(clock.instant(), newExpirationTime.minus(REFRESH_SKEW)));
+    if (!refreshDelay.isZero()) {
+      scheduleRefresh(refreshDelay);
+    }
+  }
+
+  private void onRefreshFailed(CompletableFuture<T> result, Throwable t) {
+    refreshFailures.increment();
+    consecutiveFailures++;
+    Duration backoff = scheduler.backoff(consecutiveFailures);
+    logger.warn("Unexpected error refreshing value, retrying in {}.", backoff, t);
+
+    lastFailure = t;
+    retryAfterNanos = System.nanoTime() + backoff.toNanos();
+    finishRefresh(result);
+
+    T staleValue = currentValue;
+    if (staleValue != null) {
+      result.complete(staleValue);
+    } else {
+      result.completeExceptionally(t);
+    }
+
+    scheduleRefresh(backoff);
+  }
+
+  /** Schedules the next refresh, replacing any already scheduled so there is only ever one. */
+  private void scheduleRefresh(Duration delay) {
+    if (scheduledRefresh != null) {
+      scheduledRefresh.cancel(false);
+    }
+    scheduledRefresh =
+        scheduler
+            .executor()
+            .schedule(this::refreshIfNotRefreshing, delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private synchronized void finishRefresh(CompletableFuture<T> result) {
+    if (pendingRefresh == result) {
+      pendingRefresh = null;
+    }
+  }
+
+  private double ageSeconds() {
+    Instant refreshedTime = this.refreshedTime;
+    if (refreshedTime == null) {
+      return Double.NaN;
+    }
+    return Duration.between(refreshedTime, clock.instant()).toMillis() / 1000.0;
   }
 }
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.core.util;
+
+import com.linecorp.armeria.common.CommonPools;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.util.concurrent.EventExecutor;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Schedules refreshes of {@link AsyncRefreshingValue}s. Refreshes are jittered so that replicas
+ * which started at the same time don't all hit the same endpoint at the same time, and failures
+ * are retried with exponential backoff. A single instance should be shared by all values.
+ */
+public class RefreshScheduler {
+
+  private static final RefreshScheduler SHARED = new RefreshScheduler(Metrics.globalRegistry);
+
+  // Refreshes happen up to this fraction of the time until the scheduled refresh earlier.
+  private static final double REFRESH_JITTER = 0.1;
+
+  private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+  private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+
+  /**
+   * Returns a {@link RefreshScheduler} which records metrics to the global {@link MeterRegistry},
+   * for use when one cannot be injected.
+   */
+  public static RefreshScheduler shared() {
+    return SHARED;
+  }
+
+  private final MeterRegistry meterRegistry;
+  private final EventExecutor executor;
+
+  public RefreshScheduler(MeterRegistry meterRegistry) {
+    this(meterRegistry, CommonPools.workerGroup().next());
+  }
+
+  RefreshScheduler(MeterRegistry meterRegistry, EventExecutor executor) {
+    this.meterRegistry = meterRegistry;
+    this.executor = executor;
+  }
+
+  MeterRegistry meterRegistry() {
+    return meterRegistry;
+  }
+
+  /** Returns the executor refreshes are scheduled on and their results are processed on. */
+  EventExecutor executor() {
+    return executor;
+  }
+
+  /**
+   * Returns the delay to use for a refresh that should happen after {@code delay}, moved earlier
+   * by a random amount.
+   */
+  Duration jitteredRefreshDelay(Duration delay) {
+    if (delay.isNegative() || delay.isZero()) {
+      return Duration.ZERO;
+    }
+    double jitter = ThreadLocalRandom.current().nextDouble(REFRESH_JITTER);
+    return Duration.ofNanos((long) (delay.toNanos() * (1 - jitter)));
+  }
+
+  /**
+   * Returns the delay before retrying after {@code consecutiveFailures} failed refreshes, doubling
+   * for every failure up to a maximum with the upper half randomized.
+   */
+  Duration backoff(int consecutiveFailures) {
+    int exponent = Math.min(Math.max(consecutiveFailures - 1, 0), 30);
+    long maxNanos = Math.min(INITIAL_BACKOFF.toNanos() << exponent, MAX_BACKOFF.toNanos());
+    long halfNanos = maxNanos / 2;
+    return Duration.ofNanos(halfNanos + ThreadLocalRandom.current().nextLong(halfNanos + 1));
+  }
+}
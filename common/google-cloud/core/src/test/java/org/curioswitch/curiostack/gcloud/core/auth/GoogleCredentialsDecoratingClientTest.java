@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.curiostack.gcloud.core.auth;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.HttpClient;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpHeaders;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+class GoogleCredentialsDecoratingClientTest {
+
+  private final List<Thread> delegateThreads = new CopyOnWriteArrayList<>();
+  private final List<HttpHeaders> delegateHeaders = new CopyOnWriteArrayList<>();
+
+  private final HttpClient delegate =
+      (ctx, req) -> {
+        delegateThreads.add(Thread.currentThread());
+        delegateHeaders.add(ctx.additionalRequestHeaders());
+        return HttpResponse.of(HttpStatus.OK);
+      };
+
+  @Test
+  void cachedToken() throws Exception {
+    GoogleCredentialsDecoratingClient client =
+        new GoogleCredentialsDecoratingClient.Factory(new FakeAccessTokenProvider("token"))
+            .newAccessTokenDecorator(
+                HttpHeaderNames.AUTHORIZATION,
+                HttpHeaders.of(HttpHeaderNames.CONTENT_TYPE, "application/grpc"))
+            .apply(delegate);
+
+    client.execute(newContext(), HttpRequest.of(HttpMethod.GET, "/")).aggregate().join();
+    client.execute(newContext(), HttpRequest.of(HttpMethod.GET, "/")).aggregate().join();
+
+    // Delegates synchronously without waiting for the token.
+    assertThat(delegateThreads).containsOnly(Thread.currentThread());
+    assertThat(delegateHeaders).hasSize(2);
+    assertThat(delegateHeaders.get(0).get(HttpHeaderNames.AUTHORIZATION)).isEqualTo("Bearer token");
+    assertThat(delegateHeaders.get(0).get(HttpHeaderNames.CONTENT_TYPE))
+        .isEqualTo("application/grpc");
+    assertThat(delegateHeaders.get(1).get(HttpHeaderNames.AUTHORIZATION))
+        .isEqualTo("Bearer token");
+    // The headers are only built once per token and then copied into each request.
+    assertThat(client.headers("token")).isSameAs(client.headers("token"));
+  }
+
+  @Test
+  void keepsOtherAdditionalHeaders() throws Exception {
+    GoogleCredentialsDecoratingClient client =
+        new GoogleCredentialsDecoratingClient.Factory(new FakeAccessTokenProvider("token"))
+            .newAccessTokenDecorator()
+            .apply(delegate);
+
+    ClientRequestContext ctx = newContext();
+    ctx.addAdditionalRequestHeader(HttpHeaderNames.USER_AGENT, "curio");
+    client.execute(ctx, HttpRequest.of(HttpMethod.GET, "/")).aggregate().join();
+
+    assertThat(delegateHeaders).hasSize(1);
+    assertThat(delegateHeaders.get(0).get(HttpHeaderNames.AUTHORIZATION)).isEqualTo("Bearer token");
+    assertThat(delegateHeaders.get(0).get(HttpHeaderNames.USER_AGENT)).isEqualTo("curio");
+  }
+
+  @Test
+  void uncachedToken() throws Exception {
+    GoogleCredentialsDecoratingClient client =
+        new GoogleCredentialsDecoratingClient.Factory(new FakeAccessTokenProvider(null))
+            .newIdTokenDecorator()
+            .apply(delegate);
+
+    client.execute(newContext(), HttpRequest.of(HttpMethod.GET, "/")).aggregate().join();
+
+    assertThat(delegateHeaders).hasSize(1);
+    assertThat(delegateHeaders.get(0).get(HttpHeaderNames.AUTHORIZATION))
+        .isEqualTo("Bearer id-token");
+  }
+
+  private static ClientRequestContext newContext() {
+    return ClientRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+  }
+
+  private static class FakeAccessTokenProvider implements AccessTokenProvider {
+
+    @Nullable private final String cachedToken;
+
+    private FakeAccessTokenProvider(@Nullable String cachedToken) {
+      this.cachedToken = cachedToken;
+    }
+
+    @Override
+    public CompletableFuture<String> getAccessToken() {
+      return completedFuture("token");
+    }
+
+    @Override
+    public CompletableFuture<String> getGoogleIdToken() {
+      return completedFuture("id-token");
+    }
+
+    @Override
+    @Nullable
+    public String getCachedAccessToken() {
+      return cachedToken;
+    }
+
+    @Override
+    @Nullable
+    public String getCachedGoogleIdToken() {
+      return cachedToken;
+    }
+  }
+}
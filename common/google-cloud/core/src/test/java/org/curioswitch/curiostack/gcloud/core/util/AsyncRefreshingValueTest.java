@@ -23,10 +23,137 @@
  */
 package org.curioswitch.curiostack.gcloud.core.util;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 class AsyncRefreshingValueTest {
 
+  private final MutableClock clock = new MutableClock();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final RefreshScheduler scheduler = new RefreshScheduler(meterRegistry);
+  private final AtomicInteger refreshes = new AtomicInteger();
+
+  private Supplier<CompletableFuture<Instant>> refresher;
+  private AsyncRefreshingValue<Instant> value;
+
+  @BeforeEach
+  void setUp() {
+    // The values are their own expiration times.
+    value =
+        new AsyncRefreshingValue<>(
+            "test",
+            () -> {
+              refreshes.incrementAndGet();
+              return refresher.get();
+            },
+            expiration -> expiration,
+            scheduler,
+            clock);
+  }
+
+  @Test
+  void cachesValue() {
+    Instant expiration = clock.instant().plus(Duration.ofMinutes(1));
+    refresher = () -> CompletableFuture.completedFuture(expiration);
+
+    assertThat(value.get().join()).isEqualTo(expiration);
+    assertThat(value.get().join()).isEqualTo(expiration);
+    assertThat(value.getIfValid()).isEqualTo(expiration);
+    assertThat(refreshes).hasValue(1);
+
+    clock.advance(Duration.ofMinutes(2));
+    assertThat(value.getIfValid()).isNull();
+  }
+
+  @Test
+  void servesStaleValueOnError() {
+    Instant expiration = clock.instant().plus(Duration.ofMinutes(1));
+    refresher = () -> CompletableFuture.completedFuture(expiration);
+    assertThat(value.get().join()).isEqualTo(expiration);
+
+    clock.advance(Duration.ofMinutes(2));
+    refresher = AsyncRefreshingValueTest::failedRefresh;
+
+    assertThat(value.get().join()).isEqualTo(expiration);
+    assertThat(value.get().join()).isEqualTo(expiration);
+    // Second call served the stale value while backing off instead of refreshing again.
+    assertThat(refreshes).hasValue(2);
+    assertThat(meterRegistry.get("refreshing_value_refresh_failures").counter().count())
+        .isEqualTo(1);
+  }
+
   @Test
-  void normal() {}
+  void failsWithoutValue() {
+    refresher = AsyncRefreshingValueTest::failedRefresh;
+
+    assertThatThrownBy(() -> value.get().join()).isInstanceOf(CompletionException.class);
+    assertThatThrownBy(() -> value.get().join())
+        .isInstanceOf(CompletionException.class)
+        .hasRootCauseInstanceOf(IllegalStateException.class);
+    assertThat(refreshes).hasValue(1);
+  }
+
+  @Test
+  void jittersRefreshes() {
+    Duration delay = Duration.ofMinutes(10);
+    for (int i = 0; i < 100; i++) {
+      assertThat(scheduler.jitteredRefreshDelay(delay))
+          .isBetween(Duration.ofMinutes(9), Duration.ofMinutes(10));
+    }
+    assertThat(scheduler.jitteredRefreshDelay(Duration.ofMinutes(-1))).isEqualTo(Duration.ZERO);
+  }
+
+  @Test
+  void backsOffExponentially() {
+    for (int i = 0; i < 100; i++) {
+      assertThat(scheduler.backoff(1))
+          .isBetween(Duration.ofMillis(500), Duration.ofSeconds(1));
+      assertThat(scheduler.backoff(3)).isBetween(Duration.ofSeconds(2), Duration.ofSeconds(4));
+      assertThat(scheduler.backoff(100))
+          .isBetween(Duration.ofSeconds(150), Duration.ofMinutes(5));
+    }
+  }
+
+  private static CompletableFuture<Instant> failedRefresh() {
+    CompletableFuture<Instant> future = new CompletableFuture<>();
+    future.completeExceptionally(new IllegalStateException("Refresh failed."));
+    return future;
+  }
+
+  private static class MutableClock extends Clock {
+
+    private volatile Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
 }
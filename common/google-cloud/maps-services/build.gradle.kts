@@ -25,20 +25,33 @@
 plugins {
     `java-library`
     `maven-publish`
+
+    id("me.champeau.gradle.jmh")
 }
 
 base {
     archivesBaseName = "armeria-google-map-services"
 }
 
+jmh {
+    warmupIterations = 5
+    iterations = 10
+    fork = 2
+    profilers = listOf()
+    isZip64 = true
+}
+
 dependencies {
     compileOnly(project(":common:curio-helpers"))
 
     api("com.google.maps:google-maps-services:0.9.3")
     api("com.typesafe:config")
 
+    implementation("com.github.ben-manes.caffeine:caffeine")
     implementation("com.google.guava:guava")
     implementation("com.linecorp.armeria:armeria")
+    implementation("io.micrometer:micrometer-core")
+    implementation("io.sgr:s2-geometry-library-java")
 
     annotationProcessor("com.google.dagger:dagger-compiler")
     compileOnly("com.google.dagger:dagger")
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.mapsservices;
+
+import com.google.common.io.Resources;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.maps.NearbySearchRequest;
+import com.linecorp.armeria.common.HttpData;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+public class ArmeriaPendingResultBenchmark {
+
+  private static final Gson GSON =
+      ArmeriaRequestHandler.gsonForPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+
+  private static final byte[] NEARBY_SEARCH_RESPONSE;
+
+  static {
+    try {
+      NEARBY_SEARCH_RESPONSE =
+          Resources.toByteArray(Resources.getResource("places_nearby_search_response.json"));
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  @Benchmark
+  public void decodeString(Blackhole bh) {
+    ByteBuf buf = pooledResponse();
+    try {
+      bh.consume(
+          GSON.fromJson(HttpData.wrap(buf).toStringUtf8(), NearbySearchRequest.Response.class));
+    } finally {
+      buf.release();
+    }
+  }
+
+  @Benchmark
+  public void decodeStreaming(Blackhole bh) {
+    ByteBuf buf = pooledResponse();
+    try {
+      bh.consume(
+          ArmeriaPendingResult.decode(
+              HttpData.wrap(buf), NearbySearchRequest.Response.class, GSON));
+    } finally {
+      buf.release();
+    }
+  }
+
+  private static ByteBuf pooledResponse() {
+    ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(NEARBY_SEARCH_RESPONSE.length);
+    buf.writeBytes(NEARBY_SEARCH_RESPONSE);
+    return buf;
+  }
+}
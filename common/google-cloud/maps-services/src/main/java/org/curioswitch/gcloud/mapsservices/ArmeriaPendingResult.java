@@ -24,7 +24,10 @@
 
 package org.curioswitch.gcloud.mapsservices;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.google.maps.ImageResult;
 import com.google.maps.PendingResult;
@@ -32,22 +35,40 @@ import com.google.maps.errors.ApiException;
 import com.google.maps.internal.ApiResponse;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpData;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.HttpStatusClass;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 
 class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult<T> {
 
   private final WebClient client;
+  private final EventLoopGroup eventLoopGroup;
   private final HttpRequest request;
   private final Class<R> responseClass;
   private final Gson gson;
 
-  ArmeriaPendingResult(WebClient client, HttpRequest request, Class<R> responseClass, Gson gson) {
+  ArmeriaPendingResult(
+      WebClient client,
+      EventLoopGroup eventLoopGroup,
+      HttpRequest request,
+      Class<R> responseClass,
+      Gson gson) {
     this.client = client;
+    this.eventLoopGroup = eventLoopGroup;
     this.request = request;
     this.responseClass = responseClass;
     this.gson = gson;
@@ -55,9 +76,7 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
 
   @Override
   public void setCallback(Callback<T> callback) {
-    client
-        .execute(request)
-        .aggregate()
+    execute()
         .handle(
             (msg, t) -> {
               if (t != null) {
@@ -75,7 +94,7 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
 
   @Override
   public T await() throws ApiException, InterruptedException, IOException {
-    return parseResponse(client.execute(request).aggregate().join());
+    return parseResponse(execute().join());
   }
 
   @Override
@@ -91,7 +110,23 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
   @Override
   public void cancel() {}
 
+  // The content of the returned response is pooled and is released by parseResponse.
+  private CompletableFuture<AggregatedHttpResponse> execute() {
+    return client
+        .execute(request)
+        .aggregateWithPooledObjects(eventLoopGroup.next(), ByteBufAllocator.DEFAULT);
+  }
+
   private T parseResponse(AggregatedHttpResponse message) throws ApiException, IOException {
+    try {
+      return parseResponse(message, message.content());
+    } finally {
+      ReferenceCountUtil.safeRelease(message.content());
+    }
+  }
+
+  private T parseResponse(AggregatedHttpResponse message, HttpData content)
+      throws ApiException, IOException {
     HttpStatus status = message.status();
 
     String contentType = message.headers().get(HttpHeaderNames.CONTENT_TYPE);
@@ -99,7 +134,7 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
         && contentType.startsWith("image")
         && responseClass == ImageResult.Response.class
         && status.equals(HttpStatus.OK)) {
-      var result = new ImageResult(contentType, message.content().array());
+      var result = new ImageResult(contentType, content.array());
       @SuppressWarnings("unchecked")
       T castResult = (T) result;
       return castResult;
@@ -107,8 +142,8 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
 
     final R resp;
     try {
-      resp = gson.fromJson(message.contentUtf8(), responseClass);
-    } catch (JsonSyntaxException e) {
+      resp = decode(content, responseClass, gson);
+    } catch (JsonSyntaxException | JsonIOException e) {
       if (!status.codeClass().equals(HttpStatusClass.SUCCESS)) {
         // Some of the APIs return 200 even when the API request fails, as long as the transport
         // mechanism succeeds. In these cases, INVALID_RESPONSE, etc are handled by the Gson
@@ -129,4 +164,19 @@ class ArmeriaPendingResult<T, R extends ApiResponse<T>> implements PendingResult
       throw resp.getError();
     }
   }
+
+  /**
+   * Decodes the JSON in {@code content} directly from its buffer without copying it into a
+   * {@link String} first. Ownership of {@code content} is not transferred.
+   */
+  static <R> R decode(HttpData content, Class<R> responseClass, Gson gson) {
+    final InputStream stream;
+    if (content instanceof ByteBufHolder) {
+      stream = new ByteBufInputStream(((ByteBufHolder) content).content().duplicate());
+    } else {
+      stream = new ByteArrayInputStream(content.array());
+    }
+    Reader reader = new InputStreamReader(stream, UTF_8);
+    return gson.fromJson(reader, responseClass);
+  }
 }
@@ -88,7 +88,7 @@ public class ArmeriaRequestHandler implements GeoApiContext.RequestHandler {
 
   private static final Map<FieldNamingPolicy, Gson> GSONS = new ConcurrentHashMap<>();
 
-  private static Gson gsonForPolicy(FieldNamingPolicy fieldNamingPolicy) {
+  static Gson gsonForPolicy(FieldNamingPolicy fieldNamingPolicy) {
     return GSONS.computeIfAbsent(
         fieldNamingPolicy,
         policy ->
@@ -204,7 +204,8 @@ public class ArmeriaRequestHandler implements GeoApiContext.RequestHandler {
     }
     var request = HttpRequest.of(headers.build(), payload);
 
-    return new ArmeriaPendingResult<>(client, request, clazz, gson);
+    return new ArmeriaPendingResult<>(
+        client, clientFactory.eventLoopGroup(), request, clazz, gson);
   }
 
   @Override
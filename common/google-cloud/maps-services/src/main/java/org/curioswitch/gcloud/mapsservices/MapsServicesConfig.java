@@ -24,6 +24,7 @@
 
 package org.curioswitch.gcloud.mapsservices;
 
+import java.time.Duration;
 import org.curioswitch.common.helpers.immutables.JavaBeanStyle;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Modifiable;
@@ -34,4 +35,17 @@ import org.immutables.value.Value.Modifiable;
 public interface MapsServicesConfig {
   /** Returns the server API key to use to connect to Maps. */
   public String getApiKey();
+
+  /**
+   * Returns the S2 cell level that Places searches are snapped to when caching. Lower levels mean
+   * larger cells, which increases the hit rate at the cost of less precise search centers. Searches
+   * with a small radius compared to the cell size are snapped to a finer level instead.
+   */
+  public int getPlacesCacheS2Level();
+
+  /** Returns the maximum number of Places search responses to cache. */
+  public long getPlacesCacheMaxSize();
+
+  /** Returns how long to cache Places search responses for. */
+  public Duration getPlacesCacheTtl();
 }
@@ -27,13 +27,18 @@ package org.curioswitch.gcloud.mapsservices;
 import com.google.maps.GeoApiContext;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigBeanFactory;
+import dagger.BindsOptionalOf;
 import dagger.Module;
 import dagger.Provides;
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.inject.Singleton;
 
 @Module
 public abstract class MapsServicesModule {
 
+  @BindsOptionalOf
+  abstract MeterRegistry meterRegistry();
+
   @Provides
   @Singleton
   static MapsServicesConfig config(Config config) {
@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.mapsservices;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.maps.GeoApiContext;
+import com.google.maps.NearbySearchRequest;
+import com.google.maps.PendingResult;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.PlaceType;
+import com.google.maps.model.PlacesSearchResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.noop.NoopMeterRegistry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * A cache of Places Nearby Search responses. Searches are normalized to the center of the S2 cell
+ * containing the requested location and a radius bucket large enough to cover the requested circle
+ * from anywhere in the cell, so nearby viewports share a single paid API call. Responses are cached
+ * after decoding and concurrent searches for the same key share one request.
+ *
+ * <p>The cell is at the configured level, or finer if needed so that its radius is at most a
+ * quarter of the requested radius, and buckets are four per power of two, so the searched radius is
+ * at most about 1.5 times the requested radius. Places only returns the 20 most prominent places in
+ * the searched circle, so a wider search can rank places just outside the requested circle above
+ * ones inside it and return a different top 20 than an exact search. This drift is accepted in
+ * exchange for the hit rate.
+ *
+ * <p>Returned responses are shared between callers and must not be modified.
+ */
+@Singleton
+public class PlacesSearchCache {
+
+  // The maximum radius allowed by the Places API.
+  private static final int MAX_RADIUS_METERS = 50000;
+
+  // The largest cell radius, as a fraction of the requested radius, that searches are snapped to.
+  private static final double MAX_CELL_RADIUS_FRACTION = 0.25;
+
+  // Radius buckets grow by at most 2^(1/4), about 19%.
+  private static final int BUCKETS_PER_DOUBLING = 4;
+
+  private final GeoApiContext geoApiContext;
+  private final MeterRegistry meterRegistry;
+  private final int s2Level;
+
+  private final AsyncCache<Key, PlacesSearchResponse> cache;
+
+  @Inject
+  public PlacesSearchCache(
+      GeoApiContext geoApiContext,
+      MapsServicesConfig config,
+      Optional<MeterRegistry> meterRegistry) {
+    checkArgument(
+        config.getPlacesCacheS2Level() >= 0 && config.getPlacesCacheS2Level() <= S2CellId.MAX_LEVEL,
+        "placesCacheS2Level must be between 0 and %s",
+        S2CellId.MAX_LEVEL);
+    this.geoApiContext = geoApiContext;
+    this.meterRegistry = meterRegistry.orElse(NoopMeterRegistry.get());
+    s2Level = config.getPlacesCacheS2Level();
+
+    cache =
+        Caffeine.newBuilder()
+            .maximumSize(config.getPlacesCacheMaxSize())
+            .expireAfterWrite(config.getPlacesCacheTtl())
+            .buildAsync();
+  }
+
+  /**
+   * Returns the places of {@code type} within {@code radius} meters of {@code location}. The
+   * search may be made with a larger radius around a nearby center, so the response can include
+   * places outside of the requested circle.
+   */
+  public ListenableFuture<PlacesSearchResponse> nearbySearch(
+      LatLng location, int radius, PlaceType type) {
+    checkArgument(radius >= 0, "radius must not be negative");
+    Key key = normalize(location, radius, type);
+
+    AtomicBoolean searched = new AtomicBoolean();
+    CompletableFuture<PlacesSearchResponse> response =
+        cache.get(
+            key,
+            (unused, executor) -> {
+              searched.set(true);
+              return search(key);
+            });
+    meterRegistry
+        .counter(
+            searched.get() ? "maps_places_api_calls" : "maps_places_api_calls_saved",
+            "type",
+            type.toUrlValue())
+        .increment();
+
+    CallbackListenableFuture<PlacesSearchResponse> result = new CallbackListenableFuture<>();
+    response.whenComplete(
+        (r, t) -> {
+          if (t != null) {
+            result.onFailure(t);
+          } else {
+            result.onResult(r);
+          }
+        });
+    return result;
+  }
+
+  Key normalize(LatLng location, int radius, PlaceType type) {
+    S2CellId leaf = S2CellId.fromLatLng(S2LatLng.fromDegrees(location.lat, location.lng));
+    S2CellId cellId = leaf.parent(s2Level);
+    double cellRadius = cellRadius(cellId);
+    // Cells that are large compared to the search would widen it too much, use a finer level.
+    while (cellRadius > radius * MAX_CELL_RADIUS_FRACTION && cellId.level() < S2CellId.MAX_LEVEL) {
+      cellId = leaf.parent(cellId.level() + 1);
+      cellRadius = cellRadius(cellId);
+    }
+
+    // Any point in the cell is at most cellRadius from the center, so searching from the center
+    // with the requested radius extended by this amount covers the requested circle.
+    return new Key(cellId.id(), type, radiusBucket(radius + (int) Math.ceil(cellRadius)));
+  }
+
+  private static double cellRadius(S2CellId cellId) {
+    S2LatLng center = cellId.toLatLng();
+    S2Cell cell = new S2Cell(cellId);
+    double cellRadius = 0;
+    for (int i = 0; i < 4; i++) {
+      cellRadius = Math.max(cellRadius, center.getEarthDistance(new S2LatLng(cell.getVertex(i))));
+    }
+    return cellRadius;
+  }
+
+  private CompletableFuture<PlacesSearchResponse> search(Key key) {
+    S2LatLng center = new S2CellId(key.cellId).toLatLng();
+    CompletableFuture<PlacesSearchResponse> future = new CompletableFuture<>();
+    new NearbySearchRequest(geoApiContext)
+        .location(new LatLng(center.latDegrees(), center.lngDegrees()))
+        .radius(key.radius)
+        .type(key.type)
+        .setCallback(
+            new PendingResult.Callback<PlacesSearchResponse>() {
+              @Override
+              public void onResult(PlacesSearchResponse result) {
+                future.complete(result);
+              }
+
+              @Override
+              public void onFailure(Throwable e) {
+                future.completeExceptionally(e);
+              }
+            });
+    return future;
+  }
+
+  // Rounds up to the next of BUCKETS_PER_DOUBLING steps per power of two so that slightly different
+  // viewport sizes share a key.
+  static int radiusBucket(int radius) {
+    if (radius >= MAX_RADIUS_METERS) {
+      return MAX_RADIUS_METERS;
+    }
+    if (radius <= 1) {
+      return 1;
+    }
+    int step = (int) Math.ceil(BUCKETS_PER_DOUBLING * Math.log(radius) / Math.log(2));
+    int bucket = bucket(step);
+    // Guard against rounding error in the logarithm.
+    while (bucket < radius) {
+      bucket = bucket(++step);
+    }
+    return Math.min(bucket, MAX_RADIUS_METERS);
+  }
+
+  private static int bucket(int step) {
+    return (int) Math.ceil(Math.pow(2, (double) step / BUCKETS_PER_DOUBLING));
+  }
+
+  static final class Key {
+    private final long cellId;
+    private final PlaceType type;
+    private final int radius;
+
+    private Key(long cellId, PlaceType type, int radius) {
+      this.cellId = cellId;
+      this.type = type;
+      this.radius = radius;
+    }
+
+    S2CellId cellId() {
+      return new S2CellId(cellId);
+    }
+
+    int radius() {
+      return radius;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return cellId == that.cellId && type == that.type && radius == that.radius;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(cellId, type, radius);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.mapsservices;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.maps.errors.ApiException;
+import com.google.maps.internal.ApiResponse;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.util.EventLoopGroups;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import java.io.IOException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ArmeriaPendingResultTest {
+
+  private static final Gson GSON =
+      ArmeriaRequestHandler.gsonForPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
+
+  private static EventLoopGroup eventLoopGroup;
+
+  @BeforeAll
+  static void startEventLoop() {
+    eventLoopGroup = EventLoopGroups.newEventLoopGroup(1);
+  }
+
+  @AfterAll
+  static void stopEventLoop() {
+    eventLoopGroup.shutdownGracefully();
+  }
+
+  @Test
+  void releasesContentOnSuccess() throws Exception {
+    ByteBuf content = pooled("{\"status\":\"OK\",\"result\":\"cafe\"}");
+
+    assertThat(pendingResult(HttpStatus.OK, content).await()).isEqualTo("cafe");
+    assertThat(content.refCnt()).isZero();
+  }
+
+  @Test
+  void releasesContentOnApiError() {
+    ByteBuf content = pooled("{\"status\":\"OVER_QUERY_LIMIT\",\"error_message\":\"slow down\"}");
+
+    assertThatThrownBy(() -> pendingResult(HttpStatus.OK, content).await())
+        .isInstanceOf(ApiException.class)
+        .hasMessageContaining("slow down");
+    assertThat(content.refCnt()).isZero();
+  }
+
+  @Test
+  void releasesContentOnParseFailure() {
+    ByteBuf content = pooled("{\"status\":");
+
+    assertThatThrownBy(() -> pendingResult(HttpStatus.OK, content).await())
+        .isInstanceOf(JsonSyntaxException.class);
+    assertThat(content.refCnt()).isZero();
+  }
+
+  @Test
+  void releasesContentOnServerError() {
+    ByteBuf content = pooled("<html>Internal Server Error</html>");
+
+    assertThatThrownBy(() -> pendingResult(HttpStatus.INTERNAL_SERVER_ERROR, content).await())
+        .isInstanceOf(IOException.class)
+        .hasMessage("Server Error: 500 Internal Server Error");
+    assertThat(content.refCnt()).isZero();
+  }
+
+  @Test
+  void decodeDoesNotConsumeContent() {
+    ByteBuf content = pooled("{\"status\":\"OK\",\"result\":\"cafe\"}");
+    int readableBytes = content.readableBytes();
+
+    try {
+      TestResponse response =
+          ArmeriaPendingResult.decode(HttpData.wrap(content), TestResponse.class, GSON);
+
+      assertThat(response.getResult()).isEqualTo("cafe");
+      assertThat(content.refCnt()).isOne();
+      assertThat(content.readableBytes()).isEqualTo(readableBytes);
+    } finally {
+      content.release();
+    }
+  }
+
+  private static ArmeriaPendingResult<String, TestResponse> pendingResult(
+      HttpStatus status, ByteBuf content) {
+    WebClient client =
+        WebClient.builder("http://maps.googleapis.com")
+            .decorator(
+                (delegate, ctx, req) ->
+                    HttpResponse.of(status, MediaType.JSON_UTF_8, HttpData.wrap(content)))
+            .build();
+    return new ArmeriaPendingResult<>(
+        client,
+        eventLoopGroup,
+        HttpRequest.of(HttpMethod.GET, "/maps/api/test/json"),
+        TestResponse.class,
+        GSON);
+  }
+
+  private static ByteBuf pooled(String json) {
+    ByteBuf buf = ByteBufAllocator.DEFAULT.directBuffer();
+    buf.writeCharSequence(json, UTF_8);
+    return buf;
+  }
+
+  private static class TestResponse implements ApiResponse<String> {
+    private String status;
+    private String errorMessage;
+    private String result;
+
+    @Override
+    public boolean successful() {
+      return "OK".equals(status);
+    }
+
+    @Override
+    public String getResult() {
+      return result;
+    }
+
+    @Override
+    public ApiException getError() {
+      return ApiException.from(status, errorMessage);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.mapsservices;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.geometry.S2LatLng;
+import com.google.maps.GeoApiContext;
+import com.google.maps.model.LatLng;
+import com.google.maps.model.PlaceType;
+import java.time.Duration;
+import java.util.Optional;
+import org.curioswitch.gcloud.mapsservices.PlacesSearchCache.Key;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PlacesSearchCacheTest {
+
+  private static final int S2_LEVEL = 13;
+
+  private static final LatLng SHIBUYA = new LatLng(35.658034, 139.701636);
+
+  private PlacesSearchCache cache;
+
+  @BeforeEach
+  void setUp() {
+    MapsServicesConfig config =
+        new ModifiableMapsServicesConfig()
+            .setApiKey("AIzaTestKey")
+            .setPlacesCacheS2Level(S2_LEVEL)
+            .setPlacesCacheMaxSize(100)
+            .setPlacesCacheTtl(Duration.ofMinutes(10))
+            .toImmutable();
+    GeoApiContext context =
+        new GeoApiContext.Builder()
+            .apiKey(config.getApiKey())
+            .requestHandlerBuilder(new ArmeriaRequestHandler.Builder())
+            .build();
+    cache = new PlacesSearchCache(context, config, Optional.empty());
+  }
+
+  @Test
+  void nearbyLocationsShareKey() {
+    Key key = cache.normalize(SHIBUYA, 5300, PlaceType.CAFE);
+    S2LatLng center = key.cellId().toLatLng();
+    // Level 13 cells are over a kilometer wide, these are all within the same cell.
+    for (double offset : new double[] {-0.001, 0, 0.001}) {
+      LatLng nearby = new LatLng(center.latDegrees() + offset, center.lngDegrees() - offset);
+      assertThat(cache.normalize(nearby, 5300, PlaceType.CAFE)).isEqualTo(key);
+    }
+    assertThat(cache.normalize(SHIBUYA, 5400, PlaceType.CAFE)).isEqualTo(key);
+    assertThat(cache.normalize(SHIBUYA, 5300, PlaceType.RESTAURANT)).isNotEqualTo(key);
+  }
+
+  @Test
+  void largeRadiusUsesConfiguredLevel() {
+    assertThat(cache.normalize(SHIBUYA, 5300, PlaceType.CAFE).cellId().level())
+        .isEqualTo(S2_LEVEL);
+  }
+
+  @Test
+  void smallRadiusUsesFinerLevel() {
+    Key key = cache.normalize(SHIBUYA, 100, PlaceType.CAFE);
+    assertThat(key.cellId().level()).isGreaterThan(S2_LEVEL);
+    assertThat(key.radius()).isLessThanOrEqualTo(152);
+  }
+
+  @Test
+  void coversRequestedCircle() {
+    for (int radius = 10; radius <= 40000; radius = radius * 3 / 2) {
+      for (int i = 0; i < 10; i++) {
+        LatLng location = new LatLng(SHIBUYA.lat + i * 0.0013, SHIBUYA.lng - i * 0.0017);
+        Key key = cache.normalize(location, radius, PlaceType.CAFE);
+        double centerDistance =
+            key.cellId()
+                .toLatLng()
+                .getEarthDistance(S2LatLng.fromDegrees(location.lat, location.lng));
+        assertThat(key.radius()).isGreaterThanOrEqualTo((int) Math.ceil(centerDistance + radius));
+        assertThat(key.radius()).isLessThanOrEqualTo((int) (radius * 1.5) + 2);
+      }
+    }
+  }
+
+  @Test
+  void radiusBuckets() {
+    assertThat(PlacesSearchCache.radiusBucket(0)).isEqualTo(1);
+    assertThat(PlacesSearchCache.radiusBucket(1)).isEqualTo(1);
+    assertThat(PlacesSearchCache.radiusBucket(8)).isEqualTo(8);
+    assertThat(PlacesSearchCache.radiusBucket(1000)).isEqualTo(1024);
+    assertThat(PlacesSearchCache.radiusBucket(1025)).isEqualTo(1218);
+    assertThat(PlacesSearchCache.radiusBucket(60000)).isEqualTo(50000);
+
+    int previous = 0;
+    for (int radius = 1; radius < 50000; radius++) {
+      int bucket = PlacesSearchCache.radiusBucket(radius);
+      assertThat(bucket).isGreaterThanOrEqualTo(radius).isGreaterThanOrEqualTo(previous);
+      if (radius >= 20) {
+        assertThat((double) bucket / radius).isLessThanOrEqualTo(1.2);
+      }
+      previous = bucket;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.pubsub;
+
+import brave.Tracing;
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.curioswitch.gcloud.pubsub.Subscriber.SubscriberOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the number of messages per second a {@link Subscriber} can receive and ack from a
+ * {@link FakePubSub}, with different numbers of streams and with or without dispatching to an
+ * executor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SubscriberBenchmark {
+
+  private static final int NUM_MESSAGES = 10000;
+  private static final int MESSAGES_PER_RESPONSE = 100;
+
+  @Param({"1", "4"})
+  private int parallelPullCount;
+
+  @Param({"false", "true"})
+  private boolean useExecutor;
+
+  private FakePubSub pubSub;
+  private Tracing tracing;
+  private ExecutorService executor;
+  private Subscriber subscriber;
+
+  private PubsubMessage[][] responses;
+
+  private volatile CountDownLatch remainingMessages;
+
+  @Setup
+  public void setUp() throws Exception {
+    pubSub = new FakePubSub(false);
+    tracing = Tracing.newBuilder().build();
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    SubscriberOptions.Builder options =
+        Subscriber.newOptions(
+                "projects/test/subscriptions/benchmark",
+                (message, consumer) -> {
+                  consumer.ack();
+                  remainingMessages.countDown();
+                })
+            .parallelPullCount(parallelPullCount);
+    if (useExecutor) {
+      options.executor(executor);
+    }
+    subscriber =
+        new Subscriber(pubSub.subscriberStub(), Optional.empty(), tracing, options.build());
+    subscriber.start();
+    while (pubSub.streams().size() < parallelPullCount) {
+      Thread.sleep(10);
+    }
+
+    responses = new PubsubMessage[NUM_MESSAGES / MESSAGES_PER_RESPONSE][MESSAGES_PER_RESPONSE];
+    // The fake uses the data as the ack ID, so pad messages with an attribute instead.
+    String padding = Strings.repeat("a", 1024);
+    for (int i = 0; i < responses.length; i++) {
+      for (int j = 0; j < MESSAGES_PER_RESPONSE; j++) {
+        responses[i][j] =
+            PubsubMessage.newBuilder()
+                .setData(ByteString.copyFromUtf8("message-" + i + "-" + j))
+                .putAttributes("padding", padding)
+                .build();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    subscriber.close();
+    executor.shutdown();
+    tracing.close();
+    pubSub.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_MESSAGES)
+  public void receive() throws Exception {
+    remainingMessages = new CountDownLatch(NUM_MESSAGES);
+    for (int i = 0; i < responses.length; i++) {
+      pubSub.deliver(i % parallelPullCount, responses[i]);
+    }
+    remainingMessages.await();
+  }
+}
@@ -23,6 +23,7 @@
  */
 package org.curioswitch.gcloud.pubsub;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import brave.Span;
@@ -31,17 +32,42 @@ import brave.Tracing;
 import brave.propagation.TraceContext;
 import com.google.auto.factory.AutoFactory;
 import com.google.auto.factory.Provided;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.CodedOutputStream;
 import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
 import com.google.pubsub.v1.PublisherGrpc.PublisherFutureStub;
 import com.google.pubsub.v1.PubsubMessage;
+import com.linecorp.armeria.common.CommonPools;
+import com.linecorp.armeria.common.RequestContext;
+import io.grpc.Status;
+import io.netty.channel.EventLoop;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 import org.curioswitch.common.helpers.immutables.CurioStyle;
 import org.curioswitch.gcloud.pubsub.Publisher.Factory;
+import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Immutable;
 
+/**
+ * A Cloud Pub/Sub publisher. Messages are batched into a single {@link PublishRequest} by message
+ * count, size and a maximum delay, as configured by {@link PublisherOptions}. Batches are kept per
+ * event loop, with messages published from a {@link RequestContext} batched on its event loop, so
+ * no locking is needed to add to a batch. Batching is only enabled when {@link
+ * PublisherOptions#getMaxBatchDelay()} is set, otherwise each message is published immediately.
+ */
 @AutoFactory(implementing = Factory.class)
 public class Publisher {
 
@@ -61,6 +87,10 @@ public class Publisher {
   private final Tracer tracer;
   private final PublisherOptions options;
   private final TraceContext.Injector<PubsubMessage.Builder> traceInjector;
+  private final int emptyRequestBytes;
+
+  private final Map<EventLoop, Batcher> batchers = new ConcurrentHashMap<>();
+  private final AtomicLong outstandingBytes = new AtomicLong();
 
   public Publisher(
       @Provided PublisherFutureStub stub, @Provided Tracing tracing, PublisherOptions options) {
@@ -70,8 +100,16 @@ public class Publisher {
 
     tracer = tracing.tracer();
     traceInjector = tracing.propagation().injector(PubsubMessage.Builder::putAttributes);
+    emptyRequestBytes =
+        CodedOutputStream.computeStringSize(PublishRequest.TOPIC_FIELD_NUMBER, options.getTopic());
   }
 
+  /**
+   * Publishes {@code message}, returning a {@link ListenableFuture} which completes with its
+   * message ID once the batch containing it has been published. If more than {@link
+   * PublisherOptions#getMaxOutstandingBytes()} are waiting to be published, the future fails
+   * immediately with {@link Status#RESOURCE_EXHAUSTED} and the caller should back off.
+   */
   public ListenableFuture<String> publish(PubsubMessage message) {
     Span span = tracer.currentSpan();
     if (span != null) {
@@ -80,23 +118,133 @@ public class Publisher {
       message = messageBuilder.build();
     }
 
-    PublishRequest request =
-        PublishRequest.newBuilder().setTopic(options.getTopic()).addMessages(message).build();
-
-    return Futures.transform(
-        stub.publish(request),
-        (response) -> {
-          if (response.getMessageIdsCount() != 1) {
-            throw new IllegalStateException(
-                String.format(
-                    "The publish result count %s does not match "
-                        + "the expected 1 result. Please contact Cloud Pub/Sub support "
-                        + "if this frequently occurs",
-                    response.getMessageIdsCount()));
-          }
-          return response.getMessageIds(0);
-        },
-        MoreExecutors.directExecutor());
+    int messageBytes = message.getSerializedSize();
+    long outstanding = outstandingBytes.addAndGet(messageBytes);
+    // Always allow a message through when nothing else is outstanding, so a message larger than
+    // the limit can't get stuck.
+    if (outstanding > options.getMaxOutstandingBytes() && outstanding != messageBytes) {
+      outstandingBytes.addAndGet(-messageBytes);
+      return Futures.immediateFailedFuture(
+          Status.RESOURCE_EXHAUSTED
+              .withDescription(
+                  "Too many bytes waiting to be published to "
+                      + options.getTopic()
+                      + ", limit is "
+                      + options.getMaxOutstandingBytes())
+              .asRuntimeException());
+    }
+
+    EventLoop eventLoop =
+        RequestContext.mapCurrent(RequestContext::eventLoop, CommonPools.workerGroup()::next);
+    Batcher batcher = batchers.computeIfAbsent(eventLoop, Batcher::new);
+    SettableFuture<String> result = SettableFuture.create();
+    PubsubMessage finalMessage = message;
+    if (eventLoop.inEventLoop()) {
+      batcher.add(finalMessage, messageBytes, result);
+    } else {
+      eventLoop.execute(() -> batcher.add(finalMessage, messageBytes, result));
+    }
+    return result;
+  }
+
+  /** Publishes all currently batched messages without waiting for the batch delay. */
+  public void flush() {
+    batchers.forEach((eventLoop, batcher) -> eventLoop.execute(batcher::flush));
+  }
+
+  /** Batches messages for one event loop. Must only be accessed from the event loop. */
+  private class Batcher {
+
+    private final EventLoop eventLoop;
+
+    private PublishRequest.Builder request;
+    private List<SettableFuture<String>> results = new ArrayList<>();
+    // The total size of the batched messages, which are counted in outstandingBytes.
+    private long batchBytes;
+    // The serialized size of the request, which is what Cloud Pub/Sub limits.
+    private long requestBytes = emptyRequestBytes;
+    @Nullable private ScheduledFuture<?> scheduledFlush;
+
+    private Batcher(EventLoop eventLoop) {
+      this.eventLoop = eventLoop;
+      request = newRequest();
+    }
+
+    private void add(PubsubMessage message, int messageBytes, SettableFuture<String> result) {
+      int messageRequestBytes =
+          CodedOutputStream.computeMessageSize(PublishRequest.MESSAGES_FIELD_NUMBER, message);
+      if (!results.isEmpty() && requestBytes + messageRequestBytes > options.getMaxBatchBytes()) {
+        flush();
+      }
+
+      request.addMessages(message);
+      results.add(result);
+      batchBytes += messageBytes;
+      requestBytes += messageRequestBytes;
+
+      if (results.size() >= options.getMaxBatchMessages()
+          || requestBytes >= options.getMaxBatchBytes()
+          || options.getMaxBatchDelay().isZero()) {
+        flush();
+      } else if (scheduledFlush == null) {
+        scheduledFlush =
+            eventLoop.schedule(
+                this::flush, options.getMaxBatchDelay().toNanos(), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void flush() {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+      if (results.isEmpty()) {
+        return;
+      }
+
+      PublishRequest request = this.request.build();
+      List<SettableFuture<String>> results = this.results;
+      long batchBytes = this.batchBytes;
+      this.request = newRequest();
+      this.results = new ArrayList<>();
+      this.batchBytes = 0;
+      requestBytes = emptyRequestBytes;
+
+      Futures.addCallback(
+          stub.publish(request),
+          new FutureCallback<PublishResponse>() {
+            @Override
+            public void onSuccess(PublishResponse response) {
+              outstandingBytes.addAndGet(-batchBytes);
+              if (response.getMessageIdsCount() != results.size()) {
+                IllegalStateException error =
+                    new IllegalStateException(
+                        String.format(
+                            "The publish result count %s does not match "
+                                + "the expected %s results. Please contact Cloud Pub/Sub support "
+                                + "if this frequently occurs",
+                            response.getMessageIdsCount(),
+                            results.size()));
+                results.forEach(result -> result.setException(error));
+                return;
+              }
+              for (int i = 0; i < results.size(); i++) {
+                results.get(i).set(response.getMessageIds(i));
+              }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              outstandingBytes.addAndGet(-batchBytes);
+              results.forEach(result -> result.setException(t));
+            }
+          },
+          MoreExecutors.directExecutor());
+    }
+
+    private PublishRequest.Builder newRequest() {
+      return PublishRequest.newBuilder().setTopic(options.getTopic());
+    }
   }
 
   @Immutable
@@ -104,7 +252,63 @@ public class Publisher {
   public interface PublisherOptions {
     class Builder extends ImmutablePublisherOptions.Builder {}
 
+    // The maximum size of a publish request accepted by Cloud Pub/Sub.
+    long MAX_REQUEST_BYTES = 10L * 1000 * 1000;
+
     /** Topic which the publisher publishes to. */
     String getTopic();
+
+    /**
+     * The maximum number of messages to publish in one request. Cloud Pub/Sub accepts at most 1000.
+     * Defaults to 100.
+     */
+    default int getMaxBatchMessages() {
+      return 100;
+    }
+
+    /**
+     * The maximum serialized size of one publish request, including the topic and message framing.
+     * Cloud Pub/Sub accepts at most 10MB. A single message larger than this is still published in a
+     * request by itself. Defaults to 1MB.
+     */
+    default long getMaxBatchBytes() {
+      return 1000 * 1000;
+    }
+
+    /**
+     * The maximum time a message waits for its batch to fill before it is published. Defaults to
+     * zero, which publishes each message immediately without batching. A small delay, e.g., 1ms,
+     * allows messages published at the same time to share a request, at the cost of that much
+     * latency on every publish.
+     */
+    default Duration getMaxBatchDelay() {
+      return Duration.ZERO;
+    }
+
+    /**
+     * The maximum total size of messages which have been passed to {@link
+     * Publisher#publish(PubsubMessage)} but not published yet, after which publishing fails until
+     * some are published. Defaults to 100MB.
+     */
+    default long getMaxOutstandingBytes() {
+      return 100L * 1000 * 1000;
+    }
+
+    @Check
+    default void check() {
+      checkArgument(
+          getMaxBatchMessages() > 0 && getMaxBatchMessages() <= 1000,
+          "maxBatchMessages must be between 1 and 1000, got %s",
+          getMaxBatchMessages());
+      checkArgument(
+          getMaxBatchBytes() > 0 && getMaxBatchBytes() <= MAX_REQUEST_BYTES,
+          "maxBatchBytes must be between 1 and %s, got %s",
+          MAX_REQUEST_BYTES,
+          getMaxBatchBytes());
+      checkArgument(
+          !getMaxBatchDelay().isNegative(),
+          "maxBatchDelay must not be negative, got %s",
+          getMaxBatchDelay());
+    }
   }
 }
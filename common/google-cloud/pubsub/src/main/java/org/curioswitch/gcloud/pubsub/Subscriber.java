@@ -23,7 +23,8 @@
  */
 package org.curioswitch.gcloud.pubsub;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 import brave.Span;
 import brave.Span.Kind;
@@ -45,28 +46,47 @@ import com.google.pubsub.v1.StreamingPullResponse;
 import com.google.pubsub.v1.SubscriberGrpc.SubscriberStub;
 import com.linecorp.armeria.client.Clients;
 import com.linecorp.armeria.client.grpc.GrpcClientOptions;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.RequestContext;
 import com.linecorp.armeria.common.metric.MoreMeters;
 import com.linecorp.armeria.common.metric.NoopMeterRegistry;
 import com.linecorp.armeria.unsafe.grpc.GrpcUnsafeBufferUtil;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.netty.channel.EventLoop;
 import java.io.Closeable;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.curioswitch.common.helpers.immutables.CurioStyle;
 import org.curioswitch.gcloud.pubsub.Subscriber.Factory;
+import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Immutable;
 
 @AutoFactory(implementing = Factory.class)
-public class Subscriber implements Closeable, StreamObserver<StreamingPullResponse> {
+public class Subscriber implements Closeable {
 
   public interface Factory {
     Subscriber create(SubscriberOptions options);
@@ -87,22 +107,56 @@ public class Subscriber implements Closeable, StreamObserver<StreamingPullRespon
   private static final Duration INITIAL_CHANNEL_RECONNECT_BACKOFF = Duration.ofMillis(100);
   private static final Duration MAX_CHANNEL_RECONNECT_BACKOFF = Duration.ofSeconds(10);
 
+  private static final int STREAM_ACK_DEADLINE_SECONDS = 60;
+
+  // Bounds Cloud Pub/Sub places on ack deadlines.
+  private static final int MIN_ACK_DEADLINE_SECONDS = 10;
+  private static final int MAX_ACK_DEADLINE_SECONDS = 600;
+
+  private static final Duration LEASE_CHECK_INTERVAL = Duration.ofSeconds(1);
+  // How long before its deadline expires a message's lease is extended. Must be comfortably larger
+  // than LEASE_CHECK_INTERVAL plus the ack batch delay.
+  private static final Duration LEASE_EXTENSION_MARGIN = Duration.ofSeconds(5);
+
+  // Keeps requests well below the maximum request size of Cloud Pub/Sub.
+  private static final int MAX_ACK_IDS_PER_REQUEST = 1000;
+
   private final SubscriberStub stub;
   private final SubscriberOptions options;
+  @Nullable private final Executor executor;
+
+  private final List<PullStream> streams;
 
-  private final Counter receivedMessages;
   private final Counter ackedMessages;
   private final Counter nackedMessages;
+  private final Counter expiredMessages;
   private final Timer messageProcessingTime;
 
   private final Tracer tracer;
   private final Extractor<PubsubMessage> traceExtractor;
 
-  private Duration streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
+  // The event loop which sends acknowledgements and manages leases.
+  private final EventLoop eventLoop = CommonPools.workerGroup().next();
+
+  // Messages received and not acked, nacked or expired yet. Streams only pull more messages while
+  // these are under the outstanding message and byte limits.
+  private final Map<String, OutstandingMessage> outstandingMessages = new ConcurrentHashMap<>();
+  private final AtomicLong outstandingBytes = new AtomicLong();
+
+  // Messages received but not yet passed to the receiver due to flow control or ordering. Also
+  // guards the dispatched counts and ordering key backlogs.
+  private final Deque<OutstandingMessage> waitingMessages = new ArrayDeque<>();
+  private int dispatchedMessages;
+  private long dispatchedBytes;
+
+  // Messages waiting for the message currently being processed with the same ordering key. An
+  // ordering key with an entry is being processed, even if there are no messages waiting.
+  private final Map<String, Queue<OutstandingMessage>> orderingKeyBacklogs = new HashMap<>();
 
-  @Nullable private volatile StreamObserver<StreamingPullRequest> requestObserver;
-  @Nullable private volatile RequestContext ctx;
+  @Nullable private ScheduledFuture<?> ackFlusher;
+  @Nullable private ScheduledFuture<?> leaseExtender;
 
+  private volatile boolean started;
   private volatile boolean closed;
 
   public Subscriber(
@@ -116,15 +170,22 @@ public class Subscriber implements Closeable, StreamObserver<StreamingPullRespon
                 stub, GrpcClientOptions.UNSAFE_WRAP_RESPONSE_BUFFERS.newValue(true))
             : stub;
     this.options = options;
+    executor = options.getExecutor().orElse(null);
 
     MeterRegistry registry = meterRegistry.orElse(NoopMeterRegistry.get());
 
     List<Tag> tags = ImmutableList.of(Tag.of("subscription", options.getSubscription()));
 
-    receivedMessages = registry.counter("subscriber-received-messages", tags);
+    ImmutableList.Builder<PullStream> streams = ImmutableList.builder();
+    for (int i = 0; i < options.getParallelPullCount(); i++) {
+      streams.add(new PullStream(registry, tags, i));
+    }
+    this.streams = streams.build();
+
     ackedMessages = registry.counter("subscriber-acked-messages", tags);
     nackedMessages = registry.counter("subscriber-nacked-messages", tags);
-    registry.gauge("reconnect-backoff-millis", tags, streamReconnectBackoff, Duration::toMillis);
+    expiredMessages = registry.counter("subscriber-expired-messages", tags);
+    registry.gauge("subscriber-outstanding-messages", tags, outstandingMessages, Map::size);
 
     messageProcessingTime =
         MoreMeters.newTimer(registry, "subscriber-message-processing-time", tags);
@@ -137,22 +198,402 @@ public class Subscriber implements Closeable, StreamObserver<StreamingPullRespon
   }
 
   public void start() {
-    open();
+    streams.forEach(PullStream::open);
+    started = true;
+
+    long ackBatchDelayNanos = options.getAckBatchDelay().toNanos();
+    ackFlusher =
+        eventLoop.scheduleAtFixedRate(
+            this::flushAcks, ackBatchDelayNanos, ackBatchDelayNanos, TimeUnit.NANOSECONDS);
+    leaseExtender =
+        eventLoop.scheduleAtFixedRate(
+            this::extendLeases,
+            LEASE_CHECK_INTERVAL.toNanos(),
+            LEASE_CHECK_INTERVAL.toNanos(),
+            TimeUnit.NANOSECONDS);
   }
 
+  /**
+   * Closes the subscriber, sending any acknowledgements which have not been sent yet. Messages
+   * acknowledged after closing will be redelivered.
+   */
   @Override
-  public void onNext(StreamingPullResponse value) {
-    if (ctx == null) {
-      ctx = RequestContext.current();
+  public void close() {
+    checkState(started, "close called before start.");
+
+    closed = true;
+    eventLoop.execute(
+        () -> {
+          if (ackFlusher != null) {
+            ackFlusher.cancel(false);
+          }
+          if (leaseExtender != null) {
+            leaseExtender.cancel(false);
+          }
+          streams.forEach(PullStream::close);
+        });
+  }
+
+  /**
+   * Hands waiting messages to the {@link MessageReceiver} while the outstanding message and byte
+   * limits and message ordering allow it.
+   */
+  private void dispatchWaitingMessages() {
+    while (true) {
+      final OutstandingMessage message;
+      synchronized (waitingMessages) {
+        OutstandingMessage next = waitingMessages.peek();
+        if (next == null) {
+          return;
+        }
+        if (next.finished.get()) {
+          // Expired while waiting.
+          waitingMessages.remove();
+          if (next.holdsOrderingKey) {
+            advanceOrderingKey(next.orderingKey);
+          }
+          continue;
+        }
+        if (options.getOrderByKey() && !next.orderingKey.isEmpty() && !next.holdsOrderingKey) {
+          Queue<OutstandingMessage> backlog = orderingKeyBacklogs.get(next.orderingKey);
+          if (backlog != null) {
+            waitingMessages.remove();
+            backlog.add(next);
+            continue;
+          }
+          orderingKeyBacklogs.put(next.orderingKey, new ArrayDeque<>());
+          next.holdsOrderingKey = true;
+        }
+        // Always allow a message when nothing is dispatched so a message larger than the byte
+        // limit can't get stuck.
+        if (dispatchedMessages > 0
+            && (dispatchedMessages >= options.getMaxOutstandingMessages()
+                || dispatchedBytes + next.bytes > options.getMaxOutstandingBytes())) {
+          return;
+        }
+        waitingMessages.remove();
+        dispatchedMessages++;
+        dispatchedBytes += next.bytes;
+        next.dispatched = true;
+        message = next;
+      }
+      message.dispatch();
+    }
+  }
+
+  /**
+   * Moves the next message with {@code orderingKey} to the front of the waiting messages. Must be
+   * called while holding the lock on {@link #waitingMessages}.
+   */
+  private void advanceOrderingKey(String orderingKey) {
+    Queue<OutstandingMessage> backlog = orderingKeyBacklogs.get(orderingKey);
+    OutstandingMessage next;
+    do {
+      next = backlog.poll();
+    } while (next != null && next.finished.get());
+    if (next == null) {
+      orderingKeyBacklogs.remove(orderingKey);
+      return;
+    }
+    next.holdsOrderingKey = true;
+    waitingMessages.addFirst(next);
+  }
+
+  private void release(OutstandingMessage message) {
+    synchronized (waitingMessages) {
+      if (!message.dispatched) {
+        return;
+      }
+      dispatchedMessages--;
+      dispatchedBytes -= message.bytes;
+      if (message.holdsOrderingKey) {
+        advanceOrderingKey(message.orderingKey);
+      }
+    }
+    eventLoop.execute(this::dispatchWaitingMessages);
+  }
+
+  private void flushAcks() {
+    streams.forEach(PullStream::flushAcks);
+  }
+
+  private boolean belowOutstandingLimits() {
+    return outstandingMessages.size() < options.getMaxOutstandingMessages()
+        && outstandingBytes.get() < options.getMaxOutstandingBytes();
+  }
+
+  private void extendLeases() {
+    extendLeases(System.nanoTime());
+  }
+
+  /**
+   * Extends the ack deadline of messages whose deadline is approaching as of {@code now}, or gives
+   * up on them if they have been outstanding for longer than {@link
+   * SubscriberOptions#getMaxAckExtensionPeriod()}. Only messages which have been pulled are
+   * extended, and streams stop pulling at the outstanding limits, so this is bounded by them.
+   */
+  void extendLeases(long now) {
+    if (outstandingMessages.isEmpty()) {
+      return;
+    }
+
+    long extendBeforeNanos = now + LEASE_EXTENSION_MARGIN.toNanos();
+    long maxExtensionNanos = options.getMaxAckExtensionPeriod().toNanos();
+    int ackDeadlineSeconds = ackDeadlineSeconds();
+    long newDeadlineNanos = now + TimeUnit.SECONDS.toNanos(ackDeadlineSeconds);
+
+    for (OutstandingMessage message : outstandingMessages.values()) {
+      if (now - message.receivedNanos >= maxExtensionNanos) {
+        message.expire();
+        continue;
+      }
+      if (message.deadlineNanos > extendBeforeNanos) {
+        continue;
+      }
+      message.deadlineNanos = newDeadlineNanos;
+      message.stream.pendingModifyDeadlines.add(
+          new ModifyDeadline(message.ackId, ackDeadlineSeconds));
+    }
+  }
+
+  /**
+   * Returns the ack deadline to extend leases by, the 99th percentile of message processing time
+   * within the bounds allowed by Cloud Pub/Sub.
+   */
+  private int ackDeadlineSeconds() {
+    double processingTimeSeconds = messageProcessingTime.max(TimeUnit.SECONDS);
+    for (ValueAtPercentile percentile : messageProcessingTime.takeSnapshot().percentileValues()) {
+      if (percentile.percentile() == 0.99) {
+        processingTimeSeconds = percentile.value(TimeUnit.SECONDS);
+        break;
+      }
+    }
+    int seconds = (int) Math.ceil(processingTimeSeconds);
+    return Math.max(MIN_ACK_DEADLINE_SECONDS, Math.min(MAX_ACK_DEADLINE_SECONDS, seconds));
+  }
+
+  /**
+   * A single streaming pull stream, reconnected whenever it fails or the server closes it. Inbound
+   * flow control is manual, with the next response only requested while the subscriber is below
+   * its outstanding limits.
+   */
+  private final class PullStream
+      implements ClientResponseObserver<StreamingPullRequest, StreamingPullResponse> {
+
+    private final Counter receivedMessages;
+    private final Counter receivedBytes;
+
+    private final Queue<String> pendingAcks = new ConcurrentLinkedQueue<>();
+    private final Queue<ModifyDeadline> pendingModifyDeadlines = new ConcurrentLinkedQueue<>();
+
+    private volatile Duration streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
+
+    @Nullable private volatile StreamObserver<StreamingPullRequest> requestObserver;
+    @Nullable private volatile ClientCallStreamObserver<StreamingPullRequest> requestStream;
+    @Nullable private volatile RequestContext ctx;
+
+    // Whether a response has been requested and not received yet.
+    private final AtomicBoolean awaitingResponse = new AtomicBoolean();
+
+    private PullStream(MeterRegistry registry, List<Tag> subscriptionTags, int index) {
+      List<Tag> tags =
+          ImmutableList.<Tag>builder()
+              .addAll(subscriptionTags)
+              .add(Tag.of("stream", String.valueOf(index)))
+              .build();
+      receivedMessages = registry.counter("subscriber-received-messages", tags);
+      receivedBytes = registry.counter("subscriber-received-bytes", tags);
+      registry.gauge(
+          "reconnect-backoff-millis",
+          tags,
+          this,
+          stream -> stream.streamReconnectBackoff.toMillis());
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<StreamingPullRequest> requestStream) {
+      requestStream.disableAutoInboundFlowControl();
+      // The stub always requests the first response when starting the call.
+      awaitingResponse.set(true);
+      this.requestStream = requestStream;
+    }
+
+    @Override
+    public void onNext(StreamingPullResponse value) {
+      if (ctx == null) {
+        ctx = RequestContext.currentOrNull();
+      }
+
+      streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
+
+      AtomicInteger unfinishedMessages = new AtomicInteger(value.getReceivedMessagesCount());
+
+      long receivedNanos = System.nanoTime();
+      long deadlineNanos = receivedNanos + TimeUnit.SECONDS.toNanos(STREAM_ACK_DEADLINE_SECONDS);
+      List<OutstandingMessage> received = new ArrayList<>(value.getReceivedMessagesCount());
+      long bytes = 0;
+      for (ReceivedMessage message : value.getReceivedMessagesList()) {
+        OutstandingMessage outstanding =
+            new OutstandingMessage(
+                this, message, value, unfinishedMessages, receivedNanos, deadlineNanos);
+        outstandingMessages.put(message.getAckId(), outstanding);
+        received.add(outstanding);
+        bytes += outstanding.bytes;
+      }
+      outstandingBytes.addAndGet(bytes);
+
+      receivedMessages.increment(value.getReceivedMessagesCount());
+      receivedBytes.increment(bytes);
+
+      synchronized (waitingMessages) {
+        waitingMessages.addAll(received);
+      }
+      dispatchWaitingMessages();
+
+      awaitingResponse.set(false);
+      requestIfBelowLimits();
+    }
+
+    /** Requests the next response if there isn't one requested already and limits allow it. */
+    private void requestIfBelowLimits() {
+      ClientCallStreamObserver<StreamingPullRequest> requestStream = this.requestStream;
+      if (requestStream == null || closed || !belowOutstandingLimits()) {
+        return;
+      }
+      if (awaitingResponse.compareAndSet(false, true)) {
+        requestStream.request(1);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (closed || !StatusUtil.isRetryable(t)) {
+        return;
+      }
+
+      Duration backoff = streamReconnectBackoff;
+
+      Duration nextBackoff = backoff.multipliedBy(2);
+      if (nextBackoff.compareTo(MAX_CHANNEL_RECONNECT_BACKOFF) > 0) {
+        nextBackoff = MAX_CHANNEL_RECONNECT_BACKOFF;
+      }
+      streamReconnectBackoff = nextBackoff;
+
+      eventLoop.schedule(this::open, backoff.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onCompleted() {
+      if (closed) {
+        return;
+      }
+
+      streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
+
+      // Stream was closed by the server, reopen it so we can keep on pulling.
+      open();
+    }
+
+    private void open() {
+      // Reset in case this is a reconnect.
+      ctx = null;
+
+      StreamObserver<StreamingPullRequest> requestObserver = stub.streamingPull(this);
+
+      requestObserver.onNext(
+          StreamingPullRequest.newBuilder()
+              .setSubscription(options.getSubscription())
+              .setStreamAckDeadlineSeconds(STREAM_ACK_DEADLINE_SECONDS)
+              // Also have the server limit what it sends, since a single response may have many
+              // messages.
+              .setMaxOutstandingMessages(options.getMaxOutstandingMessages())
+              .setMaxOutstandingBytes(options.getMaxOutstandingBytes())
+              .build());
+
+      this.requestObserver = requestObserver;
     }
 
-    streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
+    private void close() {
+      flushAcks();
+      StreamObserver<StreamingPullRequest> requestObserver = this.requestObserver;
+      if (requestObserver != null) {
+        requestObserver.onCompleted();
+      }
+    }
 
-    receivedMessages.increment(value.getReceivedMessagesCount());
+    /** Sends all pending acks and deadline modifications in as few requests as possible. */
+    private void flushAcks() {
+      StreamObserver<StreamingPullRequest> requestObserver = this.requestObserver;
+      if (requestObserver == null
+          || (pendingAcks.isEmpty() && pendingModifyDeadlines.isEmpty())) {
+        return;
+      }
+
+      StreamingPullRequest.Builder request = StreamingPullRequest.newBuilder();
+      int numIds = 0;
+      for (String ackId; (ackId = pendingAcks.poll()) != null; ) {
+        request.addAckIds(ackId);
+        if (++numIds == MAX_ACK_IDS_PER_REQUEST) {
+          requestObserver.onNext(request.build());
+          request = StreamingPullRequest.newBuilder();
+          numIds = 0;
+        }
+      }
+      for (ModifyDeadline modify; (modify = pendingModifyDeadlines.poll()) != null; ) {
+        request.addModifyDeadlineAckIds(modify.ackId).addModifyDeadlineSeconds(modify.seconds);
+        if (++numIds == MAX_ACK_IDS_PER_REQUEST) {
+          requestObserver.onNext(request.build());
+          request = StreamingPullRequest.newBuilder();
+          numIds = 0;
+        }
+      }
+      if (numIds > 0) {
+        requestObserver.onNext(request.build());
+      }
+    }
+  }
 
-    AtomicInteger pendingAcks = new AtomicInteger(value.getReceivedMessagesCount());
+  private final class OutstandingMessage implements AckReplyConsumer {
+
+    private final PullStream stream;
+    private final ReceivedMessage message;
+    private final String ackId;
+    private final String orderingKey;
+    private final int bytes;
+    private final StreamingPullResponse response;
+    private final AtomicInteger unfinishedMessagesInResponse;
+    private final long receivedNanos;
+
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    // Only accessed when extending leases.
+    private long deadlineNanos;
+
+    // Guarded by waitingMessages.
+    private boolean dispatched;
+    private boolean holdsOrderingKey;
+
+    private long dispatchedNanos;
+
+    private OutstandingMessage(
+        PullStream stream,
+        ReceivedMessage message,
+        StreamingPullResponse response,
+        AtomicInteger unfinishedMessagesInResponse,
+        long receivedNanos,
+        long deadlineNanos) {
+      this.stream = stream;
+      this.message = message;
+      ackId = message.getAckId();
+      orderingKey = message.getMessage().getOrderingKey();
+      bytes = message.getMessage().getSerializedSize();
+      this.response = response;
+      this.unfinishedMessagesInResponse = unfinishedMessagesInResponse;
+      this.receivedNanos = receivedNanos;
+      this.deadlineNanos = deadlineNanos;
+    }
 
-    for (ReceivedMessage message : value.getReceivedMessagesList()) {
+    private void dispatch() {
       TraceContextOrSamplingFlags contextOrFlags = traceExtractor.extract(message.getMessage());
 
       // Add an artificial span modeling the time spent within Pub/Sub until getting here.
@@ -169,102 +610,79 @@ public class Subscriber implements Closeable, StreamObserver<StreamingPullRespon
           .start(Timestamps.toMicros(message.getMessage().getPublishTime()))
           .finish();
 
-      StreamObserver<StreamingPullRequest> requestObserver = this.requestObserver;
-
-      long startTimeNanos = System.nanoTime();
-      options
-          .getMessageReceiver()
-          .receiveMessage(
-              message.getMessage(),
-              new AckReplyConsumer() {
-                @Override
-                public void ack() {
-                  releaseAndRecord();
-
-                  ackedMessages.increment();
-
-                  checkNotNull(requestObserver, "onNext called before start()");
-                  requestObserver.onNext(
-                      StreamingPullRequest.newBuilder().addAckIds(message.getAckId()).build());
-                }
-
-                @Override
-                public void nack() {
-                  releaseAndRecord();
-
-                  nackedMessages.increment();
-
-                  checkNotNull(requestObserver, "onNext called before start()");
-                  requestObserver.onNext(
-                      StreamingPullRequest.newBuilder()
-                          .addModifyDeadlineAckIds(message.getAckId())
-                          .addModifyDeadlineSeconds(0)
-                          .build());
-                }
-
-                private void releaseAndRecord() {
-                  if (options.getUnsafeWrapBuffers() && pendingAcks.decrementAndGet() == 0) {
-                    GrpcUnsafeBufferUtil.releaseBuffer(value, ctx);
-                  }
-
-                  messageProcessingTime.record(
-                      Duration.ofNanos(System.nanoTime() - startTimeNanos));
-                }
-              });
+      dispatchedNanos = System.nanoTime();
+      if (executor == null) {
+        receive();
+        return;
+      }
+      try {
+        executor.execute(this::receive);
+      } catch (RejectedExecutionException e) {
+        // Executor has been shutdown, let the message get redelivered.
+        nack();
+      }
     }
-  }
 
-  @Override
-  public void onError(Throwable t) {
-    if (closed || !StatusUtil.isRetryable(t)) {
-      return;
+    private void receive() {
+      options.getMessageReceiver().receiveMessage(message.getMessage(), this);
     }
 
-    Duration backoff = streamReconnectBackoff;
-
-    streamReconnectBackoff = streamReconnectBackoff.multipliedBy(2);
-    if (streamReconnectBackoff.compareTo(MAX_CHANNEL_RECONNECT_BACKOFF) > 0) {
-      streamReconnectBackoff = MAX_CHANNEL_RECONNECT_BACKOFF;
+    @Override
+    public void ack() {
+      if (!finish()) {
+        return;
+      }
+      ackedMessages.increment();
+      stream.pendingAcks.add(ackId);
     }
 
-    // Possible to come straight to here without onNext, so access the current RequestContext
-    // regardless.
-    RequestContext.current()
-        .eventLoop()
-        .schedule(this::open, backoff.toMillis(), TimeUnit.MILLISECONDS);
-  }
-
-  @Override
-  public void onCompleted() {
-    if (closed) {
-      return;
+    @Override
+    public void nack() {
+      if (!finish()) {
+        return;
+      }
+      nackedMessages.increment();
+      stream.pendingModifyDeadlines.add(new ModifyDeadline(ackId, 0));
     }
 
-    streamReconnectBackoff = INITIAL_CHANNEL_RECONNECT_BACKOFF;
-
-    // Stream was closed by the server, reopen it so we can keep on pulling.
-    open();
-  }
+    private void expire() {
+      if (!finishWithoutRecording()) {
+        return;
+      }
+      expiredMessages.increment();
+    }
 
-  @Override
-  public void close() {
-    checkNotNull(requestObserver, "close called before start.");
+    private boolean finish() {
+      if (!finishWithoutRecording()) {
+        return false;
+      }
+      messageProcessingTime.record(System.nanoTime() - dispatchedNanos, TimeUnit.NANOSECONDS);
+      return true;
+    }
 
-    closed = true;
-    requestObserver.onCompleted();
+    private boolean finishWithoutRecording() {
+      if (!finished.compareAndSet(false, true)) {
+        return false;
+      }
+      outstandingMessages.remove(ackId);
+      outstandingBytes.addAndGet(-bytes);
+      release(this);
+      streams.forEach(PullStream::requestIfBelowLimits);
+      if (options.getUnsafeWrapBuffers() && unfinishedMessagesInResponse.decrementAndGet() == 0) {
+        GrpcUnsafeBufferUtil.releaseBuffer(response, stream.ctx);
+      }
+      return true;
+    }
   }
 
-  private void open() {
-    // Reset in case this is a reconnect.
-    ctx = null;
+  private static final class ModifyDeadline {
+    private final String ackId;
+    private final int seconds;
 
-    requestObserver = stub.streamingPull(this);
-
-    requestObserver.onNext(
-        StreamingPullRequest.newBuilder()
-            .setSubscription(options.getSubscription())
-            .setStreamAckDeadlineSeconds(60)
-            .build());
+    private ModifyDeadline(String ackId, int seconds) {
+      this.ackId = ackId;
+      this.seconds = seconds;
+    }
   }
 
   @Immutable
@@ -288,5 +706,89 @@ public class Subscriber implements Closeable, StreamObserver<StreamingPullRespon
     default boolean getUnsafeWrapBuffers() {
       return false;
     }
+
+    /**
+     * The number of streaming pull streams to open in parallel. A single stream is limited in
+     * throughput, so subscriptions with many messages should open more. Defaults to 1.
+     */
+    default int getParallelPullCount() {
+      return 1;
+    }
+
+    /**
+     * The {@link Executor} to call the {@link MessageReceiver} on. If not set, it is called on the
+     * event loop which received the message, so it must not block. A receiver which blocks should
+     * use an executor, e.g., one running each message on a new virtual thread.
+     */
+    Optional<Executor> getExecutor();
+
+    /**
+     * Whether to pass messages with the same ordering key to the {@link MessageReceiver} one at a
+     * time, in the order they were received. The next message for a key is passed only after the
+     * previous one has been acked or nacked, while messages with different keys are processed
+     * concurrently. Message ordering must also be enabled on the subscription. Defaults to {@code
+     * false}.
+     */
+    default boolean getOrderByKey() {
+      return false;
+    }
+
+    /**
+     * The maximum number of messages passed to the {@link MessageReceiver} which have not been
+     * acked or nacked yet. Further messages are held until some finish, and no more are pulled
+     * while this many are outstanding. Defaults to 1000.
+     */
+    default int getMaxOutstandingMessages() {
+      return 1000;
+    }
+
+    /**
+     * The maximum total size of messages passed to the {@link MessageReceiver} which have not been
+     * acked or nacked yet. Further messages are held until some finish, and no more are pulled
+     * while this many bytes are outstanding. Defaults to 100MB.
+     */
+    default long getMaxOutstandingBytes() {
+      return 100L * 1000 * 1000;
+    }
+
+    /**
+     * How long to collect acks and nacks before sending them to Cloud Pub/Sub in one request.
+     * Defaults to 100ms.
+     */
+    default Duration getAckBatchDelay() {
+      return Duration.ofMillis(100);
+    }
+
+    /**
+     * The maximum time to keep extending the ack deadline of a message which has not been acked
+     * or nacked. After this, the message will be redelivered. Defaults to 60 minutes.
+     */
+    default Duration getMaxAckExtensionPeriod() {
+      return Duration.ofMinutes(60);
+    }
+
+    @Check
+    default void check() {
+      checkArgument(
+          getParallelPullCount() > 0,
+          "parallelPullCount must be positive, got %s",
+          getParallelPullCount());
+      checkArgument(
+          getMaxOutstandingMessages() > 0,
+          "maxOutstandingMessages must be positive, got %s",
+          getMaxOutstandingMessages());
+      checkArgument(
+          getMaxOutstandingBytes() > 0,
+          "maxOutstandingBytes must be positive, got %s",
+          getMaxOutstandingBytes());
+      checkArgument(
+          !getAckBatchDelay().isNegative() && !getAckBatchDelay().isZero(),
+          "ackBatchDelay must be positive, got %s",
+          getAckBatchDelay());
+      checkArgument(
+          !getMaxAckExtensionPeriod().isNegative(),
+          "maxAckExtensionPeriod must not be negative, got %s",
+          getMaxAckExtensionPeriod());
+    }
   }
 }
@@ -0,0 +1,213 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.pubsub;
+
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc;
+import com.google.pubsub.v1.PublisherGrpc.PublisherFutureStub;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.StreamingPullRequest;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.SubscriberGrpc;
+import com.google.pubsub.v1.SubscriberGrpc.SubscriberStub;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-process fake of the Cloud Pub/Sub gRPC API. Published messages get their data as their
+ * message ID, and delivered messages as their ack ID, to allow checking IDs are matched to the
+ * right messages.
+ */
+final class FakePubSub implements AutoCloseable {
+
+  private final List<PublishRequest> publishRequests = new CopyOnWriteArrayList<>();
+  private final List<StreamingPullRequest> streamingPullRequests = new CopyOnWriteArrayList<>();
+  private final List<StreamObserver<StreamingPullResponse>> streams = new CopyOnWriteArrayList<>();
+
+  // Guarded by this.
+  private final List<Runnable> heldResponses = new ArrayList<>();
+  private boolean holdResponses;
+
+  private final Server server;
+  private final ManagedChannel channel;
+
+  FakePubSub() {
+    this(true);
+  }
+
+  /**
+   * Creates a {@link FakePubSub}. If {@code directExecutor}, calls are processed on the calling
+   * thread, which makes tests deterministic. Otherwise they are processed on gRPC's default
+   * executor, which is closer to a real server.
+   */
+  FakePubSub(boolean directExecutor) {
+    String name = InProcessServerBuilder.generateName();
+    InProcessServerBuilder serverBuilder =
+        InProcessServerBuilder.forName(name)
+            .addService(new FakePublisher())
+            .addService(new FakeSubscriber());
+    InProcessChannelBuilder channelBuilder = InProcessChannelBuilder.forName(name);
+    if (directExecutor) {
+      serverBuilder.directExecutor();
+      channelBuilder.directExecutor();
+    }
+    try {
+      server = serverBuilder.build().start();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    channel = channelBuilder.build();
+  }
+
+  PublisherFutureStub publisherStub() {
+    return PublisherGrpc.newFutureStub(channel);
+  }
+
+  SubscriberStub subscriberStub() {
+    return SubscriberGrpc.newStub(channel);
+  }
+
+  List<PublishRequest> publishRequests() {
+    return publishRequests;
+  }
+
+  /** Returns all requests received on streaming pull streams, including the initial request. */
+  List<StreamingPullRequest> streamingPullRequests() {
+    return streamingPullRequests;
+  }
+
+  /** Returns the streaming pull streams which have been opened and not closed yet. */
+  List<StreamObserver<StreamingPullResponse>> streams() {
+    return streams;
+  }
+
+  /**
+   * Sends {@code messages} on the first open streaming pull stream. The ack ID of each message is
+   * its data.
+   */
+  void deliver(PubsubMessage... messages) {
+    deliver(0, messages);
+  }
+
+  /**
+   * Sends {@code messages} on the open streaming pull stream at {@code streamIndex}. The ack ID of
+   * each message is its data.
+   */
+  void deliver(int streamIndex, PubsubMessage... messages) {
+    StreamingPullResponse.Builder response = StreamingPullResponse.newBuilder();
+    for (PubsubMessage message : messages) {
+      response.addReceivedMessages(
+          ReceivedMessage.newBuilder()
+              .setAckId(message.getData().toStringUtf8())
+              .setMessage(message));
+    }
+    streams.get(streamIndex).onNext(response.build());
+  }
+
+  /** Returns the ack IDs which have been acked on any stream. */
+  List<String> ackedIds() {
+    List<String> ids = new ArrayList<>();
+    streamingPullRequests.forEach(request -> ids.addAll(request.getAckIdsList()));
+    return ids;
+  }
+
+  /** Sets whether publish responses should be held until {@link #releaseResponses()}. */
+  synchronized void holdResponses(boolean holdResponses) {
+    this.holdResponses = holdResponses;
+  }
+
+  /** Sends all held publish responses. */
+  void releaseResponses() {
+    final List<Runnable> responses;
+    synchronized (this) {
+      responses = new ArrayList<>(heldResponses);
+      heldResponses.clear();
+    }
+    responses.forEach(Runnable::run);
+  }
+
+  @Override
+  public void close() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  private class FakePublisher extends PublisherGrpc.PublisherImplBase {
+    @Override
+    public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+      publishRequests.add(request);
+      PublishResponse.Builder response = PublishResponse.newBuilder();
+      for (PubsubMessage message : request.getMessagesList()) {
+        response.addMessageIds(message.getData().toStringUtf8());
+      }
+      Runnable respond =
+          () -> {
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+          };
+      synchronized (FakePubSub.this) {
+        if (holdResponses) {
+          heldResponses.add(respond);
+          return;
+        }
+      }
+      respond.run();
+    }
+  }
+
+  private class FakeSubscriber extends SubscriberGrpc.SubscriberImplBase {
+    @Override
+    public StreamObserver<StreamingPullRequest> streamingPull(
+        StreamObserver<StreamingPullResponse> responseObserver) {
+      streams.add(responseObserver);
+      return new StreamObserver<StreamingPullRequest>() {
+        @Override
+        public void onNext(StreamingPullRequest value) {
+          streamingPullRequests.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          streams.remove(responseObserver);
+        }
+
+        @Override
+        public void onCompleted() {
+          streams.remove(responseObserver);
+          responseObserver.onCompleted();
+        }
+      };
+    }
+  }
+}
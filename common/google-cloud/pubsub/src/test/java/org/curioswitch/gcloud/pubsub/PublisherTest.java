@@ -23,10 +23,182 @@
  */
 package org.curioswitch.gcloud.pubsub;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import brave.Tracing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PubsubMessage;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.util.SafeCloseable;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.curioswitch.gcloud.pubsub.Publisher.PublisherOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 class PublisherTest {
 
+  private static final String TOPIC = "projects/test/topics/test";
+
+  private FakePubSub pubSub;
+  private Tracing tracing;
+
+  @BeforeEach
+  void setUp() {
+    pubSub = new FakePubSub();
+    tracing = Tracing.newBuilder().build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    tracing.close();
+    pubSub.close();
+  }
+
+  @Test
+  void batchesByCount() throws Exception {
+    Publisher publisher =
+        newPublisher(
+            Publisher.newOptions(TOPIC).maxBatchMessages(10).maxBatchDelay(Duration.ofHours(1)));
+
+    List<ListenableFuture<String>> results = new ArrayList<>();
+    try (SafeCloseable unused = newContext().push()) {
+      for (int i = 0; i < 25; i++) {
+        results.add(publisher.publish(message("message" + i)));
+      }
+    }
+    publisher.flush();
+
+    List<String> ids = Futures.allAsList(results).get();
+    for (int i = 0; i < 25; i++) {
+      assertThat(ids.get(i)).isEqualTo("message" + i);
+    }
+    assertThat(pubSub.publishRequests())
+        .extracting(PublishRequest::getMessagesCount)
+        .containsExactly(10, 10, 5);
+    assertThat(pubSub.publishRequests()).allMatch(request -> request.getTopic().equals(TOPIC));
+  }
+
+  @Test
+  void batchesByDelay() throws Exception {
+    Publisher publisher =
+        newPublisher(Publisher.newOptions(TOPIC).maxBatchDelay(Duration.ofMillis(10)));
+
+    List<ListenableFuture<String>> results = new ArrayList<>();
+    try (SafeCloseable unused = newContext().push()) {
+      for (int i = 0; i < 3; i++) {
+        results.add(publisher.publish(message("message" + i)));
+      }
+    }
+
+    assertThat(Futures.allAsList(results).get())
+        .containsExactly("message0", "message1", "message2");
+    assertThat(pubSub.publishRequests())
+        .extracting(PublishRequest::getMessagesCount)
+        .containsExactly(3);
+  }
+
+  @Test
+  void batchesByBytes() throws Exception {
+    PubsubMessage message = message("0123456789");
+    Publisher publisher =
+        newPublisher(
+            Publisher.newOptions(TOPIC)
+                .maxBatchBytes(
+                    PublishRequest.newBuilder()
+                        .setTopic(TOPIC)
+                        .addMessages(message)
+                        .addMessages(message)
+                        .build()
+                        .getSerializedSize())
+                .maxBatchDelay(Duration.ofHours(1)));
+
+    List<ListenableFuture<String>> results = new ArrayList<>();
+    try (SafeCloseable unused = newContext().push()) {
+      for (int i = 0; i < 4; i++) {
+        results.add(publisher.publish(message));
+      }
+    }
+
+    Futures.allAsList(results).get();
+    assertThat(pubSub.publishRequests())
+        .extracting(PublishRequest::getMessagesCount)
+        .containsExactly(2, 2);
+  }
+
+  @Test
+  void noDelayByDefault() throws Exception {
+    Publisher publisher = newPublisher(Publisher.newOptions(TOPIC));
+
+    assertThat(publisher.publish(message("message0")).get()).isEqualTo("message0");
+    assertThat(publisher.publish(message("message1")).get()).isEqualTo("message1");
+    assertThat(pubSub.publishRequests())
+        .extracting(PublishRequest::getMessagesCount)
+        .containsExactly(1, 1);
+  }
+
+  @Test
+  void maxBatchBytesWithinRequestLimit() {
+    assertThat(
+            catchThrowable(
+                () ->
+                    Publisher.newOptions(TOPIC)
+                        .maxBatchBytes(PublisherOptions.MAX_REQUEST_BYTES + 1)
+                        .build()))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(
+            Publisher.newOptions(TOPIC)
+                .maxBatchBytes(PublisherOptions.MAX_REQUEST_BYTES)
+                .build()
+                .getMaxBatchBytes())
+        .isEqualTo(PublisherOptions.MAX_REQUEST_BYTES);
+  }
+
   @Test
-  void normal() {}
+  void limitsOutstandingBytes() throws Exception {
+    PubsubMessage message = message("0123456789");
+    Publisher publisher =
+        newPublisher(
+            Publisher.newOptions(TOPIC)
+                .maxBatchDelay(Duration.ZERO)
+                .maxOutstandingBytes(message.getSerializedSize() + 1L));
+    pubSub.holdResponses(true);
+
+    ListenableFuture<String> first = publisher.publish(message);
+    ListenableFuture<String> second = publisher.publish(message);
+
+    Throwable error = catchThrowable(second::get);
+    assertThat(error).isInstanceOf(ExecutionException.class);
+    assertThat(Status.fromThrowable(error.getCause()).getCode())
+        .isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+    assertThat(error.getCause()).isInstanceOf(StatusRuntimeException.class);
+
+    pubSub.holdResponses(false);
+    pubSub.releaseResponses();
+    assertThat(first.get()).isEqualTo("0123456789");
+    assertThat(publisher.publish(message).get()).isEqualTo("0123456789");
+  }
+
+  private Publisher newPublisher(PublisherOptions.Builder options) {
+    return new Publisher(pubSub.publisherStub(), tracing, options.build());
+  }
+
+  private static ServiceRequestContext newContext() {
+    return ServiceRequestContext.of(HttpRequest.of(HttpMethod.POST, "/"));
+  }
+
+  private static PubsubMessage message(String data) {
+    return PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8(data)).build();
+  }
 }
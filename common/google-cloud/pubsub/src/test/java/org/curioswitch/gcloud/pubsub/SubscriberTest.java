@@ -0,0 +1,325 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.gcloud.pubsub;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import brave.Tracing;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.StreamingPullRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.curioswitch.gcloud.pubsub.Subscriber.SubscriberOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SubscriberTest {
+
+  private static final String SUBSCRIPTION = "projects/test/subscriptions/test";
+
+  private final List<PubsubMessage> receivedMessages = new CopyOnWriteArrayList<>();
+  private final List<AckReplyConsumer> consumers = new CopyOnWriteArrayList<>();
+
+  private FakePubSub pubSub;
+  private Tracing tracing;
+
+  @BeforeEach
+  void setUp() {
+    // Test instances are shared across test methods.
+    receivedMessages.clear();
+    consumers.clear();
+    pubSub = new FakePubSub();
+    tracing = Tracing.newBuilder().build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    tracing.close();
+    pubSub.close();
+  }
+
+  @Test
+  void limitsOutstandingMessages() {
+    Subscriber subscriber = newSubscriber(holdingOptions().maxOutstandingMessages(2));
+    subscriber.start();
+
+    pubSub.deliver(message("1"), message("2"), message("3"), message("4"), message("5"));
+    assertThat(receivedMessages).containsExactly(message("1"), message("2"));
+
+    consumers.get(0).ack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(3));
+    assertThat(receivedMessages.get(2)).isEqualTo(message("3"));
+
+    subscriber.close();
+  }
+
+  @Test
+  void limitsOutstandingBytes() {
+    Subscriber subscriber =
+        newSubscriber(
+            holdingOptions().maxOutstandingBytes(message("1").getSerializedSize() * 2L));
+    subscriber.start();
+
+    pubSub.deliver(message("1"), message("2"), message("3"));
+    assertThat(receivedMessages).hasSize(2);
+
+    consumers.get(1).nack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(3));
+
+    subscriber.close();
+  }
+
+  @Test
+  void stopsPullingAtMessageLimit() {
+    Subscriber subscriber = newSubscriber(holdingOptions().maxOutstandingMessages(2));
+    subscriber.start();
+
+    assertThat(pubSub.streamingPullRequests().get(0).getMaxOutstandingMessages()).isEqualTo(2);
+
+    pubSub.deliver(message("1"), message("2"));
+    // Held by the server since the subscriber is at its limit and hasn't requested more.
+    pubSub.deliver(message("3"));
+
+    subscriber.extendLeases(System.nanoTime() + Duration.ofSeconds(59).toNanos());
+    await().untilAsserted(() -> assertThat(modifiedDeadlineIds()).containsExactly("1", "2"));
+    assertThat(receivedMessages).hasSize(2);
+
+    consumers.get(0).ack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(3));
+    assertThat(receivedMessages.get(2)).isEqualTo(message("3"));
+
+    subscriber.close();
+  }
+
+  @Test
+  void stopsPullingAtByteLimit() {
+    long limit = message("1").getSerializedSize() * 2L;
+    Subscriber subscriber = newSubscriber(holdingOptions().maxOutstandingBytes(limit));
+    subscriber.start();
+
+    assertThat(pubSub.streamingPullRequests().get(0).getMaxOutstandingBytes()).isEqualTo(limit);
+
+    pubSub.deliver(message("1"), message("2"));
+    pubSub.deliver(message("3"));
+
+    subscriber.extendLeases(System.nanoTime() + Duration.ofSeconds(59).toNanos());
+    await().untilAsserted(() -> assertThat(modifiedDeadlineIds()).containsExactly("1", "2"));
+
+    consumers.get(1).nack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(3));
+
+    subscriber.close();
+  }
+
+  @Test
+  void extendsLeases() {
+    Subscriber subscriber = newSubscriber(holdingOptions());
+    subscriber.start();
+
+    pubSub.deliver(message("1"));
+
+    // Not close to the initial 60s deadline yet.
+    subscriber.extendLeases(System.nanoTime() + Duration.ofSeconds(30).toNanos());
+    long nearDeadline = System.nanoTime() + Duration.ofSeconds(56).toNanos();
+    subscriber.extendLeases(nearDeadline);
+    // Already extended.
+    subscriber.extendLeases(nearDeadline);
+
+    await().untilAsserted(() -> assertThat(modifiedDeadlineIds()).containsExactly("1"));
+    // No processing time recorded yet, so the minimum deadline.
+    assertThat(
+            pubSub.streamingPullRequests().stream()
+                .flatMap(request -> request.getModifyDeadlineSecondsList().stream()))
+        .containsExactly(10);
+
+    consumers.get(0).ack();
+    subscriber.close();
+  }
+
+  @Test
+  void batchesAcks() {
+    Subscriber subscriber =
+        newSubscriber(
+            Subscriber.newOptions(
+                    SUBSCRIPTION,
+                    (message, consumer) -> {
+                      if (message.getData().toStringUtf8().equals("nack")) {
+                        consumer.nack();
+                      } else {
+                        consumer.ack();
+                      }
+                    })
+                .ackBatchDelay(Duration.ofHours(1)));
+    subscriber.start();
+
+    for (int i = 0; i < 10; i++) {
+      pubSub.deliver(message("message" + i));
+    }
+    pubSub.deliver(message("nack"));
+    assertThat(pubSub.ackedIds()).isEmpty();
+
+    subscriber.close();
+
+    await().untilAsserted(() -> assertThat(pubSub.ackedIds()).hasSize(10));
+    // The initial request and a single request with all acks.
+    assertThat(pubSub.streamingPullRequests()).hasSize(2);
+    StreamingPullRequest acks = pubSub.streamingPullRequests().get(1);
+    assertThat(acks.getModifyDeadlineAckIdsList()).containsExactly("nack");
+    assertThat(acks.getModifyDeadlineSecondsList()).containsExactly(0);
+  }
+
+  @Test
+  void expiresMessagesAfterMaxExtension() {
+    Subscriber subscriber =
+        newSubscriber(
+            holdingOptions().maxOutstandingMessages(1).maxAckExtensionPeriod(Duration.ZERO));
+    subscriber.start();
+
+    pubSub.deliver(message("1"), message("2"));
+    assertThat(receivedMessages).hasSize(1);
+
+    // The first message expires, freeing up room for the next one.
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(2));
+
+    // Acking an expired message does nothing since it will be redelivered anyways.
+    consumers.get(0).ack();
+    subscriber.close();
+    await().until(() -> pubSub.streams().isEmpty());
+    assertThat(pubSub.ackedIds()).doesNotContain("1");
+  }
+
+  @Test
+  void opensParallelStreams() {
+    Subscriber subscriber =
+        newSubscriber(
+            Subscriber.newOptions(SUBSCRIPTION, (message, consumer) -> consumer.ack())
+                .parallelPullCount(3)
+                .ackBatchDelay(Duration.ofMillis(10)));
+    subscriber.start();
+
+    assertThat(pubSub.streams()).hasSize(3);
+    pubSub.deliver(0, message("1"));
+    pubSub.deliver(1, message("2"));
+    pubSub.deliver(2, message("3"));
+
+    await()
+        .untilAsserted(
+            () -> assertThat(pubSub.ackedIds()).containsExactlyInAnyOrder("1", "2", "3"));
+
+    subscriber.close();
+    await().until(() -> pubSub.streams().isEmpty());
+  }
+
+  @Test
+  void dispatchesToExecutor() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    List<Thread> receiverThreads = new CopyOnWriteArrayList<>();
+    Subscriber subscriber =
+        newSubscriber(
+            Subscriber.newOptions(
+                    SUBSCRIPTION,
+                    (message, consumer) -> {
+                      receiverThreads.add(Thread.currentThread());
+                      consumer.ack();
+                    })
+                .executor(executor));
+    subscriber.start();
+
+    pubSub.deliver(message("1"), message("2"));
+
+    await().untilAsserted(() -> assertThat(receiverThreads).hasSize(2));
+    assertThat(receiverThreads).doesNotContain(Thread.currentThread());
+
+    subscriber.close();
+    executor.shutdown();
+  }
+
+  @Test
+  void ordersByKey() {
+    Subscriber subscriber = newSubscriber(holdingOptions().orderByKey(true));
+    subscriber.start();
+
+    pubSub.deliver(
+        message("a1", "a"),
+        message("a2", "a"),
+        message("b1", "b"),
+        message("b2", "b"),
+        message("none1"),
+        message("none2"));
+    // Messages without an ordering key are not ordered.
+    assertThat(receivedMessages)
+        .containsExactly(
+            message("a1", "a"), message("b1", "b"), message("none1"), message("none2"));
+
+    consumers.get(1).ack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(5));
+    assertThat(receivedMessages.get(4)).isEqualTo(message("b2", "b"));
+
+    consumers.get(0).nack();
+    await().untilAsserted(() -> assertThat(receivedMessages).hasSize(6));
+    assertThat(receivedMessages.get(5)).isEqualTo(message("a2", "a"));
+
+    subscriber.close();
+  }
+
+  private List<String> modifiedDeadlineIds() {
+    return pubSub.streamingPullRequests().stream()
+        .flatMap(request -> request.getModifyDeadlineAckIdsList().stream())
+        .collect(toImmutableList());
+  }
+
+  private SubscriberOptions.Builder holdingOptions() {
+    return Subscriber.newOptions(
+            SUBSCRIPTION,
+            (message, consumer) -> {
+              receivedMessages.add(message);
+              consumers.add(consumer);
+            })
+        .ackBatchDelay(Duration.ofMillis(10));
+  }
+
+  private Subscriber newSubscriber(SubscriberOptions.Builder options) {
+    return new Subscriber(pubSub.subscriberStub(), Optional.empty(), tracing, options.build());
+  }
+
+  private static PubsubMessage message(String data) {
+    return message(data, "");
+  }
+
+  private static PubsubMessage message(String data, String orderingKey) {
+    return PubsubMessage.newBuilder()
+        .setData(ByteString.copyFromUtf8(data))
+        .setOrderingKey(orderingKey)
+        .build();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.auth.jwt;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.server.Server;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier.Algorithm;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares verifying a repeated token through {@link JwtVerifier}, which hits its verified token
+ * cache, with verifying the signature every time using a cached or freshly built {@link
+ * JWTVerifier}.
+ */
+@State(Scope.Benchmark)
+public class JwtVerifierBenchmark {
+
+  private static final String KEY_ID = "benchmark-key";
+
+  private Server keysServer;
+  private JwtVerifier jwtVerifier;
+  private ECPublicKey publicKey;
+  private JWTVerifier prebuiltVerifier;
+  private String token;
+
+  @Setup
+  public void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = generator.generateKeyPair();
+    publicKey = (ECPublicKey) keyPair.getPublic();
+
+    String publicKeyPem =
+        "-----BEGIN PUBLIC KEY-----\\n"
+            + Base64.getEncoder().encodeToString(publicKey.getEncoded())
+            + "\\n-----END PUBLIC KEY-----\\n";
+    String keysJson = "{\"" + KEY_ID + "\":\"" + publicKeyPem + "\"}";
+    keysServer =
+        Server.builder()
+            .http(0)
+            .service(
+                "/keys",
+                (ctx, req) -> HttpResponse.of(HttpStatus.OK, MediaType.JSON_UTF_8, keysJson))
+            .build();
+    keysServer.start().join();
+
+    Clock clock = Clock.systemUTC();
+    jwtVerifier =
+        new JwtVerifier(
+            url -> new PublicKeysManager(clock, RefreshScheduler.shared(), url),
+            clock,
+            new SimpleMeterRegistry(),
+            Algorithm.ES256,
+            "http://127.0.0.1:" + keysServer.activeLocalPort() + "/keys");
+
+    token =
+        JWT.create()
+            .withKeyId(KEY_ID)
+            .withClaim("email", "benchmark@curioswitch.org")
+            .withExpiresAt(Date.from(Instant.now().plus(Duration.ofHours(2))))
+            .sign(
+                com.auth0.jwt.algorithms.Algorithm.ECDSA256(
+                    null, (ECPrivateKey) keyPair.getPrivate()));
+
+    prebuiltVerifier =
+        JWT.require(com.auth0.jwt.algorithms.Algorithm.ECDSA256(publicKey, null)).build();
+
+    // Populate the key and token caches.
+    jwtVerifier.verify(token).join();
+  }
+
+  @TearDown
+  public void tearDown() {
+    keysServer.stop().join();
+  }
+
+  @Benchmark
+  public DecodedJWT cachedToken() {
+    return jwtVerifier.verify(token).join();
+  }
+
+  @Benchmark
+  public DecodedJWT cachedVerifier() {
+    return prebuiltVerifier.verify(token);
+  }
+
+  @Benchmark
+  public DecodedJWT uncached() {
+    return JWT.require(com.auth0.jwt.algorithms.Algorithm.ECDSA256(publicKey, null))
+        .build()
+        .verify(token);
+  }
+}
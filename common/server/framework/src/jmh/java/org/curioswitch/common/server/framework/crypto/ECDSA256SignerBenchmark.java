@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.crypto;
+
+import com.google.common.collect.ImmutableList;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares signing and verifying with a {@link Signature} created per call, as {@link
+ * ECDSA256Signer} used to, against the pooled {@link Signature} of {@link ECDSA256Signer} and
+ * {@link ECDSA256Verifier}. Also compares signing a batch one payload at a time, with {@link
+ * ECDSA256Signer#signAll(List)} on a single {@link Signature}, and split across threads with
+ * {@link ECDSA256Signer#signAll(List, java.util.concurrent.Executor)}.
+ */
+@State(Scope.Benchmark)
+public class ECDSA256SignerBenchmark {
+
+  @Param({"16", "1024"})
+  private int batchSize;
+
+  private PrivateKey privateKey;
+  private PublicKey publicKey;
+  private ECDSA256Signer signer;
+  private ECDSA256Verifier verifier;
+
+  private byte[] payload;
+  private byte[] payloadSignature;
+  private List<byte[]> batch;
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = generator.generateKeyPair();
+    privateKey = keyPair.getPrivate();
+    publicKey = keyPair.getPublic();
+
+    SignerConfig config =
+        ImmutableSignerConfig.builder()
+            .privateKeyBase64(toPemBase64("PRIVATE KEY", privateKey.getEncoded()))
+            .publicKeyBase64(toPemBase64("PUBLIC KEY", publicKey.getEncoded()))
+            .build();
+    signer = new ECDSA256Signer(config);
+    verifier = new ECDSA256Verifier(config);
+
+    payload = "highlysensitiveinformation".getBytes(StandardCharsets.UTF_8);
+    payloadSignature = signer.sign(payload);
+
+    ImmutableList.Builder<byte[]> batch = ImmutableList.builder();
+    for (int i = 0; i < batchSize; i++) {
+      batch.add(("payload" + i).getBytes(StandardCharsets.UTF_8));
+    }
+    this.batch = batch.build();
+
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public byte[] signPerCall() throws SignatureException {
+    Signature signature = ECDSA256Signer.newSignature(privateKey);
+    signature.update(payload);
+    return signature.sign();
+  }
+
+  @Benchmark
+  public byte[] signPooled() {
+    return signer.sign(payload);
+  }
+
+  @Benchmark
+  public boolean verifyPerCall() throws SignatureException {
+    Signature signature = ECDSA256Verifier.newSignature(publicKey);
+    signature.update(payload);
+    return signature.verify(payloadSignature);
+  }
+
+  @Benchmark
+  public boolean verifyPooled() {
+    return verifier.verify(payload, payloadSignature);
+  }
+
+  @Benchmark
+  public List<byte[]> signBatchSerial() {
+    ImmutableList.Builder<byte[]> signatures = ImmutableList.builderWithExpectedSize(batchSize);
+    for (byte[] payload : batch) {
+      signatures.add(signer.sign(payload));
+    }
+    return signatures.build();
+  }
+
+  @Benchmark
+  public List<byte[]> signBatchAll() {
+    return signer.signAll(batch);
+  }
+
+  @Benchmark
+  public List<byte[]> signBatchParallel() {
+    return signer.signAll(batch, executor).join();
+  }
+
+  private static String toPemBase64(String type, byte[] encoded) {
+    String pem =
+        "-----BEGIN "
+            + type
+            + "-----\n"
+            + Base64.getMimeEncoder().encodeToString(encoded)
+            + "\n-----END "
+            + type
+            + "-----\n";
+    return Base64.getEncoder().encodeToString(pem.getBytes(StandardCharsets.US_ASCII));
+  }
+}
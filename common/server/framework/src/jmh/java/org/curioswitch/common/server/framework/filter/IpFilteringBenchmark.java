@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.filter;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import io.netty.handler.ipfilter.IpFilterRuleType;
+import io.netty.handler.ipfilter.IpSubnetFilterRule;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares matching a client IP from an {@code X-Forwarded-For} header against a compiled {@link
+ * IpSubnetTrie} with the previous approach of resolving an {@link InetSocketAddress} and scanning
+ * {@link IpSubnetFilterRule}s.
+ */
+@State(Scope.Benchmark)
+public class IpFilteringBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  private int numRules;
+
+  private ImmutableList<IpSubnetFilterRule> linearRules;
+  private IpSubnetTrie trie;
+
+  private String matchingHeader;
+  private String nonMatchingHeader;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    ImmutableList.Builder<String> rules = ImmutableList.builder();
+    for (int i = 0; i < numRules; i++) {
+      int firstOctet = random.nextInt(200) + 1;
+      rules.add(firstOctet + "." + random.nextInt(256) + "." + random.nextInt(256) + ".0/24");
+    }
+    ImmutableList<String> ruleStrings = rules.build();
+    linearRules =
+        ruleStrings.stream()
+            .map(
+                rule -> {
+                  String[] parts = rule.split("/");
+                  return new IpSubnetFilterRule(
+                      parts[0], Integer.parseInt(parts[1]), IpFilterRuleType.ACCEPT);
+                })
+            .collect(toImmutableList());
+    trie = IpSubnetTrie.of(ruleStrings);
+
+    String lastRule = ruleStrings.get(ruleStrings.size() - 1);
+    matchingHeader = lastRule.substring(0, lastRule.length() - "0/24".length()) + "10, 10.0.0.1";
+    nonMatchingHeader = "230.1.2.3, 10.0.0.1";
+  }
+
+  @Benchmark
+  public boolean trieMatching() {
+    return matchTrie(matchingHeader);
+  }
+
+  @Benchmark
+  public boolean trieNonMatching() {
+    return matchTrie(nonMatchingHeader);
+  }
+
+  @Benchmark
+  public boolean linearMatching() {
+    return matchLinear(matchingHeader);
+  }
+
+  @Benchmark
+  public boolean linearNonMatching() {
+    return matchLinear(nonMatchingHeader);
+  }
+
+  private boolean matchTrie(String xForwardedFor) {
+    int commaIndex = xForwardedFor.indexOf(',');
+    return trie.matches(xForwardedFor, 0, commaIndex < 0 ? xForwardedFor.length() : commaIndex);
+  }
+
+  private boolean matchLinear(String xForwardedFor) {
+    int commaIndex = xForwardedFor.indexOf(',');
+    String clientIp = commaIndex < 0 ? xForwardedFor : xForwardedFor.substring(0, commaIndex);
+    InetSocketAddress address = new InetSocketAddress(clientIp, 443);
+    for (IpSubnetFilterRule rule : linearRules) {
+      if (rule.matches(address)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.util;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.util.SafeCloseable;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.curioswitch.common.server.framework.armeria.CurrentRequestContextForwardingExecutorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the fixed pool of 20 threads used for database queries against a virtual thread per
+ * task when running many concurrent queries against a high-latency database, simulated by
+ * sleeping in each task. Tasks are submitted within a {@link ServiceRequestContext} so the cost of
+ * propagating it is included. Requires JDK 21+ for the {@code virtual} executor.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BlockingExecutorBenchmark {
+
+  @Param({"platform", "virtual"})
+  private String executorType;
+
+  @Param({"100", "1000"})
+  private int concurrentQueries;
+
+  @Param({"5"})
+  private int queryLatencyMillis;
+
+  private ListeningExecutorService executor;
+  private ServiceRequestContext ctx;
+
+  @Setup
+  public void setUp() {
+    switch (executorType) {
+      case "platform":
+        executor =
+            new CurrentRequestContextForwardingExecutorService(
+                Executors.newFixedThreadPool(
+                    20,
+                    new ThreadFactoryBuilder().setNameFormat("dbio-%d").setDaemon(true).build()));
+        break;
+      case "virtual":
+        if (!VirtualThreads.isSupported()) {
+          throw new IllegalStateException("Virtual threads require JDK 21 or later.");
+        }
+        executor =
+            new CurrentRequestContextForwardingExecutorService(
+                VirtualThreads.newVirtualThreadPerTaskExecutor(
+                    "dbio-", new SimpleMeterRegistry()));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown executor type: " + executorType);
+    }
+    ctx = ServiceRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public List<Integer> queries() throws Exception {
+    List<ListenableFuture<Integer>> results = new ArrayList<>(concurrentQueries);
+    try (SafeCloseable unused = ctx.push()) {
+      for (int i = 0; i < concurrentQueries; i++) {
+        int row = i;
+        results.add(
+            executor.submit(
+                () -> {
+                  Thread.sleep(queryLatencyMillis);
+                  return row;
+                }));
+      }
+    }
+    return Futures.allAsList(results).get();
+  }
+}
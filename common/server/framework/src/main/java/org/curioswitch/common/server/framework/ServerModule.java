@@ -28,9 +28,14 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import brave.Tracing;
 import brave.propagation.TraceContext;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
@@ -68,6 +73,7 @@ import dagger.producers.Production;
 import io.grpc.BindableService;
 import io.grpc.protobuf.services.ProtoReflectionService;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.netty.handler.ssl.ApplicationProtocolConfig;
 import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
 import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
@@ -81,6 +87,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyStore;
@@ -90,17 +97,18 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import javax.inject.Singleton;
 import javax.net.ssl.TrustManagerFactory;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.curioswitch.common.server.framework.armeria.CurrentRequestContextForwardingExecutorService;
 import org.curioswitch.common.server.framework.armeria.SslContextKeyConverter;
 import org.curioswitch.common.server.framework.auth.firebase.FirebaseAuthConfig;
 import org.curioswitch.common.server.framework.auth.firebase.FirebaseAuthModule;
@@ -120,11 +128,16 @@ import org.curioswitch.common.server.framework.config.ServerConfig;
 import org.curioswitch.common.server.framework.files.FileWatcher;
 import org.curioswitch.common.server.framework.files.WatchedPath;
 import org.curioswitch.common.server.framework.filter.IpFilteringService;
+import org.curioswitch.common.server.framework.filter.WatchedIpFilterRules;
+import org.curioswitch.common.server.framework.grpc.GrpcMarshallerWarmUpTask;
+import org.curioswitch.common.server.framework.grpc.GrpcRequestWarmUpTask;
 import org.curioswitch.common.server.framework.grpc.GrpcServiceDefinition;
 import org.curioswitch.common.server.framework.inject.CloseOnStop;
 import org.curioswitch.common.server.framework.inject.EagerInit;
+import org.curioswitch.common.server.framework.inject.ForBlocking;
 import org.curioswitch.common.server.framework.logging.LoggingModule;
 import org.curioswitch.common.server.framework.logging.RequestLoggingContext;
+import org.curioswitch.common.server.framework.monitoring.EventLoopLagMonitor;
 import org.curioswitch.common.server.framework.monitoring.MetricsHttpService;
 import org.curioswitch.common.server.framework.monitoring.MonitoringModule;
 import org.curioswitch.common.server.framework.monitoring.RpcMetricLabels;
@@ -134,10 +147,13 @@ import org.curioswitch.common.server.framework.security.SecurityModule;
 import org.curioswitch.common.server.framework.server.HttpServiceDefinition;
 import org.curioswitch.common.server.framework.server.PostServerCustomizer;
 import org.curioswitch.common.server.framework.server.ServerShutDownDelayer;
+import org.curioswitch.common.server.framework.server.WarmUpRunner;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
 import org.curioswitch.common.server.framework.staticsite.JavascriptStaticService;
 import org.curioswitch.common.server.framework.staticsite.StaticSiteService;
 import org.curioswitch.common.server.framework.staticsite.StaticSiteServiceDefinition;
 import org.curioswitch.common.server.framework.util.ResourceUtil;
+import org.curioswitch.common.server.framework.util.VirtualThreads;
 import org.curioswitch.curiostack.gcloud.core.auth.GcloudAuthModule;
 import org.curioswitch.curiostack.gcloud.iam.GcloudIamModule;
 import org.jooq.DSLContext;
@@ -219,6 +235,9 @@ public abstract class ServerModule {
   @Multibinds
   abstract Set<ServerShutDownDelayer> serverShutDownDelayers();
 
+  @Multibinds
+  abstract Set<WarmUpTask> warmUpTasks();
+
   @BindsOptionalOf
   abstract SslCommonNamesProvider sslCommonNamesProvider();
 
@@ -251,6 +270,21 @@ public abstract class ServerModule {
     return ctx.eventLoop();
   }
 
+  @Provides
+  @ForBlocking
+  @Singleton
+  static ListeningExecutorService blockingExecutor(
+      ServerConfig serverConfig, MeterRegistry meterRegistry) {
+    if (serverConfig.isUseVirtualThreads()) {
+      if (VirtualThreads.isSupported()) {
+        return new CurrentRequestContextForwardingExecutorService(
+            VirtualThreads.newVirtualThreadPerTaskExecutor("blocking-", meterRegistry));
+      }
+      logger.warn("Virtual threads are not supported by this JVM, using blocking task executor.");
+    }
+    return new CurrentRequestContextForwardingExecutorService(CommonPools.blockingTaskExecutor());
+  }
+
   @Provides
   @Singleton
   static Optional<SelfSignedCertificate> selfSignedCertificate(ServerConfig serverConfig) {
@@ -310,6 +344,7 @@ public abstract class ServerModule {
       MetricsHttpService metricsHttpService,
       CollectorRegistry collectorRegistry,
       MeterRegistry meterRegistry,
+      EventLoopLagMonitor eventLoopLagMonitor,
       Tracing tracing,
       Lazy<FirebaseAuthorizer> firebaseAuthorizer,
       Lazy<JwtAuthorizer.Factory> jwtAuthorizer,
@@ -318,6 +353,7 @@ public abstract class ServerModule {
       Optional<TrustManagerFactory> caTrustManager,
       Optional<SslCommonNamesProvider> sslCommonNamesProvider,
       FileWatcher.Builder fileWatcherBuilder,
+      @ForBlocking ListeningExecutorService blockingExecutor,
       Lazy<StackdriverReporter> stackdriverReporter,
       ServerConfig serverConfig,
       FirebaseAuthConfig authConfig,
@@ -326,6 +362,7 @@ public abstract class ServerModule {
       MonitoringConfig monitoringConfig,
       SecurityConfig securityConfig,
       Set<ServerShutDownDelayer> serverShutDownDelayers,
+      Set<WarmUpTask> warmUpTasks,
       @CloseOnStop Set<Closeable> closeOnStopDependencies,
       // Eagerly trigger bindings that are present, not actually used here.
       @EagerInit Set<Object> eagerInitializedDependencies) {
@@ -380,16 +417,34 @@ public abstract class ServerModule {
           });
     }
 
+    boolean useVirtualThreads = serverConfig.isUseVirtualThreads() && VirtualThreads.isSupported();
+    if (useVirtualThreads) {
+      // Services that block, e.g., gRPC services calling blocking stubs, run on Armeria's blocking
+      // task executor.
+      sb.blockingTaskExecutor(
+          VirtualThreads.newVirtualThreadScheduledExecutor("armeria-blocking-", meterRegistry),
+          true);
+    }
+
     serverCustomizers.forEach(c -> c.accept(sb));
 
     Optional<Function<HttpService, IpFilteringService>> ipFilter = Optional.empty();
-    if (!serverConfig.getIpFilterRules().isEmpty()) {
+    if (!serverConfig.getIpFilterRulesPath().isEmpty()) {
+      Path path = Paths.get(serverConfig.getIpFilterRulesPath()).toAbsolutePath();
+      WatchedIpFilterRules ipFilterRules =
+          new WatchedIpFilterRules(serverConfig.getIpFilterRules(), path);
+      fileWatcherBuilder.registerPath(path, ipFilterRules::processFile);
+      if (path.toFile().exists()) {
+        ipFilterRules.processFile(path);
+      }
+      ipFilter = Optional.of(IpFilteringService.newDecorator(ipFilterRules));
+    } else if (!serverConfig.getIpFilterRules().isEmpty()) {
       ipFilter = Optional.of(IpFilteringService.newDecorator(serverConfig.getIpFilterRules()));
     }
 
     if (!serverConfig.isDisableDocService()) {
       DocServiceBuilder docService = DocService.builder();
-      if (!authConfig.getServiceAccountBase64().isEmpty()) {
+      if (!authConfig.getServiceAccountBase64().isEmpty() || authConfig.isVerifyTokensLocally()) {
         docService.injectedScripts(
             "armeria.registerHeaderProvider(function() {\n"
                 + "  return firebase.auth().currentUser.getIdToken().then(token => { authorization: 'bearer ' + token });\n"
@@ -400,14 +455,20 @@ public abstract class ServerModule {
     }
 
     SettableHealthChecker settableHealthChecker = new SettableHealthChecker(true);
-    List<HealthChecker> healthCheckers =
-        serverShutDownDelayers.isEmpty()
-            ? ImmutableList.of()
-            : ImmutableList.of(settableHealthChecker);
+    // Becomes healthy once warm-up has completed after the server starts.
+    SettableHealthChecker warmUpHealthChecker = new SettableHealthChecker(false);
+    ImmutableList.Builder<HealthChecker> healthCheckers =
+        ImmutableList.<HealthChecker>builder().add(warmUpHealthChecker);
+    if (!serverShutDownDelayers.isEmpty()) {
+      healthCheckers.add(settableHealthChecker);
+    }
+    if (eventLoopLagMonitor.isHealthCheckEnabled()) {
+      healthCheckers.add(eventLoopLagMonitor.healthChecker());
+    }
 
     sb.service(
         "/internal/health",
-        internalService(HealthCheckService.of(healthCheckers), ipFilter, serverConfig));
+        internalService(HealthCheckService.of(healthCheckers.build()), ipFilter, serverConfig));
     sb.service("/internal/dropwizard", internalService(metricsHttpService, ipFilter, serverConfig));
     sb.service(
         "/internal/metrics",
@@ -441,39 +502,73 @@ public abstract class ServerModule {
               .build();
     }
 
+    ImmutableSet.Builder<WarmUpTask> allWarmUpTasks =
+        ImmutableSet.<WarmUpTask>builder().addAll(warmUpTasks);
+    Function<HttpService, HttpService> grpcWarmUpDecorator = Function.identity();
+    if (!grpcServiceDefinitions.isEmpty() && !serverConfig.isDisableGrpcWarmUp()) {
+      GrpcRequestWarmUpTask grpcRequestWarmUpTask =
+          new GrpcRequestWarmUpTask(ImmutableList.copyOf(grpcServiceDefinitions));
+      grpcWarmUpDecorator = grpcRequestWarmUpTask::decorate;
+      allWarmUpTasks
+          .add(
+              new GrpcMarshallerWarmUpTask(
+                  grpcServiceDefinitions.stream()
+                      .flatMap(definition -> definition.services().stream())
+                      .map(BindableService::bindService)
+                      .collect(toImmutableList())))
+          .add(grpcRequestWarmUpTask);
+    }
+
+    // Share authorizers, and so their caches, across all services.
+    Optional<SslAuthorizer> sslAuthorizer =
+        sslCommonNamesProvider
+            .filter(unused -> !serverConfig.isDisableSslAuthorization())
+            .map(provider -> new SslAuthorizer(provider, meterRegistry));
+    Supplier<JwtAuthorizer> iapAuthorizer =
+        Suppliers.memoize(
+            () ->
+                jwtAuthorizer
+                    .get()
+                    .create(Algorithm.ES256, "https://www.gstatic.com/iap/verify/public_key"));
+
     for (GrpcServiceDefinition definition : grpcServiceDefinitions) {
       GrpcServiceBuilder serviceBuilder =
           GrpcService.builder()
               .supportedSerializationFormats(GrpcSerializationFormats.values())
               .enableUnframedRequests(true);
+      if (useVirtualThreads) {
+        // Virtual threads are cheap enough to run every call on one, so blocking implementations
+        // don't need to opt in. A customizer can still turn this off.
+        serviceBuilder.useBlockingTaskExecutor(true);
+      }
       definition.services().forEach(serviceBuilder::addService);
       if (!serverConfig.isDisableGrpcServiceDiscovery()) {
         serviceBuilder.addService(ProtoReflectionService.newInstance());
       }
       definition.customizer().accept(serviceBuilder);
       HttpServiceWithRoutes service = serviceBuilder.build();
+      Function<HttpService, HttpService> grpcWarmUpDecorator0 = grpcWarmUpDecorator;
       if (definition.path().equals("/")) {
-        Optional<SslCommonNamesProvider> sslCommonNamesProvider0 = sslCommonNamesProvider;
         sb.service(
             service,
             s ->
                 decorateService(
-                    s.decorate(definition.decorator()),
+                    s.decorate(grpcWarmUpDecorator0).decorate(definition.decorator()),
                     tracing,
                     firebaseAuthorizer,
-                    jwtAuthorizer,
-                    sslCommonNamesProvider0,
+                    iapAuthorizer,
+                    sslAuthorizer,
                     serverConfig,
                     authConfig));
       } else {
         sb.serviceUnder(
             definition.path(),
             decorateService(
-                service.decorate(definition.decorator()),
+                service.decorate(grpcWarmUpDecorator0).decorate(definition.decorator()),
                 tracing,
                 firebaseAuthorizer,
-                jwtAuthorizer,
-                sslCommonNamesProvider,
+                iapAuthorizer,
+                sslAuthorizer,
                 serverConfig,
                 authConfig));
       }
@@ -486,8 +581,8 @@ public abstract class ServerModule {
               definition.service(),
               tracing,
               firebaseAuthorizer,
-              jwtAuthorizer,
-              sslCommonNamesProvider,
+              iapAuthorizer,
+              sslAuthorizer,
               serverConfig,
               authConfig));
     }
@@ -499,7 +594,11 @@ public abstract class ServerModule {
 
     for (StaticSiteServiceDefinition staticSite : staticSites) {
       StaticSiteService.addToServer(
-          staticSite.urlRoot(), staticSite.staticPath(), staticSite.classpathRoot(), sb);
+          staticSite.urlRoot(),
+          staticSite.staticPath(),
+          staticSite.classpathRoot(),
+          staticSite.preloadInMemory(),
+          sb);
     }
 
     if (ipFilter.isPresent() && !serverConfig.getIpFilterInternalOnly()) {
@@ -544,6 +643,14 @@ public abstract class ServerModule {
         });
 
     Server server = sb.build();
+    WarmUpRunner warmUpRunner =
+        new WarmUpRunner(
+            allWarmUpTasks.build(),
+            serverConfig.getWarmUpTimeout(),
+            blockingExecutor,
+            meterRegistry);
+    recordStartupPhase(meterRegistry, "initialization", nanosSinceJvmStart());
+    Stopwatch startStopwatch = Stopwatch.createStarted();
     server
         .start()
         .whenComplete(
@@ -552,6 +659,23 @@ public abstract class ServerModule {
                 logger.error("Error starting server.", t);
               } else {
                 logger.info("Server started on ports: " + server.activePorts());
+                eventLoopLagMonitor.start();
+                recordStartupPhase(
+                    meterRegistry, "start", startStopwatch.elapsed(TimeUnit.NANOSECONDS));
+                Stopwatch warmUpStopwatch = Stopwatch.createStarted();
+                warmUpRunner
+                    .run(server)
+                    .addListener(
+                        () -> {
+                          recordStartupPhase(
+                              meterRegistry,
+                              "warm_up",
+                              warmUpStopwatch.elapsed(TimeUnit.NANOSECONDS));
+                          recordStartupPhase(meterRegistry, "total", nanosSinceJvmStart());
+                          logger.info("Server warmed up, reporting healthy.");
+                          warmUpHealthChecker.setHealthy(true);
+                        },
+                        MoreExecutors.directExecutor());
               }
             });
 
@@ -573,10 +697,11 @@ public abstract class ServerModule {
 
                   logger.info("Server shutting down.");
                   server.stop().join();
+                  eventLoopLagMonitor.close();
                 }));
 
     if (!fileWatcherBuilder.isEmpty()) {
-      FileWatcher fileWatcher = fileWatcherBuilder.build();
+      FileWatcher fileWatcher = fileWatcherBuilder.callbackExecutor(blockingExecutor).build();
       fileWatcher.start();
       Runtime.getRuntime().addShutdownHook(new Thread(fileWatcher::close));
     }
@@ -598,13 +723,13 @@ public abstract class ServerModule {
       HttpService service,
       Tracing tracing,
       Lazy<FirebaseAuthorizer> firebaseAuthorizer,
-      Lazy<JwtAuthorizer.Factory> jwtAuthorizer,
-      Optional<SslCommonNamesProvider> sslCommonNamesProvider,
+      Supplier<JwtAuthorizer> iapAuthorizer,
+      Optional<SslAuthorizer> sslAuthorizer,
       ServerConfig serverConfig,
       FirebaseAuthConfig authConfig) {
-    if (sslCommonNamesProvider.isPresent() && !serverConfig.isDisableSslAuthorization()) {
+    if (sslAuthorizer.isPresent()) {
       AuthServiceBuilder authServiceBuilder = AuthService.builder();
-      authServiceBuilder.add(new SslAuthorizer(sslCommonNamesProvider.get()));
+      authServiceBuilder.add(sslAuthorizer.get());
       service = service.decorate(authServiceBuilder.newDecorator());
     }
     if (serverConfig.isEnableIapAuthorization()) {
@@ -624,13 +749,10 @@ public abstract class ServerModule {
                           headers ->
                               OAuth2Token.of(
                                   headers.get(HttpHeaderNames.of("x-goog-iap-jwt-assertion"))),
-                          jwtAuthorizer
-                              .get()
-                              .create(
-                                  Algorithm.ES256, "https://www.gstatic.com/iap/verify/public_key"))
+                          iapAuthorizer.get())
                       .newDecorator());
     }
-    if (!authConfig.getServiceAccountBase64().isEmpty()) {
+    if (!authConfig.getServiceAccountBase64().isEmpty() || authConfig.isVerifyTokensLocally()) {
       FirebaseAuthorizer authorizer = firebaseAuthorizer.get();
       service =
           service.decorate(
@@ -655,6 +777,19 @@ public abstract class ServerModule {
     return service;
   }
 
+  private static void recordStartupPhase(MeterRegistry meterRegistry, String phase, long nanos) {
+    Timer.builder("server_startup_duration")
+        .description("Time taken by each phase of server startup.")
+        .tag("phase", phase)
+        .register(meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static long nanosSinceJvmStart() {
+    return TimeUnit.MILLISECONDS.toNanos(
+        System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+  }
+
   private static HttpService internalService(
       HttpService service,
       Optional<Function<HttpService, IpFilteringService>> ipFilter,
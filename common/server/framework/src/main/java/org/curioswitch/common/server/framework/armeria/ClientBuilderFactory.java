@@ -63,7 +63,8 @@ import org.curioswitch.common.server.framework.util.ResourceUtil;
 
 /**
  * A convenience factory that sets up a {@link ClientBuilder} with appropriate default parameters.
- * Currently only sets up the client's SSL context but in the future will set up monitoring, etc.
+ * Sets up the client's SSL context, monitoring, and propagation of the deadline of the server
+ * request a client call is made from.
  */
 @Singleton
 public class ClientBuilderFactory {
@@ -74,18 +75,21 @@ public class ClientBuilderFactory {
   private final Tracing tracing;
   private final MeterRegistry meterRegistry;
   private final Function<HttpClient, LoggingClient> loggingClient;
+  private final RequestDeadlines requestDeadlines;
 
   @Inject
   public ClientBuilderFactory(
       MeterRegistry meterRegistry,
       Tracing tracing,
       Function<HttpClient, LoggingClient> loggingClient,
+      RequestDeadlines requestDeadlines,
       Optional<SelfSignedCertificate> selfSignedCertificate,
       Optional<TrustManagerFactory> caTrustManager,
       ServerConfig serverConfig) {
     this.tracing = tracing;
     this.meterRegistry = meterRegistry;
     this.loggingClient = loggingClient;
+    this.requestDeadlines = requestDeadlines;
     final TrustManagerFactory trustManagerFactory;
     if (serverConfig.isDisableClientCertificateVerification()) {
       logger.warn("Disabling client SSL verification. This should only happen on local!");
@@ -173,6 +177,7 @@ public class ClientBuilderFactory {
     ClientBuilder builder =
         Clients.builder(uri.getScheme(), endpoint, uri.getPath()).factory(clientFactory);
     return builder
+        .decorator(DeadlinePropagatingClient.newDecorator(requestDeadlines))
         .decorator(
             MetricCollectingClient.newDecorator(RpcMetricLabels.grpcRequestLabeler("grpc_clients")))
         .decorator(BraveClient.newDecorator(tracing))
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.armeria;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.HttpClient;
+import com.linecorp.armeria.client.ResponseTimeoutException;
+import com.linecorp.armeria.client.SimpleDecoratingHttpClient;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import java.util.function.Function;
+
+/**
+ * A decorating {@link HttpClient} which limits the response timeout of a client request to the
+ * remaining deadline of the {@link ServiceRequestContext} it is made on behalf of. If the deadline
+ * has already passed, the request is failed with a {@link ResponseTimeoutException} without being
+ * sent.
+ */
+public final class DeadlinePropagatingClient extends SimpleDecoratingHttpClient {
+
+  /** Returns a decorator that propagates server request deadlines to client requests. */
+  public static Function<? super HttpClient, DeadlinePropagatingClient> newDecorator(
+      RequestDeadlines deadlines) {
+    return client -> new DeadlinePropagatingClient(client, deadlines);
+  }
+
+  private final RequestDeadlines deadlines;
+
+  private DeadlinePropagatingClient(HttpClient delegate, RequestDeadlines deadlines) {
+    super(delegate);
+    this.deadlines = deadlines;
+  }
+
+  @Override
+  public HttpResponse execute(ClientRequestContext ctx, HttpRequest req) throws Exception {
+    long remainingMillis = RequestDeadlines.remainingMillis(ctx);
+    if (remainingMillis == RequestDeadlines.NO_DEADLINE) {
+      return unwrap().execute(ctx, req);
+    }
+    if (remainingMillis == 0) {
+      deadlines.recordExpired("client");
+      req.abort();
+      return HttpResponse.ofFailure(ResponseTimeoutException.get());
+    }
+    long responseTimeoutMillis = ctx.responseTimeoutMillis();
+    if (responseTimeoutMillis == 0 || remainingMillis < responseTimeoutMillis) {
+      ctx.setResponseTimeoutMillis(remainingMillis);
+    }
+    return unwrap().execute(ctx, req);
+  }
+}
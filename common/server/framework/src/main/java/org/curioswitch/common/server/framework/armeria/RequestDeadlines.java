@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.armeria;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.common.RequestContext;
+import com.linecorp.armeria.server.RequestTimeoutException;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Utilities for propagating the deadline of the {@link ServiceRequestContext} currently being
+ * served to work done on behalf of it, e.g., client requests, database queries and cache loads.
+ * Work that is abandoned because the deadline has passed is recorded in the {@code
+ * request_deadline_expired_work} metric, tagged by the component that abandoned it.
+ */
+@Singleton
+public class RequestDeadlines {
+
+  /** The value returned by {@link #remainingMillis} when there is no deadline. */
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  /**
+   * Returns the number of milliseconds remaining until the deadline of the server request {@code
+   * ctx} belongs to, {@code 0} if the deadline has already passed, or {@link #NO_DEADLINE} if there
+   * is no server request or it has no deadline.
+   */
+  public static long remainingMillis(@Nullable RequestContext ctx) {
+    if (ctx == null) {
+      return NO_DEADLINE;
+    }
+    ServiceRequestContext serviceCtx = ctx.root();
+    if (serviceCtx == null) {
+      return NO_DEADLINE;
+    }
+    long timeoutMillis = serviceCtx.requestTimeoutMillis();
+    if (timeoutMillis <= 0) {
+      return NO_DEADLINE;
+    }
+    long elapsedMillis =
+        TimeUnit.NANOSECONDS.toMillis(
+            System.nanoTime() - serviceCtx.log().partial().requestStartTimeNanos());
+    return Math.max(0, timeoutMillis - elapsedMillis);
+  }
+
+  /**
+   * Returns the number of milliseconds remaining until the deadline of the current server request.
+   *
+   * @see #remainingMillis(RequestContext)
+   */
+  public static long remainingMillis() {
+    return remainingMillis(RequestContext.currentOrNull());
+  }
+
+  private final MeterRegistry meterRegistry;
+  private final Map<String, Counter> expiredCounters;
+
+  @Inject
+  public RequestDeadlines(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    expiredCounters = new ConcurrentHashMap<>();
+  }
+
+  /** Records that {@code component} abandoned work because the request deadline passed. */
+  public void recordExpired(String component) {
+    expiredCounters
+        .computeIfAbsent(
+            component,
+            unused ->
+                Counter.builder("request_deadline_expired_work")
+                    .description("Work abandoned because the request deadline had passed.")
+                    .tag("component", component)
+                    .register(meterRegistry))
+        .increment();
+  }
+
+  /**
+   * Returns a {@link ListenableFuture} which completes with the result of {@code future}, or fails
+   * with a {@link RequestTimeoutException} if the deadline of the current server request passes
+   * first.
+   *
+   * @see #withDeadline(ListenableFuture, RequestContext, String)
+   */
+  public <T> ListenableFuture<T> withCurrentDeadline(
+      ListenableFuture<T> future, String component) {
+    return withDeadline(future, RequestContext.currentOrNull(), component);
+  }
+
+  /**
+   * Returns a {@link ListenableFuture} which completes with the result of {@code future}, or fails
+   * with a {@link RequestTimeoutException} if the deadline of the server request {@code ctx}
+   * belongs to passes first, in which case {@code future} is cancelled. If there is no server
+   * request with a deadline, {@code future} is returned as is.
+   */
+  public <T> ListenableFuture<T> withDeadline(
+      ListenableFuture<T> future, @Nullable RequestContext ctx, String component) {
+    long remainingMillis = remainingMillis(ctx);
+    if (remainingMillis == NO_DEADLINE || future.isDone()) {
+      return future;
+    }
+    if (remainingMillis == 0) {
+      future.cancel(true);
+      recordExpired(component);
+      return Futures.immediateFailedFuture(RequestTimeoutException.get());
+    }
+    ListenableFuture<T> withTimeout =
+        Futures.catchingAsync(
+            Futures.withTimeout(future, remainingMillis, TimeUnit.MILLISECONDS, ctx.eventLoop()),
+            TimeoutException.class,
+            unused -> Futures.immediateFailedFuture(RequestTimeoutException.get()),
+            MoreExecutors.directExecutor());
+    Futures.addCallback(
+        withTimeout,
+        new FutureCallback<T>() {
+          @Override
+          public void onSuccess(@Nullable T result) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (t instanceof RequestTimeoutException) {
+              recordExpired(component);
+            }
+          }
+        },
+        MoreExecutors.directExecutor());
+    return withTimeout;
+  }
+}
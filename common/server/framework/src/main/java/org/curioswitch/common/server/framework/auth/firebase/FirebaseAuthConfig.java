@@ -25,6 +25,7 @@ package org.curioswitch.common.server.framework.auth.firebase;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.time.Duration;
 import java.util.List;
 import org.curioswitch.common.server.framework.immutables.JavaBeanStyle;
 import org.immutables.value.Value.Check;
@@ -63,10 +64,25 @@ public interface FirebaseAuthConfig {
    */
   List<String> getIncludedPaths();
 
+  /**
+   * Whether to verify ID tokens locally against Firebase's public keys instead of through the
+   * Firebase Admin SDK. When enabled, the service account is not needed, only the project ID.
+   */
+  boolean isVerifyTokensLocally();
+
+  /**
+   * How long to cache the authorization decision for a token. Decisions never outlive the token's
+   * expiration. Set to zero to disable caching.
+   */
+  Duration getDecisionCacheTtl();
+
   @Check
   default void check() {
     checkArgument(
         getExcludedPaths().isEmpty() || getIncludedPaths().isEmpty(),
         "Both excluded paths and included paths cannot be set at the same time.");
+    checkArgument(
+        !isVerifyTokensLocally() || !getProjectId().isEmpty(),
+        "projectId must be set to verify tokens locally.");
   }
 }
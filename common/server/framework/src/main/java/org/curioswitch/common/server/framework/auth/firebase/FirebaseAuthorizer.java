@@ -23,20 +23,46 @@
  */
 package org.curioswitch.common.server.framework.auth.firebase;
 
+import com.auth0.jwt.exceptions.InvalidClaimException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.google.api.core.ApiFutureCallback;
 import com.google.api.core.ApiFutures;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.auth.AuthErrorCode;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseAuthTrampoline;
 import com.google.firebase.auth.FirebaseToken;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.common.HttpResponse;
 import com.linecorp.armeria.common.HttpStatus;
 import com.linecorp.armeria.common.auth.OAuth2Token;
+import com.linecorp.armeria.common.util.Exceptions;
 import com.linecorp.armeria.server.HttpService;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.auth.AuthFailureHandler;
 import com.linecorp.armeria.server.auth.Authorizer;
+import dagger.Lazy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import io.netty.util.AttributeKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -44,6 +70,8 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier;
+import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier.Algorithm;
 
 public class FirebaseAuthorizer implements Authorizer<OAuth2Token>, AuthFailureHandler {
 
@@ -55,49 +83,96 @@ public class FirebaseAuthorizer implements Authorizer<OAuth2Token>, AuthFailureH
   public static final AttributeKey<String> RAW_FIREBASE_TOKEN =
       AttributeKey.valueOf(FirebaseAuthorizer.class, "RAW_FIREBASE_TOKEN");
 
-  private final FirebaseAuth firebaseAuth;
+  private static final String PUBLIC_KEYS_URL =
+      "https://www.googleapis.com/robot/v1/metadata/x509/securetoken@system.gserviceaccount.com";
+
+  private static final String ISSUER_PREFIX = "https://securetoken.google.com/";
+
+  private static final long MAX_CACHED_DECISIONS = 10_000;
+
+  // Errors from the Admin SDK that mean the token itself is bad, rather than that verification
+  // could not be done, e.g., because the public keys could not be fetched.
+  private static final ImmutableSet<AuthErrorCode> INVALID_TOKEN_ERRORS =
+      Sets.immutableEnumSet(
+          AuthErrorCode.EXPIRED_ID_TOKEN,
+          AuthErrorCode.INVALID_ID_TOKEN,
+          AuthErrorCode.REVOKED_ID_TOKEN,
+          AuthErrorCode.TENANT_ID_MISMATCH);
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final TypeReference<Map<String, Object>> CLAIMS_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  private final Lazy<FirebaseAuth> firebaseAuth;
   private final FirebaseAuthConfig config;
+  private final Clock clock;
+
+  @Nullable private final JwtVerifier localVerifier;
+  @Nullable private final Cache<HashCode, Decision> decisions;
 
   @Inject
-  public FirebaseAuthorizer(FirebaseAuth firebaseAuth, FirebaseAuthConfig config) {
+  public FirebaseAuthorizer(
+      Lazy<FirebaseAuth> firebaseAuth,
+      FirebaseAuthConfig config,
+      JwtVerifier.Factory jwtVerifierFactory,
+      Clock clock,
+      MeterRegistry meterRegistry) {
     this.firebaseAuth = firebaseAuth;
     this.config = config;
+    this.clock = clock;
+
+    localVerifier =
+        config.isVerifyTokensLocally()
+            ? jwtVerifierFactory.create(Algorithm.RS256, PUBLIC_KEYS_URL)
+            : null;
+
+    if (!config.getDecisionCacheTtl().isZero()) {
+      decisions =
+          Caffeine.newBuilder()
+              .maximumSize(MAX_CACHED_DECISIONS)
+              .expireAfter(new DecisionExpiry(config.getDecisionCacheTtl(), clock))
+              .recordStats()
+              .build();
+      CaffeineCacheMetrics.monitor(meterRegistry, decisions, "firebase_auth_decisions");
+    } else {
+      decisions = null;
+    }
   }
 
   @Override
   public CompletionStage<Boolean> authorize(ServiceRequestContext ctx, OAuth2Token data) {
-    CompletableFuture<Boolean> result = new CompletableFuture<>();
-    ApiFutures.addCallback(
-        firebaseAuth.verifyIdTokenAsync(data.accessToken()),
-        new ApiFutureCallback<FirebaseToken>() {
-          @Override
-          public void onFailure(Throwable t) {
-            result.complete(false);
-          }
+    String rawToken = data.accessToken();
+    final HashCode tokenHash;
+    if (decisions != null) {
+      tokenHash = Hashing.sha256().hashString(rawToken, StandardCharsets.UTF_8);
+      Decision cached = decisions.getIfPresent(tokenHash);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(apply(cached, ctx, rawToken));
+      }
+    } else {
+      tokenHash = null;
+    }
 
-          @Override
-          public void onSuccess(FirebaseToken token) {
-            if (!token.isEmailVerified() && !config.isAllowUnverifiedEmail()) {
-              result.complete(false);
-              return;
-            }
-            if (!config.getAllowedGoogleDomains().isEmpty()) {
-              @SuppressWarnings("unchecked")
-              Map<String, Object> firebaseClaims =
-                  (Map<String, Object>) token.getClaims().get("firebase");
-              if (!firebaseClaims.get("sign_in_provider").equals("google.com")
-                  || !config.getAllowedGoogleDomains().contains(getEmailDomain(token.getEmail()))) {
-                result.complete(false);
-                return;
+    return verify(rawToken)
+        .handle(
+            (token, t) -> {
+              final Decision decision;
+              if (t != null) {
+                // Only remember rejections of the token itself, not transient failures like not
+                // being able to fetch keys.
+                if (!isInvalidToken(Exceptions.peel(t))) {
+                  return false;
+                }
+                decision = Decision.DENIED;
+              } else {
+                decision = isAllowed(token) ? new Decision(token) : Decision.DENIED;
               }
-            }
-            ctx.setAttr(FIREBASE_TOKEN, token);
-            ctx.setAttr(RAW_FIREBASE_TOKEN, data.accessToken());
-            result.complete(true);
-          }
-        },
-        MoreExecutors.directExecutor());
-    return result;
+              if (decisions != null) {
+                decisions.put(tokenHash, decision);
+              }
+              return apply(decision, ctx, rawToken);
+            });
   }
 
   @Override
@@ -121,7 +196,140 @@ public class FirebaseAuthorizer implements Authorizer<OAuth2Token>, AuthFailureH
     return HttpResponse.of(HttpStatus.UNAUTHORIZED);
   }
 
+  private CompletableFuture<FirebaseToken> verify(String rawToken) {
+    if (localVerifier != null) {
+      return localVerifier.verify(rawToken).thenApply(this::toFirebaseToken);
+    }
+    CompletableFuture<FirebaseToken> result = new CompletableFuture<>();
+    ApiFutures.addCallback(
+        firebaseAuth.get().verifyIdTokenAsync(rawToken),
+        new ApiFutureCallback<FirebaseToken>() {
+          @Override
+          public void onFailure(Throwable t) {
+            result.completeExceptionally(t);
+          }
+
+          @Override
+          public void onSuccess(FirebaseToken token) {
+            result.complete(token);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return result;
+  }
+
+  // Performs the same checks on the claims as FirebaseAuth.verifyIdToken, the signature and
+  // expiration have already been checked by JwtVerifier.
+  private FirebaseToken toFirebaseToken(DecodedJWT jwt) {
+    String projectId = config.getProjectId();
+    if (!jwt.getAudience().contains(projectId)) {
+      throw new InvalidClaimException("Firebase ID token has incorrect audience.");
+    }
+    if (!(ISSUER_PREFIX + projectId).equals(jwt.getIssuer())) {
+      throw new InvalidClaimException("Firebase ID token has incorrect issuer.");
+    }
+    if (jwt.getSubject() == null || jwt.getSubject().isEmpty()) {
+      throw new InvalidClaimException("Firebase ID token has no subject.");
+    }
+    Long authTime = jwt.getClaim("auth_time").asLong();
+    if (authTime == null || authTime > clock.instant().getEpochSecond()) {
+      throw new InvalidClaimException("Firebase ID token has invalid auth time.");
+    }
+    Date issuedAt = jwt.getIssuedAt();
+    if (issuedAt == null || issuedAt.toInstant().isAfter(clock.instant())) {
+      throw new InvalidClaimException("Firebase ID token has invalid issued at time.");
+    }
+
+    final Map<String, Object> claims;
+    try {
+      claims =
+          OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(jwt.getPayload()), CLAIMS_TYPE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not parse Firebase ID token claims.", e);
+    }
+    return FirebaseAuthTrampoline.newToken(claims);
+  }
+
+  private static boolean isInvalidToken(Throwable t) {
+    if (t instanceof JWTVerificationException) {
+      return true;
+    }
+    return t instanceof FirebaseAuthException
+        && INVALID_TOKEN_ERRORS.contains(((FirebaseAuthException) t).getAuthErrorCode());
+  }
+
+  private boolean isAllowed(FirebaseToken token) {
+    if (!token.isEmailVerified() && !config.isAllowUnverifiedEmail()) {
+      return false;
+    }
+    if (!config.getAllowedGoogleDomains().isEmpty()) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> firebaseClaims = (Map<String, Object>) token.getClaims().get("firebase");
+      if (!firebaseClaims.get("sign_in_provider").equals("google.com")
+          || !config.getAllowedGoogleDomains().contains(getEmailDomain(token.getEmail()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean apply(Decision decision, ServiceRequestContext ctx, String rawToken) {
+    if (decision.token == null) {
+      return false;
+    }
+    ctx.setAttr(FIREBASE_TOKEN, decision.token);
+    ctx.setAttr(RAW_FIREBASE_TOKEN, rawToken);
+    return true;
+  }
+
   private static String getEmailDomain(String email) {
     return email.substring(email.indexOf('@') + 1);
   }
+
+  private static final class Decision {
+    private static final Decision DENIED = new Decision(null);
+
+    // null if the token is not allowed.
+    @Nullable private final FirebaseToken token;
+
+    private Decision(@Nullable FirebaseToken token) {
+      this.token = token;
+    }
+  }
+
+  private static final class DecisionExpiry implements Expiry<HashCode, Decision> {
+
+    private final long ttlNanos;
+    private final Clock clock;
+
+    private DecisionExpiry(Duration ttl, Clock clock) {
+      ttlNanos = ttl.toNanos();
+      this.clock = clock;
+    }
+
+    @Override
+    public long expireAfterCreate(HashCode key, Decision decision, long currentTime) {
+      if (decision.token == null) {
+        return ttlNanos;
+      }
+      Object exp = decision.token.getClaims().get("exp");
+      if (!(exp instanceof Number)) {
+        return ttlNanos;
+      }
+      long untilExpiryMillis = ((Number) exp).longValue() * 1000 - clock.millis();
+      return Math.max(0, Math.min(ttlNanos, Duration.ofMillis(untilExpiryMillis).toNanos()));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        HashCode key, Decision decision, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(
+        HashCode key, Decision decision, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
@@ -23,33 +23,111 @@
  */
 package org.curioswitch.common.server.framework.auth.iam;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.linecorp.armeria.client.Clients;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.util.SafeCloseable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import org.curioswitch.curiostack.gcloud.core.iam.IamPermissions;
 import org.curioswitch.curiostack.gcloud.iam.ServiceAccountsClient;
 
+/**
+ * Checks whether the caller of an access token has permissions on a service account. Results are
+ * cached briefly by token hash, service account and permissions, and concurrent checks for the same
+ * key share a single request.
+ */
+@Singleton
 public class IamPermissionChecker {
 
+  private static final long MAX_CACHED_RESULTS = 10_000;
+
+  // Access tokens are opaque so we cannot know when they expire. Keep this short to bound how long
+  // a token is still trusted after it expires or is revoked.
+  private static final Duration CACHE_TTL = Duration.ofSeconds(30);
+
   private final ServiceAccountsClient client;
+  private final AsyncCache<Key, Boolean> results;
 
   @Inject
-  public IamPermissionChecker(ServiceAccountsClient client) {
+  public IamPermissionChecker(ServiceAccountsClient client, MeterRegistry meterRegistry) {
+    this(client, meterRegistry, CACHE_TTL, Ticker.systemTicker());
+  }
+
+  IamPermissionChecker(
+      ServiceAccountsClient client, MeterRegistry meterRegistry, Duration ttl, Ticker ticker) {
     this.client = client;
+    results =
+        Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_RESULTS)
+            .expireAfterWrite(ttl)
+            .ticker(ticker)
+            .recordStats()
+            .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, results.synchronous(), "iam_permission_checks");
   }
 
   public CompletableFuture<Boolean> test(
       String accessToken, String serviceAccount, List<String> permissionsToTest) {
+    Key key =
+        new Key(
+            Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8),
+            serviceAccount,
+            ImmutableSet.copyOf(permissionsToTest));
+    return results.get(key, (unused, executor) -> check(accessToken, key));
+  }
+
+  private CompletableFuture<Boolean> check(String accessToken, Key key) {
     try (SafeCloseable ignored =
         Clients.withHeader(HttpHeaderNames.AUTHORIZATION, "Bearer " + accessToken)) {
       return client
           .testIamPermissions(
-              serviceAccount,
-              new IamPermissions.Builder().addAllPermissions(permissionsToTest).build())
-          .thenApply(t -> permissionsToTest.equals(t.getPermissions()));
+              key.serviceAccount,
+              new IamPermissions.Builder().addAllPermissions(key.permissions).build())
+          .thenApply(t -> t.getPermissions().containsAll(key.permissions));
+    }
+  }
+
+  private static final class Key {
+    private final HashCode tokenHash;
+    private final String serviceAccount;
+    private final ImmutableSet<String> permissions;
+
+    private Key(HashCode tokenHash, String serviceAccount, ImmutableSet<String> permissions) {
+      this.tokenHash = tokenHash;
+      this.serviceAccount = serviceAccount;
+      this.permissions = permissions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return tokenHash.equals(that.tokenHash)
+          && serviceAccount.equals(that.serviceAccount)
+          && permissions.equals(that.permissions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tokenHash, serviceAccount, permissions);
     }
   }
 }
@@ -27,12 +27,28 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.google.auto.factory.AutoFactory;
 import com.google.auto.factory.Provided;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.spotify.futures.CompletableFuturesExtra;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier.Factory;
 
 @AutoFactory(implementing = Factory.class)
@@ -51,52 +67,161 @@ public class JwtVerifier {
     ES512
   }
 
+  private static final long MAX_CACHED_TOKENS = 10_000;
+
+  // Upper bound on how long a verified token is trusted without re-verification, regardless of its
+  // expiration. Tokens are evicted at their own expiration time if it is sooner.
+  private static final Duration MAX_CACHED_TOKEN_TTL = Duration.ofHours(1);
+
+  // Distinguishes the cache metrics of verifiers created with the same arguments.
+  private static final AtomicInteger NEXT_VERIFIER_ID = new AtomicInteger();
+
   private final Algorithm algorithm;
   private final PublicKeysManager publicKeysManager;
+  private final Cache<HashCode, DecodedJWT> verifiedTokens;
+
+  // Replaced, rather than cleared, on key rotation so an in-flight lookup that races with rotation
+  // can only populate the discarded map.
+  private volatile ConcurrentHashMap<String, JWTVerifier> verifiers = new ConcurrentHashMap<>();
+
+  // Incremented on key rotation, after verifiers is replaced, so a verification that started before
+  // a rotation can tell that the key it used may have been removed.
+  private final AtomicLong keysGeneration = new AtomicLong();
 
   public JwtVerifier(
       @Provided PublicKeysManager.Factory publicKeysManagerFactory,
+      @Provided Clock clock,
+      @Provided MeterRegistry meterRegistry,
       Algorithm algorithm,
       String publicKeysUrl) {
     this.algorithm = algorithm;
     publicKeysManager = publicKeysManagerFactory.create(publicKeysUrl);
+
+    verifiedTokens =
+        Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_TOKENS)
+            .expireAfter(new TokenExpiry(clock))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(
+        meterRegistry,
+        verifiedTokens,
+        "jwt_verified_tokens",
+        "public_keys_url",
+        publicKeysUrl,
+        "algorithm",
+        algorithm.name(),
+        "verifier_id",
+        String.valueOf(NEXT_VERIFIER_ID.getAndIncrement()));
+
+    publicKeysManager.addKeysRotatedListener(
+        () -> {
+          verifiers = new ConcurrentHashMap<>();
+          keysGeneration.incrementAndGet();
+          verifiedTokens.invalidateAll();
+        });
   }
 
   public CompletableFuture<DecodedJWT> verify(String token) {
+    HashCode tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    DecodedJWT cached = verifiedTokens.getIfPresent(tokenHash);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
     final DecodedJWT unverifiedJwt;
     try {
       unverifiedJwt = JWT.decode(token);
     } catch (JWTVerificationException e) {
       return CompletableFuturesExtra.exceptionallyCompletedFuture(e);
     }
-    return getAlgorithm(unverifiedJwt.getKeyId())
+    long generation = keysGeneration.get();
+    return getVerifier(unverifiedJwt.getKeyId())
         .thenApply(
-            alg -> {
-              JWTVerifier verifier = JWT.require(alg).build();
-              return verifier.verify(token);
+            verifier -> {
+              DecodedJWT jwt = verifier.verify(token);
+              if (keysGeneration.get() == generation) {
+                verifiedTokens.put(tokenHash, jwt);
+                // Keys may have rotated between the check and the put, after the rotation cleared
+                // the cache. If the generation is still the same after the put, any later rotation
+                // will clear it.
+                if (keysGeneration.get() != generation) {
+                  verifiedTokens.invalidate(tokenHash);
+                }
+              }
+              return jwt;
             });
   }
 
-  private CompletableFuture<com.auth0.jwt.algorithms.Algorithm> getAlgorithm(String keyId) {
+  private CompletableFuture<JWTVerifier> getVerifier(@Nullable String keyId) {
+    ConcurrentHashMap<String, JWTVerifier> verifiers = this.verifiers;
+    if (keyId != null) {
+      JWTVerifier cached = verifiers.get(keyId);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
     return publicKeysManager
         .getById(keyId)
         .thenApply(
             key -> {
-              switch (algorithm) {
-                case RS256:
-                  return com.auth0.jwt.algorithms.Algorithm.RSA256((RSAPublicKey) key, null);
-                case RS384:
-                  return com.auth0.jwt.algorithms.Algorithm.RSA384((RSAPublicKey) key, null);
-                case RS512:
-                  return com.auth0.jwt.algorithms.Algorithm.RSA512((RSAPublicKey) key, null);
-                case ES256:
-                  return com.auth0.jwt.algorithms.Algorithm.ECDSA256((ECPublicKey) key, null);
-                case ES384:
-                  return com.auth0.jwt.algorithms.Algorithm.ECDSA384((ECPublicKey) key, null);
-                case ES512:
-                  return com.auth0.jwt.algorithms.Algorithm.ECDSA512((ECPublicKey) key, null);
+              JWTVerifier verifier = JWT.require(toAlgorithm(key)).build();
+              // Unknown keys will fail verification anyways, don't let garbage key IDs fill the
+              // map.
+              if (keyId != null && key != null) {
+                verifiers.put(keyId, verifier);
               }
-              throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+              return verifier;
             });
   }
+
+  private com.auth0.jwt.algorithms.Algorithm toAlgorithm(PublicKey key) {
+    switch (algorithm) {
+      case RS256:
+        return com.auth0.jwt.algorithms.Algorithm.RSA256((RSAPublicKey) key, null);
+      case RS384:
+        return com.auth0.jwt.algorithms.Algorithm.RSA384((RSAPublicKey) key, null);
+      case RS512:
+        return com.auth0.jwt.algorithms.Algorithm.RSA512((RSAPublicKey) key, null);
+      case ES256:
+        return com.auth0.jwt.algorithms.Algorithm.ECDSA256((ECPublicKey) key, null);
+      case ES384:
+        return com.auth0.jwt.algorithms.Algorithm.ECDSA384((ECPublicKey) key, null);
+      case ES512:
+        return com.auth0.jwt.algorithms.Algorithm.ECDSA512((ECPublicKey) key, null);
+    }
+    throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+  }
+
+  private static class TokenExpiry implements Expiry<HashCode, DecodedJWT> {
+
+    private final Clock clock;
+
+    private TokenExpiry(Clock clock) {
+      this.clock = clock;
+    }
+
+    @Override
+    public long expireAfterCreate(HashCode key, DecodedJWT jwt, long currentTime) {
+      long maxTtlNanos = MAX_CACHED_TOKEN_TTL.toNanos();
+      Date expiresAt = jwt.getExpiresAt();
+      if (expiresAt == null) {
+        return maxTtlNanos;
+      }
+      long untilExpiryMillis = expiresAt.getTime() - clock.millis();
+      return Math.max(0, Math.min(maxTtlNanos, Duration.ofMillis(untilExpiryMillis).toNanos()));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        HashCode key, DecodedJWT jwt, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(
+        HashCode key, DecodedJWT jwt, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
 }
@@ -30,12 +30,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.auto.factory.AutoFactory;
 import com.google.auto.factory.Provided;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Streams;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.client.logging.LoggingClient;
 import com.linecorp.armeria.client.retry.RetryRule;
 import com.linecorp.armeria.client.retry.RetryingClient;
-import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpHeaders;
 import com.linecorp.armeria.common.HttpStatus;
@@ -48,15 +48,18 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.curioswitch.common.server.framework.auth.jwt.PublicKeysManager.Factory;
 import org.curioswitch.common.server.framework.crypto.KeyUtil;
 import org.curioswitch.common.server.framework.immutables.CurioStyle;
 import org.curioswitch.curiostack.gcloud.core.util.AsyncRefreshingValue;
+import org.curioswitch.curiostack.gcloud.core.util.RefreshScheduler;
 import org.immutables.value.Value.Immutable;
 
 @AutoFactory(implementing = Factory.class)
@@ -78,9 +81,13 @@ public class PublicKeysManager {
   private final WebClient httpClient;
   private final String path;
   private final AsyncRefreshingValue<CachedPublicKeys> keysCache;
+  private final List<Runnable> keysRotatedListeners = new CopyOnWriteArrayList<>();
+
+  private volatile Map<String, PublicKey> currentKeys = ImmutableMap.of();
 
   @SuppressWarnings("ConstructorLeaksThis")
-  public PublicKeysManager(@Provided Clock clock, String publicKeysUrl) {
+  public PublicKeysManager(
+      @Provided Clock clock, @Provided RefreshScheduler refreshScheduler, String publicKeysUrl) {
     this.clock = clock;
 
     URI uri = URI.create(publicKeysUrl);
@@ -93,14 +100,26 @@ public class PublicKeysManager {
             .build();
     keysCache =
         new AsyncRefreshingValue<>(
+            "public-keys:" + publicKeysUrl,
             this::refresh,
             CachedPublicKeys::expirationTime,
-            CommonPools.workerGroup().next(),
+            refreshScheduler,
             clock);
   }
 
   public CompletableFuture<PublicKey> getById(String id) {
-    return keysCache.get().thenApply(cachedKeys -> cachedKeys.keys().get(id));
+    // Read the latest keys rather than the cached ones, which are only replaced after rotation
+    // listeners have run, so keys removed by a rotation are never returned after it is notified.
+    return keysCache.get().thenApply(unused -> currentKeys.get(id));
+  }
+
+  /**
+   * Adds a {@link Runnable} to be run whenever a refresh returns a different set of keys than
+   * what was previously loaded. Callers that cache anything derived from the keys, e.g., verifiers
+   * or verified tokens, should drop them when this is called.
+   */
+  public void addKeysRotatedListener(Runnable listener) {
+    keysRotatedListeners.add(listener);
   }
 
   private CompletableFuture<CachedPublicKeys> refresh() {
@@ -150,6 +169,10 @@ public class PublicKeysManager {
                             return new SimpleImmutableEntry<>(entry.getKey(), publicKey);
                           })
                       .collect(toImmutableMap(Entry::getKey, Entry::getValue));
+              if (!keys.equals(currentKeys)) {
+                currentKeys = keys;
+                keysRotatedListeners.forEach(Runnable::run);
+              }
               return ImmutableCachedPublicKeys.builder()
                   .expirationTime(expirationTime)
                   .putAllKeys(keys)
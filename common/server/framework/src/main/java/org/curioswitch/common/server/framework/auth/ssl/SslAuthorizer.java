@@ -25,41 +25,80 @@ package org.curioswitch.common.server.framework.auth.ssl;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.auth.Authorizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import javax.annotation.Nullable;
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.curioswitch.common.server.framework.logging.RequestLoggingContext;
 
+/**
+ * An {@link Authorizer} that allows clients whose certificate common name is provided by a {@link
+ * SslCommonNamesProvider}. The decision is cached per {@link SSLSession}, and recomputed when the
+ * provider returns a different {@link Set}, e.g., after {@link RpcAclsCommonNamesProvider} reloads
+ * its file.
+ */
 public class SslAuthorizer implements Authorizer<HttpRequest> {
 
   private static final Logger logger = LogManager.getLogger();
 
   private final SslCommonNamesProvider commonNamesProvider;
+  private final MeterRegistry meterRegistry;
+
+  // Sessions are compared by identity and dropped when the connection is gone.
+  private final Cache<SSLSession, Decision> decisions = Caffeine.newBuilder().weakKeys().build();
 
   public SslAuthorizer(SslCommonNamesProvider commonNamesProvider) {
+    this(commonNamesProvider, Metrics.globalRegistry);
+  }
+
+  public SslAuthorizer(SslCommonNamesProvider commonNamesProvider, MeterRegistry meterRegistry) {
     this.commonNamesProvider = commonNamesProvider;
+    this.meterRegistry = meterRegistry;
   }
 
   @Override
   public CompletionStage<Boolean> authorize(ServiceRequestContext ctx, HttpRequest unused) {
-    checkNotNull(ctx.sslSession());
+    SSLSession sslSession = checkNotNull(ctx.sslSession());
+    Set<String> names = commonNamesProvider.get();
+
+    Decision decision = decisions.getIfPresent(sslSession);
+    if (decision == null || decision.names != names) {
+      decision = decide(sslSession, names);
+      decisions.put(sslSession, decision);
+    }
+
+    if (decision.commonName != null) {
+      RequestLoggingContext.put(ctx, "sslCommonName", decision.commonName);
+    }
+    decision.requests.increment();
+    return CompletableFuture.completedFuture(decision.authorized);
+  }
+
+  private Decision decide(SSLSession sslSession, Set<String> names) {
     final Certificate[] peerCerts;
     try {
-      peerCerts = ctx.sslSession().getPeerCertificates();
+      peerCerts = sslSession.getPeerCertificates();
     } catch (SSLPeerUnverifiedException e) {
       logger.warn("Could not verify peer.", e);
-      return CompletableFuture.completedFuture(false);
+      return new Decision(names, null, false);
     }
     if (peerCerts.length == 0) {
       logger.info("No peer certificates.");
-      return CompletableFuture.completedFuture(false);
+      return new Decision(names, null, false);
     }
     String name =
         ((X509Certificate) peerCerts[0])
@@ -67,14 +106,33 @@ public class SslAuthorizer implements Authorizer<HttpRequest> {
             .getName()
             .substring("CN=".length());
 
-    RequestLoggingContext.put(ctx, "sslCommonName", name);
-
-    boolean authorized = commonNamesProvider.get().contains(name);
-    if (authorized) {
-      return CompletableFuture.completedFuture(true);
-    } else {
+    boolean authorized = names.contains(name);
+    if (!authorized) {
       logger.info("Rejecting SSL client: " + name);
-      return CompletableFuture.completedFuture(false);
+    }
+    return new Decision(names, name, authorized);
+  }
+
+  private final class Decision {
+    // The names this decision was made against, compared by identity.
+    private final Set<String> names;
+    @Nullable private final String commonName;
+    private final boolean authorized;
+    private final Counter requests;
+
+    private Decision(Set<String> names, @Nullable String commonName, boolean authorized) {
+      this.names = names;
+      this.commonName = commonName;
+      this.authorized = authorized;
+      requests =
+          Counter.builder("ssl_authorized_requests")
+              .description(
+                  "Number of requests checked by SslAuthorizer, by allowed client common name.")
+              // Only allowed names, which come from configuration, are used as tag values, to bound
+              // the number of counters no matter what certificates clients present.
+              .tag("common_name", authorized ? commonName : "other")
+              .tag("authorized", String.valueOf(authorized))
+              .register(meterRegistry);
     }
   }
 }
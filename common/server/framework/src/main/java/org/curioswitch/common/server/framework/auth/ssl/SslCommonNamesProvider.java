@@ -28,7 +28,9 @@ import java.util.Set;
 /**
  * A provider of the SSL common names that should be accepted by {@link SslAuthorizer}. {@link
  * SslCommonNamesProvider#get()} will be called on every request, so any changes to the names
- * provided will be reflected in real time.
+ * provided will be reflected in real time. {@link SslAuthorizer} caches its decision for a
+ * connection until a different {@link Set} is returned, so changes must be published by returning
+ * a new {@link Set}, not by mutating a previously returned one.
  */
 @FunctionalInterface
 public interface SslCommonNamesProvider {
@@ -69,4 +69,11 @@ public interface DatabaseConfig {
    * may be needed to support automatic database failover.
    */
   Duration getSocketTimeout();
+
+  /**
+   * Whether database queries should run on a new virtual thread per task instead of a fixed pool of
+   * 20 threads. The number of concurrent queries is still bounded by the connection pool. Requires
+   * JDK 21 or later, otherwise the fixed pool is used.
+   */
+  boolean getUseVirtualThreads();
 }
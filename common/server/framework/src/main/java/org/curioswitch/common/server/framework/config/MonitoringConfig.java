@@ -51,4 +51,22 @@ public interface MonitoringConfig {
 
   /** The sampling rate for traces. 1.0 means all traces are sampled. */
   double getTraceSamplingRate();
+
+  /**
+   * How often to probe each event loop for scheduling lag. Set to zero to disable event loop lag
+   * monitoring.
+   */
+  Duration getEventLoopLagProbeInterval();
+
+  /** Lag of an event loop past which its thread's stack is logged as blocked. */
+  Duration getEventLoopBlockedThreshold();
+
+  /**
+   * Average event loop lag past which the server reports unhealthy, if sustained for {@link
+   * #getEventLoopUnhealthyPeriod()}. Set to zero to never report unhealthy due to lag.
+   */
+  Duration getEventLoopUnhealthyLag();
+
+  /** How long lag must stay above {@link #getEventLoopUnhealthyLag()} to report unhealthy. */
+  Duration getEventLoopUnhealthyPeriod();
 }
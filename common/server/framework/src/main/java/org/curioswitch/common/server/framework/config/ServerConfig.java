@@ -23,6 +23,7 @@
  */
 package org.curioswitch.common.server.framework.config;
 
+import java.time.Duration;
 import java.util.List;
 import org.curioswitch.common.server.framework.immutables.JavaBeanStyle;
 import org.immutables.value.Value.Immutable;
@@ -129,6 +130,14 @@ public interface ServerConfig {
    */
   List<String> getIpFilterRules();
 
+  /**
+   * Path to a file containing additional IP filtering rules, one per line, in the same format as
+   * {@link #getIpFilterRules()}. The file is watched for changes and rules are reloaded without
+   * restarting the server. If non-empty, only requests that match these rules or {@link
+   * #getIpFilterRules()} will be allowed to access the server.
+   */
+  String getIpFilterRulesPath();
+
   /**
    * Sets whether IP filter rules should only be applied to internal services. If not set, IP filter
    * rules are applied to all requests.
@@ -147,4 +156,26 @@ public interface ServerConfig {
    * environment with a DNS server that doesn't support EDNS.
    */
   boolean getDisableEdns();
+
+  /**
+   * The maximum time to wait for {@link
+   * org.curioswitch.common.server.framework.server.WarmUpTask}s to complete before the health check
+   * reports healthy anyways. 0 means wait until all tasks complete. Defaults to 60s.
+   */
+  Duration getWarmUpTimeout();
+
+  /**
+   * Whether the built-in warm-up of gRPC services, which round-trips messages through marshallers
+   * and sends synthetic requests to the server, should be disabled.
+   */
+  boolean isDisableGrpcWarmUp();
+
+  /**
+   * Whether blocking work submitted to the {@link
+   * org.curioswitch.common.server.framework.inject.ForBlocking} executor, and gRPC service calls,
+   * should run on a new virtual thread per task instead of the shared blocking task pool. Requires
+   * JDK 21 or later, otherwise the shared pool is used. Producers still run on the event loop and
+   * should submit blocking calls to the {@code ForBlocking} executor.
+   */
+  boolean isUseVirtualThreads();
 }
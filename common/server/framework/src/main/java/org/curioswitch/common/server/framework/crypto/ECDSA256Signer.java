@@ -23,26 +23,108 @@
  */
 package org.curioswitch.common.server.framework.crypto;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.math.RoundingMode;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import javax.inject.Inject;
 
-/** A signer of data using the 256-bit elliptic curve DSA algorithm. */
+/**
+ * A signer of data using the 256-bit elliptic curve DSA algorithm. {@link Signature}s initialized
+ * with the private key are pooled, so repeated signing doesn't pay for provider lookup and key
+ * setup.
+ */
 public class ECDSA256Signer {
 
-  private final PrivateKey privateKey;
+  // Below this, the overhead of signing on another thread is more than the time to sign serially.
+  private static final int MIN_CHUNK_SIZE = 64;
+
+  private final SignaturePool signatures;
 
   @Inject
   public ECDSA256Signer(SignerConfig config) {
-    privateKey = KeyUtil.loadPrivateKey(Base64.getDecoder().decode(config.getPrivateKeyBase64()));
+    PrivateKey privateKey =
+        KeyUtil.loadPrivateKey(Base64.getDecoder().decode(config.getPrivateKeyBase64()));
+    signatures = new SignaturePool(() -> newSignature(privateKey));
   }
 
   /** Returns the signature for {@code payload}. */
   public byte[] sign(byte[] payload) {
+    Signature signature = signatures.acquire();
+    byte[] result = signWith(signature, payload);
+    signatures.release(signature);
+    return result;
+  }
+
+  /**
+   * Returns the signatures for {@code payloads}, in the same order. The batch is signed serially on
+   * the calling thread with a single {@link Signature}.
+   */
+  public ImmutableList<byte[]> signAll(List<byte[]> payloads) {
+    Signature signature = signatures.acquire();
+    ImmutableList<byte[]> result = signAllWith(signature, payloads);
+    signatures.release(signature);
+    return result;
+  }
+
+  /**
+   * Returns a {@link CompletableFuture} completed with the signatures for {@code payloads}, in the
+   * same order. The batch is split into about one chunk per processor, each signed on {@code
+   * executor} with its own {@link Signature}. Small batches are signed on a single chunk since the
+   * overhead of splitting them is more than the time to sign them.
+   */
+  public CompletableFuture<ImmutableList<byte[]>> signAll(
+      List<byte[]> payloads, Executor executor) {
+    int chunkSize =
+        Math.max(
+            MIN_CHUNK_SIZE,
+            IntMath.divide(
+                payloads.size(), Runtime.getRuntime().availableProcessors(), RoundingMode.CEILING));
+    List<CompletableFuture<ImmutableList<byte[]>>> chunks =
+        Lists.partition(payloads, chunkSize).stream()
+            .map(chunk -> CompletableFuture.supplyAsync(() -> signAll(chunk), executor))
+            .collect(toImmutableList());
+    return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            unused -> {
+              ImmutableList.Builder<byte[]> result =
+                  ImmutableList.builderWithExpectedSize(payloads.size());
+              chunks.forEach(chunk -> result.addAll(chunk.join()));
+              return result.build();
+            });
+  }
+
+  private static ImmutableList<byte[]> signAllWith(Signature signature, List<byte[]> payloads) {
+    ImmutableList.Builder<byte[]> result = ImmutableList.builderWithExpectedSize(payloads.size());
+    for (byte[] payload : payloads) {
+      result.add(signWith(signature, payload));
+    }
+    return result.build();
+  }
+
+  private static byte[] signWith(Signature signature, byte[] payload) {
+    try {
+      signature.update(payload);
+      // Resets the signature to its initialized state for the next payload.
+      return signature.sign();
+    } catch (SignatureException e) {
+      // The signature may have been left with a partial update so is not returned to the pool.
+      throw new IllegalStateException("Could not sign payload.", e);
+    }
+  }
+
+  static Signature newSignature(PrivateKey privateKey) {
     final Signature signature;
     try {
       signature = Signature.getInstance("SHA256withECDSA");
@@ -55,11 +137,6 @@ public class ECDSA256Signer {
     } catch (InvalidKeyException e) {
       throw new IllegalStateException("Private key not an ECDSA key.");
     }
-    try {
-      signature.update(payload);
-      return signature.sign();
-    } catch (SignatureException e) {
-      throw new IllegalStateException("Could not sign payload.", e);
-    }
+    return signature;
   }
 }
@@ -33,20 +33,40 @@ import javax.inject.Inject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-/** A verifier of ECDSA256 signatures. */
+/**
+ * A verifier of ECDSA256 signatures. {@link Signature}s initialized with the public key are pooled.
+ */
 public class ECDSA256Verifier {
 
   private static final Logger logger = LogManager.getLogger();
 
-  private final PublicKey publicKey;
+  private final SignaturePool signatures;
 
   @Inject
   public ECDSA256Verifier(SignerConfig config) {
-    publicKey = KeyUtil.loadPublicKey(Base64.getDecoder().decode(config.getPublicKeyBase64()));
+    PublicKey publicKey =
+        KeyUtil.loadPublicKey(Base64.getDecoder().decode(config.getPublicKeyBase64()));
+    signatures = new SignaturePool(() -> newSignature(publicKey));
   }
 
   /** Verifies that {@code payloadSignature} is correct for {@code payload}. */
   public boolean verify(byte[] payload, byte[] payloadSignature) {
+    Signature signature = signatures.acquire();
+    final boolean verified;
+    try {
+      signature.update(payload);
+      // Resets the signature to its initialized state for the next payload.
+      verified = signature.verify(payloadSignature);
+    } catch (SignatureException e) {
+      // The signature may have been left with a partial update so is not returned to the pool.
+      logger.warn("Invalid signature.", e);
+      return false;
+    }
+    signatures.release(signature);
+    return verified;
+  }
+
+  static Signature newSignature(PublicKey publicKey) {
     final Signature signature;
     try {
       signature = Signature.getInstance("SHA256withECDSA");
@@ -59,12 +79,6 @@ public class ECDSA256Verifier {
     } catch (InvalidKeyException e) {
       throw new IllegalStateException("Public key not an ECDSA key.", e);
     }
-    try {
-      signature.update(payload);
-      return signature.verify(payloadSignature);
-    } catch (SignatureException e) {
-      logger.warn("Invalid signature.", e);
-      return false;
-    }
+    return signature;
   }
 }
@@ -33,6 +33,7 @@ import java.security.PublicKey;
 import java.security.Security;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
@@ -66,6 +67,9 @@ public final class KeyUtil {
       while ((obj = parser.readObject()) != null) {
         if (obj instanceof SubjectPublicKeyInfo) {
           return newConverter().getPublicKey((SubjectPublicKeyInfo) obj);
+        } else if (obj instanceof X509CertificateHolder) {
+          return newConverter()
+              .getPublicKey(((X509CertificateHolder) obj).getSubjectPublicKeyInfo());
         }
       }
       throw new IllegalStateException("Could not find public key.");
@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.crypto;
+
+import java.security.Signature;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of {@link Signature} initialized with the same key. A {@link Signature} is not
+ * thread-safe, so each caller borrows one for a single operation, which also resets it to its
+ * initialized state, and returns it when done. Unlike a thread local, the pool is garbage collected
+ * along with its owner.
+ */
+final class SignaturePool {
+
+  private final Supplier<Signature> factory;
+  private final BlockingQueue<Signature> idle;
+
+  SignaturePool(Supplier<Signature> factory) {
+    this.factory = factory;
+    idle = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  /** Returns an idle {@link Signature}, creating one if there are none. */
+  Signature acquire() {
+    Signature signature = idle.poll();
+    return signature != null ? signature : factory.get();
+  }
+
+  /**
+   * Returns {@code signature} to the pool. Must only be called if its last operation completed, a
+   * {@link Signature} that threw may have a partial update and should be dropped instead.
+   */
+  void release(Signature signature) {
+    // If the pool is full, the signature is dropped.
+    idle.offer(signature);
+  }
+}
@@ -36,17 +36,24 @@ import dagger.Module;
 import dagger.Provides;
 import dagger.multibindings.ElementsIntoSet;
 import dagger.multibindings.IntoSet;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.Closeable;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.curioswitch.common.server.framework.ApplicationModule;
 import org.curioswitch.common.server.framework.armeria.CurrentRequestContextForwardingExecutorService;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
 import org.curioswitch.common.server.framework.config.DatabaseConfig;
 import org.curioswitch.common.server.framework.config.ModifiableDatabaseConfig;
 import org.curioswitch.common.server.framework.inject.CloseOnStop;
 import org.curioswitch.common.server.framework.inject.EagerInit;
+import org.curioswitch.common.server.framework.monitoring.MonitoringModule;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+import org.curioswitch.common.server.framework.util.VirtualThreads;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
@@ -55,9 +62,11 @@ import org.jooq.impl.DSL;
 import org.jooq.impl.DataSourceConnectionProvider;
 import org.jooq.impl.DefaultConfiguration;
 
-@Module(includes = ApplicationModule.class)
+@Module(includes = {ApplicationModule.class, MonitoringModule.class})
 public abstract class DatabaseModule {
 
+  private static final Logger logger = LogManager.getLogger();
+
   @Provides
   @Singleton
   static DatabaseConfig dbConfig(Config config) {
@@ -68,7 +77,14 @@ public abstract class DatabaseModule {
   @Provides
   @ForDatabase
   @Singleton
-  static ListeningExecutorService dbExecutor() {
+  static ListeningExecutorService dbExecutor(DatabaseConfig config, MeterRegistry meterRegistry) {
+    if (config.getUseVirtualThreads()) {
+      if (VirtualThreads.isSupported()) {
+        return new CurrentRequestContextForwardingExecutorService(
+            VirtualThreads.newVirtualThreadPerTaskExecutor("dbio-", meterRegistry));
+      }
+      logger.warn("Virtual threads are not supported by this JVM, using a fixed thread pool.");
+    }
     return new CurrentRequestContextForwardingExecutorService(
         Executors.newFixedThreadPool(
             20, new ThreadFactoryBuilder().setNameFormat("dbio-%d").setDaemon(true).build()));
@@ -112,6 +128,7 @@ public abstract class DatabaseModule {
   static DSLContext dbContext(
       DataSource dataSource,
       DatabaseConfig config,
+      RequestDeadlines requestDeadlines,
       @ForDatabase ListeningExecutorService dbExecutor) {
     Configuration configuration =
         new DefaultConfiguration()
@@ -121,7 +138,9 @@ public abstract class DatabaseModule {
             .set(new DataSourceConnectionProvider(dataSource))
             .set(DatabaseUtil.sfmRecordMapperProvider());
     if (config.getLogQueries()) {
-      configuration.set(new QueryLogger());
+      configuration.set(new DeadlineExecuteListener(requestDeadlines), new QueryLogger());
+    } else {
+      configuration.set(new DeadlineExecuteListener(requestDeadlines));
     }
     DSLContext ctx = DSL.using(configuration);
     // Eagerly trigger JOOQ classinit for better startup performance.
@@ -134,6 +153,13 @@ public abstract class DatabaseModule {
   @IntoSet
   abstract Object init(DSLContext dslContext);
 
+  @Provides
+  @IntoSet
+  static WarmUpTask warmUp(
+      DataSource dataSource, DSLContext db, @ForDatabase ListeningExecutorService dbExecutor) {
+    return new DatabaseWarmUpTask((HikariDataSource) dataSource, db, dbExecutor);
+  }
+
   @Provides
   @ElementsIntoSet
   @CloseOnStop
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.database;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.linecorp.armeria.server.Server;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+import org.jooq.DSLContext;
+
+/**
+ * A {@link WarmUpTask} which fills the connection pool up to its minimum idle size and executes a
+ * trivial query through jOOQ, so the first requests don't need to wait for connections to be
+ * established.
+ */
+final class DatabaseWarmUpTask implements WarmUpTask {
+
+  private final HikariDataSource dataSource;
+  private final DSLContext db;
+  private final ListeningExecutorService dbExecutor;
+
+  DatabaseWarmUpTask(
+      HikariDataSource dataSource, DSLContext db, ListeningExecutorService dbExecutor) {
+    this.dataSource = dataSource;
+    this.db = db;
+    this.dbExecutor = dbExecutor;
+  }
+
+  @Override
+  public String name() {
+    return "database";
+  }
+
+  @Override
+  public ListenableFuture<?> warmUp(Server server) {
+    return dbExecutor.submit(
+        () -> {
+          // Hold connections at the same time to make sure the pool actually creates them.
+          List<Connection> connections = new ArrayList<>();
+          try {
+            for (int i = 0; i < dataSource.getMinimumIdle(); i++) {
+              connections.add(dataSource.getConnection());
+            }
+          } finally {
+            for (Connection connection : connections) {
+              connection.close();
+            }
+          }
+          db.selectOne().fetch();
+          return null;
+        });
+  }
+}
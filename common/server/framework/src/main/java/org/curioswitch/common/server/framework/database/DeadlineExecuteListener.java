@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.database;
+
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+import com.linecorp.armeria.server.RequestTimeoutException;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
+import org.jooq.ExecuteContext;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DefaultExecuteListener;
+
+/**
+ * A {@link org.jooq.ExecuteListener} that sets the query timeout of statements to the remaining
+ * deadline of the server request they are executed for, and fails queries without executing them
+ * if the deadline has already passed, e.g., while waiting for a connection or a database thread.
+ */
+final class DeadlineExecuteListener extends DefaultExecuteListener {
+
+  private final RequestDeadlines deadlines;
+
+  DeadlineExecuteListener(RequestDeadlines deadlines) {
+    this.deadlines = deadlines;
+  }
+
+  @Override
+  public void prepareEnd(ExecuteContext ctx) {
+    long remainingMillis = RequestDeadlines.remainingMillis();
+    if (remainingMillis == 0) {
+      deadlines.recordExpired("database");
+      throw new DataAccessException(
+          "Request deadline passed before query execution.", RequestTimeoutException.get());
+    }
+    // Statements may be cached by the driver, so always reset the timeout even without a deadline.
+    // jOOQ will still override this with any timeout explicitly set on the query.
+    int timeoutSeconds =
+        remainingMillis == RequestDeadlines.NO_DEADLINE
+            ? 0
+            : Ints.saturatedCast(LongMath.divide(remainingMillis, 1000, RoundingMode.CEILING));
+    try {
+      ctx.statement().setQueryTimeout(timeoutSeconds);
+    } catch (SQLException e) {
+      throw new DataAccessException("Could not set query timeout.", e);
+    }
+  }
+}
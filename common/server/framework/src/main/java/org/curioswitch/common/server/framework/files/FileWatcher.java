@@ -23,7 +23,19 @@
  */
 package org.curioswitch.common.server.framework.files;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linecorp.armeria.common.CommonPools;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.ClosedWatchServiceException;
@@ -33,13 +45,17 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
@@ -48,6 +64,12 @@ import org.apache.logging.log4j.Logger;
 /**
  * A watcher of filesystem events for registered {@link Path}s. All {@link Path}s are watched on a
  * single watcher {@link Thread}.
+ *
+ * <p>Updates such as Kubernetes' symlink swaps generate a burst of events, so events for a path
+ * are debounced and coalesced into a single call of its callback once no events have been seen for
+ * the debounce duration. The callback is skipped if the contents of the file are the same as when
+ * it was last processed. Callbacks run on the callback executor, never concurrently for the same
+ * path, and are always passed the registered {@link Path}.
  */
 public class FileWatcher implements AutoCloseable {
 
@@ -56,10 +78,15 @@ public class FileWatcher implements AutoCloseable {
   @Singleton
   public static class Builder {
     private final Map<Path, Consumer<Path>> registeredPaths;
+    private final MeterRegistry meterRegistry;
+
+    private Duration debounce = Duration.ofMillis(500);
+    private Executor callbackExecutor = CommonPools.blockingTaskExecutor();
 
     @Inject
-    public Builder() {
+    public Builder(MeterRegistry meterRegistry) {
       this.registeredPaths = new HashMap<>();
+      this.meterRegistry = meterRegistry;
     }
 
     public Builder registerPath(Path path, Consumer<Path> callback) {
@@ -67,40 +94,81 @@ public class FileWatcher implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets how long to wait after the last event for a path before calling its callback. Defaults
+     * to 500ms.
+     */
+    public Builder debounce(Duration debounce) {
+      checkArgument(!debounce.isNegative(), "debounce must not be negative");
+      this.debounce = debounce;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Executor} to run callbacks on. Defaults to {@link
+     * CommonPools#blockingTaskExecutor()}.
+     */
+    public Builder callbackExecutor(Executor callbackExecutor) {
+      this.callbackExecutor = callbackExecutor;
+      return this;
+    }
+
     public boolean isEmpty() {
       return registeredPaths.isEmpty();
     }
 
     public FileWatcher build() {
-      return new FileWatcher(registeredPaths);
+      return new FileWatcher(registeredPaths, debounce, callbackExecutor, meterRegistry);
     }
   }
 
   private final WatchService watchService;
   private final ExecutorService executor;
-  private final Map<Path, Consumer<Path>> registeredPaths;
+  private final ScheduledExecutorService debounceScheduler;
+  private final Duration debounce;
+  private final ImmutableList<WatchedFile> watchedFiles;
   private final Map<WatchKey, Path> watchedDirs;
 
-  private FileWatcher(Map<Path, Consumer<Path>> registeredPaths) {
-    this.registeredPaths = ImmutableMap.copyOf(registeredPaths);
+  private FileWatcher(
+      Map<Path, Consumer<Path>> registeredPaths,
+      Duration debounce,
+      Executor callbackExecutor,
+      MeterRegistry meterRegistry) {
+    this.debounce = debounce;
+    watchedFiles =
+        registeredPaths.entrySet().stream()
+            .map(
+                entry ->
+                    new WatchedFile(
+                        entry.getKey(), entry.getValue(), callbackExecutor, meterRegistry))
+            .collect(ImmutableList.toImmutableList());
     try {
       watchService = FileSystems.getDefault().newWatchService();
-      ImmutableMap.Builder<WatchKey, Path> watchedDirsBuilder = ImmutableMap.builder();
-      for (Map.Entry<Path, Consumer<Path>> entry : registeredPaths.entrySet()) {
-        Path dir = entry.getKey().getParent();
+      // Registering the same directory again returns the same key.
+      Map<WatchKey, Path> watchedDirs = new HashMap<>();
+      for (Path path : registeredPaths.keySet()) {
+        Path dir = path.getParent();
         WatchKey key =
             dir.register(
                 watchService,
                 StandardWatchEventKinds.ENTRY_CREATE,
                 StandardWatchEventKinds.ENTRY_DELETE,
                 StandardWatchEventKinds.ENTRY_MODIFY);
-        watchedDirsBuilder.put(key, dir);
+        watchedDirs.put(key, dir);
       }
-      this.watchedDirs = watchedDirsBuilder.build();
+      this.watchedDirs = ImmutableMap.copyOf(watchedDirs);
     } catch (IOException e) {
       throw new UncheckedIOException("Could not create WatchService.", e);
     }
-    executor = Executors.newSingleThreadScheduledExecutor();
+    executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("file-watcher").setDaemon(true).build());
+    debounceScheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("file-watcher-debounce")
+                .setDaemon(true)
+                .build());
   }
 
   @SuppressWarnings("FutureReturnValueIgnored")
@@ -128,32 +196,15 @@ public class FileWatcher implements AutoCloseable {
           .forEach(
               path -> {
                 final Path resolved = watchedDirs.get(key).resolve(path);
-                Optional<Consumer<Path>> callback =
-                    registeredPaths.entrySet().stream()
-                        .filter(
-                            e -> {
-                              try {
-                                // File updates may be implemented by switching the directory of a
-                                // symlink, in which case the key is the directory. startsWith can
-                                // handle both a file being directly updated or its parent having
-                                // been updated.
-                                return e.getKey().toRealPath().startsWith(resolved);
-                              } catch (IOException ex) {
-                                logger.info("Could not resolve real path.", ex);
-                                return false;
-                              }
-                            })
-                        .map(Entry::getValue)
-                        .findFirst();
-                if (callback.isPresent()) {
-                  logger.info("Processing update to path: " + resolved);
-                  try {
-                    callback.get().accept(resolved);
-                  } catch (Exception e) {
-                    logger.warn("Unexpected exception processing update to path: {}", resolved, e);
+                boolean matched = false;
+                for (WatchedFile file : watchedFiles) {
+                  if (file.isAffectedBy(resolved)) {
+                    file.onEvent();
+                    matched = true;
                   }
-                } else {
-                  logger.info("Could not find callback for path: {}", resolved);
+                }
+                if (!matched) {
+                  logger.debug("Could not find callback for path: {}", resolved);
                 }
               });
 
@@ -173,5 +224,128 @@ public class FileWatcher implements AutoCloseable {
       throw new UncheckedIOException("Error shutting down WatchService.", e);
     }
     executor.shutdown();
+    debounceScheduler.shutdownNow();
+  }
+
+  private final class WatchedFile {
+    private final Path path;
+    private final Consumer<Path> callback;
+    private final Executor callbackExecutor;
+
+    private final Timer reloadLatency;
+    private final Counter reloaded;
+    private final Counter unchanged;
+    private final Counter failed;
+
+    // Only accessed from callbackExecutor, which is sequential.
+    @Nullable private HashCode contentHash;
+
+    // Guarded by this, events are received on the watcher thread and fire on the scheduler.
+    @Nullable private ScheduledFuture<?> pendingReload;
+    private long pendingGeneration;
+    private long firstEventNanos;
+
+    private WatchedFile(
+        Path path,
+        Consumer<Path> callback,
+        Executor callbackExecutor,
+        MeterRegistry meterRegistry) {
+      this.path = path;
+      this.callback = callback;
+      this.callbackExecutor = MoreExecutors.newSequentialExecutor(callbackExecutor);
+
+      String pathTag = path.toString();
+      reloadLatency =
+          Timer.builder("file_watcher_reload_latency")
+              .description("Time from the first event for a path to its reload completing.")
+              .tag("path", pathTag)
+              .register(meterRegistry);
+      reloaded = reloadCounter("reloaded", pathTag, meterRegistry);
+      unchanged = reloadCounter("unchanged", pathTag, meterRegistry);
+      failed = reloadCounter("failed", pathTag, meterRegistry);
+
+      contentHash = hashContents();
+    }
+
+    private boolean isAffectedBy(Path resolved) {
+      if (path.equals(resolved)) {
+        return true;
+      }
+      try {
+        // File updates may be implemented by switching the directory of a symlink, in which case
+        // the key is the directory. startsWith can handle both a file being directly updated or its
+        // parent having been updated.
+        return path.toRealPath().startsWith(resolved);
+      } catch (IOException ex) {
+        logger.info("Could not resolve real path.", ex);
+        return false;
+      }
+    }
+
+    private synchronized void onEvent() {
+      if (pendingReload != null) {
+        pendingReload.cancel(false);
+      } else {
+        firstEventNanos = System.nanoTime();
+      }
+      long generation = ++pendingGeneration;
+      pendingReload =
+          debounceScheduler.schedule(
+              () -> onDebounced(generation), debounce.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void onDebounced(long generation) {
+      final long firstEventNanos;
+      synchronized (this) {
+        if (generation != pendingGeneration) {
+          // Superseded by a later event which could not cancel this in time.
+          return;
+        }
+        pendingReload = null;
+        firstEventNanos = this.firstEventNanos;
+      }
+      callbackExecutor.execute(() -> reload(firstEventNanos));
+    }
+
+    private void reload(long firstEventNanos) {
+      try {
+        HashCode newHash = hashContents();
+        if (newHash != null && newHash.equals(contentHash)) {
+          logger.info("Skipping update to path with unchanged contents: {}", path);
+          unchanged.increment();
+          return;
+        }
+        logger.info("Processing update to path: {}", path);
+        try {
+          callback.accept(path);
+        } catch (Exception e) {
+          logger.warn("Unexpected exception processing update to path: {}", path, e);
+          failed.increment();
+          return;
+        }
+        contentHash = newHash;
+        reloaded.increment();
+      } finally {
+        reloadLatency.record(System.nanoTime() - firstEventNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    @Nullable
+    private HashCode hashContents() {
+      try {
+        return MoreFiles.asByteSource(path).hash(Hashing.sha256());
+      } catch (IOException e) {
+        // Usually means the file has been deleted, which the callback should still see.
+        return null;
+      }
+    }
+  }
+
+  private static Counter reloadCounter(String result, String path, MeterRegistry meterRegistry) {
+    return Counter.builder("file_watcher_reloads")
+        .description("Number of debounced updates processed for a path, by result.")
+        .tag("path", path)
+        .tag("result", result)
+        .register(meterRegistry);
   }
 }
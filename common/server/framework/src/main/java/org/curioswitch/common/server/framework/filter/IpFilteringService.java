@@ -23,11 +23,6 @@
  */
 package org.curioswitch.common.server.framework.filter;
 
-import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.collect.ImmutableList.toImmutableList;
-
-import com.google.common.base.Splitter;
-import com.google.common.net.HttpHeaders;
 import com.linecorp.armeria.common.HttpHeaderNames;
 import com.linecorp.armeria.common.HttpRequest;
 import com.linecorp.armeria.common.HttpResponse;
@@ -36,12 +31,10 @@ import com.linecorp.armeria.server.HttpService;
 import com.linecorp.armeria.server.Service;
 import com.linecorp.armeria.server.ServiceRequestContext;
 import com.linecorp.armeria.server.SimpleDecoratingHttpService;
-import io.netty.handler.ipfilter.IpFilterRule;
-import io.netty.handler.ipfilter.IpFilterRuleType;
-import io.netty.handler.ipfilter.IpSubnetFilterRule;
-import java.net.InetSocketAddress;
+import java.net.InetAddress;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -56,50 +49,48 @@ public class IpFilteringService extends SimpleDecoratingHttpService {
 
   private static final Logger logger = LogManager.getLogger();
 
-  private static final Splitter RULE_SPLITTER = Splitter.on('/');
-
   public static Function<HttpService, IpFilteringService> newDecorator(List<String> ipRules) {
-    return service -> new IpFilteringService(service, ipRules);
+    IpSubnetTrie rules = IpSubnetTrie.of(ipRules);
+    return newDecorator(() -> rules);
+  }
+
+  /**
+   * Returns a decorator which filters requests using the rules returned by {@code rules}, which is
+   * called on every request so any changes to the rules will be reflected in real time.
+   */
+  public static Function<HttpService, IpFilteringService> newDecorator(
+      Supplier<IpSubnetTrie> rules) {
+    return service -> new IpFilteringService(service, rules);
   }
 
-  private final List<IpFilterRule> rules;
+  private final Supplier<IpSubnetTrie> rules;
 
   /** Creates a new instance that decorates the specified {@link Service}. */
-  private IpFilteringService(HttpService delegate, List<String> ipRules) {
+  private IpFilteringService(HttpService delegate, Supplier<IpSubnetTrie> rules) {
     super(delegate);
-    rules = parseRules(ipRules);
+    this.rules = rules;
   }
 
   @Override
   public HttpResponse serve(ServiceRequestContext ctx, HttpRequest req) throws Exception {
-    String xForwardedFor = req.headers().get(HttpHeaderNames.of(HttpHeaders.X_FORWARDED_FOR));
-    InetSocketAddress remoteAddress = ctx.remoteAddress();
-    final InetSocketAddress clientAddress;
+    String xForwardedFor = req.headers().get(HttpHeaderNames.X_FORWARDED_FOR);
     if (xForwardedFor != null) {
       int commaIndex = xForwardedFor.indexOf(',');
-      String clientIp = commaIndex < 0 ? xForwardedFor : xForwardedFor.substring(0, commaIndex);
-      clientAddress = new InetSocketAddress(clientIp, remoteAddress.getPort());
-    } else {
-      clientAddress = remoteAddress;
+      int clientIpEnd = commaIndex < 0 ? xForwardedFor.length() : commaIndex;
+      if (rules.get().matches(xForwardedFor, 0, clientIpEnd)) {
+        return unwrap().serve(ctx, req);
+      }
+      return deny(xForwardedFor.substring(0, clientIpEnd).trim());
     }
-    if (rules.stream().anyMatch(rule -> rule.matches(clientAddress))) {
+    InetAddress remoteAddress = ctx.remoteAddress().getAddress();
+    if (rules.get().matches(remoteAddress)) {
       return unwrap().serve(ctx, req);
-    } else {
-      logger.info("Denying access from IP " + clientAddress);
-      return HttpResponse.of(HttpStatus.FORBIDDEN);
     }
+    return deny(remoteAddress.getHostAddress());
   }
 
-  private static List<IpFilterRule> parseRules(List<String> ipRules) {
-    return ipRules.stream()
-        .map(
-            rule -> {
-              List<String> parts = RULE_SPLITTER.splitToList(rule);
-              // TODO(choko): Add better validation.
-              checkArgument(parts.size() == 2, "invalid rule: {}", rule);
-              return new IpSubnetFilterRule(
-                  parts.get(0), Integer.parseInt(parts.get(1)), IpFilterRuleType.ACCEPT);
-            })
-        .collect(toImmutableList());
+  private static HttpResponse deny(String clientIp) {
+    logger.info("Denying access from IP {}", clientIp);
+    return HttpResponse.of(HttpStatus.FORBIDDEN);
   }
 }
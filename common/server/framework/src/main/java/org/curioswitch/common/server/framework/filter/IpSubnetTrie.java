@@ -0,0 +1,363 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.filter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Splitter;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of IP subnets, compiled into binary radix tries over the bits of IPv4 and IPv6
+ * addresses. Checking whether an address is in any of the subnets takes time proportional to the
+ * length of the address regardless of the number of subnets, and addresses in text form are parsed
+ * without allocation or name resolution.
+ */
+public final class IpSubnetTrie {
+
+  private static final Splitter RULE_SPLITTER = Splitter.on('/').trimResults();
+
+  // Child value of a node when all addresses below it are in a subnet. Node 0 is the root so is
+  // never a child, and a child value of 0 indicates no subnet below the node.
+  private static final int MATCH = -1;
+
+  private static final FastThreadLocal<int[]> IPV6_GROUPS =
+      new FastThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          return new int[8];
+        }
+      };
+
+  /**
+   * Returns a {@link IpSubnetTrie} which matches the subnets in {@code rules}, formatted as an IP
+   * address with a subnet prefix length, e.g., 121.121.0.0/16 or 2001:db8::/32.
+   *
+   * @throws IllegalArgumentException if a rule is not valid
+   */
+  public static IpSubnetTrie of(Iterable<String> rules) {
+    Builder ipv4 = new Builder();
+    Builder ipv6 = new Builder();
+    for (String rule : rules) {
+      List<String> parts = RULE_SPLITTER.splitToList(rule.trim());
+      checkArgument(parts.size() == 2, "invalid rule: %s", rule);
+      byte[] address = NetUtil.createByteArrayFromIpAddressString(parts.get(0));
+      checkArgument(address != null, "invalid address in rule: %s", rule);
+      int prefixLength = Integer.parseInt(parts.get(1));
+      checkArgument(
+          prefixLength >= 0 && prefixLength <= address.length * 8,
+          "invalid prefix length in rule: %s",
+          rule);
+      (address.length == 4 ? ipv4 : ipv6).add(address, prefixLength);
+    }
+    return new IpSubnetTrie(ipv4.build(), ipv6.build());
+  }
+
+  private final Trie ipv4;
+  private final Trie ipv6;
+
+  private IpSubnetTrie(Trie ipv4, Trie ipv6) {
+    this.ipv4 = ipv4;
+    this.ipv6 = ipv6;
+  }
+
+  /** Returns whether {@code address} is in any of the subnets. */
+  public boolean matches(InetAddress address) {
+    return (address instanceof Inet4Address ? ipv4 : ipv6).matches(address.getAddress());
+  }
+
+  /**
+   * Returns whether the IP address in text form in {@code s} between {@code start} and {@code end}
+   * is in any of the subnets. Surrounding whitespace and square brackets, and a port following an
+   * IPv4 address, are ignored. Returns {@code false} if the text is not a valid IP address.
+   */
+  public boolean matches(CharSequence s, int start, int end) {
+    while (start < end && Character.isWhitespace(s.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+      end--;
+    }
+    if (end - start >= 2 && s.charAt(start) == '[' && s.charAt(end - 1) == ']') {
+      start++;
+      end--;
+    }
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c == '.') {
+        // IPv4, possibly with a port.
+        for (int j = i + 1; j < end; j++) {
+          if (s.charAt(j) == ':') {
+            end = j;
+            break;
+          }
+        }
+        long address = parseIpv4(s, start, end);
+        return address >= 0 && ipv4.matches((int) address);
+      }
+      if (c == ':') {
+        int[] groups = IPV6_GROUPS.get();
+        if (!parseIpv6(s, start, end, groups)) {
+          return false;
+        }
+        if (isIpv4Mapped(groups)) {
+          return ipv4.matches(groups[6] << 16 | groups[7]);
+        }
+        return ipv6.matches(groups);
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether the IP address in text form in {@code s} is in any of the subnets. */
+  public boolean matches(CharSequence s) {
+    return matches(s, 0, s.length());
+  }
+
+  /**
+   * Parses the IPv4 address between {@code start} and {@code end} into the lower 32 bits of the
+   * returned value, or returns {@code -1} if it is not a valid address.
+   */
+  static long parseIpv4(CharSequence s, int start, int end) {
+    long address = 0;
+    int octets = 0;
+    int value = 0;
+    int digits = 0;
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c == '.') {
+        if (digits == 0 || octets == 3) {
+          return -1;
+        }
+        address = address << 8 | value;
+        octets++;
+        value = 0;
+        digits = 0;
+      } else if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+        digits++;
+        if (digits > 3 || value > 255) {
+          return -1;
+        }
+      } else {
+        return -1;
+      }
+    }
+    if (digits == 0 || octets != 3) {
+      return -1;
+    }
+    return address << 8 | value;
+  }
+
+  /**
+   * Parses the IPv6 address between {@code start} and {@code end} into the eight 16-bit {@code
+   * groups}, returning whether it was a valid address.
+   */
+  static boolean parseIpv6(CharSequence s, int start, int end, int[] groups) {
+    int numGroups = 0;
+    int compressedAt = -1;
+    int i = start;
+    if (end - i >= 2 && s.charAt(i) == ':') {
+      if (s.charAt(i + 1) != ':') {
+        return false;
+      }
+      compressedAt = 0;
+      i += 2;
+    }
+    while (i < end) {
+      if (numGroups == 8) {
+        return false;
+      }
+      int groupStart = i;
+      int value = 0;
+      while (i < end) {
+        int digit = Character.digit(s.charAt(i), 16);
+        if (digit < 0) {
+          break;
+        }
+        value = value << 4 | digit;
+        i++;
+      }
+      if (i < end && s.charAt(i) == '.') {
+        // Embedded IPv4 address, which must be the last two groups.
+        if (numGroups > 6) {
+          return false;
+        }
+        long ipv4 = parseIpv4(s, groupStart, end);
+        if (ipv4 < 0) {
+          return false;
+        }
+        groups[numGroups++] = (int) (ipv4 >>> 16);
+        groups[numGroups++] = (int) (ipv4 & 0xFFFF);
+        i = end;
+        break;
+      }
+      if (i == groupStart || i - groupStart > 4) {
+        return false;
+      }
+      groups[numGroups++] = value;
+      if (i == end) {
+        break;
+      }
+      if (s.charAt(i) != ':') {
+        return false;
+      }
+      i++;
+      if (i < end && s.charAt(i) == ':') {
+        if (compressedAt >= 0) {
+          return false;
+        }
+        compressedAt = numGroups;
+        i++;
+      } else if (i == end) {
+        return false;
+      }
+    }
+    if (compressedAt < 0) {
+      return numGroups == 8;
+    }
+    if (numGroups == 8) {
+      return false;
+    }
+    int shift = 8 - numGroups;
+    for (int j = numGroups - 1; j >= compressedAt; j--) {
+      groups[j + shift] = groups[j];
+    }
+    Arrays.fill(groups, compressedAt, compressedAt + shift, 0);
+    return true;
+  }
+
+  private static boolean isIpv4Mapped(int[] groups) {
+    return groups[0] == 0
+        && groups[1] == 0
+        && groups[2] == 0
+        && groups[3] == 0
+        && groups[4] == 0
+        && groups[5] == 0xFFFF;
+  }
+
+  private static final class Trie {
+
+    // The two children of node n are at 2n and 2n + 1, for bit values 0 and 1.
+    private final int[] children;
+    private final boolean matchesAll;
+
+    private Trie(int[] children, boolean matchesAll) {
+      this.children = children;
+      this.matchesAll = matchesAll;
+    }
+
+    private boolean matches(int ipv4) {
+      if (matchesAll) {
+        return true;
+      }
+      int node = 0;
+      for (int i = 31; i >= 0; i--) {
+        node = children[node << 1 | (ipv4 >>> i) & 1];
+        if (node <= 0) {
+          return node == MATCH;
+        }
+      }
+      return false;
+    }
+
+    private boolean matches(int[] ipv6Groups) {
+      if (matchesAll) {
+        return true;
+      }
+      int node = 0;
+      for (int i = 0; i < 128; i++) {
+        int bit = (ipv6Groups[i >>> 4] >>> (15 - (i & 15))) & 1;
+        node = children[node << 1 | bit];
+        if (node <= 0) {
+          return node == MATCH;
+        }
+      }
+      return false;
+    }
+
+    private boolean matches(byte[] address) {
+      if (matchesAll) {
+        return true;
+      }
+      int node = 0;
+      for (int i = 0; i < address.length * 8; i++) {
+        node = children[node << 1 | bit(address, i)];
+        if (node <= 0) {
+          return node == MATCH;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class Builder {
+
+    private int[] children = new int[64];
+    private int numNodes = 1;
+    private boolean matchesAll;
+
+    private void add(byte[] address, int prefixLength) {
+      if (prefixLength == 0) {
+        matchesAll = true;
+        return;
+      }
+      int node = 0;
+      for (int i = 0; i < prefixLength; i++) {
+        int index = node << 1 | bit(address, i);
+        int child = children[index];
+        if (child == MATCH) {
+          // Already covered by a wider subnet.
+          return;
+        }
+        if (i == prefixLength - 1) {
+          // Any narrower subnets that were under this node are now unreachable.
+          children[index] = MATCH;
+          return;
+        }
+        if (child == 0) {
+          child = numNodes++;
+          if (children.length < numNodes << 1) {
+            children = Arrays.copyOf(children, children.length << 1);
+          }
+          children[index] = child;
+        }
+        node = child;
+      }
+    }
+
+    private Trie build() {
+      return new Trie(Arrays.copyOf(children, numNodes << 1), matchesAll);
+    }
+  }
+
+  private static int bit(byte[] address, int i) {
+    return (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.filter;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * IP filtering rules which are read from a file, with one rule per line, and reloaded whenever
+ * {@link #processFile(Path)} is called, usually from a {@link
+ * org.curioswitch.common.server.framework.files.FileWatcher}. Empty lines and lines starting with
+ * '#' are ignored. If the file cannot be read or contains an invalid rule, the previous rules are
+ * kept.
+ */
+public class WatchedIpFilterRules implements Supplier<IpSubnetTrie> {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final List<String> staticRules;
+  private final Path path;
+
+  private volatile IpSubnetTrie rules;
+
+  /**
+   * Creates a new {@link WatchedIpFilterRules} which will always include {@code staticRules} in
+   * addition to the rules in the file at {@code path}.
+   */
+  public WatchedIpFilterRules(List<String> staticRules, Path path) {
+    this.staticRules = ImmutableList.copyOf(staticRules);
+    this.path = path;
+    rules = IpSubnetTrie.of(staticRules);
+  }
+
+  public void processFile(Path unused) {
+    final List<String> fileRules;
+    try {
+      fileRules =
+          Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+              .map(String::trim)
+              .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+              .collect(toImmutableList());
+    } catch (IOException e) {
+      logger.warn("Error reading IP filter rules file.", e);
+      return;
+    }
+    try {
+      rules = IpSubnetTrie.of(Iterables.concat(staticRules, fileRules));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Invalid IP filter rules file.", e);
+      return;
+    }
+    logger.info("Loaded {} IP filter rules from {}.", fileRules.size(), path);
+  }
+
+  @Override
+  public IpSubnetTrie get() {
+    return rules;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.grpc;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Message;
+import com.linecorp.armeria.server.Server;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.MethodDescriptor.PrototypeMarshaller;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.curioswitch.common.protobuf.json.MessageMarshaller;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+
+/**
+ * A {@link WarmUpTask} which constructs a {@link MessageMarshaller} for all the request and
+ * response types of the registered gRPC services and round-trips their default instances through
+ * the binary and JSON formats, triggering class initialization and code generation for them.
+ */
+public class GrpcMarshallerWarmUpTask implements WarmUpTask {
+
+  private final List<ServerServiceDefinition> services;
+
+  public GrpcMarshallerWarmUpTask(List<ServerServiceDefinition> services) {
+    this.services = services;
+  }
+
+  @Override
+  public String name() {
+    return "grpc_marshaller";
+  }
+
+  @Override
+  public ListenableFuture<?> warmUp(Server server) {
+    ImmutableSet.Builder<Marshaller<?>> marshallers = ImmutableSet.builder();
+    for (ServerServiceDefinition service : services) {
+      for (ServerMethodDefinition<?, ?> method : service.getMethods()) {
+        MethodDescriptor<?, ?> descriptor = method.getMethodDescriptor();
+        marshallers.add(descriptor.getRequestMarshaller());
+        marshallers.add(descriptor.getResponseMarshaller());
+      }
+    }
+
+    ImmutableSet.Builder<Message> prototypes = ImmutableSet.builder();
+    for (Marshaller<?> marshaller : marshallers.build()) {
+      if (!(marshaller instanceof PrototypeMarshaller)) {
+        continue;
+      }
+      Object prototype = ((PrototypeMarshaller<?>) marshaller).getMessagePrototype();
+      if (prototype instanceof Message) {
+        prototypes.add((Message) prototype);
+        roundTrip(marshaller, prototype);
+      }
+    }
+
+    MessageMarshaller.Builder jsonMarshaller = MessageMarshaller.builder();
+    ImmutableSet<Message> messages = prototypes.build();
+    messages.forEach(jsonMarshaller::register);
+    MessageMarshaller marshaller = jsonMarshaller.build();
+    try {
+      for (Message message : messages) {
+        marshaller.mergeValue(marshaller.writeValueAsBytes(message), message.newBuilderForType());
+      }
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    return Futures.immediateFuture(null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void roundTrip(Marshaller<T> marshaller, Object prototype) {
+    try (InputStream stream = marshaller.stream((T) prototype)) {
+      marshaller.parse(stream);
+    } catch (IOException e) {
+      // Can't happen for in-memory streams.
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.grpc;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.client.ClientFactory;
+import com.linecorp.armeria.client.Endpoint;
+import com.linecorp.armeria.client.WebClient;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.RequestHeaders;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.SessionProtocol;
+import com.linecorp.armeria.server.HttpService;
+import com.linecorp.armeria.server.Server;
+import com.spotify.futures.CompletableFuturesExtra;
+import io.grpc.BindableService;
+import io.grpc.ServerMethodDefinition;
+import io.netty.util.AsciiString;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+
+/**
+ * A {@link WarmUpTask} which sends synthetic requests to every method of the registered gRPC
+ * services through the server's own HTTPS port, warming up TLS, HTTP/2, routing, decorators and
+ * framing. Synthetic requests carry a random per-process token and are answered by {@link
+ * #decorate(HttpService)} without invoking the actual service. Decorators like authorization may
+ * still reject them, which is fine for warming up.
+ */
+public class GrpcRequestWarmUpTask implements WarmUpTask {
+
+  private static final AsciiString WARM_UP_HEADER = HttpHeaderNames.of("x-curio-warm-up");
+  private static final AsciiString GRPC_STATUS = HttpHeaderNames.of("grpc-status");
+
+  private static final int ITERATIONS = 10;
+
+  // An empty message, with the gRPC frame header of a zero flag byte and a zero length.
+  private static final byte[] EMPTY_PROTO_FRAME = new byte[5];
+  private static final byte[] EMPTY_JSON_FRAME = {0, 0, 0, 0, 2, '{', '}'};
+
+  private final List<GrpcServiceDefinition> definitions;
+  private final String token;
+
+  public GrpcRequestWarmUpTask(List<GrpcServiceDefinition> definitions) {
+    this.definitions = definitions;
+    token = UUID.randomUUID().toString();
+  }
+
+  /**
+   * Decorates a gRPC {@link HttpService} so synthetic requests from this task are answered with an
+   * empty OK response instead of being served.
+   */
+  public HttpService decorate(HttpService service) {
+    return service.decorate(
+        (delegate, ctx, req) -> {
+          String requestToken = req.headers().get(WARM_UP_HEADER);
+          if (requestToken == null || !token.equals(requestToken)) {
+            return delegate.serve(ctx, req);
+          }
+          return HttpResponse.from(
+              req.aggregate()
+                  .thenApply(
+                      unused ->
+                          HttpResponse.of(
+                              ResponseHeaders.of(
+                                  HttpStatus.OK,
+                                  HttpHeaderNames.CONTENT_TYPE,
+                                  req.contentType(),
+                                  GRPC_STATUS,
+                                  "0"))));
+        });
+  }
+
+  @Override
+  public String name() {
+    return "grpc_request";
+  }
+
+  @Override
+  public ListenableFuture<?> warmUp(Server server) {
+    WebClient client =
+        WebClient.builder(
+                SessionProtocol.HTTPS,
+                Endpoint.of("127.0.0.1", server.activeLocalPort(SessionProtocol.HTTPS)))
+            .factory(ClientFactory.insecure())
+            .build();
+
+    ImmutableList.Builder<String> paths = ImmutableList.builder();
+    for (GrpcServiceDefinition definition : definitions) {
+      String prefix = definition.path().endsWith("/") ? definition.path() : definition.path() + '/';
+      for (BindableService service : definition.services()) {
+        for (ServerMethodDefinition<?, ?> method : service.bindService().getMethods()) {
+          paths.add(prefix + method.getMethodDescriptor().getFullMethodName());
+        }
+      }
+    }
+
+    ListenableFuture<?> result = Futures.immediateFuture(null);
+    for (int i = 0; i < ITERATIONS; i++) {
+      result =
+          Futures.transformAsync(
+              result, unused -> sendAll(client, paths.build()), MoreExecutors.directExecutor());
+    }
+    return result;
+  }
+
+  private ListenableFuture<?> sendAll(WebClient client, List<String> paths) {
+    ImmutableList<CompletableFuture<?>> responses =
+        paths.stream()
+            .flatMap(
+                path ->
+                    ImmutableList.of(
+                        send(client, path, "application/grpc+proto", EMPTY_PROTO_FRAME),
+                        send(client, path, "application/grpc+json", EMPTY_JSON_FRAME))
+                        .stream())
+            .collect(toImmutableList());
+    return Futures.whenAllComplete(
+            responses.stream()
+                .map(CompletableFuturesExtra::toListenableFuture)
+                .collect(toImmutableList()))
+        .call(() -> null, MoreExecutors.directExecutor());
+  }
+
+  private CompletableFuture<?> send(
+      WebClient client, String path, String contentType, byte[] body) {
+    return client
+        .execute(
+            HttpRequest.of(
+                RequestHeaders.of(
+                    HttpMethod.POST,
+                    path,
+                    HttpHeaderNames.CONTENT_TYPE,
+                    contentType,
+                    HttpHeaderNames.TE,
+                    "trailers",
+                    WARM_UP_HEADER,
+                    token),
+                HttpData.wrap(body)))
+        .aggregate();
+  }
+}
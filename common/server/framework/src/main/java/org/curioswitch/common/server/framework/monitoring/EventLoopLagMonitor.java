@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.monitoring;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.linecorp.armeria.server.healthcheck.HealthChecker;
+import com.linecorp.armeria.server.healthcheck.SettableHealthChecker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.curioswitch.common.server.framework.config.MonitoringConfig;
+
+/**
+ * Measures how long tasks wait to run on each event loop by scheduling a probe on every loop and
+ * recording how late it runs. A watchdog thread logs the stack of any loop whose probe is late by
+ * more than the blocked threshold, which usually means a blocking call on the event loop. If
+ * configured, the server is reported unhealthy while the average lag across loops stays above a
+ * threshold, so load balancers stop sending it traffic it can't keep up with.
+ */
+public class EventLoopLagMonitor implements Closeable {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final ImmutableList<LoopState> loops;
+  private final long probeIntervalNanos;
+  private final long blockedThresholdNanos;
+  private final long unhealthyLagNanos;
+  private final long unhealthyPeriodNanos;
+  private final SettableHealthChecker healthChecker = new SettableHealthChecker(true);
+  private final ScheduledExecutorService watchdog;
+
+  // Only accessed from the watchdog thread.
+  private long laggingSinceNanos;
+
+  private volatile boolean closed;
+
+  public EventLoopLagMonitor(
+      EventLoopGroup eventLoopGroup, MonitoringConfig config, MeterRegistry meterRegistry) {
+    probeIntervalNanos = config.getEventLoopLagProbeInterval().toNanos();
+    blockedThresholdNanos = config.getEventLoopBlockedThreshold().toNanos();
+    unhealthyLagNanos = config.getEventLoopUnhealthyLag().toNanos();
+    unhealthyPeriodNanos = config.getEventLoopUnhealthyPeriod().toNanos();
+
+    ImmutableList.Builder<LoopState> loops = ImmutableList.builder();
+    int index = 0;
+    for (EventExecutor loop : eventLoopGroup) {
+      loops.add(new LoopState(loop, String.valueOf(index++), meterRegistry));
+    }
+    this.loops = loops.build();
+
+    watchdog =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("event-loop-lag-monitor")
+                .setDaemon(true)
+                .build());
+  }
+
+  /** Starts probing the event loops. Does nothing if the probe interval is zero. */
+  public void start() {
+    if (probeIntervalNanos == 0) {
+      return;
+    }
+    for (LoopState state : loops) {
+      state.loop.execute(() -> state.thread = Thread.currentThread());
+      scheduleProbe(state);
+    }
+    watchdog.scheduleAtFixedRate(
+        this::checkLoops, probeIntervalNanos, probeIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /** Returns whether the server should be marked unhealthy when lag is sustained. */
+  public boolean isHealthCheckEnabled() {
+    return probeIntervalNanos != 0 && unhealthyLagNanos != 0;
+  }
+
+  /** The {@link HealthChecker} that is unhealthy while event loop lag is sustained. */
+  public HealthChecker healthChecker() {
+    return healthChecker;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    watchdog.shutdownNow();
+  }
+
+  private void scheduleProbe(LoopState state) {
+    if (closed || state.loop.isShuttingDown()) {
+      return;
+    }
+    state.expectedRunNanos = System.nanoTime() + probeIntervalNanos;
+    state.blockedReported = false;
+    state.loop.schedule(() -> probe(state), probeIntervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void probe(LoopState state) {
+    long lagNanos = Math.max(0, System.nanoTime() - state.expectedRunNanos);
+    state.lag.record(lagNanos, TimeUnit.NANOSECONDS);
+    state.lastLagNanos = lagNanos;
+    scheduleProbe(state);
+  }
+
+  private void checkLoops() {
+    long now = System.nanoTime();
+    long totalLagNanos = 0;
+    for (LoopState state : loops) {
+      long overdueNanos = now - state.expectedRunNanos;
+      if (overdueNanos > blockedThresholdNanos && !state.blockedReported) {
+        state.blockedReported = true;
+        state.blocked.increment();
+        Thread thread = state.thread;
+        if (thread != null) {
+          BlockedEventLoopException stack =
+              new BlockedEventLoopException(thread.getName(), overdueNanos);
+          stack.setStackTrace(thread.getStackTrace());
+          logger.warn("Event loop blocked, current stack of the loop thread:", stack);
+        }
+      }
+      totalLagNanos += Math.max(state.lastLagNanos, overdueNanos);
+    }
+
+    if (unhealthyLagNanos == 0 || loops.isEmpty()) {
+      return;
+    }
+    long averageLagNanos = totalLagNanos / loops.size();
+    if (averageLagNanos < unhealthyLagNanos) {
+      laggingSinceNanos = 0;
+      if (!healthChecker.isHealthy()) {
+        logger.info("Event loop lag recovered, reporting healthy.");
+        healthChecker.setHealthy(true);
+      }
+      return;
+    }
+    if (laggingSinceNanos == 0) {
+      laggingSinceNanos = now;
+    } else if (now - laggingSinceNanos >= unhealthyPeriodNanos && healthChecker.isHealthy()) {
+      logger.warn(
+          "Average event loop lag of {}ms sustained for {}ms, reporting unhealthy.",
+          TimeUnit.NANOSECONDS.toMillis(averageLagNanos),
+          TimeUnit.NANOSECONDS.toMillis(now - laggingSinceNanos));
+      healthChecker.setHealthy(false);
+    }
+  }
+
+  private static class LoopState {
+    private final EventExecutor loop;
+    private final Timer lag;
+    private final Counter blocked;
+
+    @Nullable private volatile Thread thread;
+    private volatile long expectedRunNanos;
+    private volatile long lastLagNanos;
+    private volatile boolean blockedReported;
+
+    private LoopState(EventExecutor loop, String name, MeterRegistry meterRegistry) {
+      this.loop = loop;
+      lag =
+          Timer.builder("event_loop_lag")
+              .description("How late a task scheduled on the event loop runs.")
+              .tag("loop", name)
+              .publishPercentileHistogram()
+              .minimumExpectedValue(Duration.ofMillis(1))
+              .maximumExpectedValue(Duration.ofSeconds(10))
+              .register(meterRegistry);
+      blocked =
+          Counter.builder("event_loop_blocked")
+              .description("Number of times the event loop was found blocked.")
+              .tag("loop", name)
+              .register(meterRegistry);
+      expectedRunNanos = System.nanoTime();
+    }
+  }
+
+  /** Not thrown, only used to log the stack of a blocked event loop thread. */
+  private static class BlockedEventLoopException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private BlockedEventLoopException(String threadName, long overdueNanos) {
+      super(
+          "Thread "
+              + threadName
+              + " has not run a scheduled task for "
+              + TimeUnit.NANOSECONDS.toMillis(overdueNanos)
+              + "ms",
+          null,
+          false,
+          true);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
+import com.linecorp.armeria.common.CommonPools;
 import com.linecorp.armeria.common.brave.RequestContextCurrentTraceContext;
 import com.linecorp.armeria.common.metric.PrometheusMeterRegistries;
 import com.typesafe.config.Config;
@@ -97,6 +98,14 @@ public abstract class MonitoringModule {
     return PrometheusMeterRegistries.newRegistry(collectorRegistry);
   }
 
+  @Provides
+  @Singleton
+  @SuppressWarnings("CloseableProvides")
+  static EventLoopLagMonitor eventLoopLagMonitor(
+      MonitoringConfig config, MeterRegistry meterRegistry) {
+    return new EventLoopLagMonitor(CommonPools.workerGroup(), config, meterRegistry);
+  }
+
   @Provides
   @Singleton
   @SuppressWarnings("CloseableProvides")
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.monitoring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Records a {@link Timer} of virtual threads pinned to their carrier thread, e.g., by blocking
+ * inside a {@code synchronized} block, using a JFR event stream. Frequent pinning means blocking
+ * work is tying up carrier threads and virtual threads lose most of their benefit. The JFR APIs are
+ * accessed reflectively since the framework targets Java 8.
+ */
+public final class VirtualThreadPinningMetrics {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  // Same as the JFR default threshold for the event.
+  private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+  private static final AtomicBoolean started = new AtomicBoolean();
+
+  /**
+   * Starts recording pinning of virtual threads to {@code meterRegistry} if it hasn't been started
+   * yet. Failures to start, e.g., if JFR is not available, are logged and ignored.
+   */
+  public static void startOnce(MeterRegistry meterRegistry) {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    Timer pinned =
+        Timer.builder("virtual_thread_pinned")
+            .description("Time virtual threads spent pinned to their carrier thread.")
+            .register(meterRegistry);
+    try {
+      Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+      Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+      Method getDuration =
+          Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getDuration");
+
+      Object stream = streamClass.getConstructor().newInstance();
+      Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+      settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, PINNED_THRESHOLD);
+
+      Consumer<Object> onPinned =
+          event -> {
+            try {
+              pinned.record((Duration) getDuration.invoke(event));
+            } catch (ReflectiveOperationException e) {
+              logger.warn("Could not read pinned event duration.", e);
+            }
+          };
+      streamClass
+          .getMethod("onEvent", String.class, Consumer.class)
+          .invoke(stream, PINNED_EVENT, onPinned);
+      streamClass.getMethod("startAsync").invoke(stream);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.warn("Could not start recording virtual thread pinning, metrics will be missing.", e);
+    }
+  }
+
+  private VirtualThreadPinningMetrics() {}
+}
@@ -28,8 +28,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.Message;
+import com.linecorp.armeria.common.RequestContext;
+import com.linecorp.armeria.server.RequestTimeoutException;
 import com.spotify.futures.CompletableFuturesExtra;
 import com.spotify.futures.ListenableFuturesExtra;
 import dagger.Lazy;
@@ -53,6 +56,7 @@ import javax.inject.Singleton;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.curioswitch.common.server.framework.armeria.CurrentRequestContextExecutor;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
 import org.curioswitch.common.server.framework.config.RedisConfig;
 
 /**
@@ -71,17 +75,20 @@ public class ProtobufRedisLoadingCache<K extends Message, V extends Message> {
     private final Lazy<RedisClient> redisClient;
     private final RedisConfig config;
     private final MeterRegistry meterRegistry;
+    private final RequestDeadlines requestDeadlines;
 
     @Inject
     public Factory(
         Lazy<RedisClusterClient> redisClusterClient,
         Lazy<RedisClient> redisClient,
         RedisConfig config,
-        MeterRegistry meterRegistry) {
+        MeterRegistry meterRegistry,
+        RequestDeadlines requestDeadlines) {
       this.redisClusterClient = redisClusterClient;
       this.redisClient = redisClient;
       this.config = config;
       this.meterRegistry = meterRegistry;
+      this.requestDeadlines = requestDeadlines;
     }
 
     /**
@@ -137,6 +144,7 @@ public class ProtobufRedisLoadingCache<K extends Message, V extends Message> {
           valuePrototype,
           redisTtl,
           localCacheSpec,
+          requestDeadlines,
           config.isNoop()
               ? new NoopRemoteCache<>()
               : config.isCluster()
@@ -178,16 +186,19 @@ public class ProtobufRedisLoadingCache<K extends Message, V extends Message> {
   private final RemoteCache<K, V> remoteCache;
   private final AsyncLoadingCache<K, V> cache;
   private final SetArgs setArgs;
+  private final RequestDeadlines requestDeadlines;
 
   ProtobufRedisLoadingCache(
       K keyPrototype,
       V valuePrototype,
       Duration redisTtl,
       @Nullable CaffeineSpec localCacheSpec,
+      RequestDeadlines requestDeadlines,
       RemoteCache<K, V> remoteCache) {
     checkNotNull(keyPrototype, "keyPrototype");
     checkNotNull(valuePrototype, "valuePrototype");
     checkNotNull(redisTtl, "redisTtl");
+    this.requestDeadlines = checkNotNull(requestDeadlines, "requestDeadlines");
     this.remoteCache = checkNotNull(remoteCache, "remoteCache");
     final Caffeine<Object, Object> caffeineBuilder =
         localCacheSpec != null
@@ -202,11 +213,21 @@ public class ProtobufRedisLoadingCache<K extends Message, V extends Message> {
 
   /**
    * Returns the value for the given {@code key}, computing the value from {@code loader} if it is
-   * not present in cache.
+   * not present in cache. If called while serving a request, the returned future fails when the
+   * request's deadline passes. The computation itself is shared with concurrent callers for the
+   * same key so it is not cancelled.
    */
   public ListenableFuture<V> get(K key, Function<K, ListenableFuture<V>> loader) {
-    return CompletableFuturesExtra.toListenableFuture(
-        cache.get(key, (k, executor) -> loadWithCache(k, executor, loader)));
+    RequestContext ctx = RequestContext.currentOrNull();
+    if (RequestDeadlines.remainingMillis(ctx) == 0) {
+      requestDeadlines.recordExpired("redis_cache");
+      return Futures.immediateFailedFuture(RequestTimeoutException.get());
+    }
+    ListenableFuture<V> shared =
+        CompletableFuturesExtra.toListenableFuture(
+            cache.get(key, (k, executor) -> loadWithCache(k, executor, loader)));
+    return requestDeadlines.withDeadline(
+        Futures.nonCancellationPropagating(shared), ctx, "redis_cache");
   }
 
   /**
@@ -29,8 +29,10 @@ import brave.Tracing;
 import com.linecorp.armeria.common.CommonPools;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigBeanFactory;
+import dagger.Lazy;
 import dagger.Module;
 import dagger.Provides;
+import dagger.multibindings.IntoSet;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.cluster.ClusterClientOptions;
 import io.lettuce.core.cluster.RedisClusterClient;
@@ -41,6 +43,7 @@ import javax.inject.Singleton;
 import org.curioswitch.common.server.framework.config.ModifiableRedisConfig;
 import org.curioswitch.common.server.framework.config.RedisConfig;
 import org.curioswitch.common.server.framework.monitoring.MonitoringModule;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
 
 @Module(includes = MonitoringModule.class)
 public abstract class RedisModule {
@@ -84,5 +87,14 @@ public abstract class RedisModule {
         config.getUrl());
   }
 
+  @Provides
+  @IntoSet
+  static WarmUpTask warmUp(
+      RedisConfig config,
+      Lazy<RedisClusterClient> redisClusterClient,
+      Lazy<RedisClient> redisClient) {
+    return new RedisWarmUpTask(config, redisClusterClient, redisClient);
+  }
+
   private RedisModule() {}
 }
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.redis;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.linecorp.armeria.server.Server;
+import com.spotify.futures.CompletableFuturesExtra;
+import dagger.Lazy;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.codec.StringCodec;
+import java.util.concurrent.CompletableFuture;
+import org.curioswitch.common.server.framework.config.RedisConfig;
+import org.curioswitch.common.server.framework.server.WarmUpTask;
+
+/**
+ * A {@link WarmUpTask} which connects to Redis and sends a {@code PING}, initializing the client,
+ * resolving the cluster topology and warming up the connection code paths.
+ */
+final class RedisWarmUpTask implements WarmUpTask {
+
+  private final RedisConfig config;
+  private final Lazy<RedisClusterClient> redisClusterClient;
+  private final Lazy<RedisClient> redisClient;
+
+  RedisWarmUpTask(
+      RedisConfig config,
+      Lazy<RedisClusterClient> redisClusterClient,
+      Lazy<RedisClient> redisClient) {
+    this.config = config;
+    this.redisClusterClient = redisClusterClient;
+    this.redisClient = redisClient;
+  }
+
+  @Override
+  public String name() {
+    return "redis";
+  }
+
+  @Override
+  public ListenableFuture<?> warmUp(Server server) {
+    if (config.isNoop() || config.getUrl().isEmpty()) {
+      return Futures.immediateFuture(null);
+    }
+    final CompletableFuture<?> ping;
+    if (config.isCluster()) {
+      ping =
+          redisClusterClient
+              .get()
+              .connectAsync(StringCodec.UTF8)
+              .thenCompose(
+                  connection ->
+                      connection
+                          .async()
+                          .ping()
+                          .thenCompose(unused -> connection.closeAsync()));
+    } else {
+      ping =
+          redisClient
+              .get()
+              .connectAsync(StringCodec.UTF8, RedisURI.create(config.getUrl()))
+              .thenCompose(
+                  connection ->
+                      connection
+                          .async()
+                          .ping()
+                          .thenCompose(unused -> connection.closeAsync()))
+              .toCompletableFuture();
+    }
+    return CompletableFuturesExtra.toListenableFuture(ping);
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.server;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.linecorp.armeria.common.CommonPools;
+import com.linecorp.armeria.server.Server;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs {@link WarmUpTask}s in parallel on the provided executor, recording the duration of each
+ * task in the {@code server_warm_up_task_duration} metric.
+ */
+public class WarmUpRunner {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private final Set<WarmUpTask> tasks;
+  private final Duration timeout;
+  private final MeterRegistry meterRegistry;
+  private final ListeningExecutorService executor;
+
+  public WarmUpRunner(
+      Set<WarmUpTask> tasks,
+      Duration timeout,
+      ListeningExecutorService executor,
+      MeterRegistry meterRegistry) {
+    this.tasks = tasks;
+    this.timeout = timeout;
+    this.executor = executor;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Runs all the {@link WarmUpTask}s against {@code server}, returning a future which completes
+   * when they have all completed or the timeout has passed. The returned future never fails.
+   */
+  public ListenableFuture<Void> run(Server server) {
+    if (tasks.isEmpty()) {
+      return Futures.immediateFuture(null);
+    }
+    logger.info("Warming up server with {} tasks.", tasks.size());
+    ImmutableList<ListenableFuture<?>> running =
+        tasks.stream().map(task -> run(task, server)).collect(toImmutableList());
+    ListenableFuture<Void> allDone =
+        Futures.whenAllComplete(running).call(() -> null, MoreExecutors.directExecutor());
+    if (!timeout.isZero()) {
+      allDone =
+          Futures.catching(
+              Futures.withTimeout(
+                  allDone, timeout.toMillis(), TimeUnit.MILLISECONDS, CommonPools.workerGroup()),
+              TimeoutException.class,
+              t -> {
+                logger.warn("Warm-up did not complete within {}, continuing startup.", timeout);
+                return null;
+              },
+              MoreExecutors.directExecutor());
+    }
+    return allDone;
+  }
+
+  private ListenableFuture<?> run(WarmUpTask task, Server server) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ListenableFuture<?> future = Futures.submitAsync(() -> task.warmUp(server), executor);
+    Futures.addCallback(
+        future,
+        new FutureCallback<Object>() {
+          @Override
+          public void onSuccess(@Nullable Object result) {
+            record("success");
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            logger.warn("Warm-up task {} failed.", task.name(), t);
+            record("failure");
+          }
+
+          private void record(String outcome) {
+            Timer.builder("server_warm_up_task_duration")
+                .description("Time taken to run a warm-up task.")
+                .tag("task", task.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(stopwatch.elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return future;
+  }
+}
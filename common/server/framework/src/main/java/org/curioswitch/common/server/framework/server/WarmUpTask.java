@@ -0,0 +1,48 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.server;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.linecorp.armeria.server.Server;
+
+/**
+ * An interface which can be implemented and provided to warm up the server before it starts
+ * reporting healthy. All {@link WarmUpTask}s are run in parallel after the {@link Server} has
+ * started, and the health check will become healthy once all of them have completed, or the
+ * warm-up timeout has passed. This allows expensive lazy initialization, like filling connection
+ * pools, class initialization and JIT compilation, to happen before serving real traffic.
+ */
+public interface WarmUpTask {
+
+  /** A short name for this task, used in logs and metrics. */
+  String name();
+
+  /**
+   * Returns a future which is completed when this task has finished warming up. This method is
+   * called on a blocking task executor so it is ok for it to block, but implementations that can
+   * run asynchronously should. Exceptional completion will be logged but will not prevent the
+   * server from becoming healthy.
+   */
+  ListenableFuture<?> warmUp(Server server);
+}
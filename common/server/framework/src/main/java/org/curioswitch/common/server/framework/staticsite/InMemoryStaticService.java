@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.staticsite;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.Splitter;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.ResponseHeaders;
+import com.linecorp.armeria.common.ResponseHeadersBuilder;
+import com.linecorp.armeria.common.ServerCacheControl;
+import com.linecorp.armeria.server.AbstractHttpService;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import javax.annotation.Nullable;
+import org.curioswitch.common.server.framework.staticsite.StaticAssetIndex.Representation;
+import org.curioswitch.common.server.framework.staticsite.StaticAssetIndex.StaticAsset;
+
+/**
+ * Serves assets from a {@link StaticAssetIndex}. Requests with an {@code If-None-Match} matching
+ * the asset's ETag are answered with 304 without reading the body.
+ */
+final class InMemoryStaticService extends AbstractHttpService {
+
+  private static final Splitter COMMA_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final StaticAssetIndex index;
+  private final String cacheControl;
+  private final boolean fallbackToIndexHtml;
+
+  /**
+   * Creates a new {@link InMemoryStaticService}. If {@code fallbackToIndexHtml}, requests for a
+   * directory are served its {@code index.html}, redirecting to add a trailing slash if needed, and
+   * other missing paths are served the root {@code index.html}, for handling by a single page app.
+   */
+  InMemoryStaticService(
+      StaticAssetIndex index, ServerCacheControl cacheControl, boolean fallbackToIndexHtml) {
+    this.index = index;
+    this.cacheControl = cacheControl.asHeaderValue();
+    this.fallbackToIndexHtml = fallbackToIndexHtml;
+  }
+
+  @Override
+  protected HttpResponse doGet(ServiceRequestContext ctx, HttpRequest req) {
+    return serve(ctx, req, true);
+  }
+
+  @Override
+  protected HttpResponse doHead(ServiceRequestContext ctx, HttpRequest req) {
+    return serve(ctx, req, false);
+  }
+
+  private HttpResponse serve(ServiceRequestContext ctx, HttpRequest req, boolean includeBody) {
+    String path = ctx.decodedMappedPath();
+    if (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    if (fallbackToIndexHtml
+        && isDirectoryPath(path)
+        && index.get(path) == null
+        && index.get(path + "/index.html") != null) {
+      return redirectToDirectory(ctx);
+    }
+
+    StaticAsset asset = find(path);
+    if (asset == null) {
+      return HttpResponse.of(HttpStatus.NOT_FOUND);
+    }
+
+    String acceptEncoding = req.headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+    Representation representation =
+        asset.select(
+            acceptsEncoding(acceptEncoding, "br"), acceptsEncoding(acceptEncoding, "gzip"));
+
+    String ifNoneMatch = req.headers().get(HttpHeaderNames.IF_NONE_MATCH);
+    if (ifNoneMatch != null && etagMatches(ifNoneMatch, representation.etag())) {
+      return HttpResponse.of(headers(HttpStatus.NOT_MODIFIED, representation).build());
+    }
+
+    ResponseHeadersBuilder headers =
+        headers(HttpStatus.OK, representation).contentType(asset.mediaType());
+    if (representation.contentEncoding() != null) {
+      headers.set(HttpHeaderNames.CONTENT_ENCODING, representation.contentEncoding());
+    }
+    if (!includeBody) {
+      return HttpResponse.of(
+          headers.setInt(HttpHeaderNames.CONTENT_LENGTH, representation.length()).build());
+    }
+    return HttpResponse.of(headers.build(), index.content(representation));
+  }
+
+  private ResponseHeadersBuilder headers(HttpStatus status, Representation representation) {
+    return ResponseHeaders.builder(status)
+        .set(HttpHeaderNames.ETAG, representation.etag())
+        .set(HttpHeaderNames.CACHE_CONTROL, cacheControl)
+        .set(HttpHeaderNames.VARY, "Accept-Encoding");
+  }
+
+  @Nullable
+  private StaticAsset find(String path) {
+    if (path.isEmpty() || path.endsWith("/")) {
+      path += "index.html";
+    }
+    StaticAsset asset = index.get(path);
+    if (asset != null || !fallbackToIndexHtml) {
+      return asset;
+    }
+    return index.get("index.html");
+  }
+
+  /**
+   * Returns whether {@code path} may be a directory missing its trailing slash, i.e., it is not
+   * empty, does not end with '/', and its last path segment has no extension.
+   */
+  private static boolean isDirectoryPath(String path) {
+    return !path.isEmpty()
+        && path.charAt(path.length() - 1) != '/'
+        && path.indexOf('.', path.lastIndexOf('/') + 1) == -1;
+  }
+
+  /**
+   * Redirects to the request path with a trailing slash so relative links in the directory's
+   * {@code index.html} resolve, the same as {@link com.linecorp.armeria.server.file.FileService}.
+   */
+  private static HttpResponse redirectToDirectory(ServiceRequestContext ctx) {
+    String location = ctx.path() + '/';
+    if (ctx.query() != null) {
+      location += '?' + ctx.query();
+    }
+    return HttpResponse.of(
+        ResponseHeaders.of(HttpStatus.TEMPORARY_REDIRECT, HttpHeaderNames.LOCATION, location));
+  }
+
+  private static boolean acceptsEncoding(@Nullable String acceptEncoding, String encoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : COMMA_SPLITTER.split(acceptEncoding)) {
+      int paramsIndex = coding.indexOf(';');
+      String name = paramsIndex >= 0 ? coding.substring(0, paramsIndex).trim() : coding;
+      if (!Ascii.equalsIgnoreCase(name, encoding)) {
+        continue;
+      }
+      if (paramsIndex < 0) {
+        return true;
+      }
+      String params = coding.substring(paramsIndex + 1).replace(" ", "");
+      // Only need to handle explicitly disallowed encodings, e.g., gzip;q=0.
+      return !params.startsWith("q=0") || params.matches("q=0\\.\\d*[1-9]\\d*");
+    }
+    return false;
+  }
+
+  private static boolean etagMatches(String ifNoneMatch, String etag) {
+    for (String candidate : COMMA_SPLITTER.split(ifNoneMatch)) {
+      // If-None-Match uses weak comparison.
+      if (candidate.equals("*")
+          || candidate.equals(etag)
+          || (candidate.length() == etag.length() + 2
+              && candidate.startsWith("W/")
+              && candidate.endsWith(etag))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
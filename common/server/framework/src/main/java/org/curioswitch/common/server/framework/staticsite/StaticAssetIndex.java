@@ -0,0 +1,309 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.staticsite;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.reflect.ClassPath;
+import com.google.common.reflect.ClassPath.ResourceInfo;
+import com.linecorp.armeria.common.HttpData;
+import com.linecorp.armeria.common.MediaType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An immutable index of all the static assets under a classpath root, loaded into memory at
+ * startup. The bodies of all assets, in every encoding, are stored in a single direct buffer that
+ * responses are served from as slices, without copying.
+ *
+ * <p>Brotli encodings are only available if precompressed ".br" files are present in the
+ * classpath, e.g., by the webpack build. Gzip encodings are used from ".gz" files if present, or
+ * otherwise computed when loading.
+ */
+final class StaticAssetIndex {
+
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final ImmutableMap<String, MediaType> MEDIA_TYPES =
+      ImmutableMap.<String, MediaType>builder()
+          .put("css", MediaType.CSS_UTF_8)
+          .put("gif", MediaType.GIF)
+          .put("html", MediaType.HTML_UTF_8)
+          .put("ico", MediaType.parse("image/x-icon"))
+          .put("jpeg", MediaType.JPEG)
+          .put("jpg", MediaType.JPEG)
+          .put("js", MediaType.JAVASCRIPT_UTF_8)
+          .put("json", MediaType.JSON_UTF_8)
+          .put("map", MediaType.JSON_UTF_8)
+          .put("mjs", MediaType.JAVASCRIPT_UTF_8)
+          .put("png", MediaType.PNG)
+          .put("svg", MediaType.SVG_UTF_8)
+          .put("ttf", MediaType.parse("font/ttf"))
+          .put("txt", MediaType.PLAIN_TEXT_UTF_8)
+          .put("wasm", MediaType.parse("application/wasm"))
+          .put("webmanifest", MediaType.parse("application/manifest+json"))
+          .put("webp", MediaType.parse("image/webp"))
+          .put("woff", MediaType.parse("font/woff"))
+          .put("woff2", MediaType.parse("font/woff2"))
+          .put("xml", MediaType.XML_UTF_8)
+          .build();
+
+  /** Loads all resources under {@code classpathRoot} visible to {@code classLoader}. */
+  static StaticAssetIndex load(ClassLoader classLoader, String classpathRoot) {
+    String prefix = normalizeRoot(classpathRoot);
+
+    final ClassPath classPath;
+    try {
+      classPath = ClassPath.from(classLoader);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not scan classpath for static assets.", e);
+    }
+    Map<String, ResourceInfo> resources = new HashMap<>();
+    for (ResourceInfo resource : classPath.getResources()) {
+      String name = resource.getResourceName();
+      if (name.startsWith(prefix) && !name.endsWith("/")) {
+        // The first resource on the classpath wins, like ClassLoader.getResource.
+        resources.putIfAbsent(name.substring(prefix.length()), resource);
+      }
+    }
+
+    ImmutableList<LoadedAsset> loaded =
+        resources.keySet().parallelStream()
+            .filter(path -> !path.endsWith(".gz") && !path.endsWith(".br"))
+            .map(
+                path ->
+                    LoadedAsset.load(
+                        path,
+                        resources.get(path),
+                        resources.get(path + ".gz"),
+                        resources.get(path + ".br")))
+            .collect(toImmutableList());
+
+    long totalSize =
+        loaded.stream()
+            .mapToLong(
+                asset ->
+                    (long) asset.identity.length
+                        + (asset.gzip != null ? asset.gzip.length : 0)
+                        + (asset.brotli != null ? asset.brotli.length : 0))
+            .sum();
+    checkState(
+        totalSize <= Integer.MAX_VALUE,
+        "Static assets under %s are too large to load into memory: %s bytes",
+        classpathRoot,
+        totalSize);
+
+    ByteBuf content = Unpooled.directBuffer((int) totalSize);
+    ImmutableMap.Builder<String, StaticAsset> assets = ImmutableMap.builder();
+    for (LoadedAsset asset : loaded) {
+      assets.put(
+          asset.path,
+          new StaticAsset(
+              mediaType(asset.path),
+              Representation.write(asset.identity, null, content),
+              asset.gzip != null ? Representation.write(asset.gzip, "gzip", content) : null,
+              asset.brotli != null ? Representation.write(asset.brotli, "br", content) : null));
+    }
+
+    logger.info(
+        "Loaded {} static assets ({} bytes) from {}.", loaded.size(), totalSize, classpathRoot);
+
+    return new StaticAssetIndex(assets.build(), Unpooled.unreleasableBuffer(content.asReadOnly()));
+  }
+
+  private final Map<String, StaticAsset> assets;
+  private final ByteBuf content;
+
+  private StaticAssetIndex(Map<String, StaticAsset> assets, ByteBuf content) {
+    this.assets = assets;
+    this.content = content;
+  }
+
+  /** Returns the asset at {@code path}, relative to the classpath root, or {@code null}. */
+  @Nullable
+  StaticAsset get(String path) {
+    return assets.get(path);
+  }
+
+  /** Returns the body of {@code representation}, a slice of the shared buffer. */
+  HttpData content(Representation representation) {
+    return HttpData.wrap(content.slice(representation.offset, representation.length));
+  }
+
+  int size() {
+    return assets.size();
+  }
+
+  private static MediaType mediaType(String path) {
+    int extensionIndex = path.lastIndexOf('.');
+    if (extensionIndex < 0) {
+      return MediaType.OCTET_STREAM;
+    }
+    MediaType mediaType =
+        MEDIA_TYPES.get(path.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+    return mediaType != null ? mediaType : MediaType.OCTET_STREAM;
+  }
+
+  private static String normalizeRoot(String classpathRoot) {
+    String root = classpathRoot.startsWith("/") ? classpathRoot.substring(1) : classpathRoot;
+    return root.endsWith("/") ? root : root + "/";
+  }
+
+  /** An asset along with all of its available encodings. */
+  static final class StaticAsset {
+    private final MediaType mediaType;
+    private final Representation identity;
+    @Nullable private final Representation gzip;
+    @Nullable private final Representation brotli;
+
+    private StaticAsset(
+        MediaType mediaType,
+        Representation identity,
+        @Nullable Representation gzip,
+        @Nullable Representation brotli) {
+      this.mediaType = mediaType;
+      this.identity = identity;
+      this.gzip = gzip;
+      this.brotli = brotli;
+    }
+
+    MediaType mediaType() {
+      return mediaType;
+    }
+
+    /** Returns the smallest representation allowed by the request's Accept-Encoding. */
+    Representation select(boolean acceptsBrotli, boolean acceptsGzip) {
+      if (acceptsBrotli && brotli != null) {
+        return brotli;
+      }
+      if (acceptsGzip && gzip != null) {
+        return gzip;
+      }
+      return identity;
+    }
+  }
+
+  /** One encoding of an asset, located in the shared buffer. */
+  static final class Representation {
+    private final int offset;
+    private final int length;
+    private final String etag;
+    @Nullable private final String contentEncoding;
+
+    private static Representation write(
+        byte[] bytes, @Nullable String contentEncoding, ByteBuf content) {
+      int offset = content.writerIndex();
+      content.writeBytes(bytes);
+      // Strong ETags must differ between encodings, which hashing the encoded bytes ensures.
+      String etag =
+          '"'
+              + BaseEncoding.base64Url()
+                  .omitPadding()
+                  .encode(Hashing.sha256().hashBytes(bytes).asBytes(), 0, 16)
+              + '"';
+      return new Representation(offset, bytes.length, etag, contentEncoding);
+    }
+
+    private Representation(
+        int offset, int length, String etag, @Nullable String contentEncoding) {
+      this.offset = offset;
+      this.length = length;
+      this.etag = etag;
+      this.contentEncoding = contentEncoding;
+    }
+
+    int length() {
+      return length;
+    }
+
+    String etag() {
+      return etag;
+    }
+
+    @Nullable
+    String contentEncoding() {
+      return contentEncoding;
+    }
+  }
+
+  private static final class LoadedAsset {
+
+    private static LoadedAsset load(
+        String path,
+        ResourceInfo resource,
+        @Nullable ResourceInfo precompressedGzip,
+        @Nullable ResourceInfo precompressedBrotli) {
+      try {
+        byte[] identity = resource.asByteSource().read();
+        byte[] gzip =
+            precompressedGzip != null ? precompressedGzip.asByteSource().read() : gzip(identity);
+        byte[] brotli =
+            precompressedBrotli != null ? precompressedBrotli.asByteSource().read() : null;
+        return new LoadedAsset(
+            path,
+            identity,
+            gzip.length < identity.length ? gzip : null,
+            brotli != null && brotli.length < identity.length ? brotli : null);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not load static asset " + path, e);
+      }
+    }
+
+    private static byte[] gzip(byte[] identity) throws IOException {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(identity.length / 2 + 32);
+      try (GZIPOutputStream os = new GZIPOutputStream(compressed)) {
+        os.write(identity);
+      }
+      return compressed.toByteArray();
+    }
+
+    private final String path;
+    private final byte[] identity;
+    @Nullable private final byte[] gzip;
+    @Nullable private final byte[] brotli;
+
+    private LoadedAsset(
+        String path, byte[] identity, @Nullable byte[] gzip, @Nullable byte[] brotli) {
+      this.path = path;
+      this.identity = identity;
+      this.gzip = gzip;
+      this.brotli = brotli;
+    }
+  }
+}
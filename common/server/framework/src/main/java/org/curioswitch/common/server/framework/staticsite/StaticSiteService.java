@@ -44,6 +44,10 @@ import com.linecorp.armeria.server.file.HttpFile;
  *
  * <p>The static site will automatically serve precompressed files if they are found, using the
  * conventions specified in {@link FileServiceBuilder#serveCompressedFiles(boolean)}.
+ *
+ * <p>If preloading is enabled, all files are instead loaded into memory at startup, compressed if
+ * no precompressed version is found, and served directly from memory with strong ETags. Requests
+ * for a directory with its own "index.html" without a trailing slash are redirected to add it.
  */
 public final class StaticSiteService {
 
@@ -55,6 +59,38 @@ public final class StaticSiteService {
    */
   public static void addToServer(
       String urlRoot, String staticPath, String classpathRoot, ServerBuilder sb) {
+    addToServer(urlRoot, staticPath, classpathRoot, false, sb);
+  }
+
+  /**
+   * Creates a new {@link StaticSiteService}.
+   *
+   * @param staticPath the URL path from which static resources will be served, e.g., "/static".
+   * @param classpathRoot the root directory in the classpath to serve resources from.
+   * @param preloadInMemory whether to load all resources into memory at startup.
+   */
+  public static void addToServer(
+      String urlRoot,
+      String staticPath,
+      String classpathRoot,
+      boolean preloadInMemory,
+      ServerBuilder sb) {
+    String urlRootWithTrailingSlash = urlRoot.endsWith("/") ? urlRoot : urlRoot + "/";
+    String staticPathWithoutLeadingSlash =
+        staticPath.startsWith("/") ? staticPath.substring(1) : staticPath;
+
+    if (preloadInMemory) {
+      StaticAssetIndex index =
+          StaticAssetIndex.load(StaticSiteService.class.getClassLoader(), classpathRoot);
+      sb.serviceUnder(
+              urlRootWithTrailingSlash + staticPathWithoutLeadingSlash,
+              new InMemoryStaticService(index, ServerCacheControl.IMMUTABLE, false))
+          .serviceUnder(
+              urlRootWithTrailingSlash,
+              new InMemoryStaticService(index, ServerCacheControl.DISABLED, true));
+      return;
+    }
+
     FileService staticFileService =
         FileService.builder(StaticSiteService.class.getClassLoader(), classpathRoot)
             .serveCompressedFiles(true)
@@ -76,10 +112,6 @@ public final class StaticSiteService {
             .orElse(indexHtmlService)
             .decorate(TrailingSlashAddingService::new);
 
-    String urlRootWithTrailingSlash = urlRoot.endsWith("/") ? urlRoot : urlRoot + "/";
-    String staticPathWithoutLeadingSlash =
-        staticPath.startsWith("/") ? staticPath.substring(1) : staticPath;
-
     sb.serviceUnder(urlRootWithTrailingSlash + staticPathWithoutLeadingSlash, staticFileService)
         .serviceUnder(urlRootWithTrailingSlash, indexService);
   }
@@ -52,4 +52,12 @@ public interface StaticSiteServiceDefinition {
   default String staticPath() {
     return "/static/";
   }
+
+  /**
+   * Whether to load all resources into memory at startup and serve them from there instead of
+   * reading them from the classpath. Defaults to {@code false}.
+   */
+  default boolean preloadInMemory() {
+    return false;
+  }
 }
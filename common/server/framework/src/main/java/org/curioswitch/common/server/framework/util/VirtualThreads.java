@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.curioswitch.common.server.framework.monitoring.VirtualThreadPinningMetrics;
+
+/**
+ * Utilities for using virtual threads when running on JDK 21+. The framework targets Java 8, so
+ * the APIs are accessed reflectively.
+ */
+public final class VirtualThreads {
+
+  private static final boolean SUPPORTED;
+
+  static {
+    boolean supported;
+    try {
+      // JDK 19 and 20 have the API but throw UnsupportedOperationException without
+      // --enable-preview, so actually create a thread rather than only checking for the method.
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class.forName("java.lang.Thread$Builder")
+          .getMethod("unstarted", Runnable.class)
+          .invoke(builder, (Runnable) () -> {});
+      supported = true;
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | IllegalAccessException
+        | InvocationTargetException e) {
+      supported = false;
+    }
+    SUPPORTED = supported;
+  }
+
+  /** Returns whether the running JVM supports virtual threads. */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * Returns an {@link ExecutorService} that runs each task on a new virtual thread named with
+   * {@code namePrefix} and an increasing number. Also starts recording metrics for virtual threads
+   * pinned to their carrier thread to {@code meterRegistry}.
+   *
+   * @throws IllegalStateException if virtual threads are not supported.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(
+      String namePrefix, MeterRegistry meterRegistry) {
+    ThreadFactory factory = newVirtualThreadFactory(namePrefix);
+    final ExecutorService executor;
+    try {
+      Method newThreadPerTaskExecutor =
+          Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      executor = (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Could not create virtual thread executor.", e);
+    }
+    VirtualThreadPinningMetrics.startOnce(meterRegistry);
+    return executor;
+  }
+
+  /**
+   * Returns a {@link ScheduledExecutorService} that runs tasks on virtual threads named with {@code
+   * namePrefix}, for APIs that require one, e.g., Armeria's blocking task executor. A new virtual
+   * thread is started for every task, which exits after being idle for a second. Also starts
+   * recording metrics for virtual threads pinned to their carrier thread to {@code meterRegistry}.
+   *
+   * @throws IllegalStateException if virtual threads are not supported.
+   */
+  public static ScheduledExecutorService newVirtualThreadScheduledExecutor(
+      String namePrefix, MeterRegistry meterRegistry) {
+    // Below its core size, a pool starts a new thread for each task instead of queueing it, so an
+    // unbounded core size never makes tasks wait for each other.
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(Integer.MAX_VALUE, newVirtualThreadFactory(namePrefix));
+    executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    executor.setRemoveOnCancelPolicy(true);
+    VirtualThreadPinningMetrics.startOnce(meterRegistry);
+    return executor;
+  }
+
+  private static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+    if (!SUPPORTED) {
+      throw new IllegalStateException("Virtual threads require JDK 21 or later.");
+    }
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      builder =
+          builderClass
+              .getMethod("name", String.class, long.class)
+              .invoke(builder, namePrefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ClassNotFoundException
+        | NoSuchMethodException
+        | IllegalAccessException
+        | InvocationTargetException e) {
+      throw new IllegalStateException("Could not create virtual thread factory.", e);
+    }
+  }
+
+  private VirtualThreads() {}
+}
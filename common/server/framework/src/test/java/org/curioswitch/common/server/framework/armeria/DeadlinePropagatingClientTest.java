@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.armeria;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
+
+import com.linecorp.armeria.client.ClientRequestContext;
+import com.linecorp.armeria.client.HttpClient;
+import com.linecorp.armeria.client.ResponseTimeoutException;
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.util.SafeCloseable;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DeadlinePropagatingClientTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private AtomicInteger numRequests;
+  private HttpClient client;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    numRequests = new AtomicInteger();
+    HttpClient delegate =
+        (ctx, req) -> {
+          numRequests.incrementAndGet();
+          return HttpResponse.of(HttpStatus.OK);
+        };
+    client =
+        DeadlinePropagatingClient.newDecorator(new RequestDeadlines(meterRegistry)).apply(delegate);
+  }
+
+  @Test
+  void clampsResponseTimeoutToRemainingDeadline() throws Exception {
+    ClientRequestContext ctx;
+    try (SafeCloseable ignored = contextWithTimeout(2000).push()) {
+      ctx = newClientContext(10000);
+    }
+
+    assertThat(execute(ctx).status()).isEqualTo(HttpStatus.OK);
+    assertThat(ctx.responseTimeoutMillis()).isPositive().isLessThanOrEqualTo(2000);
+    assertThat(numRequests).hasValue(1);
+  }
+
+  @Test
+  void keepsShorterResponseTimeout() throws Exception {
+    ClientRequestContext ctx;
+    try (SafeCloseable ignored = contextWithTimeout(10000).push()) {
+      ctx = newClientContext(2000);
+    }
+
+    assertThat(execute(ctx).status()).isEqualTo(HttpStatus.OK);
+    assertThat(ctx.responseTimeoutMillis()).isEqualTo(2000);
+  }
+
+  @Test
+  void noServerRequest() throws Exception {
+    ClientRequestContext ctx = newClientContext(10000);
+
+    assertThat(execute(ctx).status()).isEqualTo(HttpStatus.OK);
+    assertThat(ctx.responseTimeoutMillis()).isEqualTo(10000);
+  }
+
+  @Test
+  void expiredDeadlineFailsFast() throws Exception {
+    ServiceRequestContext serverCtx = contextWithTimeout(1);
+    await().until(() -> RequestDeadlines.remainingMillis(serverCtx) == 0);
+    ClientRequestContext ctx;
+    try (SafeCloseable ignored = serverCtx.push()) {
+      ctx = newClientContext(10000);
+    }
+
+    HttpResponse res = client.execute(ctx, ctx.request());
+
+    assertThat(catchThrowable(() -> res.aggregate().join()))
+        .isInstanceOf(CompletionException.class)
+        .hasCauseInstanceOf(ResponseTimeoutException.class);
+    assertThat(numRequests).hasValue(0);
+    assertThat(
+            meterRegistry
+                .get("request_deadline_expired_work")
+                .tag("component", "client")
+                .counter()
+                .count())
+        .isEqualTo(1);
+  }
+
+  private AggregatedHttpResponse execute(ClientRequestContext ctx) throws Exception {
+    return client.execute(ctx, ctx.request()).aggregate().join();
+  }
+
+  private static ClientRequestContext newClientContext(long responseTimeoutMillis) {
+    ClientRequestContext ctx = ClientRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+    ctx.setResponseTimeoutMillis(responseTimeoutMillis);
+    return ctx;
+  }
+
+  private static ServiceRequestContext contextWithTimeout(long timeoutMillis) {
+    ServiceRequestContext ctx = ServiceRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+    ctx.setRequestTimeoutMillis(timeoutMillis);
+    return ctx;
+  }
+}
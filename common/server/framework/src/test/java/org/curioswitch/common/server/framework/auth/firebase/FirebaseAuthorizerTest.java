@@ -0,0 +1,202 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.auth.firebase;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.api.core.ApiFutures;
+import com.google.common.collect.ImmutableMap;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import com.linecorp.armeria.common.auth.OAuth2Token;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+class FirebaseAuthorizerTest {
+
+  private static final String PROJECT_ID = "test-project";
+  private static final Instant NOW = Instant.parse("2020-10-01T00:00:00Z");
+  private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+  private static final OAuth2Token TOKEN = OAuth2Token.of("token");
+
+  @Mock private FirebaseAuth firebaseAuth;
+  @Mock private JwtVerifier.Factory jwtVerifierFactory;
+  @Mock private JwtVerifier jwtVerifier;
+  @Mock private ServiceRequestContext ctx;
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  class AdminSdk {
+
+    @Test
+    void cachesAllowed() {
+      FirebaseToken token = mock(FirebaseToken.class);
+      when(token.isEmailVerified()).thenReturn(true);
+      when(token.getClaims())
+          .thenReturn(ImmutableMap.of("exp", NOW.plus(Duration.ofHours(1)).getEpochSecond()));
+      when(firebaseAuth.verifyIdTokenAsync("token")).thenReturn(ApiFutures.immediateFuture(token));
+      FirebaseAuthorizer authorizer = newAuthorizer(false);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture()).isCompletedWithValue(true);
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture()).isCompletedWithValue(true);
+
+      verify(firebaseAuth, times(1)).verifyIdTokenAsync(anyString());
+      verify(ctx, times(2)).setAttr(FirebaseAuthorizer.FIREBASE_TOKEN, token);
+    }
+
+    @Test
+    void cachesInvalidToken() {
+      failVerification(AuthErrorCode.INVALID_ID_TOKEN);
+      FirebaseAuthorizer authorizer = newAuthorizer(false);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+
+      verify(firebaseAuth, times(1)).verifyIdTokenAsync(anyString());
+    }
+
+    @Test
+    void doesNotCacheTransientFailure() {
+      failVerification(AuthErrorCode.CERTIFICATE_FETCH_FAILED);
+      FirebaseAuthorizer authorizer = newAuthorizer(false);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+
+      verify(firebaseAuth, times(2)).verifyIdTokenAsync(anyString());
+    }
+
+    private void failVerification(AuthErrorCode errorCode) {
+      FirebaseAuthException exception = mock(FirebaseAuthException.class);
+      when(exception.getAuthErrorCode()).thenReturn(errorCode);
+      when(firebaseAuth.verifyIdTokenAsync("token"))
+          .thenReturn(ApiFutures.immediateFailedFuture(exception));
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  class Local {
+
+    @Test
+    void valid() {
+      verifies(JWT.create().withIssuedAt(Date.from(NOW.minusSeconds(10))));
+      FirebaseAuthorizer authorizer = newAuthorizer(true);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture()).isCompletedWithValue(true);
+
+      ArgumentCaptor<FirebaseToken> token = ArgumentCaptor.forClass(FirebaseToken.class);
+      verify(ctx).setAttr(eq(FirebaseAuthorizer.FIREBASE_TOKEN), token.capture());
+      assertThat(token.getValue().getUid()).isEqualTo("user");
+      assertThat(token.getValue().isEmailVerified()).isTrue();
+    }
+
+    @Test
+    void issuedInFuture() {
+      verifies(JWT.create().withIssuedAt(Date.from(NOW.plusSeconds(10))));
+      FirebaseAuthorizer authorizer = newAuthorizer(true);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+    }
+
+    @Test
+    void noIssuedAt() {
+      verifies(JWT.create());
+      FirebaseAuthorizer authorizer = newAuthorizer(true);
+
+      assertThat(authorizer.authorize(ctx, TOKEN).toCompletableFuture())
+          .isCompletedWithValue(false);
+    }
+
+    @Test
+    void requiresProjectId() {
+      assertThatThrownBy(() -> config(true).setProjectId("").toImmutable())
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void verifies(JWTCreator.Builder jwt) {
+      String signed =
+          jwt.withAudience(PROJECT_ID)
+              .withIssuer("https://securetoken.google.com/" + PROJECT_ID)
+              .withSubject("user")
+              .withClaim("auth_time", NOW.minusSeconds(60).getEpochSecond())
+              .withClaim("email_verified", true)
+              .withExpiresAt(Date.from(NOW.plus(Duration.ofHours(1))))
+              .sign(Algorithm.HMAC256("secret"));
+      when(jwtVerifier.verify(any()))
+          .thenReturn(CompletableFuture.completedFuture(JWT.decode(signed)));
+    }
+  }
+
+  private FirebaseAuthorizer newAuthorizer(boolean verifyTokensLocally) {
+    if (verifyTokensLocally) {
+      when(jwtVerifierFactory.create(eq(JwtVerifier.Algorithm.RS256), anyString()))
+          .thenReturn(jwtVerifier);
+    }
+    return new FirebaseAuthorizer(
+        () -> firebaseAuth,
+        config(verifyTokensLocally).toImmutable(),
+        jwtVerifierFactory,
+        CLOCK,
+        new SimpleMeterRegistry());
+  }
+
+  private static ModifiableFirebaseAuthConfig config(boolean verifyTokensLocally) {
+    return new ModifiableFirebaseAuthConfig()
+        .setServiceAccountBase64("")
+        .setProjectId(PROJECT_ID)
+        .setAllowUnverifiedEmail(false)
+        .setVerifyTokensLocally(verifyTokensLocally)
+        .setDecisionCacheTtl(Duration.ofMinutes(1));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.auth.iam;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.curioswitch.curiostack.gcloud.core.iam.IamPermissions;
+import org.curioswitch.curiostack.gcloud.iam.ServiceAccountsClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+class IamPermissionCheckerTest {
+
+  private static final String SERVICE_ACCOUNT = "server@project.iam.gserviceaccount.com";
+  private static final List<String> PERMISSIONS = ImmutableList.of("iam.serviceAccounts.actAs");
+
+  @Mock private ServiceAccountsClient client;
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  private SimpleMeterRegistry meterRegistry;
+  private IamPermissionChecker checker;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    checker = new IamPermissionChecker(client, meterRegistry, Duration.ofSeconds(30), nanos::get);
+  }
+
+  @Test
+  void coalescesAndCachesChecks() {
+    CompletableFuture<IamPermissions> response = new CompletableFuture<>();
+    when(client.testIamPermissions(eq(SERVICE_ACCOUNT), any())).thenReturn(response);
+
+    CompletableFuture<Boolean> first = checker.test("token", SERVICE_ACCOUNT, PERMISSIONS);
+    CompletableFuture<Boolean> second = checker.test("token", SERVICE_ACCOUNT, PERMISSIONS);
+    response.complete(new IamPermissions.Builder().addAllPermissions(PERMISSIONS).build());
+
+    assertThat(first).isCompletedWithValue(true);
+    assertThat(second).isCompletedWithValue(true);
+    assertThat(checker.test("token", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(true);
+    verify(client, times(1)).testIamPermissions(eq(SERVICE_ACCOUNT), any());
+
+    assertThat(cacheGets("hit")).isEqualTo(2);
+    assertThat(cacheGets("miss")).isEqualTo(1);
+  }
+
+  @Test
+  void separatesTokens() {
+    when(client.testIamPermissions(eq(SERVICE_ACCOUNT), any()))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new IamPermissions.Builder().addAllPermissions(PERMISSIONS).build()))
+        .thenReturn(CompletableFuture.completedFuture(new IamPermissions.Builder().build()));
+
+    assertThat(checker.test("token1", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(true);
+    assertThat(checker.test("token2", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(false);
+    verify(client, times(2)).testIamPermissions(eq(SERVICE_ACCOUNT), any());
+  }
+
+  @Test
+  void expiresResults() {
+    when(client.testIamPermissions(eq(SERVICE_ACCOUNT), any()))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new IamPermissions.Builder().addAllPermissions(PERMISSIONS).build()));
+
+    assertThat(checker.test("token", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(true);
+    nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+    assertThat(checker.test("token", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(true);
+    verify(client, times(2)).testIamPermissions(eq(SERVICE_ACCOUNT), any());
+  }
+
+  @Test
+  void doesNotCacheFailures() {
+    CompletableFuture<IamPermissions> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("unavailable"));
+    when(client.testIamPermissions(eq(SERVICE_ACCOUNT), any()))
+        .thenReturn(failed)
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new IamPermissions.Builder().addAllPermissions(PERMISSIONS).build()));
+
+    assertThat(checker.test("token", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedExceptionally();
+    assertThat(checker.test("token", SERVICE_ACCOUNT, PERMISSIONS)).isCompletedWithValue(true);
+  }
+
+  private double cacheGets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "iam_permission_checks")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.auth.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import org.curioswitch.common.server.framework.auth.jwt.JwtVerifier.Algorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+class JwtVerifierTest {
+
+  private static final String KEYS_URL = "https://keys.curioswitch.org/keys";
+  private static final String KEY_ID = "key1";
+
+  @Mock private PublicKeysManager.Factory publicKeysManagerFactory;
+  @Mock private PublicKeysManager publicKeysManager;
+
+  private SimpleMeterRegistry meterRegistry;
+  private KeyPair keyPair;
+  private String token;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    when(publicKeysManagerFactory.create(KEYS_URL)).thenReturn(publicKeysManager);
+    meterRegistry = new SimpleMeterRegistry();
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    keyPair = generator.generateKeyPair();
+    token =
+        JWT.create()
+            .withKeyId(KEY_ID)
+            .withSubject("user")
+            .withExpiresAt(Date.from(Instant.now().plus(Duration.ofHours(1))))
+            .sign(
+                com.auth0.jwt.algorithms.Algorithm.ECDSA256(
+                    null, (ECPrivateKey) keyPair.getPrivate()));
+  }
+
+  @Test
+  void cachesVerifiedToken() {
+    returnKey(CompletableFuture.completedFuture(keyPair.getPublic()));
+    JwtVerifier verifier = newVerifier();
+
+    DecodedJWT first = verifier.verify(token).join();
+    assertThat(first.getSubject()).isEqualTo("user");
+    assertThat(verifier.verify(token).join()).isSameAs(first);
+
+    verify(publicKeysManager, times(1)).getById(KEY_ID);
+    assertThat(cacheGets("hit")).isEqualTo(1);
+    assertThat(cacheGets("miss")).isEqualTo(1);
+  }
+
+  @Test
+  void keysRotated() {
+    returnKey(CompletableFuture.completedFuture(keyPair.getPublic()));
+    JwtVerifier verifier = newVerifier();
+    Runnable keysRotated = keysRotatedListener();
+
+    verifier.verify(token).join();
+    keysRotated.run();
+    verifier.verify(token).join();
+
+    verify(publicKeysManager, times(2)).getById(KEY_ID);
+    assertThat(cacheGets("hit")).isEqualTo(0);
+    assertThat(cacheGets("miss")).isEqualTo(2);
+  }
+
+  @Test
+  void inFlightVerificationNotCachedAfterRotation() {
+    CompletableFuture<PublicKey> oldKey = new CompletableFuture<>();
+    returnKey(oldKey);
+    JwtVerifier verifier = newVerifier();
+    Runnable keysRotated = keysRotatedListener();
+
+    CompletableFuture<DecodedJWT> inFlight = verifier.verify(token);
+    keysRotated.run();
+    oldKey.complete(keyPair.getPublic());
+    // The verification itself was valid when it started.
+    assertThat(inFlight.join().getSubject()).isEqualTo("user");
+
+    verifier.verify(token).join();
+    assertThat(cacheGets("hit")).isEqualTo(0);
+    assertThat(cacheGets("miss")).isEqualTo(2);
+  }
+
+  @Test
+  void separateMetricsPerInstance() {
+    returnKey(CompletableFuture.completedFuture(keyPair.getPublic()));
+    JwtVerifier first = newVerifier();
+    JwtVerifier second = newVerifier();
+
+    first.verify(token).join();
+    first.verify(token).join();
+    second.verify(token).join();
+
+    assertThat(meterRegistry.get("cache.size").tag("cache", "jwt_verified_tokens").gauges())
+        .hasSize(2);
+    assertThat(
+            meterRegistry
+                .get("cache.gets")
+                .tag("cache", "jwt_verified_tokens")
+                .tag("result", "hit")
+                .functionCounters())
+        .extracting(counter -> counter.count())
+        .containsExactlyInAnyOrder(1.0, 0.0);
+  }
+
+  private void returnKey(CompletableFuture<PublicKey> key) {
+    when(publicKeysManager.getById(KEY_ID)).thenReturn(key);
+  }
+
+  private Runnable keysRotatedListener() {
+    ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+    verify(publicKeysManager, times(1)).addKeysRotatedListener(listener.capture());
+    return listener.getValue();
+  }
+
+  private JwtVerifier newVerifier() {
+    return new JwtVerifier(
+        publicKeysManagerFactory, Clock.systemUTC(), meterRegistry, Algorithm.ES256, KEYS_URL);
+  }
+
+  private double cacheGets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "jwt_verified_tokens")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.auth.ssl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import javax.net.ssl.SSLSession;
+import javax.security.auth.x500.X500Principal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+class SslAuthorizerTest {
+
+  @Mock private ServiceRequestContext ctx;
+  @Mock private SSLSession sslSession;
+  @Mock private X509Certificate certificate;
+  @Mock private HttpRequest req;
+
+  private volatile Set<String> names;
+  private SimpleMeterRegistry meterRegistry;
+  private SslAuthorizer authorizer;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    when(ctx.sslSession()).thenReturn(sslSession);
+    when(sslSession.getPeerCertificates()).thenReturn(new Certificate[] {certificate});
+    when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal("CN=client"));
+
+    names = ImmutableSet.of("client");
+    meterRegistry = new SimpleMeterRegistry();
+    authorizer = new SslAuthorizer(() -> names, meterRegistry);
+  }
+
+  @Test
+  void cachesDecisionPerSession() throws Exception {
+    assertThat(authorizer.authorize(ctx, req).toCompletableFuture()).isCompletedWithValue(true);
+    assertThat(authorizer.authorize(ctx, req).toCompletableFuture()).isCompletedWithValue(true);
+
+    verify(sslSession, times(1)).getPeerCertificates();
+    assertThat(
+            meterRegistry
+                .get("ssl_authorized_requests")
+                .tag("common_name", "client")
+                .tag("authorized", "true")
+                .counter()
+                .count())
+        .isEqualTo(2);
+  }
+
+  @Test
+  void namesChanged() throws Exception {
+    assertThat(authorizer.authorize(ctx, req).toCompletableFuture()).isCompletedWithValue(true);
+
+    names = ImmutableSet.of("other-client");
+    assertThat(authorizer.authorize(ctx, req).toCompletableFuture()).isCompletedWithValue(false);
+
+    verify(sslSession, times(2)).getPeerCertificates();
+    assertThat(
+            meterRegistry
+                .get("ssl_authorized_requests")
+                .tag("common_name", "other")
+                .tag("authorized", "false")
+                .counter()
+                .count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void rejectedNamesShareCounter() throws Exception {
+    X509Certificate otherCertificate = mock(X509Certificate.class);
+    when(otherCertificate.getSubjectX500Principal())
+        .thenReturn(new X500Principal("CN=unknown-client"));
+    SSLSession otherSession = mock(SSLSession.class);
+    when(otherSession.getPeerCertificates()).thenReturn(new Certificate[] {otherCertificate});
+    ServiceRequestContext otherCtx = mock(ServiceRequestContext.class);
+    when(otherCtx.sslSession()).thenReturn(otherSession);
+
+    names = ImmutableSet.of();
+    assertThat(authorizer.authorize(ctx, req).toCompletableFuture()).isCompletedWithValue(false);
+    assertThat(authorizer.authorize(otherCtx, req).toCompletableFuture())
+        .isCompletedWithValue(false);
+
+    assertThat(meterRegistry.get("ssl_authorized_requests").counters()).hasSize(1);
+    assertThat(
+            meterRegistry
+                .get("ssl_authorized_requests")
+                .tag("common_name", "other")
+                .counter()
+                .count())
+        .isEqualTo(2);
+  }
+}
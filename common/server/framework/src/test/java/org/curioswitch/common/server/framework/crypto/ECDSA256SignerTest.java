@@ -23,11 +23,18 @@
  */
 package org.curioswitch.common.server.framework.crypto;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static org.curioswitch.common.testing.assertj.CurioAssertions.assertThat;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -59,4 +66,58 @@ public class ECDSA256SignerTest {
     byte[] signature = signer.sign(payload);
     assertThat(verifier.verify(payload, signature)).isTrue();
   }
+
+  @Test
+  public void signAllMatchesPayloadOrder() {
+    List<byte[]> payloads =
+        IntStream.range(0, 200)
+            .mapToObj(i -> ("payload" + i).getBytes(StandardCharsets.UTF_8))
+            .collect(toImmutableList());
+    List<byte[]> signatures = signer.signAll(payloads);
+    assertThat(signatures).hasSameSizeAs(payloads);
+    for (int i = 0; i < payloads.size(); i++) {
+      assertThat(verifier.verify(payloads.get(i), signatures.get(i))).isTrue();
+    }
+  }
+
+  @Test
+  public void signAllOnExecutorMatchesPayloadOrder() throws Exception {
+    List<byte[]> payloads =
+        IntStream.range(0, 1000)
+            .mapToObj(i -> ("payload" + i).getBytes(StandardCharsets.UTF_8))
+            .collect(toImmutableList());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<byte[]> signatures = signer.signAll(payloads, executor).get();
+      assertThat(signatures).hasSameSizeAs(payloads);
+      for (int i = 0; i < payloads.size(); i++) {
+        assertThat(verifier.verify(payloads.get(i), signatures.get(i))).isTrue();
+      }
+      assertThat(signer.signAll(ImmutableList.of(), executor).get()).isEmpty();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void concurrentSigning() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results =
+          IntStream.range(0, 200)
+              .mapToObj(
+                  i ->
+                      executor.submit(
+                          () -> {
+                            byte[] payload = ("payload" + i).getBytes(StandardCharsets.UTF_8);
+                            return verifier.verify(payload, signer.sign(payload));
+                          }))
+              .collect(toImmutableList());
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
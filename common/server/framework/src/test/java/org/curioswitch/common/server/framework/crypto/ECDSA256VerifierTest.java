@@ -66,4 +66,11 @@ public class ECDSA256VerifierTest {
     byte[] payload = "highlysensitiveinformation".getBytes(StandardCharsets.UTF_8);
     assertThat(verifier.verify(payload, "badsignature".getBytes(StandardCharsets.UTF_8))).isFalse();
   }
+
+  @Test
+  public void reusableAfterInvalidSignature() {
+    byte[] payload = "highlysensitiveinformation".getBytes(StandardCharsets.UTF_8);
+    assertThat(verifier.verify(payload, "badsignature".getBytes(StandardCharsets.UTF_8))).isFalse();
+    assertThat(verifier.verify(payload, signer.sign(payload))).isTrue();
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.database;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.util.SafeCloseable;
+import com.linecorp.armeria.server.RequestTimeoutException;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.PreparedStatement;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
+import org.jooq.ExecuteContext;
+import org.jooq.exception.DataAccessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+class DeadlineExecuteListenerTest {
+
+  @Mock private ExecuteContext ctx;
+  @Mock private PreparedStatement statement;
+
+  private SimpleMeterRegistry meterRegistry;
+  private DeadlineExecuteListener listener;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    listener = new DeadlineExecuteListener(new RequestDeadlines(meterRegistry));
+  }
+
+  @Test
+  void setsQueryTimeoutToRemainingDeadline() throws Exception {
+    when(ctx.statement()).thenReturn(statement);
+
+    try (SafeCloseable ignored = contextWithTimeout(2500).push()) {
+      listener.prepareEnd(ctx);
+    }
+
+    // Rounded up so a sub-second remainder doesn't turn into no timeout.
+    verify(statement).setQueryTimeout(3);
+  }
+
+  @Test
+  void resetsQueryTimeoutWithoutDeadline() throws Exception {
+    when(ctx.statement()).thenReturn(statement);
+
+    listener.prepareEnd(ctx);
+
+    verify(statement).setQueryTimeout(0);
+  }
+
+  @Test
+  void expiredDeadlineFailsFast() {
+    ServiceRequestContext serverCtx = contextWithTimeout(1);
+    await().until(() -> RequestDeadlines.remainingMillis(serverCtx) == 0);
+
+    Throwable thrown;
+    try (SafeCloseable ignored = serverCtx.push()) {
+      thrown = catchThrowable(() -> listener.prepareEnd(ctx));
+    }
+
+    assertThat(thrown)
+        .isInstanceOf(DataAccessException.class)
+        .hasCauseInstanceOf(RequestTimeoutException.class);
+    verify(ctx, never()).statement();
+    assertThat(
+            meterRegistry
+                .get("request_deadline_expired_work")
+                .tag("component", "database")
+                .counter()
+                .count())
+        .isEqualTo(1);
+  }
+
+  private static ServiceRequestContext contextWithTimeout(long timeoutMillis) {
+    ServiceRequestContext ctx = ServiceRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+    ctx.setRequestTimeoutMillis(timeoutMillis);
+    return ctx;
+  }
+}
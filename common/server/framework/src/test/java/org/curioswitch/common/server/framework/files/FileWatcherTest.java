@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileWatcherTest {
+
+  private static final Duration DEBOUNCE = Duration.ofMillis(300);
+
+  private SimpleMeterRegistry meterRegistry;
+  private ExecutorService callbackExecutor;
+  private List<String> reloadedContents;
+
+  @Nullable private FileWatcher watcher;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    callbackExecutor = Executors.newFixedThreadPool(4);
+    reloadedContents = new CopyOnWriteArrayList<>();
+    watcher = null;
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (watcher != null) {
+      watcher.close();
+    }
+    callbackExecutor.shutdownNow();
+  }
+
+  @Test
+  void coalescesRapidEvents(@TempDir Path dir) throws Exception {
+    Path file = write(dir.resolve("config.yaml"), "v0");
+    startWatcher(file, path -> reloadedContents.add(read(path)));
+
+    for (int i = 1; i <= 5; i++) {
+      write(file, "v" + i);
+      Thread.sleep(20);
+    }
+
+    await().until(() -> reloads("reloaded") == 1);
+    Thread.sleep(DEBOUNCE.toMillis() * 2);
+    assertThat(reloadedContents).containsExactly("v5");
+    assertThat(reloads("reloaded")).isEqualTo(1);
+  }
+
+  @Test
+  void skipsUnchangedContent(@TempDir Path dir) throws Exception {
+    Path file = write(dir.resolve("config.yaml"), "v0");
+    startWatcher(file, path -> reloadedContents.add(read(path)));
+
+    write(file, "v0");
+    await().until(() -> reloads("unchanged") == 1);
+    assertThat(reloadedContents).isEmpty();
+
+    write(file, "v1");
+    await().until(() -> reloads("reloaded") == 1);
+    write(file, "v1");
+    await().until(() -> reloads("unchanged") == 2);
+    assertThat(reloadedContents).containsExactly("v1");
+  }
+
+  @Test
+  void callbacksForPathAreSequential(@TempDir Path dir) throws Exception {
+    Path file = write(dir.resolve("config.yaml"), "v0");
+    CountDownLatch firstStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirst = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    startWatcher(
+        file,
+        path -> {
+          int numRunning = running.incrementAndGet();
+          maxRunning.accumulateAndGet(numRunning, Math::max);
+          reloadedContents.add(read(path));
+          if (reloadedContents.size() == 1) {
+            firstStarted.countDown();
+            try {
+              releaseFirst.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          running.decrementAndGet();
+        });
+
+    write(file, "v1");
+    firstStarted.await();
+    write(file, "v2");
+    // The second change settles while the first callback is still running, but waits for it.
+    Thread.sleep(DEBOUNCE.toMillis() * 2);
+    assertThat(reloadedContents).containsExactly("v1");
+
+    releaseFirst.countDown();
+    await().until(() -> reloadedContents.size() == 2);
+    assertThat(reloadedContents).containsExactly("v1", "v2");
+    assertThat(maxRunning).hasValue(1);
+  }
+
+  private void startWatcher(Path file, Consumer<Path> callback) {
+    watcher =
+        new FileWatcher.Builder(meterRegistry)
+            .registerPath(file, callback)
+            .debounce(DEBOUNCE)
+            .callbackExecutor(callbackExecutor)
+            .build();
+    watcher.start();
+  }
+
+  private double reloads(String result) {
+    return meterRegistry.get("file_watcher_reloads").tag("result", result).counter().count();
+  }
+
+  private static Path write(Path file, String contents) throws IOException {
+    return Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(Path file) {
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.ImmutableList;
+import java.net.InetAddress;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("ClassCanBeStatic")
+class IpSubnetTrieTest {
+
+  private static final IpSubnetTrie TRIE =
+      IpSubnetTrie.of(
+          ImmutableList.of("121.121.0.0/16", "10.0.0.1/32", "2001:db8::/32", "fe80::1/128"));
+
+  @Nested
+  class Ipv4 {
+    @Test
+    void matches() {
+      assertThat(TRIE.matches("121.121.3.4")).isTrue();
+      assertThat(TRIE.matches("10.0.0.1")).isTrue();
+      assertThat(TRIE.matches(" 10.0.0.1 ")).isTrue();
+      assertThat(TRIE.matches("10.0.0.1:8080")).isTrue();
+      assertThat(TRIE.matches("::ffff:121.121.9.9")).isTrue();
+    }
+
+    @Test
+    void doesNotMatch() {
+      assertThat(TRIE.matches("121.122.3.4")).isFalse();
+      assertThat(TRIE.matches("10.0.0.2")).isFalse();
+      assertThat(TRIE.matches("::ffff:121.122.9.9")).isFalse();
+    }
+
+    @Test
+    void nestedRules() {
+      IpSubnetTrie trie = IpSubnetTrie.of(ImmutableList.of("10.1.2.0/24", "10.0.0.0/8"));
+      assertThat(trie.matches("10.1.2.3")).isTrue();
+      assertThat(trie.matches("10.200.1.1")).isTrue();
+      assertThat(trie.matches("11.0.0.0")).isFalse();
+    }
+
+    @Test
+    void matchAll() {
+      IpSubnetTrie trie = IpSubnetTrie.of(ImmutableList.of("0.0.0.0/0"));
+      assertThat(trie.matches("8.8.8.8")).isTrue();
+      assertThat(trie.matches("::2")).isFalse();
+    }
+  }
+
+  @Nested
+  class Ipv6 {
+    @Test
+    void matches() {
+      assertThat(TRIE.matches("2001:db8:1::5")).isTrue();
+      assertThat(TRIE.matches("[2001:0db8:0000:0000:0000:0000:0000:0001]")).isTrue();
+      assertThat(TRIE.matches("fe80::1")).isTrue();
+    }
+
+    @Test
+    void doesNotMatch() {
+      assertThat(TRIE.matches("2001:db9::5")).isFalse();
+      assertThat(TRIE.matches("fe80::2")).isFalse();
+    }
+  }
+
+  @Test
+  void inetAddress() throws Exception {
+    assertThat(TRIE.matches(InetAddress.getByName("121.121.200.1"))).isTrue();
+    assertThat(TRIE.matches(InetAddress.getByName("2001:db8::9"))).isTrue();
+    assertThat(TRIE.matches(InetAddress.getByName("2002:db8::9"))).isFalse();
+  }
+
+  @Test
+  void invalidAddresses() {
+    assertThat(TRIE.matches("999.1.1.1")).isFalse();
+    assertThat(TRIE.matches("1.2.3")).isFalse();
+    assertThat(TRIE.matches("example.com")).isFalse();
+    assertThat(TRIE.matches("1::2::3")).isFalse();
+    assertThat(TRIE.matches(":::")).isFalse();
+  }
+
+  @Test
+  void invalidRules() {
+    assertThatThrownBy(() -> IpSubnetTrie.of(ImmutableList.of("10.0.0.0")))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> IpSubnetTrie.of(ImmutableList.of("10.0.0.0/33")))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> IpSubnetTrie.of(ImmutableList.of("example.com/8")))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
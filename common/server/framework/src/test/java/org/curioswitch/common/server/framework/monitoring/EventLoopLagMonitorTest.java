@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.curioswitch.common.server.framework.config.ModifiableMonitoringConfig;
+import org.curioswitch.common.server.framework.config.MonitoringConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EventLoopLagMonitorTest {
+
+  private SimpleMeterRegistry meterRegistry;
+  private EventLoopGroup eventLoopGroup;
+  private EventLoopLagMonitor monitor;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    eventLoopGroup = new DefaultEventLoopGroup(1);
+    monitor =
+        new EventLoopLagMonitor(eventLoopGroup, config(Duration.ofMillis(10)), meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    monitor.close();
+    eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void recordsBlockedLoop() throws Exception {
+    monitor.start();
+    assertThat(monitor.isHealthCheckEnabled()).isTrue();
+    await().until(() -> lag().count() > 0);
+    assertThat(blocked()).isZero();
+    assertThat(monitor.healthChecker().isHealthy()).isTrue();
+
+    CountDownLatch unblock = new CountDownLatch(1);
+    eventLoopGroup.execute(
+        () -> {
+          try {
+            unblock.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    await().until(() -> blocked() == 1);
+    await().until(() -> !monitor.healthChecker().isHealthy());
+    // Stays blocked past several more checks, but is only reported once.
+    Thread.sleep(200);
+    assertThat(blocked()).isEqualTo(1);
+
+    unblock.countDown();
+
+    await().until(() -> monitor.healthChecker().isHealthy());
+    assertThat(lag().max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(300);
+    assertThat(blocked()).isEqualTo(1);
+  }
+
+  @Test
+  void disabled() {
+    EventLoopLagMonitor disabled =
+        new EventLoopLagMonitor(eventLoopGroup, config(Duration.ZERO), meterRegistry);
+    disabled.start();
+    disabled.close();
+
+    assertThat(disabled.isHealthCheckEnabled()).isFalse();
+  }
+
+  private Timer lag() {
+    return meterRegistry.get("event_loop_lag").tag("loop", "0").timer();
+  }
+
+  private double blocked() {
+    return meterRegistry.get("event_loop_blocked").tag("loop", "0").counter().count();
+  }
+
+  private static MonitoringConfig config(Duration probeInterval) {
+    return new ModifiableMonitoringConfig()
+        .setServerName("test")
+        .setTraceQueueSize(1)
+        .setStackdriverProjectId("")
+        .setReportTraces(false)
+        .setTraceReportInterval(Duration.ofSeconds(1))
+        .setTraceSamplingRate(0)
+        .setEventLoopLagProbeInterval(probeInterval)
+        .setEventLoopBlockedThreshold(Duration.ofMillis(100))
+        .setEventLoopUnhealthyLag(Duration.ofMillis(50))
+        .setEventLoopUnhealthyPeriod(Duration.ofMillis(100))
+        .toImmutable();
+  }
+}
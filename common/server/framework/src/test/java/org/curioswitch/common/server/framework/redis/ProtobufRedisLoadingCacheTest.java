@@ -25,12 +25,27 @@
 package org.curioswitch.common.server.framework.redis;
 
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
 import static org.curioswitch.common.testing.assertj.CurioAssertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.protobuf.Int32Value;
 import com.google.protobuf.StringValue;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.util.SafeCloseable;
+import com.linecorp.armeria.server.RequestTimeoutException;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -44,19 +59,91 @@ class ProtobufRedisLoadingCacheTest {
 
   @Mock private RemoteCache<StringValue, Int32Value> remoteCache;
 
+  private SimpleMeterRegistry meterRegistry;
   private ProtobufRedisLoadingCache<StringValue, Int32Value> cache;
 
   @BeforeEach
   void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
     cache =
         new ProtobufRedisLoadingCache<>(
             StringValue.getDefaultInstance(),
             Int32Value.getDefaultInstance(),
             TTL,
             null,
+            new RequestDeadlines(meterRegistry),
             remoteCache);
   }
 
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  class Get {
+
+    private final SettableFuture<Int32Value> loaded = SettableFuture.create();
+    private final AtomicInteger numLoads = new AtomicInteger();
+
+    private ProtobufRedisLoadingCache<StringValue, Int32Value> localCache;
+
+    @BeforeEach
+    void setUp() {
+      // A local cache is needed for concurrent loads of the same key to be shared.
+      localCache =
+          new ProtobufRedisLoadingCache<>(
+              StringValue.getDefaultInstance(),
+              Int32Value.getDefaultInstance(),
+              TTL,
+              CaffeineSpec.parse("maximumSize=10"),
+              new RequestDeadlines(meterRegistry),
+              remoteCache);
+      when(remoteCache.get(KEY1)).thenReturn(completedFuture(null));
+    }
+
+    @Test
+    void concurrentCallersKeepOwnDeadline() throws Exception {
+      when(remoteCache.set(any(), any(), any())).thenReturn(completedFuture("OK"));
+
+      ListenableFuture<Int32Value> withDeadline;
+      try (SafeCloseable ignored = contextWithTimeout(50).push()) {
+        withDeadline = localCache.get(KEY1, this::load);
+      }
+      ListenableFuture<Int32Value> withoutDeadline = localCache.get(KEY1, this::load);
+
+      await().until(withDeadline::isDone);
+      assertThat(catchThrowable(withDeadline::get))
+          .isInstanceOf(ExecutionException.class)
+          .hasCauseInstanceOf(RequestTimeoutException.class);
+      assertThat(loaded.isCancelled()).isFalse();
+      assertThat(withoutDeadline.isDone()).isFalse();
+
+      loaded.set(Int32Value.newBuilder().setValue(1).build());
+      assertThat(withoutDeadline.get().getValue()).isEqualTo(1);
+      assertThat(localCache.get(KEY1, this::load).get().getValue()).isEqualTo(1);
+      assertThat(numLoads).hasValue(1);
+    }
+
+    @Test
+    void recordsExpiredLoad() {
+      ListenableFuture<Int32Value> withDeadline;
+      try (SafeCloseable ignored = contextWithTimeout(50).push()) {
+        withDeadline = localCache.get(KEY1, this::load);
+      }
+
+      await().until(withDeadline::isDone);
+      assertThat(
+              meterRegistry
+                  .get("request_deadline_expired_work")
+                  .tag("component", "redis_cache")
+                  .counter()
+                  .count())
+          .isEqualTo(1);
+    }
+
+    private ListenableFuture<Int32Value> load(StringValue key) {
+      numLoads.incrementAndGet();
+      return loaded;
+    }
+  }
+
   @SuppressWarnings("ClassCanBeStatic")
   @Nested
   class DeleteFromRedis {
@@ -74,4 +161,10 @@ class ProtobufRedisLoadingCacheTest {
       assertThat(cache.deleteFromRedis(KEY1)).completesWithValue(false);
     }
   }
+
+  private static ServiceRequestContext contextWithTimeout(long timeoutMillis) {
+    ServiceRequestContext ctx = ServiceRequestContext.of(HttpRequest.of(HttpMethod.GET, "/"));
+    ctx.setRequestTimeoutMillis(timeoutMillis);
+    return ctx;
+  }
 }
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.linecorp.armeria.common.HttpResponse;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.server.Server;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WarmUpRunnerTest {
+
+  private static Server server;
+
+  @BeforeAll
+  static void buildServer() {
+    server = Server.builder().service("/", (ctx, req) -> HttpResponse.of(HttpStatus.OK)).build();
+  }
+
+  @AfterAll
+  static void closeServer() {
+    server.close();
+  }
+
+  private SimpleMeterRegistry meterRegistry;
+  private ListeningExecutorService executor;
+  private List<String> started;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
+    started = new CopyOnWriteArrayList<>();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void runsTasksInParallel() {
+    SettableFuture<Void> first = SettableFuture.create();
+    SettableFuture<Void> second = SettableFuture.create();
+    WarmUpRunner runner =
+        newRunner(Duration.ZERO, task("first", () -> first), task("second", () -> second));
+
+    ListenableFuture<Void> done = runner.run(server);
+
+    // Both start without waiting for each other, and completing out of order is fine.
+    await().until(() -> started.size() == 2);
+    assertThat(started).containsExactlyInAnyOrder("first", "second");
+    second.set(null);
+    assertThat(done).isNotDone();
+    first.set(null);
+    await().until(done::isDone);
+
+    assertThat(taskCount("first", "success")).isEqualTo(1);
+    assertThat(taskCount("second", "success")).isEqualTo(1);
+  }
+
+  @Test
+  void continuesAfterTimeout() throws Exception {
+    WarmUpRunner runner =
+        newRunner(Duration.ofMillis(100), task("stuck", SettableFuture::<Void>create));
+
+    ListenableFuture<Void> done = runner.run(server);
+
+    await().until(done::isDone);
+    assertThat(done.get()).isNull();
+    assertThat(started).containsExactly("stuck");
+  }
+
+  @Test
+  void failingTaskDoesNotBlockStartup() throws Exception {
+    WarmUpRunner runner =
+        newRunner(
+            Duration.ofSeconds(10),
+            task(
+                "throws",
+                () -> {
+                  throw new IllegalStateException("broken");
+                }),
+            task("fails", () -> Futures.immediateFailedFuture(new IllegalStateException("fail"))),
+            task("succeeds", () -> Futures.immediateFuture(null)));
+
+    ListenableFuture<Void> done = runner.run(server);
+
+    await().until(done::isDone);
+    assertThat(done.get()).isNull();
+    assertThat(taskCount("throws", "failure")).isEqualTo(1);
+    assertThat(taskCount("fails", "failure")).isEqualTo(1);
+    assertThat(taskCount("succeeds", "success")).isEqualTo(1);
+  }
+
+  @Test
+  void noTasks() {
+    assertThat(newRunner(Duration.ofSeconds(10)).run(server)).isDone();
+  }
+
+  private WarmUpRunner newRunner(Duration timeout, WarmUpTask... tasks) {
+    return new WarmUpRunner(ImmutableSet.copyOf(tasks), timeout, executor, meterRegistry);
+  }
+
+  private WarmUpTask task(String name, Supplier<ListenableFuture<?>> warmUp) {
+    return new WarmUpTask() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public ListenableFuture<?> warmUp(Server server) {
+        started.add(name);
+        return warmUp.get();
+      }
+    };
+  }
+
+  private long taskCount(String task, String outcome) {
+    return meterRegistry
+        .get("server_warm_up_task_duration")
+        .tag("task", task)
+        .tag("outcome", outcome)
+        .timer()
+        .count();
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.staticsite;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.linecorp.armeria.common.HttpMethod;
+import com.linecorp.armeria.common.HttpRequest;
+import com.linecorp.armeria.common.HttpStatus;
+import com.linecorp.armeria.common.MediaType;
+import com.linecorp.armeria.common.RequestHeaders;
+import com.linecorp.armeria.common.RequestHeadersBuilder;
+import com.linecorp.armeria.common.ServerCacheControl;
+import com.linecorp.armeria.server.ServiceRequestContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class InMemoryStaticServiceTest {
+
+  private static StaticAssetIndex index;
+
+  @BeforeAll
+  static void loadIndex() {
+    index =
+        StaticAssetIndex.load(InMemoryStaticServiceTest.class.getClassLoader(), "/staticsite-test");
+  }
+
+  @Test
+  void loadsAllAssets() {
+    assertThat(index.size()).isEqualTo(3);
+    assertThat(index.get("app.js")).isNotNull();
+    assertThat(index.get("docs/index.html")).isNotNull();
+  }
+
+  @Test
+  void servesIdentityWithoutAcceptEncoding() {
+    AggregatedHttpResponse res = get(staticService(), "/app.js", null, null);
+    assertThat(res.status()).isEqualTo(HttpStatus.OK);
+    assertThat(res.contentType()).isEqualTo(MediaType.JAVASCRIPT_UTF_8);
+    assertThat(res.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isNull();
+    assertThat(res.headers().get(HttpHeaderNames.ETAG)).startsWith("\"").endsWith("\"");
+    assertThat(res.contentUtf8()).startsWith("console.log(\"static asset line 0\");");
+  }
+
+  @Test
+  void servesGzip() throws IOException {
+    AggregatedHttpResponse identity = get(staticService(), "/app.js", null, null);
+    AggregatedHttpResponse res = get(staticService(), "/app.js", "gzip, deflate", null);
+    assertThat(res.status()).isEqualTo(HttpStatus.OK);
+    assertThat(res.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(res.headers().get(HttpHeaderNames.ETAG))
+        .isNotEqualTo(identity.headers().get(HttpHeaderNames.ETAG));
+    try (GZIPInputStream decompressed =
+        new GZIPInputStream(new ByteArrayInputStream(res.content().array()))) {
+      assertThat(decompressed)
+          .hasSameContentAs(new ByteArrayInputStream(identity.content().array()));
+    }
+  }
+
+  @Test
+  void gzipDisallowed() {
+    AggregatedHttpResponse res = get(staticService(), "/app.js", "gzip;q=0", null);
+    assertThat(res.headers().get(HttpHeaderNames.CONTENT_ENCODING)).isNull();
+  }
+
+  @Test
+  void notModified() {
+    String etag =
+        get(staticService(), "/app.js", "gzip", null).headers().get(HttpHeaderNames.ETAG);
+    AggregatedHttpResponse res = get(staticService(), "/app.js", "gzip", etag);
+    assertThat(res.status()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(res.headers().get(HttpHeaderNames.ETAG)).isEqualTo(etag);
+    assertThat(res.content().isEmpty()).isTrue();
+
+    assertThat(get(staticService(), "/app.js", "gzip", "W/" + etag).status())
+        .isEqualTo(HttpStatus.NOT_MODIFIED);
+    assertThat(get(staticService(), "/app.js", null, etag).status()).isEqualTo(HttpStatus.OK);
+  }
+
+  @Test
+  void staticNotFound() {
+    assertThat(get(staticService(), "/missing.js", null, null).status())
+        .isEqualTo(HttpStatus.NOT_FOUND);
+  }
+
+  @Test
+  void indexFallback() {
+    InMemoryStaticService service =
+        new InMemoryStaticService(index, ServerCacheControl.DISABLED, true);
+    assertThat(get(service, "/", null, null).contentUtf8()).contains("id=\"app\"");
+    assertThat(get(service, "/cafes/123", null, null).contentUtf8()).contains("id=\"app\"");
+    assertThat(get(service, "/docs/", null, null).contentUtf8()).contains("Docs");
+    assertThat(get(service, "/", null, null).headers().get(HttpHeaderNames.CACHE_CONTROL))
+        .isEqualTo(ServerCacheControl.DISABLED.asHeaderValue());
+  }
+
+  @Test
+  void directoryRedirect() {
+    InMemoryStaticService service =
+        new InMemoryStaticService(index, ServerCacheControl.DISABLED, true);
+    AggregatedHttpResponse res = get(service, "/docs", null, null);
+    assertThat(res.status()).isEqualTo(HttpStatus.TEMPORARY_REDIRECT);
+    assertThat(res.headers().get(HttpHeaderNames.LOCATION)).isEqualTo("/docs/");
+    assertThat(get(service, "/docs?lang=ja", null, null).headers().get(HttpHeaderNames.LOCATION))
+        .isEqualTo("/docs/?lang=ja");
+
+    // Without index.html fallback, only exact assets are served.
+    assertThat(get(staticService(), "/docs", null, null).status())
+        .isEqualTo(HttpStatus.NOT_FOUND);
+  }
+
+  private static InMemoryStaticService staticService() {
+    return new InMemoryStaticService(index, ServerCacheControl.IMMUTABLE, false);
+  }
+
+  private static AggregatedHttpResponse get(
+      InMemoryStaticService service,
+      String path,
+      @Nullable String acceptEncoding,
+      @Nullable String ifNoneMatch) {
+    RequestHeadersBuilder headers = RequestHeaders.builder(HttpMethod.GET, path);
+    if (acceptEncoding != null) {
+      headers.set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+    }
+    if (ifNoneMatch != null) {
+      headers.set(HttpHeaderNames.IF_NONE_MATCH, ifNoneMatch);
+    }
+    HttpRequest req = HttpRequest.of(headers.build());
+    ServiceRequestContext ctx = ServiceRequestContext.of(req);
+    try {
+      return service.serve(ctx, req).aggregate().join();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
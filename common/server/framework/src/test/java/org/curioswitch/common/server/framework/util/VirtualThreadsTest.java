@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Choko (choko@curioswitch.org)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.curioswitch.common.server.framework.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  void isSupported() {
+    int version = javaVersion();
+    // Support on JDK 19 and 20 depends on whether preview features are enabled.
+    assumeTrue(version < 19 || version >= 21);
+
+    assertThat(VirtualThreads.isSupported()).isEqualTo(version >= 21);
+  }
+
+  @Test
+  void runsOnVirtualThread() throws Exception {
+    assumeTrue(VirtualThreads.isSupported());
+
+    ExecutorService executor =
+        VirtualThreads.newVirtualThreadPerTaskExecutor("test-", new SimpleMeterRegistry());
+    try {
+      assertThat(executor.submit(() -> Thread.currentThread().getName()).get())
+          .isEqualTo("test-0");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void scheduledExecutorRunsTasksConcurrently() throws Exception {
+    assumeTrue(VirtualThreads.isSupported());
+
+    ScheduledExecutorService executor =
+        VirtualThreads.newVirtualThreadScheduledExecutor("test-", new SimpleMeterRegistry());
+    try {
+      CountDownLatch bothRunning = new CountDownLatch(2);
+      Callable<Boolean> task =
+          () -> {
+            bothRunning.countDown();
+            return bothRunning.await(10, TimeUnit.SECONDS);
+          };
+      Future<Boolean> first = executor.submit(task);
+      Future<Boolean> second = executor.schedule(task, 10, TimeUnit.MILLISECONDS);
+
+      assertThat(first.get()).isTrue();
+      assertThat(second.get()).isTrue();
+      assertThat(executor.submit(() -> Thread.currentThread().getName()).get())
+          .startsWith("test-");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void notSupported() {
+    assumeFalse(VirtualThreads.isSupported());
+
+    assertThatThrownBy(
+            () ->
+                VirtualThreads.newVirtualThreadPerTaskExecutor("test-", new SimpleMeterRegistry()))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private static int javaVersion() {
+    String version = System.getProperty("java.specification.version");
+    if (version.startsWith("1.")) {
+      version = version.substring(2);
+    }
+    return Integer.parseInt(version);
+  }
+}
@@ -0,0 +1,200 @@
+console.log("static asset line 0");
+console.log("static asset line 1");
+console.log("static asset line 2");
+console.log("static asset line 3");
+console.log("static asset line 4");
+console.log("static asset line 5");
+console.log("static asset line 6");
+console.log("static asset line 7");
+console.log("static asset line 8");
+console.log("static asset line 9");
+console.log("static asset line 10");
+console.log("static asset line 11");
+console.log("static asset line 12");
+console.log("static asset line 13");
+console.log("static asset line 14");
+console.log("static asset line 15");
+console.log("static asset line 16");
+console.log("static asset line 17");
+console.log("static asset line 18");
+console.log("static asset line 19");
+console.log("static asset line 20");
+console.log("static asset line 21");
+console.log("static asset line 22");
+console.log("static asset line 23");
+console.log("static asset line 24");
+console.log("static asset line 25");
+console.log("static asset line 26");
+console.log("static asset line 27");
+console.log("static asset line 28");
+console.log("static asset line 29");
+console.log("static asset line 30");
+console.log("static asset line 31");
+console.log("static asset line 32");
+console.log("static asset line 33");
+console.log("static asset line 34");
+console.log("static asset line 35");
+console.log("static asset line 36");
+console.log("static asset line 37");
+console.log("static asset line 38");
+console.log("static asset line 39");
+console.log("static asset line 40");
+console.log("static asset line 41");
+console.log("static asset line 42");
+console.log("static asset line 43");
+console.log("static asset line 44");
+console.log("static asset line 45");
+console.log("static asset line 46");
+console.log("static asset line 47");
+console.log("static asset line 48");
+console.log("static asset line 49");
+console.log("static asset line 50");
+console.log("static asset line 51");
+console.log("static asset line 52");
+console.log("static asset line 53");
+console.log("static asset line 54");
+console.log("static asset line 55");
+console.log("static asset line 56");
+console.log("static asset line 57");
+console.log("static asset line 58");
+console.log("static asset line 59");
+console.log("static asset line 60");
+console.log("static asset line 61");
+console.log("static asset line 62");
+console.log("static asset line 63");
+console.log("static asset line 64");
+console.log("static asset line 65");
+console.log("static asset line 66");
+console.log("static asset line 67");
+console.log("static asset line 68");
+console.log("static asset line 69");
+console.log("static asset line 70");
+console.log("static asset line 71");
+console.log("static asset line 72");
+console.log("static asset line 73");
+console.log("static asset line 74");
+console.log("static asset line 75");
+console.log("static asset line 76");
+console.log("static asset line 77");
+console.log("static asset line 78");
+console.log("static asset line 79");
+console.log("static asset line 80");
+console.log("static asset line 81");
+console.log("static asset line 82");
+console.log("static asset line 83");
+console.log("static asset line 84");
+console.log("static asset line 85");
+console.log("static asset line 86");
+console.log("static asset line 87");
+console.log("static asset line 88");
+console.log("static asset line 89");
+console.log("static asset line 90");
+console.log("static asset line 91");
+console.log("static asset line 92");
+console.log("static asset line 93");
+console.log("static asset line 94");
+console.log("static asset line 95");
+console.log("static asset line 96");
+console.log("static asset line 97");
+console.log("static asset line 98");
+console.log("static asset line 99");
+console.log("static asset line 100");
+console.log("static asset line 101");
+console.log("static asset line 102");
+console.log("static asset line 103");
+console.log("static asset line 104");
+console.log("static asset line 105");
+console.log("static asset line 106");
+console.log("static asset line 107");
+console.log("static asset line 108");
+console.log("static asset line 109");
+console.log("static asset line 110");
+console.log("static asset line 111");
+console.log("static asset line 112");
+console.log("static asset line 113");
+console.log("static asset line 114");
+console.log("static asset line 115");
+console.log("static asset line 116");
+console.log("static asset line 117");
+console.log("static asset line 118");
+console.log("static asset line 119");
+console.log("static asset line 120");
+console.log("static asset line 121");
+console.log("static asset line 122");
+console.log("static asset line 123");
+console.log("static asset line 124");
+console.log("static asset line 125");
+console.log("static asset line 126");
+console.log("static asset line 127");
+console.log("static asset line 128");
+console.log("static asset line 129");
+console.log("static asset line 130");
+console.log("static asset line 131");
+console.log("static asset line 132");
+console.log("static asset line 133");
+console.log("static asset line 134");
+console.log("static asset line 135");
+console.log("static asset line 136");
+console.log("static asset line 137");
+console.log("static asset line 138");
+console.log("static asset line 139");
+console.log("static asset line 140");
+console.log("static asset line 141");
+console.log("static asset line 142");
+console.log("static asset line 143");
+console.log("static asset line 144");
+console.log("static asset line 145");
+console.log("static asset line 146");
+console.log("static asset line 147");
+console.log("static asset line 148");
+console.log("static asset line 149");
+console.log("static asset line 150");
+console.log("static asset line 151");
+console.log("static asset line 152");
+console.log("static asset line 153");
+console.log("static asset line 154");
+console.log("static asset line 155");
+console.log("static asset line 156");
+console.log("static asset line 157");
+console.log("static asset line 158");
+console.log("static asset line 159");
+console.log("static asset line 160");
+console.log("static asset line 161");
+console.log("static asset line 162");
+console.log("static asset line 163");
+console.log("static asset line 164");
+console.log("static asset line 165");
+console.log("static asset line 166");
+console.log("static asset line 167");
+console.log("static asset line 168");
+console.log("static asset line 169");
+console.log("static asset line 170");
+console.log("static asset line 171");
+console.log("static asset line 172");
+console.log("static asset line 173");
+console.log("static asset line 174");
+console.log("static asset line 175");
+console.log("static asset line 176");
+console.log("static asset line 177");
+console.log("static asset line 178");
+console.log("static asset line 179");
+console.log("static asset line 180");
+console.log("static asset line 181");
+console.log("static asset line 182");
+console.log("static asset line 183");
+console.log("static asset line 184");
+console.log("static asset line 185");
+console.log("static asset line 186");
+console.log("static asset line 187");
+console.log("static asset line 188");
+console.log("static asset line 189");
+console.log("static asset line 190");
+console.log("static asset line 191");
+console.log("static asset line 192");
+console.log("static asset line 193");
+console.log("static asset line 194");
+console.log("static asset line 195");
+console.log("static asset line 196");
+console.log("static asset line 197");
+console.log("static asset line 198");
+console.log("static asset line 199");
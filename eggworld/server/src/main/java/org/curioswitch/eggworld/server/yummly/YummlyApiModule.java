@@ -35,6 +35,8 @@ import dagger.Module;
 import dagger.Provides;
 import javax.inject.Singleton;
 import org.curioswitch.common.server.framework.ApplicationModule;
+import org.curioswitch.common.server.framework.armeria.DeadlinePropagatingClient;
+import org.curioswitch.common.server.framework.armeria.RequestDeadlines;
 import retrofit2.adapter.guava.GuavaCallAdapterFactory;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
@@ -54,11 +56,12 @@ public abstract class YummlyApiModule {
 
   @Provides
   @Singleton
-  static YummlyApi yummlyApi(YummlyConfig config) {
+  static YummlyApi yummlyApi(YummlyConfig config, RequestDeadlines requestDeadlines) {
     return ArmeriaRetrofit.builder(
             WebClient.builder("http://api.yummly.com/v1/api/")
                 .addHeader(HttpHeaderNames.of("X-Yummly-App-ID"), config.getApiId())
                 .addHeader(HttpHeaderNames.of("X-Yummly-App-Key"), config.getApiKey())
+                .decorator(DeadlinePropagatingClient.newDecorator(requestDeadlines))
                 .decorator(LoggingClient.builder().newDecorator())
                 .build())
         .addCallAdapterFactory(GuavaCallAdapterFactory.create())